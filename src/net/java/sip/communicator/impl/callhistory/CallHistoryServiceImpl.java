@@ -19,6 +19,7 @@ import net.java.sip.communicator.service.history.event.ProgressEvent;
 import net.java.sip.communicator.service.history.records.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.media.*;
 import net.java.sip.communicator.util.*;
 
 import org.osgi.framework.*;
@@ -46,7 +47,7 @@ public class CallHistoryServiceImpl
         new String[] { "accountUID", "callStart", "callEnd", "dir",
             "callParticipantIDs", "callParticipantStart",
             "callParticipantEnd", "callParticipantStates", "callEndReason",
-            "callParticipantNames"};
+            "callParticipantNames", "callQuality"};
 
     private static HistoryRecordStructure recordStructure =
         new HistoryRecordStructure(STRUCTURE_NAMES);
@@ -421,6 +422,8 @@ public class CallHistoryServiceImpl
                 result.setEndReason(Integer.parseInt(value));
             else if(propName.equals(STRUCTURE_NAMES[9]))
                 callPeerNames = getCSVs(value);
+            else if(propName.equals(STRUCTURE_NAMES[10]))
+                result.setQualityReport(CallQualityReport.decode(value));
         }
 
         final int callPeerCount = callPeerIDs == null ? 0 : callPeerIDs.size();
@@ -705,6 +708,8 @@ public class CallHistoryServiceImpl
                 callPeerStates.append(item.getState().getStateString());
             }
 
+            CallQualityReport qualityReport = callRecord.getQualityReport();
+
             historyWriter.addRecord(new String[] {
                     callRecord.getSourceCall().getProtocolProvider()
                         .getAccountID().getAccountUniqueID(),
@@ -716,7 +721,8 @@ public class CallHistoryServiceImpl
                     callPeerEndTime.toString(),
                     callPeerStates.toString(),
                     String.valueOf(callRecord.getEndReason()),
-                    callPeerNames.toString()},
+                    callPeerNames.toString(),
+                    (qualityReport == null) ? "" : qualityReport.encode()},
                     new Date());    // this date is when the history
                                     // record is written
         }
@@ -1081,6 +1087,17 @@ public class CallHistoryServiceImpl
 
         sourceCall.addCallChangeListener(historyCallChangeListener);
 
+        // sample the media statistics for the whole duration of the call so
+        // that its quality is retained in the history
+        if (sourceCall instanceof MediaAwareCall)
+        {
+            CallQualityCollector qualityCollector
+                = new CallQualityCollector(sourceCall);
+
+            newRecord.setQualityCollector(qualityCollector);
+            qualityCollector.start();
+        }
+
         currentCallRecords.add(newRecord);
 
         // if has already perticipants Dispatch them
@@ -1235,6 +1252,15 @@ public class CallHistoryServiceImpl
                 else
                     callRecord.setEndTime(new Date());
 
+                CallQualityCollector qualityCollector
+                    = callRecord.getQualityCollector();
+
+                if (qualityCollector != null)
+                {
+                    callRecord.setQualityReport(qualityCollector.stop());
+                    callRecord.setQualityCollector(null);
+                }
+
                 writeCall(callRecord, null, null);
 
                 currentCallRecords.remove(callRecord);
@@ -10,6 +10,7 @@ import java.util.*;
 
 import net.java.sip.communicator.service.callhistory.*;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.media.*;
 
 /**
  * Add Source call to the CallRecord
@@ -23,6 +24,12 @@ public class CallRecordImpl
      */
     private Call sourceCall = null;
 
+    /**
+     * The <tt>CallQualityCollector</tt> sampling the media statistics of the
+     * source call while it is in progress.
+     */
+    private CallQualityCollector qualityCollector = null;
+
     /**
      * Creates CallRecord
      */
@@ -117,4 +124,34 @@ public class CallRecordImpl
     {
         this.endReason = endReason;
     }
+
+    /**
+     * Gets the <tt>CallQualityCollector</tt> sampling the media statistics of
+     * the source call.
+     * @return the <tt>CallQualityCollector</tt> of the source call or
+     * <tt>null</tt>
+     */
+    public CallQualityCollector getQualityCollector()
+    {
+        return qualityCollector;
+    }
+
+    /**
+     * Sets the <tt>CallQualityCollector</tt> sampling the media statistics of
+     * the source call.
+     * @param qualityCollector the <tt>CallQualityCollector</tt> to set
+     */
+    public void setQualityCollector(CallQualityCollector qualityCollector)
+    {
+        this.qualityCollector = qualityCollector;
+    }
+
+    /**
+     * Sets the summary of the media statistics of the call.
+     * @param qualityReport the <tt>CallQualityReport</tt> to set
+     */
+    public void setQualityReport(CallQualityReport qualityReport)
+    {
+        this.qualityReport = qualityReport;
+    }
 }
@@ -14,6 +14,7 @@ import javax.swing.*;
 
 import net.java.sip.communicator.service.dns.*;
 import net.java.sip.communicator.service.notification.*;
+import net.java.sip.communicator.util.DnsRecordCache;
 import net.java.sip.communicator.util.Logger;
 import net.java.sip.communicator.plugin.desktoputil.*;
 
@@ -66,6 +67,9 @@ public class ConfigurableDnssecResolver
         reset();
         Lookup.setDefaultResolver(this);
 
+        // A background refresh failing the validation could ask the user.
+        DnsRecordCache.setRefreshEnabled(false);
+
         DnsUtilActivator.getNotificationService().
             registerDefaultNotificationForEvent(
                 ConfigurableDnssecResolver.EVENT_TYPE,
@@ -378,5 +382,6 @@ public class ConfigurableDnssecResolver
             if(logger.isTraceEnabled())
                 logger.trace("Loaded trust anchor " + anchor);
         }
+        DnsRecordCache.clear();
     }
 }
@@ -191,6 +191,7 @@ public class DnsUtilActivator
             // or the default otherwise
             Lookup.refreshDefault();
         }
+        DnsRecordCache.clear();
     }
 
     /**
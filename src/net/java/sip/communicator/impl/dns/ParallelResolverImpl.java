@@ -370,6 +370,8 @@ public class ParallelResolverImpl
     public final void reset()
     {
         Lookup.refreshDefault();
+        DnsRecordCache.clear();
+        DnsRecordCache.setRefreshEnabled(true);
 
         // populate with new servers after refreshing configuration
         try
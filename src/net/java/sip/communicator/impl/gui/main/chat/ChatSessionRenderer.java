@@ -6,6 +6,8 @@
  */
 package net.java.sip.communicator.impl.gui.main.chat;
 
+import java.util.*;
+
 import javax.swing.*;
 
 /**
@@ -46,6 +48,14 @@ public interface ChatSessionRenderer
      */
     public void addChatContact(ChatContact<?> chatContact);
 
+    /**
+     * Adds the given chat contacts to the UI at once.
+     *
+     * @param chatContacts the chat contacts to add.
+     */
+    public void addChatContacts(
+            Collection<? extends ChatContact<?>> chatContacts);
+
     /**
      * Removes the given chat contact from the UI.
      *
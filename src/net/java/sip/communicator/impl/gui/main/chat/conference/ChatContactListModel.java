@@ -1,221 +1,370 @@
-/*
- * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
- *
- * Distributable under LGPL license.
- * See terms of license at gnu.org.
- */
-package net.java.sip.communicator.impl.gui.main.chat.conference;
-
-import java.util.*;
-
-import javax.swing.*;
-
-import net.java.sip.communicator.impl.gui.main.chat.*;
-import net.java.sip.communicator.service.protocol.event.*;
-
-/**
- * Implements an <tt>AbstractListModel</tt> which represents a member list of
- * <tt>ChatContact</tt>s. The primary purpose of the implementation is to sort
- * the <tt>ChatContact</tt>s according to their member roles and in alphabetical
- * order according to their names.
- *
- * @author Lyubomir Marinov
- */
-public class ChatContactListModel
-    extends AbstractListModel
-{
-
-    /**
-     * The backing store of this <tt>AbstractListModel</tt> listing the
-     * <tt>ChatContact</tt>s.
-     */
-    private final List<ChatContact<?>> chatContacts
-        = new ArrayList<ChatContact<?>>();
-
-    /**
-     * The implementation of the sorting rules - the <tt>ChatContact</tt>s are
-     * first sorted according to their roles in decreasing order of their
-     * privileges and then they are sorted according to their names in
-     * alphabetical order.
-     */
-    private final Comparator<ChatContact<?>> sorter
-        = new Comparator<ChatContact<?>>()
-        {
-            public int compare(ChatContact<?> chatContact0, ChatContact<?> chatContact1)
-            {
-                /*
-                 * Place ChatMembers with more privileges at the beginning of
-                 * the list.
-                 */
-                if (chatContact0 instanceof ConferenceChatContact)
-                {
-                    if (chatContact1 instanceof ConferenceChatContact)
-                    {
-                        int role0
-                            = ((ConferenceChatContact) chatContact0).getRole()
-                                    .getRoleIndex();
-                        int role1
-                            = ((ConferenceChatContact) chatContact1).getRole()
-                                    .getRoleIndex();
-
-                        if (role0 > role1)
-                            return -1;
-                        else if (role0 < role1)
-                            return 1;
-                    }
-                    else
-                        return -1;
-                }
-                else if (chatContact1 instanceof ConferenceChatContact)
-                    return 1;
-
-                /* By default, sort the ChatContacts in alphabetical order. */
-                return
-                    chatContact0.getName().compareToIgnoreCase(
-                            chatContact1.getName());
-            }
-        };
-
-    /**
-     * Creates the model.
-     * @param chatSession The current model chat session.
-     */
-    public ChatContactListModel(ChatSession chatSession)
-    {
-        // when something like rename on a member change update the UI to
-        // reflect it
-        Object descriptor = chatSession.getDescriptor();
-
-        if(descriptor instanceof ChatRoomWrapper)
-        {
-            ((ChatRoomWrapper) descriptor)
-                .getChatRoom()
-                    .addMemberPropertyChangeListener(
-                            new ChatRoomMemberPropertyChangeListener()
-                            {
-                                public void chatRoomPropertyChanged(
-                                        ChatRoomMemberPropertyChangeEvent ev)
-                                {
-                                    // Translate into
-                                    // ListDataListener.contentsChanged.
-                                    int chatContactCount = chatContacts.size();
-
-                                    for (int i = 0; i < chatContactCount; i++)
-                                    {
-                                        ChatContact<?> chatContact
-                                            = chatContacts.get(i);
-
-                                        if(chatContact.getDescriptor().equals(
-                                                ev.getSourceChatRoomMember()))
-                                        {
-                                            fireContentsChanged(
-                                                    chatContact,
-                                                    i, i);
-                                            /*
-                                             * TODO Can ev.sourceChatRoomMember
-                                             * equal more than one chatContacts
-                                             * element? If it cannot, it will be
-                                             * more efficient to break here.
-                                             */
-                                        }
-                                    }
-                                }
-                            });
-        }
-    }
-
-
-
-    /**
-     * Adds a specific <tt>ChatContact</tt> to this <tt>AbstractListModel</tt>
-     * implementation and preserves the sorting it applies.
-     *
-     * @param chatContact a <tt>ChatContact</tt> to be added to this
-     * <tt>AbstractListModel</tt>
-     */
-    public void addElement(ChatContact<?> chatContact)
-    {
-        if (chatContact == null)
-            throw new IllegalArgumentException("chatContact");
-
-        int index = -1;
-
-        synchronized(chatContacts)
-        {
-            int chatContactCount = chatContacts.size();
-
-            for (int i = 0; i < chatContactCount; i++)
-            {
-                ChatContact<?> containedChatContact = chatContacts.get(i);
-
-                // We don't want duplicates.
-                if (chatContact.equals(containedChatContact))
-                    return;
-                if ((index == -1)
-                        && (sorter.compare(containedChatContact, chatContact) > 0))
-                {
-                    index = i;
-                    // Continue in order to prevent duplicates.
-                }
-            }
-            if (index == -1)
-                index = chatContactCount;
-
-            chatContacts.add(index, chatContact);
-        }
-        fireIntervalAdded(this, index, index);
-    }
-
-    /* Implements ListModel#getElementAt(int). */
-    public ChatContact<?> getElementAt(int index)
-    {
-        synchronized(chatContacts)
-        {
-            return chatContacts.get(index);
-        }
-    }
-
-    /* Implements ListModel#getSize(). */
-    public int getSize()
-    {
-        synchronized(chatContacts)
-        {
-            return chatContacts.size();
-        }
-    }
-
-    /**
-     * Removes a specific <tt>ChatContact</tt> from this
-     * <tt>AbstractListModel</tt> implementation.
-     *
-     * @param chatContact a <tt>ChatContact</tt> to be removed from this
-     * <tt>AbstractListModel</tt> if it's already contained
-     */
-    public void removeElement(ChatContact<?> chatContact)
-    {
-        synchronized(chatContacts)
-        {
-            int index = chatContacts.indexOf(chatContact);
-
-            if ((index >= 0) && chatContacts.remove(chatContact))
-                fireIntervalRemoved(this, index, index);
-        }
-    }
-
-    /**
-     * Removes all the elements from this model.
-     */
-    public void removeAllElements()
-    {
-        if (chatContacts == null || chatContacts.size() <= 0)
-            return;
-
-        synchronized(chatContacts)
-        {
-            int contactsSize = chatContacts.size();
-            chatContacts.clear();
-
-            fireIntervalRemoved(this, 0, contactsSize - 1);
-        }
-    }
-}
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.gui.main.chat.conference;
+
+import java.util.*;
+
+import javax.swing.*;
+
+import net.java.sip.communicator.impl.gui.main.chat.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * Implements an <tt>AbstractListModel</tt> which represents a member list of
+ * <tt>ChatContact</tt>s. The primary purpose of the implementation is to sort
+ * the <tt>ChatContact</tt>s according to their member roles and in alphabetical
+ * order according to their names.
+ * <p>
+ * The <tt>ChatContact</tt>s are kept sorted and indexed by their descriptors
+ * so that adding, finding and removing a <tt>ChatContact</tt> does not scan
+ * the whole list, and a bulk of <tt>ChatContact</tt>s, e.g. the members
+ * listed when joining a large chat room, is added with a single sort.
+ *
+ * @author Lyubomir Marinov
+ */
+public class ChatContactListModel
+    extends AbstractListModel
+{
+
+    /**
+     * The backing store of this <tt>AbstractListModel</tt> listing the
+     * <tt>ChatContact</tt>s.
+     */
+    private final List<ChatContact<?>> chatContacts
+        = new ArrayList<ChatContact<?>>();
+
+    /**
+     * The <tt>ChatContact</tt>s of {@link #chatContacts} by their
+     * descriptors.
+     */
+    private final Map<Object, ChatContact<?>> chatContactsByDescriptor
+        = new HashMap<Object, ChatContact<?>>();
+
+    /**
+     * The implementation of the sorting rules - the <tt>ChatContact</tt>s are
+     * first sorted according to their roles in decreasing order of their
+     * privileges and then they are sorted according to their names in
+     * alphabetical order.
+     */
+    private final Comparator<ChatContact<?>> sorter
+        = new Comparator<ChatContact<?>>()
+        {
+            public int compare(
+                    ChatContact<?> chatContact0,
+                    ChatContact<?> chatContact1)
+            {
+                /*
+                 * Place ChatMembers with more privileges at the beginning of
+                 * the list.
+                 */
+                if (chatContact0 instanceof ConferenceChatContact)
+                {
+                    if (chatContact1 instanceof ConferenceChatContact)
+                    {
+                        int role0
+                            = ((ConferenceChatContact) chatContact0).getRole()
+                                    .getRoleIndex();
+                        int role1
+                            = ((ConferenceChatContact) chatContact1).getRole()
+                                    .getRoleIndex();
+
+                        if (role0 > role1)
+                            return -1;
+                        else if (role0 < role1)
+                            return 1;
+                    }
+                    else
+                        return -1;
+                }
+                else if (chatContact1 instanceof ConferenceChatContact)
+                    return 1;
+
+                /* By default, sort the ChatContacts in alphabetical order. */
+                return
+                    chatContact0.getName().compareToIgnoreCase(
+                            chatContact1.getName());
+            }
+        };
+
+    /**
+     * Creates the model.
+     * @param chatSession The current model chat session.
+     */
+    public ChatContactListModel(ChatSession chatSession)
+    {
+        // when something like rename on a member change update the UI to
+        // reflect it
+        Object descriptor = chatSession.getDescriptor();
+
+        if(descriptor instanceof ChatRoomWrapper)
+        {
+            ((ChatRoomWrapper) descriptor)
+                .getChatRoom()
+                    .addMemberPropertyChangeListener(
+                            new ChatRoomMemberPropertyChangeListener()
+                            {
+                                public void chatRoomPropertyChanged(
+                                        ChatRoomMemberPropertyChangeEvent ev)
+                                {
+                                    // Translate into
+                                    // ListDataListener.contentsChanged.
+                                    memberChanged(ev.getSourceChatRoomMember());
+                                }
+                            });
+        }
+    }
+
+    /**
+     * Adds a specific <tt>ChatContact</tt> to this <tt>AbstractListModel</tt>
+     * implementation and preserves the sorting it applies.
+     *
+     * @param chatContact a <tt>ChatContact</tt> to be added to this
+     * <tt>AbstractListModel</tt>
+     */
+    public void addElement(ChatContact<?> chatContact)
+    {
+        if (chatContact == null)
+            throw new IllegalArgumentException("chatContact");
+
+        int index;
+
+        synchronized(chatContacts)
+        {
+            // We don't want duplicates.
+            if (contains(chatContact))
+                return;
+
+            index = getInsertionIndex(chatContact);
+            chatContacts.add(index, chatContact);
+            chatContactsByDescriptor.put(
+                    chatContact.getDescriptor(),
+                    chatContact);
+        }
+        fireIntervalAdded(this, index, index);
+    }
+
+    /**
+     * Adds a number of <tt>ChatContact</tt>s to this
+     * <tt>AbstractListModel</tt> implementation at once and preserves the
+     * sorting it applies. The <tt>ChatContact</tt>s are sorted together and
+     * the <tt>ListDataListener</tt>s are notified once rather than once per
+     * <tt>ChatContact</tt>.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to be added to this
+     * <tt>AbstractListModel</tt>
+     */
+    public void addElements(Collection<? extends ChatContact<?>> chatContacts)
+    {
+        int oldSize;
+        int newSize;
+
+        synchronized(this.chatContacts)
+        {
+            oldSize = this.chatContacts.size();
+            for (ChatContact<?> chatContact : chatContacts)
+            {
+                if (chatContact == null)
+                    throw new IllegalArgumentException("chatContact");
+
+                // We don't want duplicates.
+                if (!contains(chatContact))
+                {
+                    this.chatContacts.add(chatContact);
+                    chatContactsByDescriptor.put(
+                            chatContact.getDescriptor(),
+                            chatContact);
+                }
+            }
+            newSize = this.chatContacts.size();
+            if (newSize == oldSize)
+                return;
+
+            Collections.sort(this.chatContacts, sorter);
+        }
+
+        /*
+         * The list has grown by the new ChatContacts but they are spread all
+         * over it after the sort so the rows which were already there have
+         * changed as well.
+         */
+        fireIntervalAdded(this, oldSize, newSize - 1);
+        if (oldSize != 0)
+            fireContentsChanged(this, 0, oldSize - 1);
+    }
+
+    /**
+     * Determines whether a specific <tt>ChatContact</tt> is contained in this
+     * model. Must be called with {@link #chatContacts} locked.
+     *
+     * @param chatContact the <tt>ChatContact</tt> to look for
+     * @return <tt>true</tt> if <tt>chatContact</tt> is contained in this
+     * model; otherwise, <tt>false</tt>
+     */
+    private boolean contains(ChatContact<?> chatContact)
+    {
+        return
+            chatContact.equals(
+                    chatContactsByDescriptor.get(chatContact.getDescriptor()));
+    }
+
+    /* Implements ListModel#getElementAt(int). */
+    public ChatContact<?> getElementAt(int index)
+    {
+        synchronized(chatContacts)
+        {
+            return chatContacts.get(index);
+        }
+    }
+
+    /**
+     * Gets the index at which a specific <tt>ChatContact</tt> is to be
+     * inserted into {@link #chatContacts} in order to preserve the sorting,
+     * i.e. the index of the first element which is to be sorted after it.
+     * Must be called with <tt>chatContacts</tt> locked.
+     *
+     * @param chatContact the <tt>ChatContact</tt> to be inserted
+     * @return the index at which <tt>chatContact</tt> is to be inserted
+     */
+    private int getInsertionIndex(ChatContact<?> chatContact)
+    {
+        int low = 0;
+        int high = chatContacts.size();
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (sorter.compare(chatContacts.get(mid), chatContact) > 0)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    /* Implements ListModel#getSize(). */
+    public int getSize()
+    {
+        synchronized(chatContacts)
+        {
+            return chatContacts.size();
+        }
+    }
+
+    /**
+     * Gets the index of a specific <tt>ChatContact</tt> in
+     * {@link #chatContacts}. Must be called with <tt>chatContacts</tt>
+     * locked.
+     *
+     * @param chatContact the <tt>ChatContact</tt> to look for
+     * @return the index of <tt>chatContact</tt> in <tt>chatContacts</tt> or
+     * <tt>-1</tt> if it is not contained
+     */
+    private int indexOf(ChatContact<?> chatContact)
+    {
+        if (!contains(chatContact))
+            return -1;
+
+        /*
+         * The elements which are sorted equally to chatContact precede the
+         * insertion index.
+         */
+        for (int i = getInsertionIndex(chatContact) - 1; i >= 0; i--)
+        {
+            ChatContact<?> containedChatContact = chatContacts.get(i);
+
+            if (chatContact.equals(containedChatContact))
+                return i;
+            if (sorter.compare(containedChatContact, chatContact) != 0)
+                break;
+        }
+
+        /*
+         * The name or the role of chatContact may have changed since it was
+         * added so it may be out of place.
+         */
+        return chatContacts.indexOf(chatContact);
+    }
+
+    /**
+     * Notifies the <tt>ListDataListener</tt>s that the <tt>ChatContact</tt>
+     * of a specific <tt>ChatRoomMember</tt> has changed and moves it to its
+     * sorted place should its name have changed.
+     *
+     * @param member the <tt>ChatRoomMember</tt> which has changed
+     */
+    private void memberChanged(ChatRoomMember member)
+    {
+        ChatContact<?> chatContact;
+        int oldIndex;
+        int newIndex;
+
+        synchronized(chatContacts)
+        {
+            chatContact = chatContactsByDescriptor.get(member);
+            if (chatContact == null)
+                return;
+
+            oldIndex = chatContacts.indexOf(chatContact);
+            if (oldIndex < 0)
+                return;
+
+            chatContacts.remove(oldIndex);
+            newIndex = getInsertionIndex(chatContact);
+            chatContacts.add(newIndex, chatContact);
+        }
+
+        if (oldIndex == newIndex)
+            fireContentsChanged(chatContact, oldIndex, oldIndex);
+        else
+        {
+            fireIntervalRemoved(this, oldIndex, oldIndex);
+            fireIntervalAdded(this, newIndex, newIndex);
+        }
+    }
+
+    /**
+     * Removes a specific <tt>ChatContact</tt> from this
+     * <tt>AbstractListModel</tt> implementation.
+     *
+     * @param chatContact a <tt>ChatContact</tt> to be removed from this
+     * <tt>AbstractListModel</tt> if it's already contained
+     */
+    public void removeElement(ChatContact<?> chatContact)
+    {
+        synchronized(chatContacts)
+        {
+            int index = indexOf(chatContact);
+
+            if (index >= 0)
+            {
+                chatContacts.remove(index);
+                chatContactsByDescriptor.remove(chatContact.getDescriptor());
+                fireIntervalRemoved(this, index, index);
+            }
+        }
+    }
+
+    /**
+     * Removes all the elements from this model.
+     */
+    public void removeAllElements()
+    {
+        if (chatContacts == null || chatContacts.size() <= 0)
+            return;
+
+        synchronized(chatContacts)
+        {
+            int contactsSize = chatContacts.size();
+            chatContacts.clear();
+            chatContactsByDescriptor.clear();
+
+            fireIntervalRemoved(this, 0, contactsSize - 1);
+        }
+    }
+}
@@ -8,6 +8,7 @@ package net.java.sip.communicator.impl.gui.main.chat.conference;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.*;
 
 import javax.swing.*;
 
@@ -123,6 +124,18 @@ public class ChatRoomMemberListPanel
         memberListModel.addElement(chatContact);
     }
 
+    /**
+     * Adds a number of <tt>ChatContact</tt>s to the list of contacts
+     * contained in the chat at once.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to add
+     */
+    public void addContacts(
+            Collection<? extends ChatContact<?>> chatContacts)
+    {
+        memberListModel.addElements(chatContacts);
+    }
+
     /**
      * Removes the given <tt>ChatContact</tt> from the list of chat contacts.
      *
@@ -1365,6 +1365,60 @@ public class ConferenceChatManager
         }
     }
 
+    /**
+     * Retrieves the existing chat rooms of the given <tt>chatRoomProvider</tt>
+     * the names of which contain a specific filter and delivers their names to
+     * a specific listener page by page as they are retrieved. Blocks until all
+     * of them have been delivered or the current thread has been interrupted
+     * so it is to be called on a worker thread.
+     *
+     * @param chatRoomProvider the <tt>ChatRoomProviderWrapper</tt>, which
+     * chat rooms we're looking for
+     * @param filter the string which the names of the chat rooms are to
+     * contain or <tt>null</tt> to retrieve all of them
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names of the chat rooms to
+     * @return <tt>true</tt> if the chat rooms have been retrieved;
+     * <tt>false</tt> if the provider does not support listing them or it has
+     * failed
+     */
+    public boolean getExistingChatRooms(
+        ChatRoomProviderWrapper chatRoomProvider,
+        String filter,
+        ChatRoomDirectoryListener listener)
+    {
+        ProtocolProviderService protocolProvider
+            = chatRoomProvider.getProtocolProvider();
+
+        if (protocolProvider == null)
+            return false;
+
+        OperationSetMultiUserChat groupChatOpSet
+            = protocolProvider.getOperationSet(OperationSetMultiUserChat.class);
+
+        if (groupChatOpSet == null)
+            return false;
+
+        try
+        {
+            groupChatOpSet.getExistingChatRooms(filter, listener);
+            return true;
+        }
+        catch (OperationFailedException e)
+        {
+            if (logger.isTraceEnabled())
+                logger.trace("Failed to obtain existing chat rooms for server: "
+                + protocolProvider.getAccountID().getService(), e);
+        }
+        catch (OperationNotSupportedException e)
+        {
+            if (logger.isTraceEnabled())
+                logger.trace("Failed to obtain existing chat rooms for server: "
+                + protocolProvider.getAccountID().getService(), e);
+        }
+        return false;
+    }
+
     /**
      * Returns existing chat rooms for the given <tt>chatRoomProvider</tt>.
      * @param chatRoomProvider the <tt>ChatRoomProviderWrapper</tt>, which
@@ -27,7 +27,7 @@ import net.java.sip.communicator.util.*;
  */
 public class ConferenceChatSession
     extends ChatSession
-    implements  ChatRoomMemberPresenceListener,
+    implements  ChatRoomMemberBulkPresenceListener,
                 ChatRoomPropertyChangeListener
 {
     /**
@@ -379,6 +379,69 @@ public class ConferenceChatSession
         return sessionRenderer;
     }
 
+    /**
+     * Invoked when the presence of many members of the chat room has changed
+     * at once, e.g. when the list of members is received upon joining the
+     * chat room. The joined members are added to the chat contact list in one
+     * go.
+     *
+     * @param evt the <tt>ChatRoomMemberBulkPresenceChangeEvent</tt> that
+     * notified us
+     */
+    public void membersPresenceChanged(
+        final ChatRoomMemberBulkPresenceChangeEvent evt)
+    {
+        if(!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    membersPresenceChanged(evt);
+                }
+            });
+            return;
+        }
+
+        ChatRoom sourceChatRoom = (ChatRoom) evt.getSource();
+
+        if(!sourceChatRoom.equals(chatRoomWrapper.getChatRoom()))
+            return;
+
+        if (!evt.getEventType().equals(
+                    ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED)
+                || !evt.isReasonUserList())
+        {
+            for (ChatRoomMemberPresenceChangeEvent memberEvt
+                    : evt.toMemberPresenceChangeEvents())
+                memberPresenceChanged(memberEvt);
+            return;
+        }
+
+        List<ChatContact<?>> chatContacts = new ArrayList<ChatContact<?>>();
+
+        synchronized (chatParticipants)
+        {
+            Set<ChatContact<?>> presentChatContacts
+                = new HashSet<ChatContact<?>>(chatParticipants);
+
+            for (ChatRoomMember chatRoomMember : evt.getChatRoomMembers())
+            {
+                ConferenceChatContact chatContact
+                    = new ConferenceChatContact(chatRoomMember);
+
+                if (presentChatContacts.add(chatContact))
+                {
+                    chatParticipants.add(chatContact);
+                    chatContacts.add(chatContact);
+                }
+            }
+        }
+
+        sessionRenderer.addChatContacts(chatContacts);
+    }
+
     /**
      * Invoked when <tt>ChatRoomMemberPresenceChangeEvent</tt> are received.
      * When a new <tt>ChatRoomMember</tt> has joined the chat adds it to the
@@ -536,7 +536,19 @@ public abstract class FileTransferConversationComponent
         ByteFormat format = new ByteFormat();
         String bytesString = format.format(transferredBytes);
 
-        if ((progressTimestamp - lastSpeedTimestamp)
+        FileTransfer source = event.getFileTransfer();
+
+        if (source instanceof AbstractFileTransfer)
+        {
+            // The transfer measures its own smoothed rate.
+            AbstractFileTransfer transfer = (AbstractFileTransfer) source;
+            long estimatedTime = transfer.getEstimatedTimeRemaining();
+
+            lastProgressSpeed = transfer.getTransferRate();
+            if (estimatedTime >= 0)
+                lastEstimatedTime = Math.round(estimatedTime / 1000.0);
+        }
+        else if ((progressTimestamp - lastSpeedTimestamp)
                 >= SPEED_CALCULATE_DELAY)
         {
             lastProgressSpeed
@@ -546,7 +558,8 @@ public abstract class FileTransferConversationComponent
             this.lastTransferredBytes = transferredBytes;
         }
 
-        if ((progressTimestamp - lastEstimatedTimeTimestamp)
+        if (!(source instanceof AbstractFileTransfer)
+            && (progressTimestamp - lastEstimatedTimeTimestamp)
                 >= SPEED_CALCULATE_DELAY
             && lastProgressSpeed > 0)
         {
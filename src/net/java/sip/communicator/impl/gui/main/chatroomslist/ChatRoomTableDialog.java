@@ -21,6 +21,7 @@ import net.java.sip.communicator.impl.gui.main.chat.conference.*;
 import net.java.sip.communicator.plugin.desktoputil.*;
 import net.java.sip.communicator.plugin.desktoputil.SwingWorker;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.util.*;
@@ -55,6 +56,18 @@ public class ChatRoomTableDialog
      */
     private JComboBox roomsCombo = null;
 
+    /**
+     * The model of {@link #roomsCombo} which holds the names of the rooms
+     * hosted on the selected provider.
+     */
+    private final RoomsComboBoxModel roomsModel = new RoomsComboBoxModel();
+
+    /**
+     * The worker which loads the rooms hosted on the selected provider or
+     * <tt>null</tt>.
+     */
+    private LoadProvidersWorker loadProvidersWorker = null;
+
     /**
      * The add chat room button.
      */
@@ -185,8 +198,7 @@ public class ChatRoomTableDialog
         JPanel valuesPanel = new TransparentPanel(new GridLayout(2, 2, 5, 5));
         providersCombo = createProvidersCombobox();
 
-        roomsCombo = new JComboBox();
-        roomsCombo.setEditable(true);
+        roomsCombo = createRoomsCombobox();
         roomsCombo.setPreferredSize(providersCombo.getPreferredSize());
         editor = ((JTextField)roomsCombo.getEditor().getEditorComponent());
 
@@ -322,6 +334,22 @@ public class ChatRoomTableDialog
                 chatRoomProviderWrapperListener);
     }
 
+    /**
+     * Creates the editable rooms combobox showing the rooms of
+     * {@link #roomsModel}.
+     * @return the rooms combobox
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"}) // not generic in Java 6
+    private JComboBox createRoomsCombobox()
+    {
+        JComboBox chatRoomsCombobox = new JComboBox(roomsModel);
+
+        chatRoomsCombobox.setEditable(true);
+        // Do not measure all the rooms, there may be thousands of them.
+        chatRoomsCombobox.setPrototypeDisplayValue("XXXXXXXXXXXXXXXXXXXX");
+        return chatRoomsCombobox;
+    }
+
     /**
      * Creates the providers combobox and filling its content.
      * @return
@@ -498,6 +526,11 @@ public class ChatRoomTableDialog
         if (chatRoomTableDialog == this)
             chatRoomTableDialog = null;
 
+        if (loadProvidersWorker != null)
+        {
+            loadProvidersWorker.interrupt();
+            loadProvidersWorker = null;
+        }
         chatRoomList.removeChatRoomProviderWrapperListener(
                 chatRoomProviderWrapperListener);
         chatRoomsTableUI.dispose();
@@ -507,14 +540,19 @@ public class ChatRoomTableDialog
 
     /**
      * Loads the rooms hosted on the selected provider.
-     * Loads it in different thread so it won't block the caller.
+     * Loads it in different thread so it won't block the caller. The rooms
+     * are added to {@link #roomsCombo} page by page as they are retrieved.
      */
     public void loadProviderRooms()
     {
         okButton.setEnabled(false);
-        roomsCombo.setEnabled(false);
 
-        new LoadProvidersWorker().start();
+        if (loadProvidersWorker != null)
+            loadProvidersWorker.interrupt();
+        roomsModel.clear();
+
+        loadProvidersWorker = new LoadProvidersWorker();
+        loadProvidersWorker.start();
     }
 
     /**
@@ -576,16 +614,12 @@ public class ChatRoomTableDialog
     }
 
     /**
-     * SwingWorker that will load rooms list and show them in the ui.
+     * SwingWorker that will load rooms list and show them in the ui page by
+     * page.
      */
     private class LoadProvidersWorker
         extends SwingWorker
     {
-        /**
-         * List of rooms.
-         */
-        private List<String> rooms;
-
         /**
          * Worker thread.
          * @return
@@ -596,9 +630,29 @@ public class ChatRoomTableDialog
             throws
             Exception
         {
-            rooms = GuiActivator.getUIService()
-                .getConferenceChatManager()
-                    .getExistingChatRooms(getSelectedProvider());
+            GuiActivator.getUIService().getConferenceChatManager()
+                .getExistingChatRooms(
+                        getSelectedProvider(),
+                        null,
+                        new ChatRoomDirectoryListener()
+                        {
+                            public void chatRoomsReceived(
+                                    final ChatRoomDirectoryEvent evt)
+                            {
+                                SwingUtilities.invokeLater(new Runnable()
+                                {
+                                    public void run()
+                                    {
+                                        if (loadProvidersWorker
+                                                == LoadProvidersWorker.this)
+                                        {
+                                            roomsModel.addRooms(
+                                                evt.getChatRoomNames());
+                                        }
+                                    }
+                                });
+                            }
+                        });
 
             return null;
         }
@@ -610,25 +664,109 @@ public class ChatRoomTableDialog
         @Override
         protected void finished()
         {
-            roomsCombo.removeAllItems();
+            if (loadProvidersWorker == this)
+                loadProvidersWorker = null;
+        }
+    }
+
+    /**
+     * The model of {@link #roomsCombo} which keeps the names of the rooms
+     * sorted while they are added page by page and does not select any of
+     * them by itself.
+     */
+    @SuppressWarnings("rawtypes") // Swing is not generic in Java 6
+    private static class RoomsComboBoxModel
+        extends AbstractListModel
+        implements ComboBoxModel
+    {
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 0L;
+
+        /**
+         * The sorted names of the rooms.
+         */
+        private final List<String> rooms = new ArrayList<String>();
+
+        /**
+         * The selected item.
+         */
+        private Object selectedItem;
+
+        /**
+         * Adds the names of rooms to this model. Each room is inserted in
+         * place so that only the added rows are reported to the listeners.
+         *
+         * @param newRooms the names of the rooms to add
+         */
+        void addRooms(Collection<String> newRooms)
+        {
+            List<String> sortedRooms = new ArrayList<String>(newRooms);
+            int first = -1;
+            int last = -1;
 
-            // if there is no room list coming from provider
-            if(rooms == null)
+            Collections.sort(sortedRooms);
+            for (String room : sortedRooms)
             {
-                roomsCombo.setEnabled(true);
-                //okButton.setEnabled(true);
-                return;
+                int index = Collections.binarySearch(rooms, room);
+
+                if (index < 0)
+                    index = -index - 1;
+
+                // The rooms of the page are sorted so they go after each other
+                // and adjacent ones are reported together.
+                if ((first != -1) && (index != last + 1))
+                {
+                    fireIntervalAdded(this, first, last);
+                    first = -1;
+                }
+                rooms.add(index, room);
+                if (first == -1)
+                    first = index;
+                last = index;
+            }
+            if (first != -1)
+                fireIntervalAdded(this, first, last);
+        }
+
+        /**
+         * Removes all the rooms from this model.
+         */
+        void clear()
+        {
+            int size = rooms.size();
+
+            if (size != 0)
+            {
+                rooms.clear();
+                fireIntervalRemoved(this, 0, size - 1);
             }
+        }
 
-            Collections.sort(rooms);
+        public Object getElementAt(int index)
+        {
+            return rooms.get(index);
+        }
 
-            for(String room : rooms)
-                roomsCombo.addItem(room);
+        public Object getSelectedItem()
+        {
+            return selectedItem;
+        }
 
-            // select nothing
-            roomsCombo.setSelectedIndex(-1);
+        public int getSize()
+        {
+            return rooms.size();
+        }
 
-            roomsCombo.setEnabled(true);
+        public void setSelectedItem(Object item)
+        {
+            if ((selectedItem == null) ? (item != null)
+                    : !selectedItem.equals(item))
+            {
+                selectedItem = item;
+                fireContentsChanged(this, -1, -1);
+            }
         }
     }
 }
@@ -17,6 +17,7 @@ import net.java.sip.communicator.impl.gui.*;
 import net.java.sip.communicator.impl.gui.main.chat.conference.*;
 import net.java.sip.communicator.plugin.desktoputil.*;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.skin.*;
 
 /**
@@ -69,7 +70,7 @@ public class JoinChatRoomWindow
     /**
      * Rooms of the currently selected provider.
      */
-    private List<String> serverRooms = null;
+    private volatile List<String> serverRooms = null;
 
     /**
      * Search state value.
@@ -260,8 +261,10 @@ public class JoinChatRoomWindow
     {
         Vector<String> rooms = new Vector<String>();
 
+        List<String> serverRooms = this.serverRooms;
+
         if(serverRooms != null)
-            for(String room : serverRooms)
+            for(String room : serverRooms.toArray(new String[0]))
                 if(room.startsWith(match))
                    rooms.add(room);
 
@@ -302,12 +305,37 @@ public class JoinChatRoomWindow
     }
 
     /**
-     * Loads the rooms hosted on the selected provider.
+     * Loads the rooms hosted on the selected provider. The rooms are loaded in
+     * a different thread so that the caller is not blocked and they are added
+     * page by page as they are retrieved.
      */
     public void loadProviderRooms()
     {
-        serverRooms = GuiActivator.getUIService().getConferenceChatManager()
-            .getExistingChatRooms(getSelectedProvider());
+        final ChatRoomProviderWrapper provider = getSelectedProvider();
+        final List<String> rooms = new Vector<String>();
+
+        serverRooms = rooms;
+
+        new Thread("JoinChatRoomWindow.loadProviderRooms")
+        {
+            @Override
+            public void run()
+            {
+                GuiActivator.getUIService().getConferenceChatManager()
+                    .getExistingChatRooms(
+                            provider,
+                            null,
+                            new ChatRoomDirectoryListener()
+                            {
+                                public void chatRoomsReceived(
+                                        ChatRoomDirectoryEvent evt)
+                                {
+                                    if (serverRooms == rooms)
+                                        rooms.addAll(evt.getChatRoomNames());
+                                }
+                            });
+            }
+        }.start();
     }
 
     /**
@@ -17,7 +17,9 @@ import javax.swing.event.*;
 import net.java.sip.communicator.impl.gui.*;
 import net.java.sip.communicator.impl.gui.main.chat.conference.*;
 import net.java.sip.communicator.plugin.desktoputil.*;
+import net.java.sip.communicator.plugin.desktoputil.SwingWorker;
 import net.java.sip.communicator.service.gui.*;
+import net.java.sip.communicator.service.protocol.event.*;
 
 /**
  * This panel allows to search chat rooms on the considered provider, and to
@@ -47,7 +49,14 @@ public class SearchChatRoomPanel
     private final JPanel buttonPanel = new TransparentPanel(
         new FlowLayout(FlowLayout.CENTER));
 
-    private final JList chatRoomsList = new JList();
+    private final JList chatRoomsList = createChatRoomsList();
+
+    /**
+     * The model of {@link #chatRoomsList} to which the chat rooms found are
+     * appended page by page.
+     */
+    @SuppressWarnings("rawtypes") // Swing is not generic in Java 6
+    private DefaultListModel chatRoomsModel;
 
     private final JScrollPane chatRoomsScrollPane = new JScrollPane();
 
@@ -57,6 +66,12 @@ public class SearchChatRoomPanel
 
     List<String> serverRooms = null;
 
+    /**
+     * The worker which searches for the chat rooms on the server or
+     * <tt>null</tt> if no search is in progress.
+     */
+    private SearchWorker searchWorker = null;
+
     /**
      * Creates a <tt>SearchChatRoomPanel</tt> instance without specifying
      * neither the parent window, nor the protocol provider.
@@ -132,38 +147,127 @@ public class SearchChatRoomPanel
     }
 
     /**
-     * Loads the list of existing server chat rooms.
+     * Loads the list of existing server chat rooms the names of which contain
+     * the chat room name entered by the user. The chat rooms are retrieved in
+     * a different thread and are shown page by page as they arrive.
      */
     public void loadChatRoomsList()
     {
-        serverRooms = GuiActivator.getUIService().getConferenceChatManager()
-                .getExistingChatRooms(chatRoomProvider);
+        if (searchWorker != null)
+            searchWorker.interrupt();
 
-        if(serverRooms != null)
-        {
-            if(serverRooms.size() == 0)
-            {
-                serverRooms.add(GuiActivator.getResources()
-                    .getI18NString("service.gui.NO_AVAILABLE_ROOMS"));
-            }
+        serverRooms = new Vector<String>();
+        setChatRooms(new Vector<String>());
+        chatRoomsList.setBorder(
+                BorderFactory.createLineBorder(Color.LIGHT_GRAY));
+
+        chatRoomsScrollPane.setPreferredSize(new Dimension(500, 250));
+        chatRoomsScrollPane.setOpaque(false);
+
+        chatRoomsScrollPane.getViewport().add(chatRoomsList);
+
+        this.mainPanel.add(chatRoomsScrollPane);
 
-            chatRoomsList.setListData(new Vector<String>(serverRooms));
-            chatRoomsList.setBorder(
-                    BorderFactory.createLineBorder(Color.LIGHT_GRAY));
+        if (wizardContainer != null)
+            wizardContainer.refresh();
+
+        this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        String filter = namePanel.getChatRoomName().trim();
+
+        searchWorker = new SearchWorker(filter.length() == 0 ? null : filter);
+        searchWorker.start();
+    }
 
-            chatRoomsScrollPane.setPreferredSize(new Dimension(500, 250));
-            chatRoomsScrollPane.setOpaque(false);
+    /**
+     * Searches for the chat rooms on the server and adds them to
+     * {@link #serverRooms} page by page.
+     */
+    private class SearchWorker
+        extends SwingWorker
+    {
+        /**
+         * The string which the names of the chat rooms are to contain or
+         * <tt>null</tt> to search for all chat rooms.
+         */
+        private final String filter;
+
+        /**
+         * The indicator which determines whether the search was supported by
+         * the chat room provider.
+         */
+        private boolean supported;
+
+        /**
+         * Creates a worker which searches for the chat rooms the names of
+         * which contain a specific string.
+         *
+         * @param filter the string which the names of the chat rooms are to
+         * contain or <tt>null</tt> to search for all chat rooms
+         */
+        public SearchWorker(String filter)
+        {
+            this.filter = filter;
+        }
+
+        /**
+         * Searches for the chat rooms on the server.
+         *
+         * @return <tt>null</tt>
+         */
+        @Override
+        protected Object construct()
+        {
+            supported
+                = GuiActivator.getUIService().getConferenceChatManager()
+                    .getExistingChatRooms(
+                            chatRoomProvider,
+                            filter,
+                            new ChatRoomDirectoryListener()
+                            {
+                                public void chatRoomsReceived(
+                                        final ChatRoomDirectoryEvent evt)
+                                {
+                                    SwingUtilities.invokeLater(new Runnable()
+                                    {
+                                        public void run()
+                                        {
+                                            if (searchWorker
+                                                    == SearchWorker.this)
+                                            {
+                                                serverRooms.addAll(
+                                                    evt.getChatRoomNames());
+                                                addChatRooms(
+                                                    evt.getChatRoomNames());
+                                            }
+                                        }
+                                    });
+                                }
+                            });
+            return null;
+        }
 
-            chatRoomsScrollPane.getViewport().add(chatRoomsList);
+        /**
+         * Shows that no chat rooms were found if that is the case and
+         * replaces the "wait cursor" by the default cursor.
+         */
+        @Override
+        protected void finished()
+        {
+            if (searchWorker != this)
+                return;
+            searchWorker = null;
 
-            this.mainPanel.add(chatRoomsScrollPane);
+            if (supported && serverRooms.isEmpty())
+            {
+                Vector<String> noRooms = new Vector<String>();
 
-            if (wizardContainer != null)
-                wizardContainer.refresh();
+                noRooms.add(GuiActivator.getResources()
+                    .getI18NString("service.gui.NO_AVAILABLE_ROOMS"));
+                setChatRooms(noRooms);
+            }
 
-            // When we're finished we replace the "wait cursor"
-            // by the default cursor.
-            this.setCursor(Cursor.getDefaultCursor());
+            SearchChatRoomPanel.this.setCursor(Cursor.getDefaultCursor());
         }
     }
 
@@ -230,9 +334,16 @@ public class SearchChatRoomPanel
      */
     public void setChatRoomProvider(ChatRoomProviderWrapper provider)
     {
+        if (searchWorker != null)
+        {
+            searchWorker.interrupt();
+            searchWorker = null;
+            setCursor(Cursor.getDefaultCursor());
+        }
+
         this.chatRoomProvider = provider;
-        serverRooms = GuiActivator.getUIService().getConferenceChatManager()
-            .getExistingChatRooms(chatRoomProvider);
+        serverRooms = null;
+        setChatRooms(new Vector<String>());
     }
 
     /**
@@ -249,22 +360,74 @@ public class SearchChatRoomPanel
     /**
      * Updates the chat rooms list when a key change is performed in the search
      * field. The new chat rooms list will contain all the chat rooms whose name
-     * start with search field's text value.
+     * contain search field's text value, ignoring case as the search on the
+     * server does.
      */
     public void updateChatRoomList()
     {
         if(namePanel.getChatRoomName().length() > 0)
         {
             Vector<String> newCRL = new Vector<String>();
+            String match = namePanel.getChatRoomName().toLowerCase();
 
             if(serverRooms != null)
                 for(String s : serverRooms)
-                    if(s.startsWith(namePanel.getChatRoomName())) newCRL.add(s);
+                    if(s.toLowerCase().contains(match)) newCRL.add(s);
 
-            chatRoomsList.setListData(newCRL);
+            setChatRooms(newCRL);
         }
+        else if (serverRooms != null)
+            setChatRooms(new Vector<String>(serverRooms));
         else
-            chatRoomsList.setListData(new Vector<String>(serverRooms));
+            setChatRooms(new Vector<String>());
+    }
+
+    /**
+     * Shows specific chat rooms in the list of chat rooms.
+     *
+     * @param chatRooms the names of the chat rooms to show
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"}) // not generic in Java 6
+    private void setChatRooms(Vector<String> chatRooms)
+    {
+        DefaultListModel model = new DefaultListModel();
+
+        for (String chatRoom : chatRooms)
+            model.addElement(chatRoom);
+        chatRoomsModel = model;
+        chatRoomsList.setModel(model);
+    }
+
+    /**
+     * Appends the chat rooms of a page received from the server to the list
+     * of chat rooms, leaving out those the names of which do not contain the
+     * text of the search field.
+     *
+     * @param chatRooms the names of the chat rooms received
+     */
+    @SuppressWarnings("unchecked") // Swing is not generic in Java 6
+    private void addChatRooms(Collection<String> chatRooms)
+    {
+        String match = namePanel.getChatRoomName().toLowerCase();
+
+        for (String chatRoom : chatRooms)
+            if (chatRoom.toLowerCase().contains(match))
+                chatRoomsModel.addElement(chatRoom);
+    }
+
+    /**
+     * Creates the list of chat rooms.
+     *
+     * @return the list of chat rooms
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"}) // not generic in Java 6
+    private static JList createChatRoomsList()
+    {
+        JList chatRoomsList = new JList();
+
+        // Do not measure all the rooms, there may be thousands of them.
+        chatRoomsList.setPrototypeCellValue("XXXXXXXXXXXXXXXXXXXXXXXXXXXXXX");
+        return chatRoomsList;
     }
 
     public void changedUpdate(DocumentEvent e)
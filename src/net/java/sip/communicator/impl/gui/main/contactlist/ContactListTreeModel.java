@@ -7,6 +7,7 @@
 package net.java.sip.communicator.impl.gui.main.contactlist;
 
 import java.lang.reflect.*;
+import java.util.*;
 
 import javax.swing.*;
 import javax.swing.tree.*;
@@ -31,6 +32,37 @@ public class ContactListTreeModel
      */
     private final JTree parentTree;
 
+    /**
+     * The number of nested batch updates currently in progress.
+     */
+    private int batchUpdateDepth = 0;
+
+    /**
+     * The groups whose children have been changed during the current batch
+     * update.
+     */
+    private final Set<GroupNode> changedGroups
+        = new LinkedHashSet<GroupNode>();
+
+    /**
+     * The groups whose children are to be sorted at the end of the current
+     * batch update.
+     */
+    private final Set<GroupNode> groupsToSort = new HashSet<GroupNode>();
+
+    /**
+     * The nodes which have changed their representation during the current
+     * batch update.
+     */
+    private final Set<TreeNode> changedNodes = new LinkedHashSet<TreeNode>();
+
+    /**
+     * The groups which have been requested to be expanded during the current
+     * batch update.
+     */
+    private final Set<GroupNode> groupsToExpand
+        = new LinkedHashSet<GroupNode>();
+
     /**
      * Creates an instance of <tt>ContactListTreeModel</tt>.
      *
@@ -121,6 +153,162 @@ public class ContactListTreeModel
         return parentTree;
     }
 
+    /**
+     * Starts a batch update of this model. Until the matching
+     * {@link #endBatchUpdate()} the <tt>GroupNode</tt>s of this model only
+     * record the changes of their children and the listeners are notified
+     * once, with one structure changed event per changed group, at the end of
+     * the batch. Must be called in the event dispatch thread.
+     */
+    void beginBatchUpdate()
+    {
+        batchUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch update of this model started with
+     * {@link #beginBatchUpdate()}. When the outermost batch update ends, the
+     * changed groups are sorted (if required) and the listeners are notified
+     * about their new structure, preserving the expanded groups and the
+     * selection of the parent tree. Must be called in the event dispatch
+     * thread.
+     */
+    void endBatchUpdate()
+    {
+        if ((batchUpdateDepth == 0) || (--batchUpdateDepth > 0))
+            return;
+
+        if (!changedGroups.isEmpty())
+        {
+            TreePath rootPath = new TreePath(rootGroupNode);
+            List<TreePath> expandedPaths = new ArrayList<TreePath>();
+            Enumeration<TreePath> expanded
+                = parentTree.getExpandedDescendants(rootPath);
+
+            if (expanded != null)
+            {
+                while (expanded.hasMoreElements())
+                    expandedPaths.add(expanded.nextElement());
+            }
+
+            TreePath[] selectionPaths = parentTree.getSelectionPaths();
+
+            // If the root has changed, notifying about it covers all groups.
+            if (changedGroups.contains(rootGroupNode))
+            {
+                changedGroups.clear();
+                changedGroups.add(rootGroupNode);
+            }
+            for (GroupNode groupNode : changedGroups)
+            {
+                if (!isAttached(groupNode))
+                    continue;
+
+                if (groupsToSort.contains(groupNode))
+                    groupNode.sortChildren();
+                super.nodeStructureChanged(groupNode);
+            }
+
+            for (TreePath path : expandedPaths)
+            {
+                if (isAttached((TreeNode) path.getLastPathComponent()))
+                    parentTree.expandPath(path);
+            }
+
+            if (selectionPaths != null)
+            {
+                List<TreePath> attachedSelectionPaths
+                    = new ArrayList<TreePath>(selectionPaths.length);
+
+                for (TreePath path : selectionPaths)
+                {
+                    if (isAttached((TreeNode) path.getLastPathComponent()))
+                        attachedSelectionPaths.add(path);
+                }
+                parentTree.setSelectionPaths(
+                        attachedSelectionPaths.toArray(
+                                new TreePath[attachedSelectionPaths.size()]));
+            }
+        }
+
+        for (TreeNode node : changedNodes)
+        {
+            TreeNode parent = node.getParent();
+
+            if ((parent != null)
+                    && !changedGroups.contains(parent)
+                    && isAttached(node))
+                super.nodeChanged(node);
+        }
+
+        for (GroupNode groupNode : groupsToExpand)
+        {
+            if (isAttached(groupNode))
+                parentTree.expandPath(new TreePath(getPathToRoot(groupNode)));
+        }
+
+        changedGroups.clear();
+        groupsToSort.clear();
+        changedNodes.clear();
+        groupsToExpand.clear();
+    }
+
+    /**
+     * Determines whether a batch update of this model is in progress.
+     *
+     * @return <tt>true</tt> if a batch update of this model is in progress;
+     * otherwise, <tt>false</tt>
+     */
+    boolean isBatchUpdating()
+    {
+        return (batchUpdateDepth > 0);
+    }
+
+    /**
+     * Records that the children of a specific group have changed during the
+     * current batch update.
+     *
+     * @param groupNode the <tt>GroupNode</tt> whose children have changed
+     * @param sort <tt>true</tt> if the children of <tt>groupNode</tt> are to
+     * be sorted at the end of the batch update
+     */
+    void groupStructureChanged(GroupNode groupNode, boolean sort)
+    {
+        changedGroups.add(groupNode);
+        if (sort)
+            groupsToSort.add(groupNode);
+    }
+
+    /**
+     * Records that a specific group is to be expanded at the end of the
+     * current batch update, once the parent tree has been notified about the
+     * new structure of this model.
+     *
+     * @param groupNode the <tt>GroupNode</tt> to expand
+     */
+    void expandAfterBatchUpdate(GroupNode groupNode)
+    {
+        groupsToExpand.add(groupNode);
+    }
+
+    /**
+     * Determines whether a specific node is (still) part of this model.
+     *
+     * @param node the <tt>TreeNode</tt> to check
+     * @return <tt>true</tt> if <tt>node</tt> is a descendant of the root of
+     * this model or the root itself; otherwise, <tt>false</tt>
+     */
+    private boolean isAttached(TreeNode node)
+    {
+        while (node != null)
+        {
+            if (node == rootGroupNode)
+                return true;
+            node = node.getParent();
+        }
+        return false;
+    }
+
     /**
      * Invoke this method after you've changed how node is to be
      * represented in the tree.
@@ -129,6 +317,13 @@ public class ContactListTreeModel
     @Override
     public void nodeChanged(final TreeNode node)
     {
+        if (isBatchUpdating() && SwingUtilities.isEventDispatchThread())
+        {
+            if (node != null)
+                changedNodes.add(node);
+            return;
+        }
+
         SwingUtilities.invokeLater(new Runnable()
         {
             public void run()
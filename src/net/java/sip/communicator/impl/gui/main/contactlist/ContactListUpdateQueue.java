@@ -0,0 +1,241 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.gui.main.contactlist;
+
+import java.util.*;
+
+import javax.swing.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Accumulates the contact list updates reported outside the event dispatch
+ * thread (e.g. by contact sources and contact queries) and applies them to
+ * the <tt>ContactListTreeModel</tt> in bounded batches instead of posting one
+ * event per update to the <tt>EventQueue</tt>. Each batch is applied inside a
+ * batch update of the tree model so that the changes of a group are reported
+ * with a single structure changed event. Every batch is a single event in
+ * the <tt>EventQueue</tt> so painting and input are processed in between
+ * batches.
+ */
+class ContactListUpdateQueue
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ContactListUpdateQueue</tt> class
+     * and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ContactListUpdateQueue.class);
+
+    /**
+     * The maximum number of updates applied in a single batch.
+     */
+    private static final int MAX_BATCH_SIZE = 250;
+
+    /**
+     * The maximum time in nanoseconds a single batch is allowed to spend in
+     * the event dispatch thread before it yields to painting and input i.e.
+     * approximately the duration of one frame.
+     */
+    private static final long MAX_BATCH_TIME = 15 * 1000000L;
+
+    /**
+     * The updates which wait to be applied.
+     */
+    private final LinkedList<Runnable> updates = new LinkedList<Runnable>();
+
+    /**
+     * The tree model the updates are applied to.
+     */
+    private final ContactListTreeModel treeModel;
+
+    /**
+     * The indicator which determines whether the application of the pending
+     * updates has been scheduled in the event dispatch thread.
+     */
+    private boolean applyScheduled = false;
+
+    /**
+     * The <tt>Runnable</tt> which applies the next batch of updates in the
+     * event dispatch thread.
+     */
+    private final Runnable applyBatch
+        = new Runnable()
+        {
+            public void run()
+            {
+                applyBatch();
+            }
+        };
+
+    /**
+     * The number of batches applied so far.
+     */
+    private long batchCount = 0;
+
+    /**
+     * The total time in nanoseconds spent in the event dispatch thread
+     * applying batches.
+     */
+    private long totalBatchTime = 0;
+
+    /**
+     * The longest time in nanoseconds spent in the event dispatch thread
+     * applying a single batch.
+     */
+    private long maxBatchTime = 0;
+
+    /**
+     * The number of updates applied so far.
+     */
+    private long updateCount = 0;
+
+    /**
+     * Initializes a new <tt>ContactListUpdateQueue</tt> which is to apply
+     * updates to a specific <tt>ContactListTreeModel</tt>.
+     *
+     * @param treeModel the <tt>ContactListTreeModel</tt> to apply updates to
+     */
+    ContactListUpdateQueue(ContactListTreeModel treeModel)
+    {
+        this.treeModel = treeModel;
+    }
+
+    /**
+     * Queues an update to be applied in the event dispatch thread with the
+     * next batch.
+     *
+     * @param update the update to apply
+     */
+    void invokeLater(Runnable update)
+    {
+        synchronized (updates)
+        {
+            updates.add(update);
+            if (!applyScheduled)
+            {
+                applyScheduled = true;
+                SwingUtilities.invokeLater(applyBatch);
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of the pending updates. Runs in the event dispatch
+     * thread and schedules itself again if updates remain once the batch has
+     * reached its maximum size or time.
+     */
+    private void applyBatch()
+    {
+        long startTime = System.nanoTime();
+        int count = 0;
+
+        treeModel.beginBatchUpdate();
+        try
+        {
+            while ((count < MAX_BATCH_SIZE)
+                    && ((System.nanoTime() - startTime) < MAX_BATCH_TIME))
+            {
+                Runnable update;
+
+                synchronized (updates)
+                {
+                    update = updates.poll();
+                }
+                if (update == null)
+                    break;
+
+                count++;
+                try
+                {
+                    update.run();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error("Failed to apply contact list update.", t);
+                }
+            }
+        }
+        finally
+        {
+            treeModel.endBatchUpdate();
+
+            synchronized (updates)
+            {
+                if (updates.isEmpty())
+                    applyScheduled = false;
+                else
+                    SwingUtilities.invokeLater(applyBatch);
+            }
+        }
+
+        long batchTime = System.nanoTime() - startTime;
+
+        synchronized (this)
+        {
+            batchCount++;
+            updateCount += count;
+            totalBatchTime += batchTime;
+            if (batchTime > maxBatchTime)
+                maxBatchTime = batchTime;
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Applied " + count + " contact list updates in "
+                        + (batchTime / 1000) + " us (batches: " + batchCount
+                        + ", updates: " + updateCount + ", max batch time: "
+                        + (maxBatchTime / 1000) + " us, average batch time: "
+                        + (totalBatchTime / batchCount / 1000) + " us).");
+        }
+    }
+
+    /**
+     * Gets the number of batches applied so far.
+     *
+     * @return the number of batches applied so far
+     */
+    synchronized long getBatchCount()
+    {
+        return batchCount;
+    }
+
+    /**
+     * Gets the longest time in nanoseconds spent in the event dispatch thread
+     * applying a single batch.
+     *
+     * @return the longest time in nanoseconds spent applying a single batch
+     */
+    synchronized long getMaxBatchTime()
+    {
+        return maxBatchTime;
+    }
+
+    /**
+     * Gets the total time in nanoseconds spent in the event dispatch thread
+     * applying batches.
+     *
+     * @return the total time in nanoseconds spent applying batches
+     */
+    synchronized long getTotalBatchTime()
+    {
+        return totalBatchTime;
+    }
+
+    /**
+     * Gets the number of updates applied so far.
+     *
+     * @return the number of updates applied so far
+     */
+    synchronized long getUpdateCount()
+    {
+        return updateCount;
+    }
+}
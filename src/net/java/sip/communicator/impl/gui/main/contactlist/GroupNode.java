@@ -88,11 +88,18 @@ public class GroupNode
             logger.debug("Group node add contact: "
                     + uiContact.getDisplayName());
 
-        int selectedIndex = getLeadSelectionRow();
-
         ContactNode contactNode = new ContactNode(uiContact);
         uiContact.setContactNode(contactNode);
 
+        if (treeModel.isBatchUpdating())
+        {
+            add(contactNode);
+            treeModel.groupStructureChanged(this, false);
+            return contactNode;
+        }
+
+        int selectedIndex = getLeadSelectionRow();
+
         add(contactNode);
 
         int contactIndex = getIndex(contactNode);
@@ -123,6 +130,13 @@ public class GroupNode
 
         add(contactNode);
 
+        // Sort once at the end of the batch rather than after every add.
+        if (treeModel.isBatchUpdating())
+        {
+            treeModel.groupStructureChanged(this, true);
+            return contactNode;
+        }
+
         // TODO: Optimize!
         Collections.sort(children, nodeComparator);
 
@@ -146,6 +160,19 @@ public class GroupNode
         if (contactNode != null)
         {
             int index = getIndex(contactNode);
+
+            if (index < 0)
+                return;
+
+            if (treeModel.isBatchUpdating())
+            {
+                children.removeElementAt(index);
+                contactNode.setParent(null);
+                uiContact.setContactNode(null);
+                treeModel.groupStructureChanged(this, false);
+                return;
+            }
+
             int selectedIndex = getLeadSelectionRow();
 
             // We remove the node directly from the list, thus skipping all
@@ -170,11 +197,18 @@ public class GroupNode
      */
     public GroupNode addContactGroup(UIGroupImpl uiGroup)
     {
-        int selectedIndex = getLeadSelectionRow();
-
         GroupNode groupNode = new GroupNode(treeModel, uiGroup);
         uiGroup.setGroupNode(groupNode);
 
+        if (treeModel.isBatchUpdating())
+        {
+            add(groupNode);
+            treeModel.groupStructureChanged(this, false);
+            return groupNode;
+        }
+
+        int selectedIndex = getLeadSelectionRow();
+
         add(groupNode);
 
         int groupIndex = getIndex(groupNode);
@@ -199,6 +233,19 @@ public class GroupNode
         if (groupNode != null)
         {
             int index = getIndex(groupNode);
+
+            if (index < 0)
+                return;
+
+            if (treeModel.isBatchUpdating())
+            {
+                children.removeElementAt(index);
+                groupNode.setParent(null);
+                uiGroup.setGroupNode(null);
+                treeModel.groupStructureChanged(this, false);
+                return;
+            }
+
             int selectedIndex = getLeadSelectionRow();
 
             // We remove the node directly from the list, thus skipping all the
@@ -229,6 +276,13 @@ public class GroupNode
 
         add(groupNode);
 
+        // Sort once at the end of the batch rather than after every add.
+        if (treeModel.isBatchUpdating())
+        {
+            treeModel.groupStructureChanged(this, true);
+            return groupNode;
+        }
+
         // TODO: Optimize!
         Collections.sort(children, nodeComparator);
 
@@ -301,6 +355,18 @@ public class GroupNode
         }
     }
 
+    /**
+     * Sorts the children of this node without notifying the listeners of the
+     * tree model. Used at the end of a batch update of the tree model which
+     * reports the new structure of this node at once.
+     */
+    @SuppressWarnings("unchecked")
+    void sortChildren()
+    {
+        if (children != null)
+            Collections.sort(children, nodeComparator);
+    }
+
     /**
      * Returns <tt>true</tt> if the group is collapsed or <tt>false</tt>
      * otherwise.
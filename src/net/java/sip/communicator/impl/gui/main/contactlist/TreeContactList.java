@@ -63,6 +63,12 @@ public class TreeContactList
      */
     private ContactListTreeModel treeModel;
 
+    /**
+     * The queue which applies the updates reported outside the event dispatch
+     * thread to {@link #treeModel} in batches.
+     */
+    private ContactListUpdateQueue updateQueue;
+
     /**
      * The right button menu.
      */
@@ -189,6 +195,7 @@ public class TreeContactList
             .addMetaContactListListener(mclSource);
 
         treeModel = new ContactListTreeModel(this);
+        updateQueue = new ContactListUpdateQueue(treeModel);
 
         setTreeModel(treeModel);
 
@@ -482,7 +489,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -556,7 +563,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            LowPriorityEventQueue.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -587,7 +594,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            LowPriorityEventQueue.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -606,6 +613,19 @@ public class TreeContactList
         }
     }
 
+    /**
+     * Causes <tt>update</tt> to be run in the event dispatch thread in the
+     * order it was reported relative to the other updates of this list made
+     * outside the event dispatch thread (e.g. contacts added and removed by
+     * contact sources). The updates are applied in batches.
+     *
+     * @param update the <tt>Runnable</tt> which updates this list
+     */
+    public void invokeUpdateLater(Runnable update)
+    {
+        updateQueue.invokeLater(update);
+    }
+
     /**
      * Removes the node corresponding to the given <tt>MetaContact</tt> from
      * this list.
@@ -617,7 +637,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -673,7 +693,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -699,7 +719,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -743,7 +763,7 @@ public class TreeContactList
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
+            updateQueue.invokeLater(new Runnable()
             {
                 public void run()
                 {
@@ -1132,6 +1152,13 @@ public class TreeContactList
      */
     private void expandGroup(GroupNode groupNode)
     {
+        if (treeModel.isBatchUpdating()
+                && SwingUtilities.isEventDispatchThread())
+        {
+            treeModel.expandAfterBatchUpdate(groupNode);
+            return;
+        }
+
         final TreePath path = new TreePath(treeModel.getPathToRoot(groupNode));
 
         if (!isExpanded(path))
@@ -654,13 +654,19 @@ public class MetaContactListSource
         // to order the calls of setData.
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
+            Runnable update = new Runnable()
             {
                 public void run()
                 {
                     metaContactMoved(evt);
                 }
-            });
+            };
+            TreeContactList contactList = GuiActivator.getContactList();
+
+            if (contactList != null)
+                contactList.invokeUpdateLater(update);
+            else
+                SwingUtilities.invokeLater(update);
             return;
         }
 
@@ -41,6 +41,16 @@ public class SoundNotificationHandlerImpl
     private Map<SCAudioClip, NotificationData> playedClips
         = new WeakHashMap<SCAudioClip, NotificationData>();
 
+    /**
+     * The clips created for sounds which are played once (i.e. do not loop)
+     * mapped by device and sound descriptor. They are reused once they have
+     * finished playing so that bursts of notifications do not have the
+     * <tt>AudioNotifierService</tt> load and decode the same sound over and
+     * over again.
+     */
+    private final Map<String, SCAudioClip> reusableClips
+        = new HashMap<String, SCAudioClip>();
+
     /**
      * Property to disable sound notification during an on-going call.
      */
@@ -103,16 +113,39 @@ public class SoundNotificationHandlerImpl
                 return;
         }
 
+        @SuppressWarnings("unchecked")
+        Callable<Boolean> loopCondition
+            = (Callable<Boolean>)
+                data.getExtra(
+                        NotificationData
+                            .SOUND_NOTIFICATION_HANDLER_LOOP_CONDITION_EXTRA);
+        boolean loop
+            = (action.getLoopInterval() >= 0) || (loopCondition != null);
         SCAudioClip audio = null;
 
         switch (device)
         {
         case NOTIFICATION:
         case PLAYBACK:
-            audio
-                = audioNotifService.createAudio(
-                        action.getDescriptor(),
-                        SCAudioClipDevice.PLAYBACK.equals(device));
+            String clipKey = device + ":" + action.getDescriptor();
+
+            if (!loop)
+                audio = getReusableClip(clipKey);
+            if (audio == null)
+            {
+                audio
+                    = audioNotifService.createAudio(
+                            action.getDescriptor(),
+                            SCAudioClipDevice.PLAYBACK.equals(device));
+                if (!loop && (audio != null))
+                {
+                    synchronized (reusableClips)
+                    {
+                        if (!reusableClips.containsKey(clipKey))
+                            reusableClips.put(clipKey, audio);
+                    }
+                }
+            }
             break;
 
         case PC_SPEAKER:
@@ -134,13 +167,6 @@ public class SoundNotificationHandlerImpl
 
         try
         {
-            @SuppressWarnings("unchecked")
-            Callable<Boolean> loopCondition
-                = (Callable<Boolean>)
-                    data.getExtra(
-                            NotificationData
-                                .SOUND_NOTIFICATION_HANDLER_LOOP_CONDITION_EXTRA);
-
             audio.play(action.getLoopInterval(), loopCondition);
             played = true;
         }
@@ -154,6 +180,24 @@ public class SoundNotificationHandlerImpl
         }
     }
 
+    /**
+     * Gets a previously created clip for a sound which is played once if it
+     * has finished playing.
+     *
+     * @param clipKey the device and the descriptor of the sound
+     * @return the reusable <tt>SCAudioClip</tt> for <tt>clipKey</tt> or
+     * <tt>null</tt> if there is no such clip or it is still playing
+     */
+    private SCAudioClip getReusableClip(String clipKey)
+    {
+        synchronized (reusableClips)
+        {
+            SCAudioClip clip = reusableClips.get(clipKey);
+
+            return ((clip == null) || clip.isStarted()) ? null : clip;
+        }
+    }
+
     /**
      * Stops/Restores all currently playing sounds.
      *
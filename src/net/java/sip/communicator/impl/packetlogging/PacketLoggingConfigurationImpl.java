@@ -18,6 +18,40 @@ import org.jitsi.service.packetlogging.*;
 public class PacketLoggingConfigurationImpl
     extends PacketLoggingConfiguration
 {
+    /**
+     * The name of the property which specifies the number of packets which
+     * may be queued to be saved. Packets logged while the queue is full are
+     * dropped.
+     */
+    public static final String PACKET_LOGGING_QUEUE_CAPACITY_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.packetlogging.QUEUE_CAPACITY";
+
+    /**
+     * The name of the property which specifies whether the packets of
+     * signaling protocols (i.e. all but RTP) are dropped right away when the
+     * queue of packets to be saved is full. By default they wait for a free
+     * slot for a bounded time and only RTP packets are dropped right away.
+     */
+    public static final String PACKET_LOGGING_DROP_SIGNALING_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.packetlogging"
+            + ".DROP_SIGNALING_WHEN_FULL";
+
+    /**
+     * The default number of packets which may be queued to be saved.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 2048;
+
+    /**
+     * The number of packets which may be queued to be saved.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Whether the packets of signaling protocols are dropped right away when
+     * the queue of packets to be saved is full.
+     */
+    private final boolean dropSignalingWhenFull;
+
     /**
      * Creates new PacketLoggingConfiguration and load values from
      * configuration service and if missing uses already defined
@@ -57,6 +91,38 @@ public class PacketLoggingConfigurationImpl
             configService.getInt(
                 PACKET_LOGGING_FILE_COUNT_PROPERTY_NAME,
                 getLogfileCount()));
+
+        int queueCapacity
+            = configService.getInt(
+                PACKET_LOGGING_QUEUE_CAPACITY_PROPERTY_NAME,
+                DEFAULT_QUEUE_CAPACITY);
+
+        this.queueCapacity
+            = (queueCapacity > 0) ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+        dropSignalingWhenFull
+            = configService.getBoolean(
+                PACKET_LOGGING_DROP_SIGNALING_PROPERTY_NAME,
+                false);
+    }
+
+    /**
+     * Returns the number of packets which may be queued to be saved.
+     * @return the number of packets which may be queued to be saved.
+     */
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * Checks whether the packets of signaling protocols are dropped right
+     * away when the queue of packets to be saved is full.
+     * @return <tt>true</tt> if they are dropped right away, <tt>false</tt>
+     * if they wait for a free slot for a bounded time.
+     */
+    public boolean isDropSignalingWhenFull()
+    {
+        return dropSignalingWhenFull;
     }
 
     /**
@@ -7,7 +7,8 @@
 package net.java.sip.communicator.impl.packetlogging;
 
 import java.io.*;
-import java.util.*;
+import java.nio.*;
+import java.nio.channels.*;
 
 import net.java.sip.communicator.util.*;
 
@@ -28,16 +29,73 @@ public class PacketLoggingServiceImpl
     private static final Logger logger
             = Logger.getLogger(PacketLoggingServiceImpl.class);
 
+    /**
+     * The size of the buffer in which the records of the saved packets are
+     * accumulated before being written to the file.
+     */
+    private static final int WRITE_BUFFER_SIZE = 128 * 1024;
+
     /**
      * The OutputStream we are currently writing to.
      */
     private FileOutputStream outputStream = null;
 
+    /**
+     * The channel of {@link #outputStream} the records of the saved packets
+     * are written to.
+     */
+    private FileChannel outputChannel = null;
+
+    /**
+     * The buffer in which the records of the saved packets are accumulated
+     * before being written to {@link #outputChannel}.
+     */
+    private final ByteBuffer writeBuffer
+        = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The queue of the packets to be saved. Set once the logger is started
+     * and read without synchronization by the threads logging packets.
+     */
+    private volatile PacketRingBuffer packetQueue;
+
     /**
      * The thread that queues packets and saves them to file.
      */
     private SaverThread saverThread = new SaverThread();
 
+    /**
+     * The indicator which determines whether the file has been closed by
+     * {@link #stop()} and must not be reopened.
+     */
+    private boolean closed = false;
+
+    /**
+     * The time in milliseconds the packet logging was started at.
+     */
+    private long startTime;
+
+    /**
+     * The ipv4 header reused for every saved packet.
+     */
+    private final byte[] ipHeader = new byte[ipHeaderTemplate.length];
+
+    /**
+     * The ipv6 header reused for every saved packet.
+     */
+    private final byte[] ip6Header = new byte[ip6HeaderTemplate.length];
+
+    /**
+     * The udp header reused for every saved packet.
+     */
+    private final byte[] udpHeader = new byte[udpHeaderTemplate.length];
+
+    /**
+     * The tcp header reused for every saved packet.
+     */
+    private final byte[] tcpHeader = new byte[tcpHeaderTemplate.length];
+
     /**
      * The current configuration.
      */
@@ -149,6 +207,14 @@ public class PacketLoggingServiceImpl
      */
     public void start()
     {
+        PacketLoggingConfigurationImpl cfg
+            = (PacketLoggingConfigurationImpl) getConfiguration();
+
+        packetQueue
+            = new PacketRingBuffer(
+                    cfg.getQueueCapacity(),
+                    cfg.isDropSignalingWhenFull());
+        startTime = System.currentTimeMillis();
         saverThread.start();
     }
 
@@ -184,7 +250,7 @@ public class PacketLoggingServiceImpl
     {
         if(outputStream != null)
         {
-            outputStream.flush();
+            flushWriteBuffer();
             outputStream.close();
         }
 
@@ -202,33 +268,133 @@ public class PacketLoggingServiceImpl
         }
 
         outputStream = new FileOutputStream(files[0]);
+        outputChannel = outputStream.getChannel();
         written = 0;
         createGlobalHeader();
     }
 
     /**
-     * Stops the packet logging.
+     * Stops the packet logging. The packets which are already queued are
+     * saved before the file is closed.
      */
     public void stop()
     {
         saverThread.stopRunning();
 
-        if(outputStream != null)
+        try
         {
-            try
-            {
-                outputStream.flush();
-                outputStream.close();
-            }
-            catch(IOException e)
-            {
-                e.printStackTrace();
-            }
-            finally
+            saverThread.join(1000);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized(this)
+        {
+            closed = true;
+            if(outputStream != null)
             {
-                outputStream = null;
+                try
+                {
+                    flushWriteBuffer();
+                    outputStream.close();
+                }
+                catch(IOException e)
+                {
+                    e.printStackTrace();
+                }
+                finally
+                {
+                    outputStream = null;
+                    outputChannel = null;
+                }
             }
         }
+
+        if ((packetQueue != null) && logger.isInfoEnabled())
+        {
+            long duration = System.currentTimeMillis() - startTime;
+            long queued = packetQueue.getQueuedPacketCount();
+
+            logger.info(
+                    "Logged " + queued + " packets ("
+                        + ((duration > 0) ? (queued * 1000 / duration) : queued)
+                        + " packets/s), dropped "
+                        + packetQueue.getDroppedPacketCount()
+                        + " packets because the queue was full.");
+        }
+    }
+
+    /**
+     * Gets the number of packets which have been dropped instead of being
+     * logged because the queue of packets to be saved was full.
+     *
+     * @return the number of dropped packets
+     */
+    public long getDroppedPacketCount()
+    {
+        return (packetQueue == null) ? 0 : packetQueue.getDroppedPacketCount();
+    }
+
+    /**
+     * Gets the number of packets of a specific protocol which have been
+     * dropped instead of being logged because the queue of packets to be
+     * saved was full.
+     *
+     * @param protocol the protocol
+     * @return the number of dropped packets of <tt>protocol</tt>
+     */
+    public long getDroppedPacketCount(ProtocolName protocol)
+    {
+        return
+            (packetQueue == null)
+                ? 0
+                : packetQueue.getDroppedPacketCount(protocol);
+    }
+
+    /**
+     * Gets the number of packets which have been queued to be logged.
+     *
+     * @return the number of packets which have been queued to be logged
+     */
+    public long getLoggedPacketCount()
+    {
+        return (packetQueue == null) ? 0 : packetQueue.getQueuedPacketCount();
+    }
+
+    /**
+     * Writes the records accumulated in {@link #writeBuffer} to the file.
+     *
+     * @throws IOException if writing to the file fails
+     */
+    private void flushWriteBuffer()
+        throws IOException
+    {
+        writeBuffer.flip();
+        try
+        {
+            while (writeBuffer.hasRemaining())
+                outputChannel.write(writeBuffer);
+        }
+        finally
+        {
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Makes sure that {@link #writeBuffer} has a specific number of bytes
+     * remaining, writing its current content to the file if necessary.
+     *
+     * @param length the number of bytes required
+     * @throws IOException if writing to the file fails
+     */
+    private void ensureWriteBufferRemaining(int length)
+        throws IOException
+    {
+        if (writeBuffer.remaining() < length)
+            flushWriteBuffer();
     }
 
     /**
@@ -238,43 +404,28 @@ public class PacketLoggingServiceImpl
     private void createGlobalHeader()
             throws IOException
     {
+        ensureWriteBufferRemaining(24);
+
         /* magic number(swapped) */
-        outputStream.write(0xd4);
-        outputStream.write(0xc3);
-        outputStream.write(0xb2);
-        outputStream.write(0xa1);
+        writeBuffer.putInt(0xa1b2c3d4);
 
         /* major version number */
-        outputStream.write(0x02);
-        outputStream.write(0x00);
+        writeBuffer.putShort((short) 2);
 
         /* minor version number */
-        outputStream.write(0x04);
-        outputStream.write(0x00);
+        writeBuffer.putShort((short) 4);
 
         /* GMT to local correction */
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
+        writeBuffer.putInt(0);
 
         /* accuracy of timestamps */
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
+        writeBuffer.putInt(0);
 
         /* max length of captured packets, in octets */
-        outputStream.write(0xff);
-        outputStream.write(0xff);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
+        writeBuffer.putInt(0xffff);
 
         /* data link type(ethernet) */
-        outputStream.write(0x01);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
+        writeBuffer.putInt(1);
     }
 
     /**
@@ -376,17 +527,22 @@ public class PacketLoggingServiceImpl
             int packetOffset,
             int packetLength)
     {
-        saverThread.queuePacket(
-            new Packet(protocol,
-                       sourceAddress,
-                       sourcePort,
-                       destinationAddress,
-                       destinationPort,
-                       transport,
-                       sender,
-                       packetContent,
-                       packetOffset,
-                       packetLength));
+        PacketRingBuffer packetQueue = this.packetQueue;
+
+        if (packetQueue != null)
+        {
+            packetQueue.offer(
+                    protocol,
+                    sourceAddress,
+                    sourcePort,
+                    destinationAddress,
+                    destinationPort,
+                    transport,
+                    sender,
+                    packetContent,
+                    packetOffset,
+                    packetLength);
+        }
     }
 
     /**
@@ -403,26 +559,28 @@ public class PacketLoggingServiceImpl
     }
 
     /**
-     * Dump the packet to the output file stream.
+     * Dump the packet to the output file stream. The record is appended to
+     * the write buffer which is written to the file when it is full or when
+     * there are no more packets queued to be saved.
      *
      * @param packet the packet ot save.
      * @throws Exception when error occurs saving to file stream or when
      *  rotating files.
      */
-    private void savePacket(Packet packet)
+    private void savePacket(PacketRingBuffer.Slot packet)
         throws Exception
     {
         // if one of the addresses is ipv4 we are using ipv4,
         // local udp addresses come as 0.0.0.0.0....0.0.0 when
         // ipv6 is enabled in the underlying os
-        boolean isIPv4 = packet.sourceAddress.length == 4
-                || packet.destinationAddress.length == 4;
+        boolean isIPv4 = packet.sourceAddressLength == 4
+                || packet.destinationAddressLength == 4;
 
         byte[] ipHeader;
 
         if(isIPv4)
         {
-            ipHeader = new byte[ipHeaderTemplate.length];
+            ipHeader = this.ipHeader;
             System.arraycopy(
                     ipHeaderTemplate, 0, ipHeader, 0, ipHeader.length);
             System.arraycopy(packet.sourceAddress,
@@ -438,7 +596,7 @@ public class PacketLoggingServiceImpl
         }
         else
         {
-            ipHeader = new byte[ip6HeaderTemplate.length];
+            ipHeader = ip6Header;
             System.arraycopy(
                     ip6HeaderTemplate, 0, ipHeader, 0, ipHeader.length);
             System.arraycopy(packet.sourceAddress,
@@ -458,7 +616,6 @@ public class PacketLoggingServiceImpl
         short len;
         if(packet.transport == TransportName.UDP)
         {
-            byte[] udpHeader = new byte[udpHeaderTemplate.length];
             transportHeader = udpHeader;
             System.arraycopy(udpHeaderTemplate, 0,
                     udpHeader, 0, udpHeader.length);
@@ -470,7 +627,7 @@ public class PacketLoggingServiceImpl
         }
         else
         {
-            transportHeader = new byte[tcpHeaderTemplate.length];
+            transportHeader = tcpHeader;
             System.arraycopy(tcpHeaderTemplate, 0, transportHeader,
                    0, transportHeader.length);
 
@@ -538,7 +695,7 @@ public class PacketLoggingServiceImpl
                 ipHeader[6] = (byte)0x06;
         }
 
-        long current = System.currentTimeMillis();
+        long current = packet.timestamp;
         int tsSec = (int)(current/1000);
         int tsUsec = (int)((current%1000) * 1000);
         int feakHeaderLen = fakeEthernetHeader.length +
@@ -548,6 +705,9 @@ public class PacketLoggingServiceImpl
 
         synchronized(this)
         {
+            if (closed)
+                return;
+
             // open files only if needed
             if(outputStream == null)
             {
@@ -560,36 +720,49 @@ public class PacketLoggingServiceImpl
             if((limit > 0) && (written > limit))
                 rotateFiles();
 
-            addInt(tsSec);
-            addInt(tsUsec);
-            addInt(inclLen);
-            addInt(origLen);
+            ensureWriteBufferRemaining(16 + feakHeaderLen);
+
+            writeBuffer.putInt(tsSec);
+            writeBuffer.putInt(tsUsec);
+            writeBuffer.putInt(inclLen);
+            writeBuffer.putInt(origLen);
 
-            outputStream.write(fakeEthernetHeader);
-            outputStream.write(ipHeader);
-            outputStream.write(transportHeader);
-            outputStream.write(
-                    packet.packetContent,
-                    packet.packetOffset,
-                    packet.packetLength);
-            outputStream.flush();
+            writeBuffer.put(fakeEthernetHeader);
+            writeBuffer.put(ipHeader);
+            writeBuffer.put(transportHeader);
+
+            if (writeBuffer.remaining() >= packet.packetLength)
+            {
+                writeBuffer.put(packet.packetContent, 0, packet.packetLength);
+            }
+            else
+            {
+                // The content does not fit in the buffer, write it directly.
+                flushWriteBuffer();
+
+                ByteBuffer content
+                    = ByteBuffer.wrap(
+                            packet.packetContent, 0, packet.packetLength);
+
+                while (content.hasRemaining())
+                    outputChannel.write(content);
+            }
 
             written += inclLen + 16;
         }
     }
 
     /**
-     * Writes int to the file. Used for packet headers.
-     * @param d the value to write.
-     * @throws IOException
+     * Writes the records of the saved packets which are still in the write
+     * buffer to the file.
+     *
+     * @throws IOException if writing to the file fails
      */
-    private void addInt(int d)
+    private synchronized void flush()
         throws IOException
     {
-        outputStream.write ((d & 0xff));
-        outputStream.write(((d & 0xff00) >> 8));
-        outputStream.write(((d & 0xff0000) >> 16));
-        outputStream.write(((d & 0xff000000) >> 24));
+        if ((outputChannel != null) && (writeBuffer.position() > 0))
+            flushWriteBuffer();
     }
 
     /**
@@ -647,100 +820,6 @@ public class PacketLoggingServiceImpl
         return total;
     }
 
-    /**
-     * The data we receive and that we will dump in a file.
-     */
-    private static class Packet
-    {
-        /**
-         * The protocol logging this packet.
-         */
-        ProtocolName protocol;
-
-        /**
-         * The source address of the packet.
-         */
-        byte[] sourceAddress;
-
-        /**
-         * The source port of the packet.
-         */
-        int sourcePort;
-
-        /**
-         * The destination address of the packet.
-         */
-        byte[] destinationAddress;
-
-        /**
-         * The destination port of the packet.
-         */
-        int destinationPort;
-
-        /**
-         * Is the packet a udp one.
-         */
-        TransportName transport;
-
-        /**
-         * Are we sending the packet, or false if we are receiving.
-         */
-        boolean sender;
-
-        /**
-         * Array containing packet content.
-         */
-        byte[] packetContent;
-
-        /**
-         * The offset in the packetContent where packet content is.
-         */
-        int packetOffset;
-
-        /**
-         * The length of the packet content.
-         */
-        int packetLength;
-
-        /**
-         * Creates a packet with the needed data.
-         * @param protocol the source protocol that logs this packet.
-         * @param sourceAddress The source address of the packet.
-         * @param sourcePort The source port of the packet.
-         * @param destinationAddress The destination address of the packet.
-         * @param destinationPort The destination port of the packet.
-         * @param transport the transport this packet uses.
-         * @param sender Are we sending the packet,
-         *  or false if we are receiving.
-         * @param packetContent Array containing packet content.
-         * @param packetOffset The offset in the packetContent
-         *  where packet content is.
-         * @param packetLength The length of the packet content.
-         */
-        private Packet(ProtocolName protocol,
-                       byte[] sourceAddress,
-                       int sourcePort,
-                       byte[] destinationAddress,
-                       int destinationPort,
-                       TransportName transport,
-                       boolean sender,
-                       byte[] packetContent,
-                       int packetOffset,
-                       int packetLength)
-        {
-            this.protocol = protocol;
-            this.sourceAddress = sourceAddress;
-            this.sourcePort = sourcePort;
-            this.destinationAddress = destinationAddress;
-            this.destinationPort = destinationPort;
-            this.transport = transport;
-            this.sender = sender;
-            this.packetContent = packetContent;
-            this.packetOffset = packetOffset;
-            this.packetLength = packetLength;
-        }
-    }
-
     /**
      * Dumps packet in separate thread so we don't block
      * our calling thread.
@@ -751,80 +830,80 @@ public class PacketLoggingServiceImpl
         /**
          * start/stop indicator.
          */
-        private boolean stopped = true;
+        private volatile boolean stopped = true;
 
         /**
-         * List of packets queued to be written in the file.
+         * Initializes a new <tt>SaverThread</tt>.
          */
-        private final List<Packet> pktsToSave = new ArrayList<Packet>();
+        SaverThread()
+        {
+            super("PacketLoggingSaver");
+            setDaemon(true);
+        }
 
         /**
-         * Sends instant messages in separate thread so we don't block
-         * our calling thread.
+         * Saves the queued packets until stopped. The write buffer is written
+         * to the file whenever the queue is drained so that the file stays
+         * current while packets are logged at a low rate.
          */
         @Override
         public void run()
         {
             stopped = false;
-            while(!stopped)
+            while(true)
             {
-                Packet pktToSave;
+                PacketRingBuffer.Slot pktToSave = packetQueue.poll();
 
-                synchronized(this)
+                if(pktToSave == null)
                 {
-                    if(pktsToSave.isEmpty())
+                    try
                     {
-                        try
-                        {
-                            wait();
-                        }
-                        catch (InterruptedException iex)
-                        {
-                        }
-                        continue;
+                        flush();
                     }
+                    catch(IOException ioe)
+                    {
+                        logger.error("Error writing packets to file", ioe);
+                    }
+
+                    if (stopped)
+                        break;
 
-                    pktToSave = pktsToSave.remove(0);
+                    pktToSave = packetQueue.take(500);
+                    if (pktToSave == null)
+                        continue;
                 }
 
-                if(pktToSave != null)
+                try
                 {
-                    try
-                    {
-                        savePacket(pktToSave);
-                    }
-                    catch(Throwable t)
-                    {
-                        /*
-                         * XXX ThreadDeath must be rethrown; otherwise, the
-                         * related Thread will not die.
-                         */
-                        if (t instanceof ThreadDeath)
-                            throw (ThreadDeath) t;
-                        else
-                            logger.error("Error writing packet to file", t);
-                    }
+                    savePacket(pktToSave);
+                }
+                catch(Throwable t)
+                {
+                    /*
+                     * XXX ThreadDeath must be rethrown; otherwise, the
+                     * related Thread will not die.
+                     */
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    else
+                        logger.error("Error writing packet to file", t);
+                }
+                finally
+                {
+                    packetQueue.release(pktToSave);
                 }
             }
         }
 
         /**
-         * Interrupts this sender so that it would no longer send messages.
+         * Interrupts this saver so that it would save the packets which are
+         * already queued and exit.
          */
-        public synchronized void stopRunning()
+        public void stopRunning()
         {
             stopped = true;
-            notifyAll();
-        }
-
-        /**
-         * Schedule new packet for save.
-         * @param packet new packet to save.
-         */
-        public synchronized void queuePacket(Packet packet)
-        {
-            pktsToSave.add(packet);
-            notifyAll();
+            if (packetQueue != null)
+                packetQueue.wakeUp();
         }
     }
 }
@@ -0,0 +1,432 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import org.jitsi.service.packetlogging.*;
+
+/**
+ * A bounded, multiple producers/single consumer queue of packets to be saved
+ * by the packet logger. The slots of the queue and their buffers are
+ * allocated once and reused so that logging a packet does not generate
+ * garbage. Producers claim slots without locking; when the queue is full the
+ * packet is either dropped right away or, for signaling protocols and if so
+ * configured, after waiting for a bounded time for a free slot.
+ */
+class PacketRingBuffer
+{
+    /**
+     * The initial size of the content buffer of a slot. Slots grow their
+     * content buffer when a larger packet is logged and keep it afterwards.
+     */
+    private static final int INITIAL_CONTENT_CAPACITY = 1500;
+
+    /**
+     * The maximum time in nanoseconds a producer waits for a free slot when
+     * it is not allowed to drop its packet.
+     */
+    private static final long MAX_PRODUCER_WAIT = 1000L * 1000000L;
+
+    /**
+     * The sequence number of the next slot to be claimed by a producer.
+     */
+    private final AtomicLong claimSequence = new AtomicLong();
+
+    /**
+     * The thread consuming the packets, parked while the queue is empty.
+     */
+    private volatile Thread consumer;
+
+    /**
+     * The indicator which determines whether {@link #consumer} is (about to
+     * be) parked waiting for packets.
+     */
+    private volatile boolean consumerWaiting = false;
+
+    /**
+     * The number of packets dropped per <tt>ProtocolName</tt> ordinal because
+     * the queue was full.
+     */
+    private final AtomicLongArray droppedPackets
+        = new AtomicLongArray(
+                PacketLoggingService.ProtocolName.values().length);
+
+    /**
+     * Whether packets of signaling protocols (i.e. all but RTP) are dropped
+     * when the queue is full rather than waiting for a free slot.
+     */
+    private final boolean dropSignaling;
+
+    /**
+     * The sequence number of the next slot to be consumed. All slots with
+     * lower sequence numbers are free.
+     */
+    private final AtomicLong consumeSequence = new AtomicLong();
+
+    /**
+     * The number of packets queued so far.
+     */
+    private final AtomicLong queuedPackets = new AtomicLong();
+
+    /**
+     * <tt>slots.length - 1</tt> used to map sequence numbers to slots.
+     */
+    private final int mask;
+
+    /**
+     * The sequence number published in each slot once a producer has
+     * finished filling it in.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The pre-allocated slots.
+     */
+    private final Slot[] slots;
+
+    /**
+     * Initializes a new <tt>PacketRingBuffer</tt>.
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param dropSignaling <tt>true</tt> to drop the packets of signaling
+     * protocols when the queue is full just like RTP packets; <tt>false</tt>
+     * to have them wait for a free slot for a bounded time
+     */
+    PacketRingBuffer(int capacity, boolean dropSignaling)
+    {
+        int size = 1;
+
+        while (size < capacity)
+            size <<= 1;
+
+        this.dropSignaling = dropSignaling;
+        mask = size - 1;
+        slots = new Slot[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Gets the number of packets dropped because the queue was full.
+     *
+     * @return the number of packets dropped because the queue was full
+     */
+    long getDroppedPacketCount()
+    {
+        long dropped = 0;
+
+        for (int i = 0; i < droppedPackets.length(); i++)
+            dropped += droppedPackets.get(i);
+        return dropped;
+    }
+
+    /**
+     * Gets the number of packets of a specific protocol dropped because the
+     * queue was full.
+     *
+     * @param protocol the protocol
+     * @return the number of packets of <tt>protocol</tt> dropped because the
+     * queue was full
+     */
+    long getDroppedPacketCount(PacketLoggingService.ProtocolName protocol)
+    {
+        return droppedPackets.get(protocol.ordinal());
+    }
+
+    /**
+     * Gets the number of packets queued so far.
+     *
+     * @return the number of packets queued so far
+     */
+    long getQueuedPacketCount()
+    {
+        return queuedPackets.get();
+    }
+
+    /**
+     * Copies a packet into a free slot of this queue.
+     *
+     * @param protocol the source protocol that logs this packet.
+     * @param sourceAddress the source address of the packet.
+     * @param sourcePort the source port of the packet.
+     * @param destinationAddress the destination address.
+     * @param destinationPort the destination port.
+     * @param transport the transport this packet uses.
+     * @param sender are we the sender of the packet or not.
+     * @param packetContent the packet content.
+     * @param packetOffset the packet content offset.
+     * @param packetLength the packet content length.
+     * @return <tt>true</tt> if the packet has been queued; <tt>false</tt> if
+     * it has been dropped
+     */
+    boolean offer(
+            PacketLoggingService.ProtocolName protocol,
+            byte[] sourceAddress,
+            int sourcePort,
+            byte[] destinationAddress,
+            int destinationPort,
+            PacketLoggingService.TransportName transport,
+            boolean sender,
+            byte[] packetContent,
+            int packetOffset,
+            int packetLength)
+    {
+        boolean mayWait
+            = !dropSignaling
+                && (protocol != PacketLoggingService.ProtocolName.RTP);
+        long waitStart = 0;
+        long sequence;
+
+        while (true)
+        {
+            sequence = claimSequence.get();
+            if (sequence - consumeSequence.get() > mask)
+            {
+                if (mayWait)
+                {
+                    long now = System.nanoTime();
+
+                    if (waitStart == 0)
+                        waitStart = now;
+                    if (now - waitStart < MAX_PRODUCER_WAIT)
+                    {
+                        wakeUpConsumer();
+                        LockSupport.parkNanos(100000);
+                        continue;
+                    }
+                }
+                droppedPackets.incrementAndGet(protocol.ordinal());
+                return false;
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1))
+                break;
+        }
+
+        int index = (int) (sequence & mask);
+
+        slots[index].set(
+                protocol,
+                sourceAddress, sourcePort,
+                destinationAddress, destinationPort,
+                transport,
+                sender,
+                packetContent, packetOffset, packetLength);
+        published.set(index, sequence);
+        queuedPackets.incrementAndGet();
+
+        if (consumerWaiting)
+            wakeUpConsumer();
+        return true;
+    }
+
+    /**
+     * Waits for the next packet to be available. Invoked by the consumer
+     * thread only.
+     *
+     * @param timeout the maximum time in milliseconds to wait
+     * @return the slot with the next packet or <tt>null</tt> if no packet
+     * became available within <tt>timeout</tt>. The slot must be released
+     * with {@link #release(Slot)} once the packet has been consumed.
+     */
+    Slot take(long timeout)
+    {
+        Slot slot = poll();
+
+        if (slot != null)
+            return slot;
+
+        consumer = Thread.currentThread();
+        consumerWaiting = true;
+        try
+        {
+            // Check again now that the producers know we may be parked.
+            slot = poll();
+            if (slot == null)
+            {
+                LockSupport.parkNanos(timeout * 1000000L);
+                slot = poll();
+            }
+        }
+        finally
+        {
+            consumerWaiting = false;
+        }
+        return slot;
+    }
+
+    /**
+     * Gets the next packet if it is available. Invoked by the consumer thread
+     * only.
+     *
+     * @return the slot with the next packet or <tt>null</tt> if there is no
+     * packet available at this time. The slot must be released with
+     * {@link #release(Slot)} once the packet has been consumed.
+     */
+    Slot poll()
+    {
+        long sequence = consumeSequence.get();
+        int index = (int) (sequence & mask);
+
+        return (published.get(index) == sequence) ? slots[index] : null;
+    }
+
+    /**
+     * Returns the slot obtained with the last {@link #poll()} or
+     * {@link #take(long)} to the producers. Invoked by the consumer thread
+     * only.
+     *
+     * @param slot the slot to be released
+     */
+    void release(Slot slot)
+    {
+        consumeSequence.incrementAndGet();
+    }
+
+    /**
+     * Unparks the consumer thread.
+     */
+    private void wakeUpConsumer()
+    {
+        Thread consumer = this.consumer;
+
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Wakes up the consumer thread if it is waiting for packets e.g. because
+     * it is being stopped.
+     */
+    void wakeUp()
+    {
+        wakeUpConsumer();
+    }
+
+    /**
+     * A pre-allocated slot holding a copy of a logged packet.
+     */
+    static class Slot
+    {
+        /**
+         * The protocol logging this packet.
+         */
+        PacketLoggingService.ProtocolName protocol;
+
+        /**
+         * The source address of the packet.
+         */
+        final byte[] sourceAddress = new byte[16];
+
+        /**
+         * The length of the source address i.e. 4 for IPv4 and 16 for IPv6.
+         */
+        int sourceAddressLength;
+
+        /**
+         * The source port of the packet.
+         */
+        int sourcePort;
+
+        /**
+         * The destination address of the packet.
+         */
+        final byte[] destinationAddress = new byte[16];
+
+        /**
+         * The length of the destination address i.e. 4 for IPv4 and 16 for
+         * IPv6.
+         */
+        int destinationAddressLength;
+
+        /**
+         * The destination port of the packet.
+         */
+        int destinationPort;
+
+        /**
+         * The transport the packet uses.
+         */
+        PacketLoggingService.TransportName transport;
+
+        /**
+         * Are we sending the packet, or false if we are receiving.
+         */
+        boolean sender;
+
+        /**
+         * The copy of the packet content, starting at offset 0.
+         */
+        byte[] packetContent = new byte[INITIAL_CONTENT_CAPACITY];
+
+        /**
+         * The length of the packet content.
+         */
+        int packetLength;
+
+        /**
+         * The time in milliseconds the packet was logged at.
+         */
+        long timestamp;
+
+        /**
+         * Copies a packet into this slot.
+         *
+         * @param protocol the source protocol that logs this packet.
+         * @param sourceAddress the source address of the packet.
+         * @param sourcePort the source port of the packet.
+         * @param destinationAddress the destination address.
+         * @param destinationPort the destination port.
+         * @param transport the transport this packet uses.
+         * @param sender are we the sender of the packet or not.
+         * @param packetContent the packet content.
+         * @param packetOffset the packet content offset.
+         * @param packetLength the packet content length.
+         */
+        void set(
+                PacketLoggingService.ProtocolName protocol,
+                byte[] sourceAddress,
+                int sourcePort,
+                byte[] destinationAddress,
+                int destinationPort,
+                PacketLoggingService.TransportName transport,
+                boolean sender,
+                byte[] packetContent,
+                int packetOffset,
+                int packetLength)
+        {
+            this.protocol = protocol;
+            sourceAddressLength = Math.min(sourceAddress.length, 16);
+            System.arraycopy(
+                    sourceAddress, 0,
+                    this.sourceAddress, 0,
+                    sourceAddressLength);
+            this.sourcePort = sourcePort;
+            destinationAddressLength = Math.min(destinationAddress.length, 16);
+            System.arraycopy(
+                    destinationAddress, 0,
+                    this.destinationAddress, 0,
+                    destinationAddressLength);
+            this.destinationPort = destinationPort;
+            this.transport = transport;
+            this.sender = sender;
+            if (this.packetContent.length < packetLength)
+                this.packetContent = new byte[packetLength];
+            System.arraycopy(
+                    packetContent, packetOffset,
+                    this.packetContent, 0,
+                    packetLength);
+            this.packetLength = packetLength;
+            timestamp = System.currentTimeMillis();
+        }
+    }
+}
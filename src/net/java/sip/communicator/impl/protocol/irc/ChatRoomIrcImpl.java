@@ -949,6 +949,57 @@ public class ChatRoomIrcImpl
             listener.memberPresenceChanged(evt);
     }
 
+    /**
+     * Creates the corresponding ChatRoomMemberBulkPresenceChangeEvent and
+     * notifies all <tt>ChatRoomMemberPresenceListener</tt>s that a number of
+     * ChatRoomMembers have joined or left this <tt>ChatRoom</tt>. Listeners
+     * which do not process bulk events are notified once per member.
+     *
+     * @param members the <tt>ChatRoomMember</tt>s that this event is about
+     * @param eventID the identifier of the event
+     * @param eventReason the reason of the event
+     */
+    public void fireMembersPresenceEvent(List<ChatRoomMember> members,
+                                         String eventID,
+                                         String eventReason)
+    {
+        if (members.isEmpty())
+            return;
+
+        ChatRoomMemberBulkPresenceChangeEvent evt
+            = new ChatRoomMemberBulkPresenceChangeEvent(
+                this, members, eventID, eventReason);
+
+        if (logger.isTraceEnabled())
+            logger.trace("Will dispatch the following ChatRoom event: " + evt);
+
+        Iterable<ChatRoomMemberPresenceListener> listeners;
+        synchronized (memberListeners)
+        {
+            listeners
+                = new ArrayList<ChatRoomMemberPresenceListener>(
+                        memberListeners);
+        }
+
+        List<ChatRoomMemberPresenceChangeEvent> memberEvts = null;
+
+        for (ChatRoomMemberPresenceListener listener : listeners)
+        {
+            if (listener instanceof ChatRoomMemberBulkPresenceListener)
+            {
+                ((ChatRoomMemberBulkPresenceListener) listener)
+                    .membersPresenceChanged(evt);
+            }
+            else
+            {
+                if (memberEvts == null)
+                    memberEvts = evt.toMemberPresenceChangeEvents();
+                for (ChatRoomMemberPresenceChangeEvent memberEvt : memberEvts)
+                    listener.memberPresenceChanged(memberEvt);
+            }
+        }
+    }
+
     /**
      * Creates the corresponding ChatRoomMemberRoleChangeEvent and notifies
      * all <tt>ChatRoomMemberRoleListener</tt>s that a ChatRoomMember has
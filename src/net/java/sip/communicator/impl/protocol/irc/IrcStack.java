@@ -32,6 +32,12 @@ public class IrcStack
      */
     private static final int TIMEOUT = 10000;
 
+    /**
+     * The numeric reply with which the server advertises the features it
+     * supports.
+     */
+    private static final int RPL_ISUPPORT = 5;
+
     /**
      * A list of timers indicating when a chat room join fails.
      */
@@ -39,9 +45,28 @@ public class IrcStack
         = new Hashtable<ChatRoom, Timer>();
 
     /**
-     * A list of the channels on this server
+     * The lists of the channels on this server which have been retrieved
+     * recently.
+     */
+    private final ChatRoomDirectory chatRoomDirectory = new ChatRoomDirectory();
+
+    /**
+     * The listing of the channels on this server which receives the replies
+     * to the LIST command in progress or <tt>null</tt> if none is in
+     * progress.
+     */
+    private volatile ChatRoomDirectory.Listing channelListing = null;
+
+    /**
+     * The lock which allows a single LIST command to be in progress at a time.
      */
-    private final List<String> serverChatRoomList = new ArrayList<String>();
+    private final Object channelListingLock = new Object();
+
+    /**
+     * Indicates if the server filters the LIST command by channel name masks
+     * as advertised by the ELIST token of its RPL_ISUPPORT reply.
+     */
+    private volatile boolean listMaskSupported = false;
 
     /**
      * A list of users that we have info about, it is used to stock "whois"
@@ -170,9 +195,8 @@ public class IrcStack
             parentProvider
                 .setCurrentRegistrationState(RegistrationState.REGISTERED);
 
-            // It should be done when a getExistingChatRooms request is processed.
-            // Obtain information for all channels on this server.
-            // this.listChannels();
+            // The channels on this server are listed when a
+            // getExistingChatRooms request is processed.
         }
     }
 
@@ -197,6 +221,16 @@ public class IrcStack
     @Override
     protected void onDisconnect()
     {
+        ChatRoomDirectory.Listing listing = channelListing;
+
+        channelListing = null;
+        if (listing != null)
+        {
+            listing.cancel();
+            listing.complete();
+        }
+        chatRoomDirectory.clear();
+
         parentProvider
             .setCurrentRegistrationState(RegistrationState.UNREGISTERED);
     }
@@ -366,7 +400,10 @@ public class IrcStack
     @Override
     protected void onChannelInfo(String channel, int userCount, String topic)
     {
-        this.addServerChatRoom(channel);
+        ChatRoomDirectory.Listing listing = channelListing;
+
+        if (listing != null)
+            listing.add(channel);
     }
 
     /**
@@ -1049,7 +1086,27 @@ public class IrcStack
     @Override
     protected void onServerResponse (int code, String response)
     {
-        if (code == ERR_NOSUCHCHANNEL)
+        if (code == RPL_ISUPPORT)
+        {
+            for (String token : response.split(" "))
+            {
+                if (token.startsWith("ELIST="))
+                {
+                    listMaskSupported
+                        = (token.toUpperCase().indexOf('M', 6) != -1);
+                }
+            }
+        }
+
+        if (code == RPL_LISTEND)
+        {
+            ChatRoomDirectory.Listing listing = channelListing;
+
+            channelListing = null;
+            if (listing != null)
+                listing.complete();
+        }
+        else if (code == ERR_NOSUCHCHANNEL)
         {
             logger.error("No such channel:" + code
                 + ": Response :" + response);
@@ -1564,6 +1621,9 @@ public class IrcStack
 
         chatRoom.clearChatRoomMemberList();
 
+        List<ChatRoomMember> newMembers
+            = new ArrayList<ChatRoomMember>(users.length);
+
         for (User user : users)
         {
             String userPrefix = user.getPrefix();
@@ -1585,13 +1645,15 @@ public class IrcStack
                                             newMemberRole);
 
             chatRoom.addChatRoomMember(user.getNick(), newMember);
-
-            chatRoom.fireMemberPresenceEvent(
-                newMember,
-                null,
-                ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED,
-                ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST);
+            newMembers.add(newMember);
         }
+
+        // A large channel lists thousands of users so let the listeners
+        // process them all at once.
+        chatRoom.fireMembersPresenceEvent(
+            newMembers,
+            ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED,
+            ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST);
     }
 
     /**
@@ -1628,13 +1690,106 @@ public class IrcStack
     }
 
     /**
-     * Returns the list of chat rooms on this server.
+     * Retrieves the channels on this server the names of which contain a
+     * specific filter and delivers their names to a specific listener page by
+     * page as the replies to the LIST command are received. The complete list
+     * of the channels is cached for a while so that it is not requested again
+     * for every search. If the server supports channel name masks, a filtered
+     * list is requested with a mask and is not cached.
      *
-     * @return the list of chat rooms on this server
-     */
-    public List<String> getServerChatRoomList()
+     * @param filter the string which the names of the channels are to contain
+     * ignoring case or <tt>null</tt> to retrieve all channels
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names of the channels to
+     * @throws OperationFailedException if we are not connected or the server
+     * does not reply to the LIST command
+     */
+    public void listChatRooms(
+            String filter,
+            ChatRoomDirectoryListener listener)
+        throws OperationFailedException
     {
-        return serverChatRoomList;
+        if (!isConnected())
+        {
+            throw new OperationFailedException(
+                    "We are not connected to the server.",
+                    OperationFailedException.NETWORK_FAILURE);
+        }
+
+        boolean mask
+            = listMaskSupported
+                && (filter != null)
+                && (filter.length() != 0)
+                && (filter.indexOf('*') == -1)
+                && (filter.indexOf('?') == -1)
+                && (filter.indexOf(',') == -1)
+                && (filter.indexOf(' ') == -1);
+
+        synchronized (channelListingLock)
+        {
+            if (!mask
+                    && chatRoomDirectory.deliverCached(
+                            ircMUCOpSet,
+                            getServer(),
+                            filter,
+                            listener))
+                return;
+
+            try
+            {
+                /*
+                 * The replies to a LIST command which has been abandoned (e.g.
+                 * because its caller has been interrupted) may still be
+                 * arriving and have to end before another LIST command is sent.
+                 */
+                ChatRoomDirectory.Listing previousListing = channelListing;
+
+                if (previousListing != null)
+                    previousListing.await(TIMEOUT);
+
+                ChatRoomDirectory.Listing listing
+                    = chatRoomDirectory.createListing(
+                            ircMUCOpSet,
+                            mask ? null : getServer(),
+                            filter,
+                            listener);
+
+                channelListing = listing;
+                if (mask)
+                    listChannels("*" + filter + "*");
+                else
+                    listChannels();
+
+                boolean completed;
+
+                try
+                {
+                    completed = listing.await(TIMEOUT);
+                }
+                catch (InterruptedException ie)
+                {
+                    listing.cancel();
+                    throw ie;
+                }
+                if (!completed)
+                {
+                    /*
+                     * The listing stays in channelListing so that late
+                     * replies, if any, are not mistaken for the replies to
+                     * the next LIST command.
+                     */
+                    listing.cancel();
+                    throw new OperationFailedException(
+                            "Failed to retrieve the list of channels.",
+                            OperationFailedException.GENERAL_ERROR);
+                }
+            }
+            catch (InterruptedException ie)
+            {
+                // The caller is no longer interested in the list.
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -1873,20 +2028,6 @@ public class IrcStack
             ChatRoomMessageReceivedEvent.SYSTEM_MESSAGE_RECEIVED);
     }
 
-    /**
-     * Adds a chat room to the server chat room list.
-     *
-     * @param chatRoomName the name of the chat room to add
-     */
-    private void addServerChatRoom(String chatRoomName)
-    {
-        synchronized (serverChatRoomList)
-        {
-            if (!serverChatRoomList.contains(chatRoomName))
-                serverChatRoomList.add(chatRoomName);
-        }
-    }
-
     /**
      * After waiting a certain time notifies all interested listeners that a
      * join has failed, because there's no response from the server.
@@ -76,7 +76,39 @@ public class OperationSetMultiUserChatIrcImpl
      */
     public List<String> getExistingChatRooms() throws OperationFailedException
     {
-        return ircProvider.getIrcStack().getServerChatRoomList();
+        final List<String> chatRoomNames = new Vector<String>();
+
+        getExistingChatRooms(
+                null,
+                new ChatRoomDirectoryListener()
+                {
+                    public void chatRoomsReceived(ChatRoomDirectoryEvent evt)
+                    {
+                        chatRoomNames.addAll(evt.getChatRoomNames());
+                    }
+                });
+        return chatRoomNames;
+    }
+
+    /**
+     * Retrieves the channels on the server that this protocol provider is
+     * connected to the names of which contain a specific filter and delivers
+     * their names to a specific listener page by page.
+     *
+     * @param filter the string which the names of the channels are to contain
+     * ignoring case or <tt>null</tt> to retrieve all channels
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names of the channels to
+     * @throws OperationFailedException if we failed retrieving the channels
+     * from the server
+     */
+    @Override
+    public void getExistingChatRooms(
+            String filter,
+            ChatRoomDirectoryListener listener)
+        throws OperationFailedException
+    {
+        ircProvider.getIrcStack().listChatRooms(filter, listener);
     }
 
     /**
@@ -12,6 +12,7 @@ import java.util.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.gtalk.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.neomedia.*;
@@ -425,14 +426,15 @@ public class CallPeerGTalkImpl
 
                 // run in another thread to not block smack receive thread and
                 // possibly delay others candidates messages.
-                new Thread()
-                {
-                    @Override
-                    public void run()
+                ThreadingUtils.execute(
+                    ThreadingService.CALL_POOL,
+                    new Runnable()
                     {
-                        processSessionAccept(sess);
-                    }
-                }.start();
+                        public void run()
+                        {
+                            processSessionAccept(sess);
+                        }
+                    });
             }
             sessAcceptedWithNoCands = null;
         }
@@ -14,6 +14,7 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.ContentPacketExtension.SendersEnum;
 import net.java.sip.communicator.impl.protocol.jabber.jinglesdp.*;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.neomedia.*;
@@ -480,26 +481,27 @@ public class CallPeerJabberImpl
             // transport-info with candidates
             if(noCands)
             {
-                new Thread()
-                {
-                    @Override
-                    public void run()
+                ThreadingUtils.execute(
+                    ThreadingService.BLOCKING_POOL,
+                    new Runnable()
                     {
-                        try
+                        public void run()
                         {
-                            synchronized(candSyncRoot)
+                            try
+                            {
+                                synchronized(candSyncRoot)
+                                {
+                                    candSyncRoot.wait();
+                                }
+                            }
+                            catch(InterruptedException e)
                             {
-                                candSyncRoot.wait();
                             }
-                        }
-                        catch(InterruptedException e)
-                        {
-                        }
 
-                        processContentAdd(content);
-                        contentAddWithNoCands = false;
-                    }
-                }.start();
+                            processContentAdd(content);
+                            contentAddWithNoCands = false;
+                        }
+                    });
                 if(logger.isInfoEnabled())
                     logger.info("No candidates found in content-add, started "
                                 + "new thread.");
@@ -107,6 +107,14 @@ public class ChatRoomJabberImpl
     private final Hashtable<String, ChatRoomMemberJabberImpl> members
         = new Hashtable<String, ChatRoomMemberJabberImpl>();
 
+    /**
+     * The members which have joined this chat room while the local user is
+     * joining it, i.e. the members listed by the initial presence flood, or
+     * <tt>null</tt> if the local user is not joining. Guarded by
+     * {@link #members}.
+     */
+    private Map<String, ChatRoomMemberJabberImpl> initialMembers;
+
     /**
      * The list of banned members of this chat room.
      */
@@ -535,10 +543,27 @@ public class ChatRoomJabberImpl
                         new FromMatchesFilter(multiUserChat.getRoom()),
                         new PacketTypeFilter(
                             org.jivesoftware.smack.packet.Presence.class)));
-                if(password == null)
-                    multiUserChat.join(nickname);
-                else
-                    multiUserChat.join(nickname, new String(password));
+                /*
+                 * The room sends the presence of every occupant before ours
+                 * so collect them and report them in a single event once the
+                 * join has completed.
+                 */
+                synchronized (members)
+                {
+                    initialMembers
+                        = new LinkedHashMap<String, ChatRoomMemberJabberImpl>();
+                }
+                try
+                {
+                    if(password == null)
+                        multiUserChat.join(nickname);
+                    else
+                        multiUserChat.join(nickname, new String(password));
+                }
+                finally
+                {
+                    fireInitialMembersPresenceEvent();
+                }
             }
 
             ChatRoomMemberJabberImpl member
@@ -1022,7 +1047,16 @@ public class ChatRoomJabberImpl
                   occupant.getNick(),
                   occupant.getJid());
 
-            members.put(participantName, member);
+            synchronized (members)
+            {
+                members.put(participantName, member);
+
+                if (initialMembers != null)
+                {
+                    initialMembers.put(participantName, member);
+                    return;
+                }
+            }
 
             //we don't specify a reason
             fireMemberPresenceEvent(member,
@@ -1556,6 +1590,76 @@ public class ChatRoomJabberImpl
             listener.memberPresenceChanged(evt);
     }
 
+    /**
+     * Notifies all <tt>ChatRoomMemberPresenceListener</tt>s about the members
+     * which have been listed by the initial presence flood while the local
+     * user was joining this <tt>ChatRoom</tt> and stops collecting them.
+     * Listeners which do not process bulk events are notified once per
+     * member.
+     */
+    private void fireInitialMembersPresenceEvent()
+    {
+        List<ChatRoomMember> joinedMembers;
+
+        synchronized (members)
+        {
+            if (initialMembers == null)
+                return;
+
+            joinedMembers
+                = new ArrayList<ChatRoomMember>(initialMembers.size());
+            for (Map.Entry<String, ChatRoomMemberJabberImpl> e
+                    : initialMembers.entrySet())
+            {
+                ChatRoomMemberJabberImpl member = e.getValue();
+
+                // Skip the members which have already left again.
+                if (members.get(e.getKey()) == member)
+                    joinedMembers.add(member);
+            }
+            initialMembers = null;
+        }
+
+        if (joinedMembers.isEmpty())
+            return;
+
+        ChatRoomMemberBulkPresenceChangeEvent evt
+            = new ChatRoomMemberBulkPresenceChangeEvent(
+                this,
+                joinedMembers,
+                ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED,
+                ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST);
+
+        if (logger.isTraceEnabled())
+            logger.trace("Will dispatch the following ChatRoom event: " + evt);
+
+        Iterable<ChatRoomMemberPresenceListener> listeners;
+        synchronized (memberListeners)
+        {
+            listeners
+                = new ArrayList<ChatRoomMemberPresenceListener>(
+                        memberListeners);
+        }
+
+        List<ChatRoomMemberPresenceChangeEvent> memberEvts = null;
+
+        for (ChatRoomMemberPresenceListener listener : listeners)
+        {
+            if (listener instanceof ChatRoomMemberBulkPresenceListener)
+            {
+                ((ChatRoomMemberBulkPresenceListener) listener)
+                    .membersPresenceChanged(evt);
+            }
+            else
+            {
+                if (memberEvts == null)
+                    memberEvts = evt.toMemberPresenceChangeEvents();
+                for (ChatRoomMemberPresenceChangeEvent memberEvt : memberEvts)
+                    listener.memberPresenceChanged(memberEvt);
+            }
+        }
+    }
+
     /**
      * Creates the corresponding ChatRoomMemberRoleChangeEvent and notifies
      * all <tt>ChatRoomMemberRoleListener</tt>s that a ChatRoomMember has
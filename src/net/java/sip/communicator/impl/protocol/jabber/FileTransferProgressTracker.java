@@ -0,0 +1,410 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
+
+/**
+ * Updates the status and the progress of file transfers while sending or
+ * receiving files. Smack does not notify about the progress of its transfers
+ * so their state has to be sampled, but all transfers are sampled by a single
+ * timer thread shared by all accounts rather than by a thread per transfer.
+ * <p>
+ * Progress events are fired at most
+ * {@link #DEFAULT_MAX_PROGRESS_UPDATES_PER_SECOND} times per second per
+ * transfer and only if the transfer has progressed. A transfer which does not
+ * progress, e.g. because it waits for the remote party to accept it, is
+ * sampled less and less often up to once every {@link #MAX_SAMPLING_INTERVAL}
+ * milliseconds.
+ */
+class FileTransferProgressTracker
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FileTransferProgressTracker.class);
+
+    /**
+     * The name of the property which specifies the maximum number of progress
+     * events fired per second for a single file transfer.
+     */
+    static final String PNAME_MAX_PROGRESS_UPDATES_PER_SECOND
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".FILE_TRANSFER_MAX_PROGRESS_UPDATES_PER_SECOND";
+
+    /**
+     * The default maximum number of progress events fired per second for a
+     * single file transfer.
+     */
+    static final int DEFAULT_MAX_PROGRESS_UPDATES_PER_SECOND = 10;
+
+    /**
+     * The maximum interval in milliseconds between two samples of a transfer
+     * which does not progress.
+     */
+    private static final long MAX_SAMPLING_INTERVAL = 1000;
+
+    /**
+     * The <tt>Timer</tt> which samples all file transfers. Created on demand.
+     */
+    private static Timer timer;
+
+    /**
+     * The <tt>Runnable</tt> to be run when the transfer ends or
+     * <tt>null</tt>.
+     */
+    private final Runnable endedCallback;
+
+    /**
+     * The transfer whose status and progress are reported.
+     */
+    private final AbstractFileTransfer fileTransfer;
+
+    /**
+     * The expected size of the file or <tt>0</tt> if it is not known. An
+     * incoming transfer which completes with less bytes is reported as
+     * canceled.
+     */
+    private final long initialFileSize;
+
+    /**
+     * The Smack transfer which is sampled.
+     */
+    private final org.jivesoftware.smackx.filetransfer.FileTransfer
+        jabberTransfer;
+
+    /**
+     * The progress reported with the last progress event or <tt>-1</tt>.
+     */
+    private long lastProgress = -1;
+
+    /**
+     * The minimum interval in milliseconds between two samples.
+     */
+    private final long minSamplingInterval;
+
+    /**
+     * The indicator which determines whether the transfer has ended and is no
+     * longer sampled.
+     */
+    private boolean ended = false;
+
+    /**
+     * The current interval in milliseconds between two samples.
+     */
+    private long samplingInterval;
+
+    /**
+     * Initializes a new <tt>FileTransferProgressTracker</tt>.
+     *
+     * @param jabberTransfer the Smack transfer to be sampled
+     * @param fileTransfer the transfer whose status and progress are to be
+     * reported
+     * @param initialFileSize the expected size of the file or <tt>0</tt>
+     * @param endedCallback the <tt>Runnable</tt> to be run when the transfer
+     * ends or <tt>null</tt>
+     */
+    private FileTransferProgressTracker(
+            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
+            AbstractFileTransfer fileTransfer,
+            long initialFileSize,
+            Runnable endedCallback)
+    {
+        this.jabberTransfer = jabberTransfer;
+        this.fileTransfer = fileTransfer;
+        this.initialFileSize = initialFileSize;
+        this.endedCallback = endedCallback;
+
+        int maxUpdatesPerSecond = DEFAULT_MAX_PROGRESS_UPDATES_PER_SECOND;
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
+
+        if (cfg != null)
+        {
+            maxUpdatesPerSecond
+                = cfg.getInt(
+                        PNAME_MAX_PROGRESS_UPDATES_PER_SECOND,
+                        maxUpdatesPerSecond);
+        }
+        if (maxUpdatesPerSecond <= 0)
+            maxUpdatesPerSecond = DEFAULT_MAX_PROGRESS_UPDATES_PER_SECOND;
+
+        minSamplingInterval = Math.max(1, 1000 / maxUpdatesPerSecond);
+        samplingInterval = minSamplingInterval;
+    }
+
+    /**
+     * Starts reporting the status and the progress of a file transfer until
+     * it ends.
+     *
+     * @param jabberTransfer the Smack transfer to be sampled
+     * @param fileTransfer the transfer whose status and progress are to be
+     * reported
+     * @param initialFileSize the expected size of the file or <tt>0</tt> if
+     * it is not known
+     * @param endedCallback the <tt>Runnable</tt> to be run when the transfer
+     * ends or <tt>null</tt>
+     * @return the <tt>FileTransferProgressTracker</tt> tracking
+     * <tt>fileTransfer</tt>
+     */
+    static FileTransferProgressTracker track(
+            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
+            AbstractFileTransfer fileTransfer,
+            long initialFileSize,
+            Runnable endedCallback)
+    {
+        FileTransferProgressTracker tracker
+            = new FileTransferProgressTracker(
+                    jabberTransfer,
+                    fileTransfer,
+                    initialFileSize,
+                    endedCallback);
+
+        tracker.schedule(0);
+        return tracker;
+    }
+
+    /**
+     * Determines whether the transfer has ended and is no longer tracked.
+     *
+     * @return <tt>true</tt> if the transfer has ended; otherwise,
+     * <tt>false</tt>
+     */
+    synchronized boolean isEnded()
+    {
+        return ended;
+    }
+
+    /**
+     * Ends the tracking of the transfer with a specific status, e.g. because
+     * it could not be started at all.
+     *
+     * @param status the final status of the transfer
+     * @param reason the reason of the final status
+     */
+    void end(int status, String reason)
+    {
+        end(status, reason, -1);
+    }
+
+    /**
+     * Ends the tracking of the transfer with a specific status and fires the
+     * final progress of the transfer.
+     *
+     * @param status the final status of the transfer
+     * @param reason the reason of the final status
+     * @param progress the final number of bytes transferred or <tt>-1</tt>
+     * if no progress event is to be fired
+     */
+    private void end(int status, String reason, long progress)
+    {
+        synchronized (this)
+        {
+            if (ended)
+                return;
+            ended = true;
+        }
+
+        fileTransfer.fireStatusChangeEvent(status, reason);
+        if (progress >= 0)
+        {
+            fileTransfer.fireProgressChangeEvent(
+                System.currentTimeMillis(), progress);
+        }
+        if (endedCallback != null)
+            endedCallback.run();
+    }
+
+    /**
+     * Completes the tracking of a transfer which Smack reports as ended.
+     *
+     * @param status the status of the Smack transfer
+     * @param progress the number of bytes transferred
+     */
+    private void ended(int status, long progress)
+    {
+        String statusReason = "";
+
+        if (fileTransfer instanceof OutgoingFileTransferJabberImpl)
+        {
+            ((OutgoingFileTransferJabberImpl) fileTransfer)
+                .removeThumbnailRequestListener();
+        }
+
+        // sometimes a filetransfer can be preparing
+        // and than completed :
+        // transfered in one sample
+        // so it won't go through intermediate state - inProgress
+        // make sure this won't happen
+        if(status == FileTransferStatusChangeEvent.COMPLETED
+            && fileTransfer.getStatus()
+                == FileTransferStatusChangeEvent.PREPARING)
+        {
+            fileTransfer.fireStatusChangeEvent(
+                FileTransferStatusChangeEvent.IN_PROGRESS,
+                "Status changed");
+            fileTransfer.fireProgressChangeEvent(
+                System.currentTimeMillis(), progress);
+        }
+
+        if (jabberTransfer.getError() != null)
+        {
+            logger.error("An error occured while transfering file: "
+                +  jabberTransfer.getError().getMessage());
+        }
+
+        if (jabberTransfer.getException() != null)
+        {
+            logger.error("An exception occured while transfering file: ",
+                jabberTransfer.getException());
+
+            if(jabberTransfer.getException() instanceof XMPPException)
+            {
+                XMPPError error =
+                    ((XMPPException)jabberTransfer.getException())
+                        .getXMPPError();
+                if (error != null)
+                    if(error.getCode() == 406
+                       || error.getCode() == 403)
+                        status = FileTransferStatusChangeEvent.REFUSED;
+            }
+
+            statusReason = jabberTransfer.getException().getMessage();
+        }
+
+        if (initialFileSize > 0
+            && status == FileTransferStatusChangeEvent.COMPLETED
+            && fileTransfer.getTransferedBytes() < initialFileSize)
+        {
+            status = FileTransferStatusChangeEvent.CANCELED;
+        }
+
+        end(status, statusReason, progress);
+    }
+
+    /**
+     * Samples the status and the progress of the transfer, fires the
+     * corresponding events and schedules the next sample.
+     */
+    private void sample()
+    {
+        synchronized (this)
+        {
+            if (ended)
+                return;
+        }
+
+        int status = parseJabberStatus(jabberTransfer.getStatus());
+        long progress = fileTransfer.getTransferedBytes();
+
+        if (status == FileTransferStatusChangeEvent.FAILED
+            || status == FileTransferStatusChangeEvent.COMPLETED
+            || status == FileTransferStatusChangeEvent.CANCELED
+            || status == FileTransferStatusChangeEvent.REFUSED)
+        {
+            ended(status, progress);
+            return;
+        }
+
+        fileTransfer.fireStatusChangeEvent(status, "Status changed");
+
+        if (progress != lastProgress)
+        {
+            lastProgress = progress;
+            fileTransfer.fireProgressChangeEvent(
+                System.currentTimeMillis(), progress);
+            samplingInterval = minSamplingInterval;
+        }
+        else
+        {
+            samplingInterval
+                = Math.min(samplingInterval * 2, MAX_SAMPLING_INTERVAL);
+        }
+
+        schedule(samplingInterval);
+    }
+
+    /**
+     * Schedules the next sample of the transfer.
+     *
+     * @param delay the delay in milliseconds of the next sample
+     */
+    private void schedule(long delay)
+    {
+        TimerTask task
+            = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        sample();
+                    }
+                    catch (Throwable t)
+                    {
+                        if (t instanceof ThreadDeath)
+                            throw (ThreadDeath) t;
+
+                        // The timer is shared so a failing listener must
+                        // neither kill it nor stop the tracking.
+                        logger.error("Failed to update file transfer.", t);
+                        schedule(MAX_SAMPLING_INTERVAL);
+                    }
+                }
+            };
+
+        synchronized (FileTransferProgressTracker.class)
+        {
+            if (timer == null)
+            {
+                timer
+                    = new Timer(
+                            FileTransferProgressTracker.class.getName(),
+                            true);
+            }
+            timer.schedule(task, delay);
+        }
+    }
+
+    /**
+     * Parses the given Jabber status to a <tt>FileTransfer</tt> interface
+     * status.
+     *
+     * @param jabberStatus the Jabber status to parse
+     * @return the parsed status
+     */
+    private static int parseJabberStatus(Status jabberStatus)
+    {
+        if (jabberStatus.equals(Status.complete))
+            return FileTransferStatusChangeEvent.COMPLETED;
+        else if (jabberStatus.equals(Status.cancelled))
+            return FileTransferStatusChangeEvent.CANCELED;
+        else if (jabberStatus.equals(Status.in_progress)
+                || jabberStatus.equals(Status.negotiated))
+            return FileTransferStatusChangeEvent.IN_PROGRESS;
+        else if (jabberStatus.equals(Status.error))
+            return FileTransferStatusChangeEvent.FAILED;
+        else if (jabberStatus.equals(Status.refused))
+            return FileTransferStatusChangeEvent.REFUSED;
+        else if (jabberStatus.equals(Status.negotiating_transfer)
+                || jabberStatus.equals(Status.negotiating_stream))
+            return FileTransferStatusChangeEvent.PREPARING;
+        else
+             // FileTransfer.Status.initial
+            return FileTransferStatusChangeEvent.WAITING;
+    }
+}
@@ -70,6 +70,21 @@ public class IncomingFileTransferJabberImpl
         return jabberTransfer.getAmountWritten();
     }
 
+    /**
+     * Returns the size of the file being received as announced by the
+     * sender.
+     *
+     * @return the size of the file being received or <tt>-1</tt> if it is not
+     * known
+     */
+    @Override
+    public long getTotalBytes()
+    {
+        long fileSize = jabberTransfer.getFileSize();
+
+        return (fileSize > 0) ? fileSize : -1;
+    }
+
     /**
      * The direction is incoming.
      *
@@ -20,6 +20,7 @@ import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smackx.filetransfer.*;
+import org.jivesoftware.smackx.packet.*;
 
 /**
  * Jabber implementation of the incoming file transfer request
@@ -43,6 +44,11 @@ public class IncomingFileTransferRequestJabberImpl
      */
     private final FileTransferRequest fileTransferRequest;
 
+    /**
+     * The offer of the file which has been received.
+     */
+    private final StreamInitiation streamInitiation;
+
     private final OperationSetFileTransferJabberImpl fileTransferOpSet;
 
     private final ProtocolProviderServiceJabberImpl jabberProvider;
@@ -60,15 +66,18 @@ public class IncomingFileTransferRequestJabberImpl
      * @param jabberProvider the protocol provider
      * @param fileTransferOpSet file transfer operation set
      * @param fileTransferRequest the request coming from the Jabber protocol
+     * @param streamInitiation the offer of the file the request is for
      */
     public IncomingFileTransferRequestJabberImpl(
         ProtocolProviderServiceJabberImpl jabberProvider,
         OperationSetFileTransferJabberImpl fileTransferOpSet,
-        FileTransferRequest fileTransferRequest)
+        FileTransferRequest fileTransferRequest,
+        StreamInitiation streamInitiation)
     {
         this.jabberProvider = jabberProvider;
         this.fileTransferOpSet = fileTransferOpSet;
         this.fileTransferRequest = fileTransferRequest;
+        this.streamInitiation = streamInitiation;
 
         String fromUserID
             = StringUtils.parseBareAddress(fileTransferRequest.getRequestor());
@@ -125,7 +134,9 @@ public class IncomingFileTransferRequestJabberImpl
     }
 
     /**
-     * Accepts the file and starts the transfer.
+     * Accepts the file and starts the transfer. The part of the file which
+     * has been received by an earlier, interrupted transfer is not
+     * transferred again if the sender supports it.
      *
      * @return a boolean : <code>false</code> if the transfer fails,
      * <code>true</code> otherwise
@@ -134,7 +145,11 @@ public class IncomingFileTransferRequestJabberImpl
     {
         AbstractFileTransfer incomingTransfer = null;
 
-        IncomingFileTransfer jabberTransfer = fileTransferRequest.accept();
+        IncomingFileTransfer jabberTransfer
+            = new ResumableIncomingFileTransfer(
+                    jabberProvider.getConnection(),
+                    fileTransferRequest,
+                    streamInitiation);
         try
         {
             incomingTransfer
@@ -148,9 +163,8 @@ public class IncomingFileTransferRequestJabberImpl
 
             jabberTransfer.recieveFile(file);
 
-            new OperationSetFileTransferJabberImpl
-                .FileTransferProgressThread(
-                jabberTransfer, incomingTransfer, getFileSize()).start();
+            FileTransferProgressTracker.track(
+                jabberTransfer, incomingTransfer, getFileSize(), null);
         }
         catch (XMPPException e)
         {
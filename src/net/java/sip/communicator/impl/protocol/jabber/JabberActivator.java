@@ -8,6 +8,7 @@ package net.java.sip.communicator.impl.protocol.jabber;
 
 import java.util.*;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.service.credentialsstorage.*;
 import net.java.sip.communicator.service.googlecontacts.*;
 import net.java.sip.communicator.service.gui.*;
@@ -18,6 +19,7 @@ import net.java.sip.communicator.service.resources.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.packetlogging.*;
 import org.jitsi.service.resources.*;
@@ -112,6 +114,12 @@ public class JabberActivator
      */
     private static VersionService versionService        = null;
 
+    /**
+     * A reference to the currently valid <tt>FileAccessService</tt>
+     * instance.
+     */
+    private static FileAccessService fileAccessService = null;
+
     /**
      * Called when this bundle is started so the Framework can perform the
      * bundle-specific activities necessary to start this bundle.
@@ -230,6 +238,8 @@ public class JabberActivator
             uriHandlerImpl = null;
         }
 
+        EntityCapsManager.storeDiscoverInfoCache();
+
         configurationService = null;
         mediaService = null;
         networkAddressManagerService = null;
@@ -421,4 +431,24 @@ public class JabberActivator
         }
         return versionService;
     }
+
+    /**
+     * Returns a reference to a FileAccessService implementation currently
+     * registered in the bundle context or null if no such implementation
+     * was found.
+     *
+     * @return a reference to a FileAccessService implementation currently
+     * registered in the bundle context or null if no such implementation
+     * was found.
+     */
+    public static FileAccessService getFileAccessService()
+    {
+        if (fileAccessService == null)
+        {
+            fileAccessService
+                = ServiceUtils.getService(
+                        bundleContext, FileAccessService.class);
+        }
+        return fileAccessService;
+    }
 }
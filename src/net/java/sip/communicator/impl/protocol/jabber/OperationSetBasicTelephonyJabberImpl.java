@@ -13,6 +13,7 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.media.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.neomedia.*;
@@ -1099,14 +1100,15 @@ public class OperationSetBasicTelephonyJabberImpl
 
             final CallJabberImpl finalCall = call;
 
-            new Thread()
-            {
-                @Override
-                public void run()
+            ThreadingUtils.execute(
+                ThreadingService.CALL_POOL,
+                new Runnable()
                 {
-                    finalCall.processSessionInitiate(jingleIQ);
-                }
-            }.start();
+                    public void run()
+                    {
+                        finalCall.processSessionInitiate(jingleIQ);
+                    }
+                });
 
             return;
         }
@@ -1258,23 +1260,25 @@ public class OperationSetBasicTelephonyJabberImpl
 
                 // launch the "new" call in another thread to not block
                 // smack processor
-                new Thread()
-                {
-                    @Override
-                    public void run()
+                ThreadingUtils.execute(
+                    ThreadingService.CALL_POOL,
+                    new Runnable()
                     {
-                        try
+                        public void run()
                         {
-                            call.initiateGTalkSession(redirAddr, null);
-                            callPeer.setState(CallPeerState.DISCONNECTED);
+                            try
+                            {
+                                call.initiateGTalkSession(redirAddr, null);
+                                callPeer.setState(CallPeerState.DISCONNECTED);
+                            }
+                            catch(Exception e)
+                            {
+                                logger.info(
+                                    "Failed to initiate GTalk session "
+                                        + "(redirect)");
+                            }
                         }
-                        catch(Exception e)
-                        {
-                            logger.info(
-                                "Failed to initiate GTalk session (redirect)");
-                        }
-                    }
-                }.start();
+                    });
                 return;
             }
 
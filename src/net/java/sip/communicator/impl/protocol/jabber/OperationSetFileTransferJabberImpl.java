@@ -18,11 +18,11 @@ import net.java.sip.communicator.service.protocol.event.FileTransferListener;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.service.configuration.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.provider.*;
-import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
 import org.jivesoftware.smackx.filetransfer.*;
 import org.jivesoftware.smackx.packet.*;
 
@@ -69,6 +69,34 @@ public class OperationSetFileTransferJabberImpl
     private Vector<FileTransferListener> fileTransferListeners
         = new Vector<FileTransferListener>();
 
+    /**
+     * The name of the property which specifies the maximum number of outgoing
+     * file transfers of an account which may be in progress at the same
+     * time. Further transfers wait in a queue until one of them ends.
+     */
+    private static final String PNAME_MAX_CONCURRENT_TRANSFERS
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".MAX_CONCURRENT_FILE_TRANSFERS";
+
+    /**
+     * The default maximum number of outgoing file transfers of an account
+     * which may be in progress at the same time.
+     */
+    private static final int DEFAULT_MAX_CONCURRENT_TRANSFERS = 3;
+
+    /**
+     * The number of outgoing file transfers which have been started and have
+     * not ended yet.
+     */
+    private int activeTransferCount = 0;
+
+    /**
+     * The outgoing file transfers waiting to be started in the order they
+     * were requested.
+     */
+    private final LinkedList<QueuedTransfer> queuedTransfers
+        = new LinkedList<QueuedTransfer>();
+
     // Register file transfer features on every established connection
     // to make sure we register them before creating our
     // ServiceDiscoveryManager
@@ -112,99 +140,190 @@ public class OperationSetFileTransferJabberImpl
                 IllegalArgumentException,
                 OperationNotSupportedException
     {
-        OutgoingFileTransferJabberImpl outgoingTransfer = null;
-
-        try
+        assertConnected();
+
+        if(file.length() > getMaximumFileLength())
+            throw new IllegalArgumentException(
+                "File length exceeds the allowed one for this protocol");
+
+        // Find the jid of the contact which support file transfer
+        // and is with highest priority if more than one found
+        // if we have equals priorities
+        // choose the one that is more available
+        Iterator<Presence> iter = jabberProvider.getConnection().getRoster()
+            .getPresences(toContact.getAddress());
+        int bestPriority = -1;
+        String fullJid = null;
+        PresenceStatus jabberStatus = null;
+
+        while(iter.hasNext())
         {
-            assertConnected();
-
-            if(file.length() > getMaximumFileLength())
-                throw new IllegalArgumentException(
-                    "File length exceeds the allowed one for this protocol");
-
-            // Find the jid of the contact which support file transfer
-            // and is with highest priority if more than one found
-            // if we have equals priorities
-            // choose the one that is more available
-            Iterator<Presence> iter = jabberProvider.getConnection().getRoster()
-                .getPresences(toContact.getAddress());
-            int bestPriority = -1;
-            String fullJid = null;
-            PresenceStatus jabberStatus = null;
-
-            while(iter.hasNext())
-            {
-                Presence presence = iter.next();
+            Presence presence = iter.next();
 
-                if(jabberProvider.isFeatureListSupported(presence.getFrom(),
-                    new String[]{"http://jabber.org/protocol/si",
-                        "http://jabber.org/protocol/si/profile/file-transfer"}))
-                {
+            if(jabberProvider.isFeatureListSupported(presence.getFrom(),
+                new String[]{"http://jabber.org/protocol/si",
+                    "http://jabber.org/protocol/si/profile/file-transfer"}))
+            {
 
-                    int priority =
-                        (presence.getPriority() == Integer.MIN_VALUE) ?
-                            0 : presence.getPriority();
+                int priority =
+                    (presence.getPriority() == Integer.MIN_VALUE) ?
+                        0 : presence.getPriority();
 
-                    if(priority > bestPriority)
+                if(priority > bestPriority)
+                {
+                    bestPriority = priority;
+                    fullJid = presence.getFrom();
+                    jabberStatus = OperationSetPersistentPresenceJabberImpl
+                        .jabberStatusToPresenceStatus(
+                            presence, jabberProvider);
+                }
+                else if(priority == bestPriority && jabberStatus != null)
+                {
+                    PresenceStatus tempStatus =
+                        OperationSetPersistentPresenceJabberImpl
+                           .jabberStatusToPresenceStatus(
+                               presence, jabberProvider);
+                    if(tempStatus.compareTo(jabberStatus) > 0)
                     {
-                        bestPriority = priority;
                         fullJid = presence.getFrom();
-                        jabberStatus = OperationSetPersistentPresenceJabberImpl
-                            .jabberStatusToPresenceStatus(
-                                presence, jabberProvider);
-                    }
-                    else if(priority == bestPriority && jabberStatus != null)
-                    {
-                        PresenceStatus tempStatus =
-                            OperationSetPersistentPresenceJabberImpl
-                               .jabberStatusToPresenceStatus(
-                                   presence, jabberProvider);
-                        if(tempStatus.compareTo(jabberStatus) > 0)
-                        {
-                            fullJid = presence.getFrom();
-                            jabberStatus = tempStatus;
-                        }
+                        jabberStatus = tempStatus;
                     }
                 }
             }
+        }
 
-            // First we check if file transfer is at all supported for this
-            // contact.
-            if (fullJid == null)
-            {
-                throw new OperationNotSupportedException(
-                    "Contact client or server does not support file transfers.");
-            }
+        // First we check if file transfer is at all supported for this
+        // contact.
+        if (fullJid == null)
+        {
+            throw new OperationNotSupportedException(
+                "Contact client or server does not support file transfers.");
+        }
 
-            OutgoingFileTransfer transfer
-                = manager.createOutgoingFileTransfer(fullJid);
+        OutgoingFileTransfer transfer
+            = new ResumableOutgoingFileTransfer(
+                    jabberProvider.getConnection(),
+                    fullJid);
 
-            outgoingTransfer
-                = new OutgoingFileTransferJabberImpl(
-                    toContact, file, transfer, jabberProvider);
+        OutgoingFileTransferJabberImpl outgoingTransfer
+            = new OutgoingFileTransferJabberImpl(
+                toContact, file, transfer, jabberProvider);
 
-            // Notify all interested listeners that a file transfer has been
-            // created.
-            FileTransferCreatedEvent event
-                = new FileTransferCreatedEvent(outgoingTransfer, new Date());
+        // Notify all interested listeners that a file transfer has been
+        // created.
+        FileTransferCreatedEvent event
+            = new FileTransferCreatedEvent(outgoingTransfer, new Date());
 
-            fireFileTransferCreated(event);
+        fireFileTransferCreated(event);
 
-            // Send the file through the Jabber file transfer.
-            transfer.sendFile(file, "Sending file");
+        // Track the status and progress of the transfer and send the
+        // file once less than the maximum number of concurrent transfers
+        // of this account are in progress.
+        QueuedTransfer queuedTransfer
+            = new QueuedTransfer(transfer, outgoingTransfer, file);
 
-            // Start the status and progress thread.
-            new FileTransferProgressThread(
-                transfer, outgoingTransfer).start();
-        }
-        catch(XMPPException e)
+        queuedTransfer.tracker
+            = FileTransferProgressTracker.track(
+                    transfer, outgoingTransfer, 0, queuedTransfer);
+
+        synchronized (queuedTransfers)
         {
-            logger.error("Failed to send file.", e);
+            queuedTransfers.add(queuedTransfer);
         }
+        startQueuedTransfers();
 
         return outgoingTransfer;
     }
 
+    /**
+     * Gets the maximum number of outgoing file transfers of this account
+     * which may be in progress at the same time.
+     *
+     * @return the maximum number of concurrent outgoing file transfers
+     */
+    private int getMaxConcurrentTransfers()
+    {
+        int maxConcurrentTransfers = DEFAULT_MAX_CONCURRENT_TRANSFERS;
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
+
+        if (cfg != null)
+        {
+            maxConcurrentTransfers
+                = cfg.getInt(
+                        PNAME_MAX_CONCURRENT_TRANSFERS,
+                        maxConcurrentTransfers);
+        }
+        return
+            (maxConcurrentTransfers > 0)
+                ? maxConcurrentTransfers
+                : DEFAULT_MAX_CONCURRENT_TRANSFERS;
+    }
+
+    /**
+     * Starts sending the queued files while less than the maximum number of
+     * concurrent transfers are in progress.
+     */
+    private void startQueuedTransfers()
+    {
+        int maxConcurrentTransfers = getMaxConcurrentTransfers();
+
+        while (true)
+        {
+            QueuedTransfer queuedTransfer;
+
+            synchronized (queuedTransfers)
+            {
+                if (activeTransferCount >= maxConcurrentTransfers)
+                    return;
+
+                queuedTransfer = queuedTransfers.poll();
+                if (queuedTransfer == null)
+                    return;
+                // canceled while waiting
+                if (queuedTransfer.tracker.isEnded())
+                    continue;
+
+                activeTransferCount++;
+                queuedTransfer.started = true;
+            }
+
+            try
+            {
+                // Send the file through the Jabber file transfer.
+                queuedTransfer.transfer.sendFile(
+                    queuedTransfer.file, "Sending file");
+            }
+            catch(XMPPException e)
+            {
+                logger.error("Failed to send file.", e);
+
+                queuedTransfer.tracker.end(
+                    FileTransferStatusChangeEvent.FAILED, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cancels the outgoing file transfers which are waiting to be started.
+     */
+    private void cancelQueuedTransfers()
+    {
+        List<QueuedTransfer> canceledTransfers;
+
+        synchronized (queuedTransfers)
+        {
+            canceledTransfers = new ArrayList<QueuedTransfer>(queuedTransfers);
+            queuedTransfers.clear();
+        }
+
+        for (QueuedTransfer queuedTransfer : canceledTransfers)
+        {
+            queuedTransfer.tracker.end(
+                FileTransferStatusChangeEvent.CANCELED,
+                "The account has been signed off.");
+        }
+    }
+
     /**
      * Sends a file transfer request to the given <tt>toContact</tt> by
      * specifying the local and remote file path and the <tt>fromContact</tt>,
@@ -294,13 +413,14 @@ public class OperationSetFileTransferJabberImpl
 
     /**
      * Returns the maximum file length supported by the protocol in bytes.
-     * Supports up to 2GB.
+     * Neither the offer of a file nor the bytestreams limit its length and
+     * interrupted transfers may be resumed.
      *
      * @return the file length that is supported.
      */
     public long getMaximumFileLength()
     {
-        return 2147483648l;// = 2048*1024*1024;
+        return Long.MAX_VALUE;
     }
 
     /**
@@ -373,6 +493,8 @@ public class OperationSetFileTransferJabberImpl
 
                 fileTransferRequestListener = null;
                 manager = null;
+
+                cancelQueuedTransfers();
             }
         }
     }
@@ -404,7 +526,8 @@ public class OperationSetFileTransferJabberImpl
                 = new IncomingFileTransferRequestJabberImpl(
                         jabberProvider,
                         OperationSetFileTransferJabberImpl.this,
-                        jabberRequest);
+                        jabberRequest,
+                        streamInitiation);
 
             // Send a thumbnail request if a thumbnail is advertised in the
             // streamInitiation packet.
@@ -522,159 +645,75 @@ public class OperationSetFileTransferJabberImpl
     }
 
     /**
-     * Updates file transfer progress and status while sending or receiving a
-     * file.
+     * An outgoing file transfer which is waiting to be started or is in
+     * progress.
      */
-    protected static class FileTransferProgressThread extends Thread
+    private class QueuedTransfer
+        implements Runnable
     {
-        private final org.jivesoftware.smackx.filetransfer.FileTransfer
-            jabberTransfer;
-        private final AbstractFileTransfer fileTransfer;
+        /**
+         * The file to be sent.
+         */
+        final File file;
+
+        /**
+         * The <tt>FileTransfer</tt> notified about the status and the
+         * progress of the transfer.
+         */
+        final OutgoingFileTransferJabberImpl fileTransfer;
 
-        private long initialFileSize;
+        /**
+         * The indicator which determines whether the transfer has been
+         * started.
+         */
+        boolean started = false;
 
-        public FileTransferProgressThread(
-            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer,
-            long initialFileSize)
-        {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
-            this.initialFileSize = initialFileSize;
-        }
+        /**
+         * The <tt>FileTransferProgressTracker</tt> which reports the status
+         * and the progress of the transfer.
+         */
+        FileTransferProgressTracker tracker;
 
-        public FileTransferProgressThread(
-            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer)
+        /**
+         * The Smack transfer which sends the file.
+         */
+        final OutgoingFileTransfer transfer;
+
+        /**
+         * Initializes a new <tt>QueuedTransfer</tt>.
+         *
+         * @param transfer the Smack transfer which is to send the file
+         * @param fileTransfer the <tt>FileTransfer</tt> to be notified about
+         * the status and the progress of the transfer
+         * @param file the file to be sent
+         */
+        QueuedTransfer(
+                OutgoingFileTransfer transfer,
+                OutgoingFileTransferJabberImpl fileTransfer,
+                File file)
         {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
+            this.transfer = transfer;
+            this.fileTransfer = fileTransfer;
+            this.file = file;
         }
 
         /**
-         * Thread entry point.
+         * Releases the slot of the transfer when it ends and starts the next
+         * queued transfer. A transfer which ends before it is started, e.g.
+         * because it is canceled while waiting, is removed from the queue.
          */
-        @Override
         public void run()
         {
-            int status;
-            long progress;
-            String statusReason = "";
-
-            while (true)
+            synchronized (queuedTransfers)
             {
-                try
+                if (!started)
                 {
-                    Thread.sleep(10);
-
-                    status = parseJabberStatus(jabberTransfer.getStatus());
-                    progress = fileTransfer.getTransferedBytes();
-
-                    if (status == FileTransferStatusChangeEvent.FAILED
-                        || status == FileTransferStatusChangeEvent.COMPLETED
-                        || status == FileTransferStatusChangeEvent.CANCELED
-                        || status == FileTransferStatusChangeEvent.REFUSED)
-                    {
-                        if (fileTransfer instanceof
-                                OutgoingFileTransferJabberImpl)
-                        {
-                            ((OutgoingFileTransferJabberImpl) fileTransfer)
-                                .removeThumbnailRequestListener();
-                        }
-
-                        // sometimes a filetransfer can be preparing
-                        // and than completed :
-                        // transfered in one iteration of current thread
-                        // so it won't go through intermediate state - inProgress
-                        // make sure this won't happen
-                        if(status == FileTransferStatusChangeEvent.COMPLETED
-                            && fileTransfer.getStatus()
-                                == FileTransferStatusChangeEvent.PREPARING)
-                        {
-                            fileTransfer.fireStatusChangeEvent(
-                                FileTransferStatusChangeEvent.IN_PROGRESS,
-                                "Status changed");
-                            fileTransfer.fireProgressChangeEvent(
-                                System.currentTimeMillis(), progress);
-                        }
-
-                        break;
-                    }
-
-                    fileTransfer.fireStatusChangeEvent(status, "Status changed");
-                    fileTransfer.fireProgressChangeEvent(
-                        System.currentTimeMillis(), progress);
-                }
-                catch (InterruptedException e)
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Unable to sleep thread.", e);
+                    queuedTransfers.remove(this);
+                    return;
                 }
+                activeTransferCount--;
             }
-
-            if (jabberTransfer.getError() != null)
-            {
-                logger.error("An error occured while transfering file: "
-                    +  jabberTransfer.getError().getMessage());
-            }
-
-            if (jabberTransfer.getException() != null)
-            {
-                logger.error("An exception occured while transfering file: ",
-                    jabberTransfer.getException());
-
-                if(jabberTransfer.getException() instanceof XMPPException)
-                {
-                    XMPPError error =
-                        ((XMPPException)jabberTransfer.getException())
-                            .getXMPPError();
-                    if (error != null)
-                        if(error.getCode() == 406
-                           || error.getCode() == 403)
-                            status = FileTransferStatusChangeEvent.REFUSED;
-                }
-
-                statusReason = jabberTransfer.getException().getMessage();
-            }
-
-            if (initialFileSize > 0
-                && status == FileTransferStatusChangeEvent.COMPLETED
-                && fileTransfer.getTransferedBytes() < initialFileSize)
-            {
-                status = FileTransferStatusChangeEvent.CANCELED;
-            }
-
-            fileTransfer.fireStatusChangeEvent(status, statusReason);
-            fileTransfer.fireProgressChangeEvent(
-                System.currentTimeMillis(), progress);
+            startQueuedTransfers();
         }
     }
-
-    /**
-     * Parses the given Jabber status to a <tt>FileTransfer</tt> interface
-     * status.
-     *
-     * @param jabberStatus the Jabber status to parse
-     * @return the parsed status
-     */
-    private static int parseJabberStatus(Status jabberStatus)
-    {
-        if (jabberStatus.equals(Status.complete))
-            return FileTransferStatusChangeEvent.COMPLETED;
-        else if (jabberStatus.equals(Status.cancelled))
-            return FileTransferStatusChangeEvent.CANCELED;
-        else if (jabberStatus.equals(Status.in_progress)
-                || jabberStatus.equals(Status.negotiated))
-            return FileTransferStatusChangeEvent.IN_PROGRESS;
-        else if (jabberStatus.equals(Status.error))
-            return FileTransferStatusChangeEvent.FAILED;
-        else if (jabberStatus.equals(Status.refused))
-            return FileTransferStatusChangeEvent.REFUSED;
-        else if (jabberStatus.equals(Status.negotiating_transfer)
-                || jabberStatus.equals(Status.negotiating_stream))
-            return FileTransferStatusChangeEvent.PREPARING;
-        else
-             // FileTransfer.Status.initial
-            return FileTransferStatusChangeEvent.WAITING;
-    }
 }
@@ -8,15 +8,19 @@ package net.java.sip.communicator.impl.protocol.jabber;
 
 import java.util.*;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.rsm.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 
 import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smackx.*;
 import org.jivesoftware.smackx.muc.*;
+import org.jivesoftware.smackx.packet.*;
 
 /**
  * A jabber implementation of the multi user chat operation set.
@@ -47,6 +51,12 @@ public class OperationSetMultiUserChatJabberImpl
     private final Hashtable<String, ChatRoom> chatRoomCache
         = new Hashtable<String, ChatRoom>();
 
+    /**
+     * The lists of the rooms hosted by the conference services of the server
+     * which have been retrieved recently.
+     */
+    private final ChatRoomDirectory chatRoomDirectory = new ChatRoomDirectory();
+
     /**
      * The registration listener that would get notified when the underlying
      * Jabber provider gets registered.
@@ -346,17 +356,58 @@ public class OperationSetMultiUserChatJabberImpl
     public List<String> getExistingChatRooms()
         throws  OperationFailedException,
                 OperationNotSupportedException
+    {
+        final List<String> list = new Vector<String>();
+
+        getExistingChatRooms(
+                null,
+                new ChatRoomDirectoryListener()
+                {
+                    public void chatRoomsReceived(ChatRoomDirectoryEvent evt)
+                    {
+                        list.addAll(evt.getChatRoomNames());
+                    }
+                });
+
+        /** @todo maybe we should add a check here and fail if retrieving chat
+         * rooms failed for all service names*/
+
+        return list;
+    }
+
+    /**
+     * Retrieves the chat rooms currently available on the server that this
+     * protocol provider is connected to the names of which contain a specific
+     * filter and delivers their names to a specific listener page by page.
+     * The rooms are requested from every conference service in pages using
+     * result set management (XEP-0059) if the service supports it. The
+     * complete list of the rooms of every service is cached for a while.
+     *
+     * @param filter the string which the names of the chat rooms are to
+     * contain ignoring case or <tt>null</tt> to retrieve all chat rooms
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names of the chat rooms to
+     * @throws OperationFailedException if we failed retrieving the conference
+     * service names from the server
+     * @throws OperationNotSupportedException if the server does not support
+     * multi user chat
+     */
+    @Override
+    public void getExistingChatRooms(
+            String filter,
+            ChatRoomDirectoryListener listener)
+        throws  OperationFailedException,
+                OperationNotSupportedException
     {
         assertSupportedAndConnected();
 
-        List<String> list = new LinkedList<String>();
+        XMPPConnection connection = getXmppConnection();
 
         //first retrieve all conference service names available on this server
-        Iterator<String> serviceNames = null;
+        Collection<String> serviceNames;
         try
         {
-            serviceNames = MultiUserChat
-                .getServiceNames(getXmppConnection()).iterator();
+            serviceNames = MultiUserChat.getServiceNames(connection);
         }
         catch (XMPPException ex)
         {
@@ -366,39 +417,125 @@ public class OperationSetMultiUserChatJabberImpl
                 , ex);
         }
 
-        //now retrieve all chat rooms currently available for every service name
-        while(serviceNames.hasNext())
+        //now retrieve the chat rooms currently available for every service name
+        for (String serviceName : serviceNames)
         {
-            String serviceName = serviceNames.next();
-            List<HostedRoom> roomsOnThisService = new LinkedList<HostedRoom>();
+            if (Thread.currentThread().isInterrupted())
+                return;
+
+            if (chatRoomDirectory.deliverCached(
+                    this,
+                    serviceName,
+                    filter,
+                    listener))
+                continue;
+
+            ChatRoomDirectory.Listing listing
+                = chatRoomDirectory.createListing(
+                        this,
+                        serviceName,
+                        filter,
+                        listener);
 
             try
             {
-                roomsOnThisService
-                    .addAll(MultiUserChat.getHostedRooms(getXmppConnection()
-                                                         , serviceName));
+                if (discoverHostedRooms(connection, serviceName, listing))
+                    listing.complete();
             }
             catch (XMPPException ex)
             {
                 logger.error("Failed to retrieve rooms for serviceName="
                              + serviceName, ex);
                 //continue bravely with other service names
-                continue;
+            }
+        }
+    }
+
+    /**
+     * Discovers the rooms hosted by a specific conference service page by page
+     * and adds their addresses to a specific listing. A service which does not
+     * support result set management (XEP-0059) returns all of its rooms in
+     * the first page.
+     *
+     * @param connection the connection to send the disco#items requests on
+     * @param serviceName the address of the conference service
+     * @param listing the listing to add the addresses of the rooms to
+     * @return <tt>true</tt> if all rooms have been discovered; <tt>false</tt>
+     * if the current thread has been interrupted before that
+     * @throws XMPPException if a disco#items request fails
+     */
+    private boolean discoverHostedRooms(
+            XMPPConnection connection,
+            String serviceName,
+            ChatRoomDirectory.Listing listing)
+        throws XMPPException
+    {
+        String after = null;
+        int discovered = 0;
+
+        do
+        {
+            if (Thread.currentThread().isInterrupted())
+                return false;
+
+            PagedDiscoverItems request = new PagedDiscoverItems();
+
+            request.setType(IQ.Type.GET);
+            request.setTo(serviceName);
+            request.setMax(ChatRoomDirectory.PAGE_SIZE);
+            request.setAfter(after);
+
+            PacketCollector collector
+                = connection.createPacketCollector(
+                        new PacketIDFilter(request.getPacketID()));
+            IQ result;
+
+            try
+            {
+                connection.sendPacket(request);
+                result
+                    = (IQ)
+                        collector.nextResult(
+                                SmackConfiguration.getPacketReplyTimeout());
+            }
+            finally
+            {
+                collector.cancel();
             }
 
-            //now go through all rooms available on this service
-            Iterator<HostedRoom> serviceRoomsIter = roomsOnThisService.iterator();
+            if (result == null)
+                throw new XMPPException("No response from the server.");
+            if (result.getType() == IQ.Type.ERROR)
+                throw new XMPPException(result.getError());
 
-            //add the room name to the list of names we are returning
-            while(serviceRoomsIter.hasNext())
-                list.add(
-                    serviceRoomsIter.next().getJid());
-        }
+            Iterator<DiscoverItems.Item> items
+                = ((DiscoverItems) result).getItems();
+            int pageSize = 0;
 
-        /** @todo maybe we should add a check here and fail if retrieving chat
-         * rooms failed for all service names*/
+            while (items.hasNext())
+            {
+                listing.add(items.next().getEntityID());
+                pageSize++;
+            }
+            discovered += pageSize;
 
-        return list;
+            String last = null;
+
+            if (result instanceof PagedDiscoverItems)
+            {
+                PagedDiscoverItems page = (PagedDiscoverItems) result;
+                int count = page.getCount();
+
+                if ((count < 0) || (discovered < count))
+                    last = page.getLast();
+            }
+            after
+                = ((pageSize == 0) || (last == null) || last.equals(after))
+                    ? null
+                    : last;
+        }
+        while (after != null);
+        return true;
     }
 
     /**
@@ -732,6 +869,7 @@ public class OperationSetMultiUserChatJabberImpl
             {
                 // clear cached chatrooms as there are no longer valid
                 chatRoomCache.clear();
+                chatRoomDirectory.clear();
             }
             else if (evt.getNewState() == RegistrationState.UNREGISTERING)
             {
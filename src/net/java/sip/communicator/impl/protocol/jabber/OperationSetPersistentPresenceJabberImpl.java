@@ -11,6 +11,7 @@ import java.util.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.jivesoftware.smack.*;
@@ -1180,7 +1181,9 @@ public class OperationSetPersistentPresenceJabberImpl
                 // run waiting for user response in different thread
                 // as this seems to block the packet dispatch thread
                 // and we don't receive anything till we unblock it
-                new Thread(new Runnable() {
+                ThreadingUtils.execute(
+                    ThreadingService.AUTHORIZATION_POOL,
+                    new Runnable() {
                 public void run()
                 {
                     if (logger.isTraceEnabled())
@@ -1246,7 +1249,7 @@ public class OperationSetPersistentPresenceJabberImpl
                     responsePacket.setTo(fromID);
                     parentProvider.getConnection().sendPacket(responsePacket);
 
-                }}).start();
+                }});
             }
             else if (presenceType == Presence.Type.unsubscribed)
             {
@@ -1328,7 +1331,7 @@ public class OperationSetPersistentPresenceJabberImpl
                 return;
             }
 
-            new Thread(this, getClass().getName()).start();
+            ThreadingUtils.execute(ThreadingService.CONTACT_LIST_POOL, this);
         }
     }
 
@@ -10,6 +10,7 @@ import java.util.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.ServerStoredDetails.GenericDetail;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 /**
@@ -155,7 +156,7 @@ public class OperationSetServerStoredContactInfoJabberImpl
                 return null;
         }
 
-        new Thread(new Runnable()
+        Runnable retrieveDetails = new Runnable()
         {
             public void run()
             {
@@ -186,7 +187,11 @@ public class OperationSetServerStoredContactInfoJabberImpl
                     }
                 }
             }
-        }, getClass().getName() + ".RetrieveDetails").start();
+        };
+
+        ThreadingUtils.execute(
+            ThreadingService.CONTACT_LIST_POOL,
+            retrieveDetails);
 
         // return null as there is no cache and we will try to retrieve
         return null;
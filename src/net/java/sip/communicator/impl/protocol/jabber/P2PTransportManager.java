@@ -11,6 +11,7 @@ import java.util.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.gtalk.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.ice4j.*;
@@ -236,9 +237,8 @@ public class P2PTransportManager
         for(ContentPacketExtension ourContent : offer)
             ourContent.addChildExtension(getTransportPacketExtension());
 
-        new Thread()
+        ThreadingUtils.execute(ThreadingService.CALL_POOL, new Runnable()
         {
-            @Override
             public void run()
             {
                 Collection<ContentPacketExtension> transportInfoContents
@@ -288,7 +288,7 @@ public class P2PTransportManager
                     }
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -27,11 +27,13 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.jingleinfo.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.keepalive.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.messagecorrection.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.version.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.whiteboard.*;
 import net.java.sip.communicator.service.certificate.*;
 import net.java.sip.communicator.service.dns.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import net.java.sip.communicator.util.Logger;
@@ -1591,6 +1593,8 @@ public class ProtocolProviderServiceJabberImpl
             addSupportedOperationSet(
                 OperationSetWhiteboarding.class,
                 new OperationSetWhiteboardingJabberImpl(this));
+            supportedFeatures.add(
+                WhiteboardObjectPacketExtension.FEATURE_DELTAS);
 
             //initialize the typing notifications operation set
             addSupportedOperationSet(
@@ -2441,13 +2445,15 @@ public class ProtocolProviderServiceJabberImpl
                 // register.connect in new thread so we can release the
                 // current connecting thread, otherwise this blocks
                 // jabber
-                new Thread(new Runnable()
-                {
-                    public void run()
+                ThreadingUtils.execute(
+                    ThreadingService.REGISTRATION_POOL,
+                    new Runnable()
                     {
-                        reregister(SecurityAuthority.CONNECTION_FAILED);
-                    }
-                }).start();
+                        public void run()
+                        {
+                            reregister(SecurityAuthority.CONNECTION_FAILED);
+                        }
+                    });
                 return;
             }
         }
@@ -2560,12 +2566,13 @@ public class ProtocolProviderServiceJabberImpl
             service.addTrackerEntry(entry);
         }
 
-        new Thread(new JingleNodesServiceDiscovery(
-                            service,
-                            connection,
-                            accID,
-                            jingleNodesSyncRoot))
-                .start();
+        ThreadingUtils.execute(
+                ThreadingService.REGISTRATION_POOL,
+                new JingleNodesServiceDiscovery(
+                        service,
+                        connection,
+                        accID,
+                        jingleNodesSyncRoot));
 
         jingleNodesServiceNode = service;
     }
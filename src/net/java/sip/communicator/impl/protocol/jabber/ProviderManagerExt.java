@@ -6,6 +6,7 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.rsm.*;
 import net.java.sip.communicator.util.*;
 
 import org.jivesoftware.smack.packet.*;
@@ -91,9 +92,9 @@ public class ProviderManagerExt
         addExtProvider("x", "jabber:x:conference",
             GroupChatInvitation.Provider.class);
 
-        //<!-- Service Discovery # Items -->
+        //<!-- Service Discovery # Items with Result Set Management -->
         addProvider("query", "http://jabber.org/protocol/disco#items",
-            DiscoverItemsProvider.class);
+            PagedDiscoverItemsProvider.class);
         //<!-- Service Discovery # Info -->
         addProvider("query", "http://jabber.org/protocol/disco#info",
             DiscoverInfoProvider.class);
@@ -0,0 +1,534 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.thumbnail.*;
+import net.java.sip.communicator.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.util.StringUtils;
+import org.jivesoftware.smackx.filetransfer.*;
+import org.jivesoftware.smackx.packet.*;
+
+/**
+ * An <tt>IncomingFileTransfer</tt> which receives the file into a partial
+ * file next to it (the name of the file followed by {@link #PART_SUFFIX}) and
+ * renames it once it is complete. If the partial file of an earlier transfer
+ * of a file with the same name is found and the sender supports ranged
+ * transfers (the <tt>&lt;range/&gt;</tt> of XEP-0096), only the bytes which
+ * are missing are asked for. A partial file is resumed only if the offer it
+ * has been started for, which is kept next to it (the name of the partial
+ * file followed by {@link #OFFER_SUFFIX}), has been made by the same sender
+ * for a file with the same size, hash and date. The bytes are read from the
+ * bytestream in chunks of {@link ResumableOutgoingFileTransfer#CHUNK_SIZE}
+ * bytes and written at their positions in the file through a
+ * <tt>FileChannel</tt>.
+ */
+class ResumableIncomingFileTransfer
+    extends IncomingFileTransfer
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ResumableIncomingFileTransfer.class);
+
+    /**
+     * The suffix of the name of the file into which a file is received
+     * until it is complete.
+     */
+    static final String PART_SUFFIX = ".part";
+
+    /**
+     * The suffix of the name of the file which describes the offer a partial
+     * file has been started for.
+     */
+    private static final String OFFER_SUFFIX = ".offer";
+
+    /**
+     * The connection the file is received over.
+     */
+    private final Connection connection;
+
+    /**
+     * The <tt>FileTransferNegotiator</tt> of {@link #connection}.
+     */
+    private final FileTransferNegotiator negotiator;
+
+    /**
+     * The request of the sender which has been accepted.
+     */
+    private final FileTransferRequest request;
+
+    /**
+     * The offer of the sender.
+     */
+    private final StreamInitiation offer;
+
+    /**
+     * Initializes a new <tt>ResumableIncomingFileTransfer</tt>.
+     *
+     * @param connection the connection to receive the file over
+     * @param request the request of the sender which has been accepted
+     * @param offer the offer of the sender
+     */
+    ResumableIncomingFileTransfer(
+            Connection connection,
+            FileTransferRequest request,
+            StreamInitiation offer)
+    {
+        this(
+                connection,
+                request,
+                offer,
+                FileTransferNegotiator.getInstanceFor(connection));
+    }
+
+    /**
+     * Initializes a new <tt>ResumableIncomingFileTransfer</tt>.
+     *
+     * @param connection the connection to receive the file over
+     * @param request the request of the sender which has been accepted
+     * @param offer the offer of the sender
+     * @param negotiator the <tt>FileTransferNegotiator</tt> of
+     * <tt>connection</tt>
+     */
+    private ResumableIncomingFileTransfer(
+            Connection connection,
+            FileTransferRequest request,
+            StreamInitiation offer,
+            FileTransferNegotiator negotiator)
+    {
+        super(request, negotiator);
+
+        this.connection = connection;
+        this.request = request;
+        this.offer = offer;
+        this.negotiator = negotiator;
+    }
+
+    /**
+     * Receives the file into a specific file in a separate thread.
+     *
+     * @param file the file to receive into
+     * @throws XMPPException if the partial file cannot be created
+     */
+    @Override
+    public void recieveFile(final File file)
+        throws XMPPException
+    {
+        final File partFile = new File(file.getPath() + PART_SUFFIX);
+
+        try
+        {
+            if (!partFile.exists())
+                partFile.createNewFile();
+        }
+        catch (IOException e)
+        {
+            throw new XMPPException("Could not create file to write to", e);
+        }
+        if (!partFile.canWrite())
+            throw new IllegalArgumentException("Cannot write to file");
+
+        setFileInfo(file.getParent(), file.getName(), request.getFileSize());
+
+        new Thread("File Transfer " + streamID)
+        {
+            @Override
+            public void run()
+            {
+                receive(file, partFile);
+            }
+        }.start();
+    }
+
+    /**
+     * Negotiates the transfer of the file asking for the bytes missing from
+     * a specific partial file, receives them into it and renames it to a
+     * specific file once it is complete.
+     *
+     * @param file the file to receive into
+     * @param partFile the partial file to write into until the file is
+     * complete
+     */
+    private void receive(File file, File partFile)
+    {
+        long fileSize = request.getFileSize();
+        long offset = 0;
+        File offerFile = new File(partFile.getPath() + OFFER_SUFFIX);
+        Properties offerDescription = describeOffer();
+
+        if ((offerDescription != null)
+                && offer.getFile().isRanged()
+                && offerDescription.equals(loadOfferDescription(offerFile)))
+        {
+            offset = partFile.length();
+            if (offset >= fileSize)
+                offset = 0;
+        }
+        storeOfferDescription(offerFile, offerDescription);
+
+        InputStream in;
+
+        try
+        {
+            if (offset > 0)
+            {
+                in = negotiateRangedStream(offset);
+                if (in == null)
+                {
+                    // Only an in-band bytestream can be asked for a range.
+                    offset = 0;
+                    in = recieveFile();
+                }
+            }
+            else
+                in = recieveFile();
+        }
+        catch (XMPPException e)
+        {
+            setStatus(Status.error);
+            setException(e);
+            return;
+        }
+
+        if (!updateStatus(Status.negotiated, Status.in_progress))
+        {
+            ResumableOutgoingFileTransfer.close(in);
+            return;
+        }
+
+        if (logger.isDebugEnabled() && (offset > 0))
+            logger.debug("Resuming transfer of " + file + " at " + offset);
+
+        RandomAccessFile out = null;
+        long received = offset;
+
+        try
+        {
+            out = new RandomAccessFile(partFile, "rw");
+            received = transfer(in, out.getChannel(), offset, fileSize);
+        }
+        catch (IOException e)
+        {
+            setStatus(Status.error);
+            setError(Error.stream);
+            setException(e);
+        }
+        finally
+        {
+            ResumableOutgoingFileTransfer.close(in);
+            ResumableOutgoingFileTransfer.close(out);
+        }
+
+        if (!Status.in_progress.equals(getStatus()))
+            return;
+
+        /*
+         * An incomplete file is kept as a partial file together with the
+         * description of its offer so that it may be resumed.
+         */
+        if ((fileSize > 0) && (received != fileSize))
+        {
+            setStatus(Status.error);
+            setError(Error.connection);
+            setException(
+                    new EOFException("Bytestream closed after " + received
+                        + " of " + fileSize + " bytes"));
+        }
+        else if (!rename(partFile, file))
+        {
+            setStatus(Status.error);
+            setError(Error.bad_file);
+            setException(
+                    new IOException("Failed to rename " + partFile + " to "
+                        + file));
+        }
+        else if (updateStatus(Status.in_progress, Status.complete))
+            offerFile.delete();
+    }
+
+    /**
+     * Describes the offer of the sender so that a partial file of it may be
+     * told from a partial file of another offer of a file with the same name.
+     *
+     * @return the description of the offer or <tt>null</tt> if the offer
+     * carries neither a hash nor a date of the file and a partial file of it
+     * cannot be told from a partial file of another file
+     */
+    private Properties describeOffer()
+    {
+        StreamInitiation.File offeredFile = offer.getFile();
+
+        if ((offeredFile == null)
+                || ((offeredFile.getHash() == null)
+                        && (offeredFile.getDate() == null)))
+            return null;
+
+        Properties description = new Properties();
+
+        description.setProperty(
+                "sender",
+                StringUtils.parseBareAddress(request.getRequestor()));
+        description.setProperty("name", String.valueOf(offeredFile.getName()));
+        description.setProperty("size", Long.toString(offeredFile.getSize()));
+        if (offeredFile.getHash() != null)
+            description.setProperty("hash", offeredFile.getHash());
+        if (offeredFile.getDate() != null)
+        {
+            description.setProperty(
+                    "date",
+                    Long.toString(offeredFile.getDate().getTime()));
+        }
+        return description;
+    }
+
+    /**
+     * Loads the description of the offer a partial file has been started
+     * for.
+     *
+     * @param offerFile the file which describes the offer
+     * @return the description of the offer or <tt>null</tt> if it cannot be
+     * loaded
+     */
+    private static Properties loadOfferDescription(File offerFile)
+    {
+        if (!offerFile.isFile())
+            return null;
+
+        InputStream in = null;
+
+        try
+        {
+            in = new FileInputStream(offerFile);
+
+            Properties description = new Properties();
+
+            description.load(in);
+            return description;
+        }
+        catch (IOException ioe)
+        {
+            logger.warn("Failed to load " + offerFile, ioe);
+            return null;
+        }
+        finally
+        {
+            ResumableOutgoingFileTransfer.close(in);
+        }
+    }
+
+    /**
+     * Stores the description of the offer a partial file is started for or
+     * deletes the file which describes it if the offer cannot be described.
+     *
+     * @param offerFile the file which describes the offer
+     * @param description the description of the offer or <tt>null</tt>
+     */
+    private static void storeOfferDescription(
+            File offerFile,
+            Properties description)
+    {
+        if (description == null)
+        {
+            offerFile.delete();
+            return;
+        }
+
+        OutputStream out = null;
+
+        try
+        {
+            out = new FileOutputStream(offerFile);
+            description.store(out, null);
+        }
+        catch (IOException ioe)
+        {
+            // The partial file will not be resumed.
+            logger.warn("Failed to store " + offerFile, ioe);
+            offerFile.delete();
+        }
+        finally
+        {
+            ResumableOutgoingFileTransfer.close(out);
+        }
+    }
+
+    /**
+     * Negotiates an in-band bytestream asking the sender to send the file
+     * from a specific offset.
+     *
+     * @param offset the offset from which the file is to be sent
+     * @return the negotiated bytestream or <tt>null</tt> if the sender has
+     * not offered an in-band bytestream
+     * @throws XMPPException if the negotiation fails
+     */
+    private InputStream negotiateRangedStream(final long offset)
+        throws XMPPException
+    {
+        setStatus(Status.negotiating_transfer);
+
+        StreamNegotiator streamNegotiator
+            = negotiator.selectStreamNegotiator(request);
+
+        if (!(streamNegotiator instanceof IBBTransferNegotiator))
+        {
+            setStatus(Status.initial);
+            return null;
+        }
+
+        streamNegotiator
+            = new IBBTransferNegotiator(connection)
+            {
+                @Override
+                public StreamInitiation createInitiationAccept(
+                        StreamInitiation streamInitiationOffer,
+                        String[] namespaces)
+                {
+                    return
+                        new RangedAccept(
+                                super.createInitiationAccept(
+                                        streamInitiationOffer,
+                                        namespaces),
+                                offset);
+                }
+            };
+
+        setStatus(Status.negotiating_stream);
+
+        InputStream in;
+
+        try
+        {
+            in = streamNegotiator.createIncomingStream(offer);
+        }
+        catch (InterruptedException ie)
+        {
+            throw new XMPPException("Interruption while executing", ie);
+        }
+        setStatus(Status.negotiated);
+        return in;
+    }
+
+    /**
+     * Renames a partial file to the file it has been received for.
+     *
+     * @param partFile the partial file
+     * @param file the file to rename <tt>partFile</tt> to
+     * @return <tt>true</tt> if <tt>partFile</tt> has been renamed; otherwise,
+     * <tt>false</tt>
+     */
+    private static boolean rename(File partFile, File file)
+    {
+        if (partFile.renameTo(file))
+            return true;
+
+        // File.renameTo does not replace an existing file on all platforms.
+        return file.delete() && partFile.renameTo(file);
+    }
+
+    /**
+     * Transfers the bytes read from a specific bytestream into a specific
+     * file.
+     *
+     * @param in the bytestream
+     * @param out the channel of the file
+     * @param position the position in the file of the first byte to be read
+     * @param fileSize the size of the complete file or <tt>0</tt> if it is
+     * not known
+     * @return the position in the file after the last byte which has been
+     * written
+     * @throws IOException if reading the bytestream or writing the file fails
+     */
+    private long transfer(
+            InputStream in,
+            FileChannel out,
+            long position,
+            long fileSize)
+        throws IOException
+    {
+        byte[] buffer = new byte[ResumableOutgoingFileTransfer.CHUNK_SIZE];
+
+        // Drop the bytes which follow the range which is asked for.
+        out.truncate(position);
+        amountWritten = position;
+        while (((fileSize <= 0) || (position < fileSize))
+                && !Status.cancelled.equals(getStatus()))
+        {
+            int count = buffer.length;
+
+            if (fileSize > 0)
+                count = (int) Math.min(count, fileSize - position);
+
+            int read = in.read(buffer, 0, count);
+
+            // The bytestream has been closed.
+            if (read == -1)
+                break;
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+
+            while (byteBuffer.hasRemaining())
+                position += out.write(byteBuffer, position);
+            amountWritten = position;
+        }
+        return position;
+    }
+
+    /**
+     * The acceptance of an offer which asks for the range of the file which
+     * starts at a specific offset.
+     */
+    private static class RangedAccept
+        extends StreamInitiation
+    {
+        /**
+         * The file element which specifies the range asked for.
+         */
+        private final FileElement range;
+
+        /**
+         * Initializes a new <tt>RangedAccept</tt>.
+         *
+         * @param accept the acceptance to ask for the range in
+         * @param offset the offset from which the file is to be sent
+         */
+        RangedAccept(StreamInitiation accept, long offset)
+        {
+            setTo(accept.getTo());
+            setFrom(accept.getFrom());
+            setType(accept.getType());
+            setPacketID(accept.getPacketID());
+            setFeatureNegotiationForm(accept.getFeatureNegotiationForm());
+
+            range = new FileElement("", 0);
+            range.setRange(offset, -1);
+        }
+
+        /**
+         * Adds the file element which specifies the range asked for to the
+         * acceptance.
+         *
+         * @return the XML of the acceptance
+         */
+        @Override
+        public String getChildElementXML()
+        {
+            String xml = super.getChildElementXML();
+            int start = xml.indexOf('>') + 1;
+
+            return
+                xml.substring(0, start) + range.toXML() + xml.substring(start);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.thumbnail.*;
+import net.java.sip.communicator.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smackx.filetransfer.*;
+import org.jivesoftware.smackx.packet.*;
+
+/**
+ * An <tt>OutgoingFileTransfer</tt> which offers the receiver to resume a
+ * previously interrupted transfer (the <tt>&lt;range/&gt;</tt> of XEP-0096)
+ * and sends the file from the offset the receiver asks for. The file is read
+ * at its positions through a <tt>FileChannel</tt> in chunks of
+ * {@link #CHUNK_SIZE} bytes which are written into the bytestream as they are.
+ * <p>
+ * The bytestreams of Smack are streams rather than channels so
+ * <tt>FileChannel.transferTo</tt> cannot hand the file to the socket without
+ * copying it and only falls back to copying it in small chunks.
+ * </p>
+ */
+class ResumableOutgoingFileTransfer
+    extends OutgoingFileTransfer
+    implements PacketInterceptor
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ResumableOutgoingFileTransfer.class);
+
+    /**
+     * The number of bytes read from the file and written into the bytestream
+     * at once. The transfer is checked for cancellation after each chunk.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The connection the file is sent over.
+     */
+    private final Connection connection;
+
+    /**
+     * The collector of the response of the receiver to the offer of the file
+     * or <tt>null</tt> if the offer has not been sent yet.
+     */
+    private PacketCollector responseCollector;
+
+    /**
+     * The time the file being sent has last been modified at. It is offered
+     * as the date of the file so that the receiver is able to tell whether
+     * a partial file it has kept is of the same file.
+     */
+    private long lastModified;
+
+    /**
+     * Initializes a new <tt>ResumableOutgoingFileTransfer</tt>.
+     *
+     * @param connection the connection to send the file over
+     * @param target the full JID of the receiver of the file
+     */
+    ResumableOutgoingFileTransfer(Connection connection, String target)
+    {
+        this(
+                connection,
+                target,
+                FileTransferNegotiator.getInstanceFor(connection));
+    }
+
+    /**
+     * Initializes a new <tt>ResumableOutgoingFileTransfer</tt>.
+     *
+     * @param connection the connection to send the file over
+     * @param target the full JID of the receiver of the file
+     * @param negotiator the <tt>FileTransferNegotiator</tt> of
+     * <tt>connection</tt>
+     */
+    private ResumableOutgoingFileTransfer(
+            Connection connection,
+            String target,
+            FileTransferNegotiator negotiator)
+    {
+        super(
+                connection.getUser(),
+                target,
+                negotiator.getNextStreamID(),
+                negotiator);
+
+        this.connection = connection;
+    }
+
+    /**
+     * Marks the offer of the file as ranged, dates it if it is not dated and
+     * starts collecting the response to it in order to learn the offset the
+     * receiver asks for.
+     *
+     * @param packet the packet which is about to be sent
+     */
+    public void interceptPacket(Packet packet)
+    {
+        if (!(packet instanceof StreamInitiation))
+            return;
+
+        StreamInitiation offer = (StreamInitiation) packet;
+
+        if (!IQ.Type.SET.equals(offer.getType())
+                || !streamID.equals(offer.getSessionID())
+                || (offer.getFile() == null))
+            return;
+
+        offer.getFile().setRanged(true);
+        if ((offer.getFile().getDate() == null) && (lastModified > 0))
+            offer.getFile().setDate(new Date(lastModified));
+        if (responseCollector == null)
+        {
+            responseCollector
+                = connection.createPacketCollector(
+                        new PacketIDFilter(offer.getPacketID()));
+        }
+    }
+
+    /**
+     * Returns the offset from which the receiver has asked for the file to
+     * be sent.
+     *
+     * @param fileSize the size of the file
+     * @return the offset from which the file is to be sent
+     */
+    private long getRequestedOffset(long fileSize)
+    {
+        if (responseCollector == null)
+            return 0;
+
+        /*
+         * The stream is negotiated only after the response has been received
+         * so it has been collected already.
+         */
+        Packet response = responseCollector.pollResult();
+
+        if ((response instanceof StreamInitiation)
+                && (((StreamInitiation) response).getFile()
+                        instanceof FileElement))
+        {
+            long offset
+                = ((FileElement) ((StreamInitiation) response).getFile())
+                    .getRangeOffset();
+
+            if ((offset > 0) && (offset < fileSize))
+                return offset;
+        }
+        return 0;
+    }
+
+    /**
+     * Sends a specific file in a separate thread.
+     *
+     * @param file the file to send
+     * @param description the description of the file
+     * @throws XMPPException never, the errors are reported through the status
+     * of this transfer
+     */
+    @Override
+    public synchronized void sendFile(
+            final File file,
+            final String description)
+        throws XMPPException
+    {
+        if ((file == null) || !file.exists() || !file.canRead())
+            throw new IllegalArgumentException("Could not read file");
+
+        setFileInfo(file.getAbsolutePath(), file.getName(), file.length());
+
+        new Thread("File Transfer " + streamID)
+        {
+            @Override
+            public void run()
+            {
+                send(file, description);
+            }
+        }.start();
+    }
+
+    /**
+     * Negotiates the transfer of a specific file and sends it from the offset
+     * the receiver asks for.
+     *
+     * @param file the file to send
+     * @param description the description of the file
+     */
+    private void send(File file, String description)
+    {
+        long fileSize = file.length();
+        OutputStream out;
+        long offset;
+
+        lastModified = file.lastModified();
+        connection.addPacketInterceptor(
+                this,
+                new PacketTypeFilter(StreamInitiation.class));
+        try
+        {
+            out = sendFile(file.getName(), fileSize, description);
+            offset = getRequestedOffset(fileSize);
+        }
+        catch (XMPPException e)
+        {
+            // The status and the exception have been set already.
+            return;
+        }
+        finally
+        {
+            connection.removePacketInterceptor(this);
+            if (responseCollector != null)
+                responseCollector.cancel();
+        }
+
+        if ((out == null)
+                || !updateStatus(Status.negotiated, Status.in_progress))
+        {
+            close(out);
+            return;
+        }
+
+        if (logger.isDebugEnabled() && (offset > 0))
+            logger.debug("Resuming transfer of " + file + " at " + offset);
+
+        FileInputStream in = null;
+
+        try
+        {
+            in = new FileInputStream(file);
+            transfer(in.getChannel(), offset, fileSize - offset, out);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            setStatus(Status.error);
+            setError(Error.stream);
+            setException(e);
+        }
+        finally
+        {
+            close(in);
+            close(out);
+        }
+        updateStatus(Status.in_progress, Status.complete);
+    }
+
+    /**
+     * Transfers a specific range of a file into a specific bytestream.
+     *
+     * @param in the channel of the file
+     * @param position the position of the first byte to transfer
+     * @param count the number of bytes to transfer
+     * @param out the bytestream
+     * @throws IOException if reading the file or writing the bytestream fails
+     */
+    private void transfer(
+            FileChannel in,
+            long position,
+            long count,
+            OutputStream out)
+        throws IOException
+    {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long end = position + count;
+
+        amountWritten = position;
+        while ((position < end) && !Status.cancelled.equals(getStatus()))
+        {
+            byteBuffer.clear();
+            byteBuffer.limit((int) Math.min(CHUNK_SIZE, end - position));
+
+            int read = in.read(byteBuffer, position);
+
+            if (read <= 0)
+                throw new EOFException("File truncated at " + position);
+            out.write(buffer, 0, read);
+            position += read;
+            amountWritten = position;
+        }
+    }
+
+    /**
+     * Closes a specific <tt>Closeable</tt> ignoring any error.
+     *
+     * @param closeable the <tt>Closeable</tt> to close or <tt>null</tt>
+     */
+    static void close(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException ioe)
+            {
+            }
+        }
+    }
+}
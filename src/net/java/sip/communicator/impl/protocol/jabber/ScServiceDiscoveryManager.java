@@ -7,7 +7,6 @@
 package net.java.sip.communicator.impl.protocol.jabber;
 
 import java.util.*;
-import java.util.concurrent.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -45,11 +44,41 @@ public class ScServiceDiscoveryManager
     private static final boolean CACHE_NON_CAPS = true;
 
     /**
-     * The cache of non-caps. Used only if {@link #CACHE_NON_CAPS} is
-     * <tt>true</tt>.
+     * The maximum number of disco#info requests which are sent at a time by
+     * {@link #retriever}.
      */
-    private final Map<String, DiscoverInfo> nonCapsCache
-        = new ConcurrentHashMap<String, DiscoverInfo>();
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    /**
+     * The maximum number of entities the discovered information of which is
+     * kept in {@link #nonCapsCache}.
+     */
+    private static final int NON_CAPS_CACHE_SIZE = 1024;
+
+    /**
+     * The milliseconds for which the discovered information of an entity
+     * without valid entity capabilities is served from {@link #nonCapsCache}.
+     * Such an entity does not announce the changes of its features so its
+     * information is discovered again once it has aged.
+     */
+    private static final long NON_CAPS_CACHE_TTL = 30 * 60 * 1000;
+
+    /**
+     * The cache of non-caps mapped by entity in least recently used order.
+     * Used only if {@link #CACHE_NON_CAPS} is <tt>true</tt>.
+     */
+    private final Map<String, NonCapsEntry> nonCapsCache
+        = new LinkedHashMap<String, NonCapsEntry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, NonCapsEntry> eldest)
+            {
+                return size() > NON_CAPS_CACHE_SIZE;
+            }
+        };
 
     /**
      * The <tt>EntitiCapsManager</tt> used by this instance to handle entity
@@ -473,35 +502,12 @@ public class ScServiceDiscoveryManager
         // if caps is not valid, has empty hash
         if (CACHE_NON_CAPS && (caps == null || !caps.isValid(discoverInfo)))
         {
-            discoverInfo = nonCapsCache.get(entityID);
+            discoverInfo = getNonCaps(entityID);
             if (discoverInfo != null)
                 return discoverInfo;
         }
 
-        discoverInfo
-            = discoverInfo(
-                    entityID,
-                    (caps == null) ? null : caps.getNodeVer());
-
-        if ((caps != null) && !caps.isValid(discoverInfo))
-        {
-            if(!caps.hash.equals(""))
-            {
-                logger.error(
-                        "Invalid DiscoverInfo for " + caps.getNodeVer() + ": "
-                            + discoverInfo);
-            }
-            caps = null;
-        }
-
-        if (caps == null)
-        {
-            if (CACHE_NON_CAPS)
-                nonCapsCache.put(entityID, discoverInfo);
-        }
-        else
-            EntityCapsManager.addDiscoverInfoByCaps(caps, discoverInfo);
-        return discoverInfo;
+        return retriever.retrieve(entityID, caps);
     }
 
     /**
@@ -525,12 +531,12 @@ public class ScServiceDiscoveryManager
         // if caps is not valid, has empty hash
         if (CACHE_NON_CAPS && (caps == null || !caps.isValid(discoverInfo)))
         {
-            discoverInfo = nonCapsCache.get(entityID);
+            discoverInfo = getNonCaps(entityID);
             if (discoverInfo != null)
                 return discoverInfo;
         }
 
-        // add to retrieve thread
+        // schedule for retrieval
         retriever.addEntityForRetrieve(
             entityID,
             caps);
@@ -640,194 +646,633 @@ public class ScServiceDiscoveryManager
     }
 
     /**
-     * Thread that runs the discovery info.
+     * Returns the cached discovered information of a specific entity without
+     * valid entity capabilities.
+     *
+     * @param entityID the address of the XMPP entity
+     * @return the discovered information of <tt>entityID</tt> or <tt>null</tt>
+     * if it is not cached or has aged
      */
-    private class DiscoveryInfoRetriever
-        implements Runnable
+    private DiscoverInfo getNonCaps(String entityID)
+    {
+        synchronized (nonCapsCache)
+        {
+            NonCapsEntry entry = nonCapsCache.get(entityID);
+
+            if (entry == null)
+                return null;
+            if (System.currentTimeMillis() - entry.timestamp
+                    > NON_CAPS_CACHE_TTL)
+            {
+                nonCapsCache.remove(entityID);
+                return null;
+            }
+            return entry.discoverInfo;
+        }
+    }
+
+    /**
+     * Caches the discovered information of a specific entity without valid
+     * entity capabilities.
+     *
+     * @param entityID the address of the XMPP entity
+     * @param discoverInfo the discovered information of <tt>entityID</tt>
+     */
+    private void putNonCaps(String entityID, DiscoverInfo discoverInfo)
+    {
+        synchronized (nonCapsCache)
+        {
+            nonCapsCache.put(entityID, new NonCapsEntry(discoverInfo));
+        }
+    }
+
+    /**
+     * Returns the number of disco#info requests which are waiting to be sent.
+     *
+     * @return the number of disco#info requests which are waiting to be sent
+     */
+    public int getDiscoveryQueueDepth()
+    {
+        return retriever.getQueueDepth();
+    }
+
+    /**
+     * Returns the average round-trip time of the disco#info requests which
+     * have been answered.
+     *
+     * @return the average round-trip time in milliseconds of the disco#info
+     * requests which have been answered
+     */
+    public long getAverageDiscoveryRoundTripTime()
+    {
+        return retriever.getAverageRoundTripTime();
+    }
+
+    /**
+     * The discovered information of an entity without valid entity
+     * capabilities and the time it has been discovered at.
+     */
+    private static class NonCapsEntry
     {
         /**
-         * start/stop.
+         * The discovered information.
          */
-        private boolean stopped = true;
+        final DiscoverInfo discoverInfo;
 
         /**
-         * The thread that runs this dispatcher.
+         * The time in milliseconds at which {@link #discoverInfo} has been
+         * discovered.
          */
-        private Thread retrieverThread = null;
+        final long timestamp = System.currentTimeMillis();
 
         /**
-         * Entities to be processed and their caps.
-         * HashMap so we can store null caps.
+         * Initializes a new <tt>NonCapsEntry</tt>.
+         *
+         * @param discoverInfo the discovered information
          */
-        private Map<String, EntityCapsManager.Caps> entities
-            = new HashMap<String, EntityCapsManager.Caps>();
+        NonCapsEntry(DiscoverInfo discoverInfo)
+        {
+            this.discoverInfo = discoverInfo;
+        }
+    }
 
+    /**
+     * A disco#info request for one or more entities which share the same
+     * entity capabilities.
+     */
+    private static class DiscoveryInfoRequest
+        implements Comparable<DiscoveryInfoRequest>
+    {
+        /**
+         * The caps of the entities or <tt>null</tt> if they have none.
+         */
+        final EntityCapsManager.Caps caps;
+
+        /**
+         * Whether this request has been completed.
+         */
+        boolean done = false;
+
+        /**
+         * The entities which wait for this request in the order they have
+         * been scheduled.
+         */
+        final Set<String> entityIDs = new LinkedHashSet<String>();
+
+        /**
+         * Whether this request is being sent.
+         */
+        boolean inProgress = false;
+
+        /**
+         * The key of this request in {@link DiscoveryInfoRetriever#requests}.
+         */
+        final Object key;
+
+        /**
+         * The sequence number of the last scheduling of this request.
+         */
+        long sequence;
+
+        /**
+         * Initializes a new <tt>DiscoveryInfoRequest</tt>.
+         *
+         * @param key the key of the request
+         * @param caps the caps of the entities or <tt>null</tt>
+         */
+        DiscoveryInfoRequest(Object key, EntityCapsManager.Caps caps)
+        {
+            this.key = key;
+            this.caps = caps;
+        }
+
+        /**
+         * Orders the more recently scheduled requests first.
+         *
+         * @param other the request to compare to
+         * @return a negative integer if this request has been scheduled after
+         * <tt>other</tt>, zero if they are the same and a positive integer
+         * otherwise
+         */
+        public int compareTo(DiscoveryInfoRequest other)
+        {
+            return
+                (sequence > other.sequence)
+                    ? -1
+                    : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+    /**
+     * Schedules the disco#info requests for the entities the discovered
+     * information of which is not cached. The requests for entities which
+     * announce the same entity capabilities are merged into one because their
+     * discovered information is cached by capabilities. At most
+     * {@link #MAX_CONCURRENT_REQUESTS} queued requests are sent at a time and
+     * the most recently scheduled ones are sent first: they are usually for
+     * the contacts the user is looking at while the older ones are usually
+     * for the flood of presences which follows the login. The blocking
+     * requests (e.g. for the peer of a call) are not queued and are sent on
+     * the requesting thread.
+     */
+    private class DiscoveryInfoRetriever
+        implements Runnable
+    {
         /**
          * Our capability operation set.
          */
         private OperationSetContactCapabilitiesJabberImpl capabilitiesOpSet;
 
         /**
-         * Runs in different thread.
+         * The number of disco#info requests which have failed.
          */
-        public void run()
+        private long failedRequestCount = 0;
+
+        /**
+         * The maximum number of requests which have been waiting to be sent
+         * at a time.
+         */
+        private int maxQueueDepth = 0;
+
+        /**
+         * The longest round-trip time in milliseconds of the answered
+         * disco#info requests.
+         */
+        private long maxRoundTripTime = 0;
+
+        /**
+         * The requests waiting to be sent, the most recently scheduled first.
+         */
+        private final SortedSet<DiscoveryInfoRequest> queue
+            = new TreeSet<DiscoveryInfoRequest>();
+
+        /**
+         * The number of disco#info requests which have been sent.
+         */
+        private long requestCount = 0;
+
+        /**
+         * The requests which are waiting to be sent or are being sent mapped
+         * by their keys.
+         */
+        private final Map<Object, DiscoveryInfoRequest> requests
+            = new HashMap<Object, DiscoveryInfoRequest>();
+
+        /**
+         * The sequence number of the last scheduling of a request.
+         */
+        private long sequence = 0;
+
+        /**
+         * Whether this retriever has been stopped.
+         */
+        private boolean stopped = false;
+
+        /**
+         * The number of threads which send the queued requests.
+         */
+        private int threadCount = 0;
+
+        /**
+         * The sum of the round-trip times in milliseconds of the answered
+         * disco#info requests.
+         */
+        private long totalRoundTripTime = 0;
+
+        /**
+         * Queue entities for retrieval. Queueing an entity which is already
+         * queued moves it to the front of the queue.
+         *
+         * @param entityID the entity.
+         * @param caps and its capability.
+         */
+        public synchronized void addEntityForRetrieve(
+                String entityID,
+                EntityCapsManager.Caps caps)
         {
-            try
+            if (stopped)
+                return;
+
+            Object key = getKey(entityID, caps);
+            DiscoveryInfoRequest request = requests.get(key);
+
+            if (request == null)
             {
-                stopped = false;
+                request = new DiscoveryInfoRequest(key, caps);
+                requests.put(key, request);
+            }
+            request.entityIDs.add(entityID);
+            if (request.inProgress)
+                return;
 
-                while(!stopped)
+            queue.remove(request);
+            request.sequence = ++sequence;
+            queue.add(request);
+            if (maxQueueDepth < queue.size())
+                maxQueueDepth = queue.size();
+
+            if (threadCount < MAX_CONCURRENT_REQUESTS)
+            {
+                if (capabilitiesOpSet == null)
                 {
-                    Map.Entry<String, EntityCapsManager.Caps>
-                        entityToProcess = null;
+                    capabilitiesOpSet
+                        = (OperationSetContactCapabilitiesJabberImpl)
+                            parentProvider.getOperationSet(
+                                    OperationSetContactCapabilities.class);
+                }
 
-                    synchronized(entities)
-                    {
-                        if(entities.size() == 0)
-                        {
-                            try
-                            {
-                                entities.wait();
-                            }
-                            catch (InterruptedException iex){}
-                        }
+                Thread thread
+                    = new Thread(
+                            this,
+                            ScServiceDiscoveryManager.class.getName());
 
-                        Iterator<Map.Entry<String, EntityCapsManager.Caps>>
-                            iter = entities.entrySet().iterator();
-                        if(iter.hasNext())
-                        {
-                            entityToProcess = iter.next();
-                            iter.remove();
-                        }
-                    }
+                thread.setDaemon(true);
+                thread.start();
+                threadCount++;
+            }
+        }
 
-                    if(entityToProcess != null)
-                    {
-                        // process
-                        requestDiscoveryInfo(
-                            entityToProcess.getKey(),
-                            entityToProcess.getValue());
-                    }
+        /**
+         * Completes a specific request and fires the capabilities change
+         * events of the entities which have waited for it.
+         *
+         * @param request the request to complete
+         * @param entityID the entity which has been asked last or
+         * <tt>null</tt>
+         * @param discovered <tt>true</tt> if the discovered information of
+         * the caps of <tt>request</tt> is cached
+         */
+        private void complete(
+                DiscoveryInfoRequest request,
+                String entityID,
+                boolean discovered)
+        {
+            List<String> entityIDs = new ArrayList<String>();
 
-                    entityToProcess = null;
-                }
-            } catch(Throwable t)
+            synchronized (this)
             {
-                logger.error("Error requesting discovery info, " +
-                    "thread ended unexpectedly", t);
+                if (discovered)
+                    entityIDs.addAll(request.entityIDs);
+                request.entityIDs.clear();
+                request.done = true;
+                if (requests.get(request.key) == request)
+                    requests.remove(request.key);
+                notifyAll();
+            }
+            if (entityID != null)
+                entityIDs.add(entityID);
+
+            if (capabilitiesOpSet != null)
+            {
+                for (String id : entityIDs)
+                    capabilitiesOpSet.fireContactCapabilitiesChanged(id);
             }
         }
 
         /**
-         * Requests the discovery info and fires the event if
-         * retrieved.
-         * @param entityID the entity to request
-         * @param caps and its capability.
+         * Sends a queued request to its entities one after the other until
+         * one of them answers with information valid for their caps. The
+         * entities without valid caps are each asked for their own
+         * information.
+         *
+         * @param request the request to send
          */
-        private void requestDiscoveryInfo(final String entityID,
-                                          EntityCapsManager.Caps caps)
+        private void execute(DiscoveryInfoRequest request)
         {
+            EntityCapsManager.Caps caps = request.caps;
+            boolean byCaps = (request.key == caps);
+            String entityID = null;
+            boolean discovered = false;
+
             try
             {
-                DiscoverInfo discoverInfo = discoverInfo(
-                            entityID,
-                            (caps == null ) ? null : caps.getNodeVer());
-
-                if ((caps != null) && !caps.isValid(discoverInfo))
+                while (true)
                 {
-                    if(!caps.hash.equals(""))
+                    synchronized (this)
                     {
-                        logger.error("Invalid DiscoverInfo for "
-                            + caps.getNodeVer() + ": " + discoverInfo);
-                    }
-                    caps = null;
-                }
+                        if (stopped || request.entityIDs.isEmpty())
+                            break;
 
-                boolean fireEvent;
+                        Iterator<String> i = request.entityIDs.iterator();
 
-                if (caps == null)
-                {
-                    if (CACHE_NON_CAPS)
+                        entityID = i.next();
+                        i.remove();
+                    }
+
+                    /*
+                     * The information may have been discovered in the
+                     * meantime e.g. by a blocking request.
+                     */
+                    if (byCaps
+                            && (EntityCapsManager.getDiscoverInfoByCaps(caps)
+                                    != null))
                     {
-                        nonCapsCache.put(entityID, discoverInfo);
-                        fireEvent = true;
+                        discovered = true;
+                        break;
+                    }
+                    try
+                    {
+                        sendRequest(entityID, caps);
+                    }
+                    catch(XMPPException ex)
+                    {
+                        // print discovery info errors only when trace is
+                        // enabled
+                        if(logger.isTraceEnabled())
+                            logger.error("Error requesting discover info for "
+                                + entityID, ex);
+                        entityID = null;
+                        continue;
+                    }
+                    if (!byCaps
+                            || (EntityCapsManager.getDiscoverInfoByCaps(caps)
+                                    != null))
+                    {
+                        discovered = byCaps;
+                        break;
                     }
-                }
-                else
-                {
-                    EntityCapsManager.addDiscoverInfoByCaps(caps, discoverInfo);
-                    fireEvent = true;
-                }
 
-                // fire event
-                if(fireEvent && capabilitiesOpSet != null)
-                {
-                    capabilitiesOpSet.fireContactCapabilitiesChanged(entityID);
+                    // The caps are invalid, the entity has a non-caps.
+                    if (capabilitiesOpSet != null)
+                        capabilitiesOpSet.fireContactCapabilitiesChanged(
+                                entityID);
+                    entityID = null;
                 }
             }
-            catch(XMPPException ex)
+            finally
             {
-                // print discovery info errors only when trace is enabled
-                if(logger.isTraceEnabled())
-                    logger.error("Error requesting discover info for "
-                        + entityID, ex);
+                complete(request, entityID, discovered);
             }
         }
 
         /**
-         * Queue entities for retrieval.
-         * @param entityID the entity.
-         * @param caps and its capability.
+         * Returns the average round-trip time of the answered disco#info
+         * requests.
+         *
+         * @return the average round-trip time in milliseconds of the answered
+         * disco#info requests
+         */
+        synchronized long getAverageRoundTripTime()
+        {
+            long answeredRequestCount = requestCount - failedRequestCount;
+
+            return
+                (answeredRequestCount == 0)
+                    ? 0
+                    : (totalRoundTripTime / answeredRequestCount);
+        }
+
+        /**
+         * Returns the key of the request for a specific entity: requests for
+         * entities with the same caps are merged unless the caps cannot be
+         * validated in which case each entity has its own request.
+         *
+         * @param entityID the entity
+         * @param caps its caps or <tt>null</tt>
+         * @return the key of the request for <tt>entityID</tt>
+         */
+        private Object getKey(String entityID, EntityCapsManager.Caps caps)
+        {
+            return
+                ((caps == null) || caps.hash.equals("")) ? entityID : caps;
+        }
+
+        /**
+         * Returns the number of requests waiting to be sent.
+         *
+         * @return the number of requests waiting to be sent
          */
-        public void addEntityForRetrieve(String entityID,
-                                         EntityCapsManager.Caps caps)
+        synchronized int getQueueDepth()
         {
-            synchronized(entities)
+            return queue.size();
+        }
+
+        /**
+         * Retrieves the discovered information of a specific entity on the
+         * current thread. If a request for the same caps is being sent, its
+         * answer is waited for instead of sending another one.
+         *
+         * @param entityID the entity
+         * @param caps its caps or <tt>null</tt>
+         * @return the discovered information of <tt>entityID</tt>
+         * @throws XMPPException if the request fails
+         */
+        DiscoverInfo retrieve(String entityID, EntityCapsManager.Caps caps)
+            throws XMPPException
+        {
+            boolean waited = false;
+
+            synchronized (this)
             {
+                DiscoveryInfoRequest request
+                    = requests.get(getKey(entityID, caps));
 
-                if(!entities.containsKey(entityID))
+                if ((request != null) && request.inProgress)
                 {
-                    entities.put(entityID, caps);
-                    entities.notifyAll();
+                    long deadline
+                        = System.currentTimeMillis()
+                            + SmackConfiguration.getPacketReplyTimeout();
+                    boolean interrupted = false;
 
-                    if(retrieverThread == null)
+                    while (!request.done)
                     {
-                        start();
+                        long timeout = deadline - System.currentTimeMillis();
+
+                        if (timeout <= 0)
+                            break;
+                        try
+                        {
+                            wait(timeout);
+                        }
+                        catch (InterruptedException ie)
+                        {
+                            interrupted = true;
+                        }
                     }
+                    if (interrupted)
+                        Thread.currentThread().interrupt();
+                    waited = true;
                 }
             }
+            if (waited)
+            {
+                DiscoverInfo discoverInfo
+                    = capsManager.getDiscoverInfoByUser(entityID);
+
+                if (discoverInfo == null)
+                    discoverInfo = getNonCaps(entityID);
+                if (discoverInfo != null)
+                    return discoverInfo;
+            }
+            return sendRequest(entityID, caps);
         }
 
         /**
-         * Start thread.
+         * Sends a disco#info request to a specific entity and caches the
+         * answer.
+         *
+         * @param entityID the entity
+         * @param caps its caps or <tt>null</tt>
+         * @return the discovered information of <tt>entityID</tt>
+         * @throws XMPPException if the request fails
          */
-        private void start()
+        private DiscoverInfo sendRequest(
+                String entityID,
+                EntityCapsManager.Caps caps)
+            throws XMPPException
         {
-            capabilitiesOpSet = (OperationSetContactCapabilitiesJabberImpl)
-                parentProvider.getOperationSet(
-                    OperationSetContactCapabilities.class);
+            long startTime = System.currentTimeMillis();
+            DiscoverInfo discoverInfo = null;
 
-            retrieverThread = new Thread(
-                this,
-                ScServiceDiscoveryManager.class.getName());
-            retrieverThread.setDaemon(true);
+            try
+            {
+                discoverInfo
+                    = discoverInfo(
+                            entityID,
+                            (caps == null) ? null : caps.getNodeVer());
+            }
+            finally
+            {
+                long roundTripTime = System.currentTimeMillis() - startTime;
+                int queueDepth;
+
+                synchronized (this)
+                {
+                    requestCount++;
+                    if (discoverInfo == null)
+                        failedRequestCount++;
+                    else
+                    {
+                        totalRoundTripTime += roundTripTime;
+                        if (maxRoundTripTime < roundTripTime)
+                            maxRoundTripTime = roundTripTime;
+                    }
+                    queueDepth = queue.size();
+                }
+                if (logger.isDebugEnabled())
+                    logger.debug("disco#info request to " + entityID
+                        + ((discoverInfo == null) ? " failed" : " answered")
+                        + " in " + roundTripTime + " ms, " + queueDepth
+                        + " requests queued");
+            }
 
-            retrieverThread.start();
+            if ((caps != null) && !caps.isValid(discoverInfo))
+            {
+                if(!caps.hash.equals(""))
+                {
+                    logger.error(
+                            "Invalid DiscoverInfo for " + caps.getNodeVer()
+                                + ": " + discoverInfo);
+                }
+                caps = null;
+            }
 
+            if (caps == null)
+            {
+                if (CACHE_NON_CAPS)
+                    putNonCaps(entityID, discoverInfo);
+            }
+            else
+                EntityCapsManager.addDiscoverInfoByCaps(caps, discoverInfo);
+            return discoverInfo;
+        }
+
+        /**
+         * Sends the queued requests, the most recently scheduled first, until
+         * the queue is empty.
+         */
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    DiscoveryInfoRequest request;
 
+                    synchronized (this)
+                    {
+                        if (stopped || queue.isEmpty())
+                        {
+                            threadCount--;
+                            return;
+                        }
+                        request = queue.first();
+                        queue.remove(request);
+                        request.inProgress = true;
+                    }
+                    execute(request);
+                }
+            }
+            catch (Throwable t)
+            {
+                synchronized (this)
+                {
+                    threadCount--;
+                }
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Error requesting discovery info, " +
+                    "thread ended unexpectedly", t);
+            }
         }
 
         /**
          * Stops and clears.
          */
-        void stop()
+        synchronized void stop()
         {
-            synchronized(entities)
-            {
-                stopped = true;
-                entities.notifyAll();
+            stopped = true;
+            queue.clear();
+            requests.clear();
+            notifyAll();
 
-                retrieverThread = null;
+            if (logger.isDebugEnabled() && (requestCount != 0))
+            {
+                logger.debug("Sent " + requestCount + " disco#info requests ("
+                    + failedRequestCount + " failed), round-trip time "
+                    + getAverageRoundTripTime() + " ms on average and "
+                    + maxRoundTripTime + " ms at most, at most "
+                    + maxQueueDepth + " requests queued");
             }
         }
     }
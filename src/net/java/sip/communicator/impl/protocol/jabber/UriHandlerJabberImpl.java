@@ -12,6 +12,7 @@ import net.java.sip.communicator.service.argdelegation.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.osgi.framework.*;
@@ -421,7 +422,11 @@ public class UriHandlerJabberImpl
                                 PopupDialog.YES_NO_OPTION);
 
         if (answer == PopupDialog.YES_OPTION)
-            new ProtocolRegistrationThread(uri, provider).start();
+        {
+            ThreadingUtils.execute(
+                ThreadingService.REGISTRATION_POOL,
+                new ProtocolRegistrationThread(uri, provider));
+        }
     }
 
     /**
@@ -481,8 +486,8 @@ public class UriHandlerJabberImpl
      *
      */
     private class ProtocolRegistrationThread
-        extends Thread
-        implements RegistrationStateChangeListener
+        implements Runnable,
+                   RegistrationStateChangeListener
     {
 
         private ProtocolProviderService handlerProvider = null;
@@ -504,7 +509,6 @@ public class UriHandlerJabberImpl
         public ProtocolRegistrationThread(String uri,
             ProtocolProviderService handlerProvider)
         {
-            super("UriHandlerProviderRegistrationThread:uri=" + uri);
             this.uri = uri;
             this.handlerProvider = handlerProvider;
         }
@@ -514,7 +518,6 @@ public class UriHandlerJabberImpl
          * listener and then tries to rehandle the uri this thread was initiaded
          * with.
          */
-        @Override
         public void run()
         {
             handlerProvider.addRegistrationStateChangeListener(this);
@@ -546,17 +549,15 @@ public class UriHandlerJabberImpl
         {
             if (evt.getNewState() == RegistrationState.REGISTERED)
             {
-                Thread uriRehandleThread = new Thread()
-                {
-                    @Override
-                    public void run()
+                ThreadingUtils.execute(
+                    ThreadingService.REGISTRATION_POOL,
+                    new Runnable()
                     {
-                        handleUri(uri);
-                    }
-                };
-
-                uriRehandleThread.setName("UriRehandleThread:uri=" + uri);
-                uriRehandleThread.start();
+                        public void run()
+                        {
+                            handleUri(uri);
+                        }
+                    });
             }
 
             // we're only interested in a single event so we stop listening
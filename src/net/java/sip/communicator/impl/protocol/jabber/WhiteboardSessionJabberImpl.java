@@ -19,6 +19,8 @@ import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smackx.*;
+import org.jivesoftware.smackx.packet.DiscoverInfo;
+import org.jitsi.service.configuration.*;
 
 /**
  * A representation of a <tt>WhiteboardSession</tt>.
@@ -36,6 +38,32 @@ public class WhiteboardSessionJabberImpl
     private static final Logger logger =
         Logger.getLogger(WhiteboardSessionJabberImpl.class);
 
+    /**
+     * The name of the property which specifies the interval in milliseconds
+     * during which the updates of white-board objects are collected in order
+     * to be sent together in a single message. A stroke being drawn is thus
+     * sent at most once per interval whatever the number of its points. Zero
+     * sends every update as soon as it is made. The updates collected for a
+     * participant which does not advertise
+     * {@link WhiteboardObjectPacketExtension#FEATURE_DELTAS} are sent in a
+     * message each.
+     */
+    public static final String PNAME_FRAME_INTERVAL
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".WHITEBOARD_FRAME_INTERVAL";
+
+    /**
+     * The default interval in milliseconds during which the updates of
+     * white-board objects are collected.
+     */
+    public static final long DEFAULT_FRAME_INTERVAL = 40;
+
+    /**
+     * The <tt>Timer</tt> which sends the collected updates of all
+     * white-board sessions. Created on demand.
+     */
+    private static Timer flushTimer;
+
     /**
      * A list of listeners registered for message events.
      */
@@ -87,6 +115,76 @@ public class WhiteboardSessionJabberImpl
      */
     private Chat smackChat;
 
+    /**
+     * The interval in milliseconds during which the updates of white-board
+     * objects are collected before being sent.
+     */
+    private final long frameInterval;
+
+    /**
+     * The indicator which determines whether the participant understands the
+     * updates which append points to strokes and the messages which carry
+     * several updates or <tt>null</tt> if its features are not known yet.
+     */
+    private volatile Boolean deltasSupported;
+
+    /**
+     * The updates of white-board objects which have not been sent yet mapped
+     * by the identifiers of the objects they update, in the order in which
+     * they are to be sent.
+     */
+    private final Map<String, WhiteboardObjectPacketExtension> pendingUpdates
+        = new LinkedHashMap<String, WhiteboardObjectPacketExtension>();
+
+    /**
+     * The indicator which determines whether the sending of the pending
+     * updates has been scheduled.
+     */
+    private boolean flushScheduled = false;
+
+    /**
+     * The time in milliseconds at which the pending updates have last been
+     * sent.
+     */
+    private long lastFlushTime = 0;
+
+    /**
+     * The time in milliseconds at which this session has been created.
+     */
+    private final long creationTime = System.currentTimeMillis();
+
+    /**
+     * The number of white-board messages sent in this session.
+     */
+    private long sentMessageCount = 0;
+
+    /**
+     * The number of white-board object updates sent in this session.
+     */
+    private long sentUpdateCount = 0;
+
+    /**
+     * The number of white-board messages received in this session.
+     */
+    private long receivedMessageCount = 0;
+
+    /**
+     * The sum in milliseconds of the measured delays between the sending and
+     * the reception of the received updates.
+     */
+    private long latencySum = 0;
+
+    /**
+     * The number of received updates whose delay has been measured.
+     */
+    private long latencyCount = 0;
+
+    /**
+     * The maximum measured delay in milliseconds between the sending and the
+     * reception of a received update.
+     */
+    private long maxLatency = 0;
+
     /**
      * WhiteboardSessionJabberImpl constructor.
      *
@@ -104,6 +202,13 @@ public class WhiteboardSessionJabberImpl
         this.whiteboardID =
             String.valueOf(System.currentTimeMillis())
                 + String.valueOf(super.hashCode());
+
+        long frameInterval = DEFAULT_FRAME_INTERVAL;
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
+
+        if (cfg != null)
+            frameInterval = cfg.getLong(PNAME_FRAME_INTERVAL, frameInterval);
+        this.frameInterval = Math.max(0, frameInterval);
     }
 
     /**
@@ -188,6 +293,11 @@ public class WhiteboardSessionJabberImpl
      */
     public void leave()
     {
+        flushUpdates();
+
+        if (logger.isInfoEnabled())
+            logger.info("Leaving " + this + ": " + getStatistics());
+
         try
         {
             assertConnected();
@@ -555,6 +665,17 @@ public class WhiteboardSessionJabberImpl
     public void moveWhiteboardObject(WhiteboardObject obj)
         throws OperationFailedException
     {
+        // A stroke which is being drawn only grows so just its new points
+        // are sent rather than the whole object.
+        WhiteboardObjectPacketExtension appendUpdate
+            = isDeltasSupported() ? createAppendUpdate(obj) : null;
+
+        if (appendUpdate != null)
+        {
+            queueUpdate(appendUpdate);
+            return;
+        }
+
         WhiteboardObject wbObj = updateWhiteboardObjects(obj);
         if (wbObj != null)
             sendWhiteboardObject(wbObj);
@@ -580,6 +701,14 @@ public class WhiteboardSessionJabberImpl
             = (WhiteboardParticipantJabberImpl) participants.next();
         Contact contact = participant.getContact();
 
+        // The updates of the object are useless now but the other ones must
+        // be received before the deletion.
+        synchronized (pendingUpdates)
+        {
+            pendingUpdates.remove(obj.getID());
+        }
+        flushUpdates();
+
         try
         {
             assertConnected();
@@ -624,7 +753,9 @@ public class WhiteboardSessionJabberImpl
     }
 
     /**
-     * Sends the <tt>message</tt> to the destination.
+     * Sends the <tt>message</tt> to the destination. The message is sent
+     * together with the other updates of white-board objects made during the
+     * same frame interval.
      * @param message the <tt>Message</tt> to send.
      * @throws java.lang.IllegalStateException if the underlying stack is
      * not registered and initialized.
@@ -634,6 +765,287 @@ public class WhiteboardSessionJabberImpl
     public void sendWhiteboardObject(WhiteboardObject message)
         throws OperationFailedException
     {
+        Iterator<WhiteboardParticipant> participants
+            = getWhiteboardParticipants();
+
+        if (!participants.hasNext())
+            return;
+
+        assertConnected();
+
+        // Remember the sent object in order to be able to send only the
+        // changes when it is modified.
+        if (findWhiteboardObject(message.getID()) == null)
+            whiteboardObjects.add(message);
+
+        queueUpdate(
+            new WhiteboardObjectPacketExtension(
+                (WhiteboardObjectJabberImpl) message,
+                WhiteboardObjectPacketExtension.ACTION_DRAW));
+    }
+
+    /**
+     * Creates an update which appends the new points of a stroke to the
+     * corresponding local <tt>WhiteboardObject</tt> if the stroke only has
+     * new points since it has last been sent, and applies it locally.
+     *
+     * @param obj the modified <tt>WhiteboardObject</tt>
+     * @return the update which appends the new points of <tt>obj</tt> or
+     * <tt>null</tt> if <tt>obj</tt> is not a stroke which only has new points
+     */
+    private WhiteboardObjectPacketExtension createAppendUpdate(
+        WhiteboardObject obj)
+    {
+        List<WhiteboardPoint> newPoints = getStrokePoints(obj);
+
+        if (newPoints == null)
+            return null;
+
+        WhiteboardObject wbObj = findWhiteboardObject(obj.getID());
+
+        if (wbObj == null
+            || (wbObj instanceof WhiteboardObjectPath)
+                != (obj instanceof WhiteboardObjectPath)
+            || wbObj.getColor() != obj.getColor()
+            || wbObj.getThickness() != obj.getThickness())
+            return null;
+
+        List<WhiteboardPoint> oldPoints = getStrokePoints(wbObj);
+
+        if (oldPoints == null)
+            return null;
+
+        int oldSize = oldPoints.size();
+
+        // Comparing the ends is enough to tell a grown stroke from a moved
+        // one without comparing all the points each time a point is drawn.
+        if (newPoints.size() <= oldSize
+            || (oldSize > 0
+                && !(newPoints.get(0).equals(oldPoints.get(0))
+                    && newPoints.get(oldSize - 1).equals(
+                            oldPoints.get(oldSize - 1)))))
+            return null;
+
+        List<WhiteboardPoint> appendedPoints
+            = new ArrayList<WhiteboardPoint>(
+                    newPoints.subList(oldSize, newPoints.size()));
+
+        // The points are replaced rather than modified in place because the
+        // old list may still be serialized by a message being sent.
+        List<WhiteboardPoint> points
+            = new LinkedList<WhiteboardPoint>(oldPoints);
+
+        points.addAll(appendedPoints);
+        setStrokePoints(wbObj, points);
+
+        return new WhiteboardObjectPacketExtension(
+            wbObj.getID(), oldSize, appendedPoints);
+    }
+
+    /**
+     * Determines whether the participant is known to understand the updates
+     * which append points to strokes, so that strokes may be sent while they
+     * are drawn.
+     *
+     * @return <tt>true</tt> if strokes may be sent while they are drawn;
+     * <tt>false</tt> if they are to be sent once complete
+     */
+    public boolean isStrokeStreamingSupported()
+    {
+        return isDeltasSupported();
+    }
+
+    /**
+     * Determines whether the participant understands the updates which append
+     * points to strokes and the messages which carry several updates. Older
+     * clients only read the first update of a message and fail on the unknown
+     * updates so each update is sent to them in full in its own message until
+     * their features are known to include
+     * {@link WhiteboardObjectPacketExtension#FEATURE_DELTAS}.
+     *
+     * @return <tt>true</tt> if the participant understands the appended
+     * points and the batched updates; otherwise, <tt>false</tt>
+     */
+    private boolean isDeltasSupported()
+    {
+        Boolean deltasSupported = this.deltasSupported;
+
+        if (deltasSupported != null)
+            return deltasSupported;
+
+        Iterator<WhiteboardParticipant> participants
+            = getWhiteboardParticipants();
+
+        if (!participants.hasNext())
+            return false;
+
+        String fullJid
+            = jabberProvider.getFullJid(
+                    participants.next().getContactAddress());
+
+        if (fullJid == null)
+            return false;
+
+        try
+        {
+            // Schedules the discovery if the features are not known yet.
+            DiscoverInfo featureInfo
+                = jabberProvider.getDiscoveryManager()
+                    .discoverInfoNonBlocking(fullJid);
+
+            if (featureInfo == null)
+                return false;
+
+            deltasSupported
+                = featureInfo.containsFeature(
+                        WhiteboardObjectPacketExtension.FEATURE_DELTAS);
+            this.deltasSupported = deltasSupported;
+            return deltasSupported;
+        }
+        catch (XMPPException ex)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Failed to discover the features of " + fullJid,
+                    ex);
+            return false;
+        }
+    }
+
+    /**
+     * Adds an update of a <tt>WhiteboardObject</tt> to the updates to be
+     * sent, merging it with a pending update of the same object, and sends
+     * the pending updates if no update has been sent during the last frame
+     * interval or schedules their sending otherwise.
+     *
+     * @param update the update to send
+     */
+    private void queueUpdate(WhiteboardObjectPacketExtension update)
+    {
+        long delay;
+
+        synchronized (pendingUpdates)
+        {
+            String id = getUpdateID(update);
+            WhiteboardObjectPacketExtension pendingUpdate
+                = pendingUpdates.get(id);
+
+            if (pendingUpdate != null
+                && WhiteboardObjectPacketExtension.ACTION_APPEND.equals(
+                        update.getAction()))
+            {
+                if (WhiteboardObjectPacketExtension.ACTION_DRAW.equals(
+                        pendingUpdate.getAction()))
+                {
+                    // The pending object is sent with all its points.
+                    update = null;
+                }
+                else if (WhiteboardObjectPacketExtension.ACTION_APPEND.equals(
+                            pendingUpdate.getAction())
+                        && pendingUpdate.getPointIndex()
+                                + pendingUpdate.getPoints().size()
+                            == update.getPointIndex())
+                {
+                    pendingUpdate.getPoints().addAll(update.getPoints());
+                    update = null;
+                }
+                else
+                {
+                    // The points cannot be merged so the whole object is
+                    // sent instead.
+                    WhiteboardObject wbObj = findWhiteboardObject(id);
+
+                    if (wbObj != null)
+                    {
+                        update
+                            = new WhiteboardObjectPacketExtension(
+                                    (WhiteboardObjectJabberImpl) wbObj,
+                                    WhiteboardObjectPacketExtension
+                                        .ACTION_DRAW);
+                    }
+                }
+            }
+            if (update != null)
+                pendingUpdates.put(id, update);
+
+            if (flushScheduled)
+                return;
+
+            delay = lastFlushTime + frameInterval - System.currentTimeMillis();
+            if (delay > 0)
+            {
+                flushScheduled = true;
+                scheduleFlush(delay);
+            }
+        }
+
+        if (delay <= 0)
+            flushUpdates();
+    }
+
+    /**
+     * Schedules the sending of the pending updates.
+     *
+     * @param delay the delay in milliseconds after which the pending updates
+     * are to be sent
+     */
+    private void scheduleFlush(long delay)
+    {
+        TimerTask task
+            = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        flushUpdates();
+                    }
+                    catch (Throwable t)
+                    {
+                        if (t instanceof ThreadDeath)
+                            throw (ThreadDeath) t;
+
+                        // The timer is shared by all sessions so it must not
+                        // be killed by one of them.
+                        logger.error("Failed to send white-board objects.", t);
+                    }
+                }
+            };
+
+        synchronized (WhiteboardSessionJabberImpl.class)
+        {
+            if (flushTimer == null)
+            {
+                flushTimer
+                    = new Timer(
+                            WhiteboardSessionJabberImpl.class.getName(),
+                            true);
+            }
+            flushTimer.schedule(task, delay);
+        }
+    }
+
+    /**
+     * Sends all the pending updates of white-board objects in a single
+     * message or, if the participant does not understand batched updates, in
+     * a message each.
+     */
+    private void flushUpdates()
+    {
+        List<WhiteboardObjectPacketExtension> updates;
+
+        synchronized (pendingUpdates)
+        {
+            flushScheduled = false;
+            lastFlushTime = System.currentTimeMillis();
+            if (pendingUpdates.isEmpty())
+                return;
+            updates
+                = new ArrayList<WhiteboardObjectPacketExtension>(
+                        pendingUpdates.values());
+            pendingUpdates.clear();
+        }
+
         Iterator<WhiteboardParticipant> participants
             = getWhiteboardParticipants();
 
@@ -648,27 +1060,29 @@ public class WhiteboardSessionJabberImpl
         {
             assertConnected();
 
-            org.jivesoftware.smack.packet.Message msg =
-                new org.jivesoftware.smack.packet.Message();
-
-            WhiteboardObjectPacketExtension messageJI =
-                new WhiteboardObjectPacketExtension(
-                    (WhiteboardObjectJabberImpl) message,
-                    WhiteboardObjectPacketExtension.ACTION_DRAW);
-
-            msg.addExtension(messageJI);
-            //msg.addExtension(new Version());
+            if (isDeltasSupported())
+                sendUpdates(updates);
+            else
+            {
+                for (WhiteboardObjectPacketExtension update : updates)
+                    sendUpdates(Collections.singletonList(update));
+            }
 
-            MessageEventManager.addNotificationsRequests(msg, true, false,
-                false, true);
+            for (WhiteboardObjectPacketExtension update : updates)
+            {
+                WhiteboardObject wbObj = update.getWhiteboardObject();
 
-            smackChat.sendMessage(msg);
+                if (wbObj == null)
+                    wbObj = findWhiteboardObject(getUpdateID(update));
+                if (wbObj == null)
+                    continue;
 
-            WhiteboardObjectDeliveredEvent msgDeliveredEvt =
-                new WhiteboardObjectDeliveredEvent(
-                    this, message, contact, new Date());
+                WhiteboardObjectDeliveredEvent msgDeliveredEvt =
+                    new WhiteboardObjectDeliveredEvent(
+                        this, wbObj, contact, new Date());
 
-            fireMessageEvent(msgDeliveredEvt);
+                fireMessageEvent(msgDeliveredEvt);
+            }
         }
         catch (XMPPException ex)
         {
@@ -677,6 +1091,225 @@ public class WhiteboardSessionJabberImpl
         }
     }
 
+    /**
+     * Sends updates of white-board objects in a single message.
+     *
+     * @param updates the updates to send
+     * @throws XMPPException if sending the message fails
+     */
+    private void sendUpdates(List<WhiteboardObjectPacketExtension> updates)
+        throws XMPPException
+    {
+        org.jivesoftware.smack.packet.Message msg =
+            new org.jivesoftware.smack.packet.Message();
+        long now = System.currentTimeMillis();
+
+        for (WhiteboardObjectPacketExtension update : updates)
+        {
+            update.setTimestamp(now);
+            msg.addExtension(update);
+        }
+
+        MessageEventManager.addNotificationsRequests(msg, true, false,
+            false, true);
+
+        smackChat.sendMessage(msg);
+
+        synchronized (this)
+        {
+            sentMessageCount++;
+            sentUpdateCount += updates.size();
+        }
+    }
+
+    /**
+     * Returns the identifier of the <tt>WhiteboardObject</tt> updated by a
+     * specific update.
+     *
+     * @param update the update
+     * @return the identifier of the <tt>WhiteboardObject</tt> updated by
+     * <tt>update</tt>
+     */
+    private static String getUpdateID(WhiteboardObjectPacketExtension update)
+    {
+        WhiteboardObject wbObj = update.getWhiteboardObject();
+
+        return (wbObj == null) ? update.getWhiteboardObjectID() : wbObj.getID();
+    }
+
+    /**
+     * Returns the points of a stroke, i.e. of a path or a polyline.
+     *
+     * @param obj the <tt>WhiteboardObject</tt>
+     * @return the points of <tt>obj</tt> or <tt>null</tt> if <tt>obj</tt> is
+     * not a stroke
+     */
+    private static List<WhiteboardPoint> getStrokePoints(WhiteboardObject obj)
+    {
+        if (obj instanceof WhiteboardObjectPath)
+            return ((WhiteboardObjectPath) obj).getPoints();
+        else if (obj instanceof WhiteboardObjectPolyLine)
+            return ((WhiteboardObjectPolyLine) obj).getPoints();
+        else
+            return null;
+    }
+
+    /**
+     * Sets the points of a stroke, i.e. of a path or a polyline.
+     *
+     * @param obj the <tt>WhiteboardObject</tt>
+     * @param points the new points of <tt>obj</tt>
+     */
+    private static void setStrokePoints(
+        WhiteboardObject obj,
+        List<WhiteboardPoint> points)
+    {
+        if (obj instanceof WhiteboardObjectPath)
+            ((WhiteboardObjectPath) obj).setPoints(points);
+        else if (obj instanceof WhiteboardObjectPolyLine)
+            ((WhiteboardObjectPolyLine) obj).setPoints(points);
+    }
+
+    /**
+     * Returns the <tt>WhiteboardObject</tt> of this session with a specific
+     * identifier.
+     *
+     * @param id the identifier of the <tt>WhiteboardObject</tt>
+     * @return the <tt>WhiteboardObject</tt> with the identifier <tt>id</tt>
+     * or <tt>null</tt> if there is no such object
+     */
+    private WhiteboardObject findWhiteboardObject(String id)
+    {
+        synchronized (whiteboardObjects)
+        {
+            for (WhiteboardObject wbObj : whiteboardObjects)
+            {
+                if (wbObj.getID().equals(id))
+                    return wbObj;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of white-board messages sent in this session.
+     *
+     * @return the number of white-board messages sent in this session
+     */
+    public synchronized long getSentMessageCount()
+    {
+        return sentMessageCount;
+    }
+
+    /**
+     * Returns the number of white-board messages received in this session.
+     *
+     * @return the number of white-board messages received in this session
+     */
+    public synchronized long getReceivedMessageCount()
+    {
+        return receivedMessageCount;
+    }
+
+    /**
+     * Returns the average delay between the sending and the reception of the
+     * received strokes. The delay is only meaningful if the clocks of the
+     * two parties are synchronized, e.g. for two sessions on the same host.
+     *
+     * @return the average delay in milliseconds between the sending and the
+     * reception of the received strokes or <tt>-1</tt> if it has not been
+     * measured
+     */
+    public synchronized long getAverageLatency()
+    {
+        return (latencyCount == 0) ? -1 : (latencySum / latencyCount);
+    }
+
+    /**
+     * Returns the maximum delay between the sending and the reception of the
+     * received strokes.
+     *
+     * @return the maximum delay in milliseconds between the sending and the
+     * reception of the received strokes
+     */
+    public synchronized long getMaxLatency()
+    {
+        return maxLatency;
+    }
+
+    /**
+     * Returns a description of the traffic of this session.
+     *
+     * @return a description of the traffic of this session
+     */
+    private synchronized String getStatistics()
+    {
+        double duration
+            = Math.max(1, System.currentTimeMillis() - creationTime) / 1000d;
+
+        return "sent " + sentMessageCount + " messages ("
+            + sentUpdateCount + " updates, "
+            + String.format("%.2f", sentMessageCount / duration)
+            + " messages/s), received " + receivedMessageCount
+            + " messages ("
+            + String.format("%.2f", receivedMessageCount / duration)
+            + " messages/s), latency avg " + getAverageLatency()
+            + " ms, max " + maxLatency + " ms";
+    }
+
+    /**
+     * Appends the points of a received update to the stroke it updates.
+     *
+     * @param update the received update
+     * @return the updated stroke or <tt>null</tt> if the update cannot be
+     * applied
+     */
+    private WhiteboardObject applyAppendUpdate(
+        WhiteboardObjectPacketExtension update)
+    {
+        WhiteboardObject wbObj
+            = findWhiteboardObject(update.getWhiteboardObjectID());
+        List<WhiteboardPoint> oldPoints = getStrokePoints(wbObj);
+
+        if (oldPoints == null || update.getPointIndex() > oldPoints.size())
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Cannot append points to "
+                    + update.getWhiteboardObjectID());
+            return null;
+        }
+
+        List<WhiteboardPoint> appendedPoints = update.getPoints();
+        int known = oldPoints.size() - update.getPointIndex();
+
+        if (known >= appendedPoints.size())
+            return null;
+
+        List<WhiteboardPoint> points
+            = new LinkedList<WhiteboardPoint>(oldPoints);
+
+        points.addAll(appendedPoints.subList(known, appendedPoints.size()));
+        setStrokePoints(wbObj, points);
+
+        long timestamp = update.getTimestamp();
+
+        if (timestamp >= 0)
+        {
+            long latency = System.currentTimeMillis() - timestamp;
+
+            if (latency >= 0)
+            {
+                synchronized (this)
+                {
+                    latencySum += latency;
+                    latencyCount++;
+                    maxLatency = Math.max(maxLatency, latency);
+                }
+            }
+        }
+        return wbObj;
+    }
+
     /**
      * Utility method throwing an exception if the stack is not properly
      * initialized.
@@ -932,6 +1565,7 @@ public class WhiteboardSessionJabberImpl
                 listener.whiteboardObjectReceived(
                     (WhiteboardObjectReceivedEvent) evt);
 
+                whiteboardObjects.remove(wbObj);//remove an older version
                 whiteboardObjects.add(wbObj);
             }
             else if (evt instanceof WhiteboardObjectDeletedEvent)
@@ -1114,10 +1748,16 @@ public class WhiteboardSessionJabberImpl
             if (!(packet instanceof org.jivesoftware.smack.packet.Message))
                 return;
 
-            PacketExtension objectExt =
-                packet.getExtension(
-                    WhiteboardObjectPacketExtension.ELEMENT_NAME,
-                    WhiteboardObjectPacketExtension.NAMESPACE);
+            // All the updates made by the sender during a frame interval are
+            // received in a single message.
+            List<WhiteboardObjectPacketExtension> objectExts
+                = new ArrayList<WhiteboardObjectPacketExtension>();
+
+            for (PacketExtension ext : packet.getExtensions())
+            {
+                if (ext instanceof WhiteboardObjectPacketExtension)
+                    objectExts.add((WhiteboardObjectPacketExtension) ext);
+            }
 
             PacketExtension sessionExt =
                 packet.getExtension(
@@ -1143,7 +1783,7 @@ public class WhiteboardSessionJabberImpl
                 }
             }
 
-            if (objectExt == null)
+            if (objectExts.isEmpty())
                 return;
 
             String fromUserID = StringUtils.parseBareAddress(msg.getFrom());
@@ -1170,9 +1810,6 @@ public class WhiteboardSessionJabberImpl
             if (!wbParticipants.containsKey(sourceContact.getAddress()))
                 return;
 
-            WhiteboardObjectPacketExtension newMessage
-                = (WhiteboardObjectPacketExtension) objectExt;
-
             if (msg.getType()
                     == org.jivesoftware.smack.packet.Message.Type.error)
             {
@@ -1196,42 +1833,78 @@ public class WhiteboardSessionJabberImpl
                     }
                 }
 
-                WhiteboardObjectDeliveryFailedEvent evt =
-                    new WhiteboardObjectDeliveryFailedEvent(
-                        WhiteboardSessionJabberImpl.this,
-                        newMessage.getWhiteboardObject(),
-                        sourceContact,
-                        errorResultCode,
-                        new Date());
+                for (WhiteboardObjectPacketExtension newMessage : objectExts)
+                {
+                    WhiteboardObject wbObj = newMessage.getWhiteboardObject();
+
+                    if (wbObj == null)
+                    {
+                        wbObj = findWhiteboardObject(
+                            newMessage.getWhiteboardObjectID());
+                    }
+
+                    WhiteboardObjectDeliveryFailedEvent evt =
+                        new WhiteboardObjectDeliveryFailedEvent(
+                            WhiteboardSessionJabberImpl.this,
+                            wbObj,
+                            sourceContact,
+                            errorResultCode,
+                            new Date());
 
-                fireMessageEvent(evt);
+                    fireMessageEvent(evt);
+                }
 
                 return;
             }
 
-            if (newMessage.getAction().equals(
-                WhiteboardObjectPacketExtension.ACTION_DELETE))
+            synchronized (WhiteboardSessionJabberImpl.this)
+            {
+                receivedMessageCount++;
+            }
+
+            for (WhiteboardObjectPacketExtension newMessage : objectExts)
             {
-                WhiteboardObjectDeletedEvent msgDeletedEvt
-                    = new WhiteboardObjectDeletedEvent(
+                if (newMessage.getAction().equals(
+                    WhiteboardObjectPacketExtension.ACTION_DELETE))
+                {
+                    WhiteboardObjectDeletedEvent msgDeletedEvt
+                        = new WhiteboardObjectDeletedEvent(
+                                WhiteboardSessionJabberImpl.this,
+                                newMessage.getWhiteboardObjectID(),
+                                sourceContact,
+                                new Date());
+
+                    fireMessageEvent(msgDeletedEvt);
+                }
+                else if (newMessage.getAction().equals(
+                    WhiteboardObjectPacketExtension.ACTION_DRAW))
+                {
+                    WhiteboardObjectReceivedEvent msgReceivedEvt
+                        = new WhiteboardObjectReceivedEvent(
                             WhiteboardSessionJabberImpl.this,
-                            newMessage.getWhiteboardObjectID(),
+                            newMessage.getWhiteboardObject(),
                             sourceContact,
                             new Date());
 
-                fireMessageEvent(msgDeletedEvt);
-            }
-            else if (newMessage.getAction().equals(
-                WhiteboardObjectPacketExtension.ACTION_DRAW))
-            {
-                WhiteboardObjectReceivedEvent msgReceivedEvt
-                    = new WhiteboardObjectReceivedEvent(
-                        WhiteboardSessionJabberImpl.this,
-                        newMessage.getWhiteboardObject(),
-                        sourceContact,
-                        new Date());
-
-                fireMessageEvent(msgReceivedEvt);
+                    fireMessageEvent(msgReceivedEvt);
+                }
+                else if (newMessage.getAction().equals(
+                    WhiteboardObjectPacketExtension.ACTION_APPEND))
+                {
+                    WhiteboardObject wbObj = applyAppendUpdate(newMessage);
+
+                    if (wbObj == null)
+                        continue;
+
+                    WhiteboardObjectModifiedEvent msgModifiedEvt
+                        = new WhiteboardObjectModifiedEvent(
+                            WhiteboardSessionJabberImpl.this,
+                            wbObj,
+                            sourceContact,
+                            new Date());
+
+                    fireMessageEvent(msgModifiedEvt);
+                }
             }
         }
     }
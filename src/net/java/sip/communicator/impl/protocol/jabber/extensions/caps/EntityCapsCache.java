@@ -0,0 +1,772 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.caps;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+import org.jivesoftware.smackx.packet.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+/**
+ * Caches the <tt>DiscoverInfo</tt>s associated with <tt>Caps</tt> in memory
+ * and persists them in a dedicated file across application instances. The
+ * file is read in one go the first time the cache is used and is rewritten in
+ * the background a short while after the cache has changed.
+ * <p>
+ * The identities and the features of the cached <tt>DiscoverInfo</tt>s are
+ * kept in a compact form in which their strings are shared and so are the
+ * sets of features of <tt>DiscoverInfo</tt>s with the same features. The
+ * <tt>DiscoverInfo</tt>s are recreated from the compact form without parsing
+ * XML the first time they are asked for, only the rare ones with extensions
+ * (e.g. extended info forms) are kept and parsed as XML. Lookups do not lock.
+ * The number of cached <tt>DiscoverInfo</tt>s is limited to
+ * {@link #MAX_ENTRIES} and the least recently used ones are evicted first.
+ * </p>
+ */
+class EntityCapsCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>EntityCapsCache</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(EntityCapsCache.class);
+
+    /**
+     * The name of the file in which the cache is persisted.
+     */
+    private static final String FILE_NAME = "entitycaps.bin";
+
+    /**
+     * The version of the format of {@link #FILE_NAME}. A file in a different
+     * format is ignored.
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * The maximum number of <tt>DiscoverInfo</tt>s to be cached.
+     */
+    static final int MAX_ENTRIES = 4096;
+
+    /**
+     * The milliseconds to wait after the cache has changed before it is
+     * persisted so that the changes which follow (e.g. while logging in with
+     * a large roster) are persisted at once.
+     */
+    private static final long STORE_DELAY = 5000;
+
+    /**
+     * The entries of the cache.
+     */
+    private final Map<EntityCapsManager.Caps, Entry> entries
+        = new ConcurrentHashMap<EntityCapsManager.Caps, Entry>();
+
+    /**
+     * The sets of features shared by the entries with the same features.
+     */
+    private final Map<List<String>, String[]> featureSets
+        = new ConcurrentHashMap<List<String>, String[]>();
+
+    /**
+     * The file in which the cache is persisted or <tt>null</tt> if it cannot
+     * be persisted.
+     */
+    private final File file;
+
+    /**
+     * The <tt>FailSafeTransaction</tt> which protects {@link #file} from being
+     * corrupted while it is written.
+     */
+    private FailSafeTransaction fileTransaction;
+
+    /**
+     * The indicator which determines whether the cache has changed since it
+     * was last persisted.
+     */
+    private boolean modified = false;
+
+    /**
+     * The thread which persists the cache after it has changed or
+     * <tt>null</tt> if none is running.
+     */
+    private Thread storeThread;
+
+    /**
+     * The strings shared by the entries.
+     */
+    private final Map<String, String> strings
+        = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Initializes a new <tt>EntityCapsCache</tt> and loads the entries
+     * persisted by a previous application instance.
+     */
+    EntityCapsCache()
+    {
+        File file = null;
+
+        try
+        {
+            FileAccessService fileAccessService
+                = JabberActivator.getFileAccessService();
+
+            if (fileAccessService != null)
+            {
+                file = fileAccessService.getPrivatePersistentFile(FILE_NAME);
+                fileTransaction
+                    = fileAccessService.createFailSafeTransaction(file);
+                if (file.exists())
+                    fileTransaction.restoreFile();
+            }
+        }
+        catch (Exception ex)
+        {
+            logger.error("Failed to locate the entity capabilities cache", ex);
+        }
+        this.file = file;
+
+        if (file != null)
+        {
+            if (file.exists())
+                load();
+            else
+                importConfiguration();
+        }
+    }
+
+    /**
+     * Creates a new entry for a specific <tt>DiscoverInfo</tt>.
+     *
+     * @param discoverInfo the <tt>DiscoverInfo</tt> to create an entry for
+     * @return a new entry for <tt>discoverInfo</tt>
+     */
+    private Entry createEntry(DiscoverInfo discoverInfo)
+    {
+        List<String> identities = new ArrayList<String>();
+
+        for (Iterator<DiscoverInfo.Identity> i
+                    = discoverInfo.getIdentities();
+                i.hasNext();)
+        {
+            DiscoverInfo.Identity identity = i.next();
+
+            identities.add(identity.getCategory());
+            identities.add(identity.getType());
+            identities.add(identity.getName());
+        }
+
+        List<String> features = new ArrayList<String>();
+
+        for (Iterator<DiscoverInfo.Feature> i = discoverInfo.getFeatures();
+                i.hasNext();)
+        {
+            String feature = i.next().getVar();
+
+            if (feature != null)
+                features.add(feature);
+        }
+
+        /*
+         * The extensions (e.g. extended info forms) do not have a compact
+         * form so the DiscoverInfos with extensions are kept as XML.
+         */
+        String xml
+            = discoverInfo.getExtensions().isEmpty()
+                ? null
+                : discoverInfo.getChildElementXML();
+
+        return
+            new Entry(
+                    intern(identities.toArray(new String[identities.size()])),
+                    internFeatures(features),
+                    xml,
+                    System.currentTimeMillis(),
+                    discoverInfo);
+    }
+
+    /**
+     * Evicts the least recently used entries if there are more than
+     * {@link #MAX_ENTRIES}.
+     */
+    private void evict()
+    {
+        int excess = entries.size() - MAX_ENTRIES;
+
+        if (excess <= 0)
+            return;
+
+        /*
+         * Evict a tenth more than necessary so that the entries are not
+         * sorted again with the next put.
+         */
+        excess += MAX_ENTRIES / 10;
+
+        /*
+         * The times of last use change while the entries are being evicted
+         * so the times are sorted separately.
+         */
+        long[] lastUsed = new long[entries.size()];
+        int count = 0;
+
+        for (Entry entry : entries.values())
+        {
+            if (count == lastUsed.length)
+                break;
+            lastUsed[count++] = entry.lastUsed;
+        }
+        if (count == 0)
+            return;
+        Arrays.sort(lastUsed, 0, count);
+
+        long threshold = lastUsed[Math.min(excess, count) - 1];
+
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();)
+        {
+            if (i.next().lastUsed <= threshold)
+                i.remove();
+        }
+    }
+
+    /**
+     * Gets the <tt>DiscoverInfo</tt> associated with a specific
+     * <tt>Caps</tt>.
+     *
+     * @param caps the <tt>Caps</tt> to get the associated
+     * <tt>DiscoverInfo</tt> of
+     * @return the <tt>DiscoverInfo</tt> associated with <tt>caps</tt> or
+     * <tt>null</tt> if none is cached
+     */
+    DiscoverInfo get(EntityCapsManager.Caps caps)
+    {
+        Entry entry = entries.get(caps);
+
+        if (entry == null)
+            return null;
+
+        entry.lastUsed = System.currentTimeMillis();
+
+        DiscoverInfo discoverInfo = entry.discoverInfo;
+
+        if (discoverInfo == null)
+        {
+            discoverInfo = entry.toDiscoverInfo(caps);
+            if (discoverInfo == null)
+            {
+                entries.remove(caps);
+                scheduleStore();
+            }
+            else
+                entry.discoverInfo = discoverInfo;
+        }
+        return discoverInfo;
+    }
+
+    /**
+     * Imports the <tt>DiscoverInfo</tt>s which were persisted in the
+     * <tt>ConfigurationService</tt> by older versions and removes them from
+     * there.
+     */
+    private void importConfiguration()
+    {
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
+
+        if (cfg == null)
+            return;
+
+        String prefix = EntityCapsManager.CAPS_PROPERTY_NAME_PREFIX;
+        List<String> names
+            = cfg.getPropertyNamesByPrefix(
+                    prefix.substring(0, prefix.length() - 1),
+                    false);
+        Map<String, Object> removed = new HashMap<String, Object>();
+
+        for (String name : names)
+        {
+            if (!name.startsWith(prefix))
+                continue;
+            removed.put(name, null);
+
+            // The property names are node#hash#ver.
+            String nodeHashVer = name.substring(prefix.length());
+            int verIndex = nodeHashVer.lastIndexOf('#');
+            int hashIndex
+                = (verIndex > 0)
+                    ? nodeHashVer.lastIndexOf('#', verIndex - 1)
+                    : -1;
+
+            if (hashIndex <= 0)
+                continue;
+
+            EntityCapsManager.Caps caps
+                = new EntityCapsManager.Caps(
+                        nodeHashVer.substring(0, hashIndex),
+                        nodeHashVer.substring(hashIndex + 1, verIndex),
+                        nodeHashVer.substring(verIndex + 1),
+                        null);
+            DiscoverInfo discoverInfo = parse(cfg.getString(name));
+
+            if ((discoverInfo != null) && caps.isValid(discoverInfo))
+            {
+                Entry entry = createEntry(discoverInfo);
+
+                // Load the imported DiscoverInfos lazily as the stored ones.
+                entry.discoverInfo = null;
+                entries.put(caps, entry);
+            }
+        }
+        if (!removed.isEmpty())
+        {
+            if (logger.isInfoEnabled())
+            {
+                logger.info(
+                        "Moving " + entries.size()
+                            + " entity capabilities from the configuration"
+                            + " to " + file);
+            }
+            modified = true;
+            if (store())
+                cfg.setProperties(removed);
+        }
+    }
+
+    /**
+     * Interns the strings of a specific array so that equal strings are
+     * shared by the entries.
+     *
+     * @param array the array the strings of which are to be interned
+     * @return <tt>array</tt> with its strings interned
+     */
+    private String[] intern(String[] array)
+    {
+        for (int i = 0; i < array.length; i++)
+        {
+            String s = array[i];
+
+            if (s != null)
+            {
+                String interned = strings.get(s);
+
+                if (interned == null)
+                    strings.put(s, s);
+                else
+                    array[i] = interned;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Gets the shared set of specific features.
+     *
+     * @param features the features to get the shared set of
+     * @return the shared set of <tt>features</tt>
+     */
+    private String[] internFeatures(List<String> features)
+    {
+        String[] featureSet = featureSets.get(features);
+
+        if (featureSet == null)
+        {
+            featureSet = intern(features.toArray(new String[features.size()]));
+            featureSets.put(features, featureSet);
+        }
+        return featureSet;
+    }
+
+    /**
+     * Reads the entries persisted in {@link #file}.
+     */
+    private void load()
+    {
+        long startTime = System.currentTimeMillis();
+
+        try
+        {
+            DataInputStream in
+                = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file)));
+
+            try
+            {
+                if (in.readInt() != FILE_VERSION)
+                    return;
+
+                for (int count = in.readInt(); count > 0; count--)
+                {
+                    EntityCapsManager.Caps caps
+                        = new EntityCapsManager.Caps(
+                                in.readUTF(),
+                                in.readUTF(),
+                                in.readUTF(),
+                                null);
+                    long lastUsed = in.readLong();
+                    String[] identities = new String[in.readInt()];
+
+                    for (int i = 0; i < identities.length; i++)
+                        identities[i] = in.readBoolean() ? in.readUTF() : null;
+
+                    int featureCount = in.readInt();
+                    List<String> features
+                        = new ArrayList<String>(featureCount);
+
+                    for (int i = 0; i < featureCount; i++)
+                        features.add(in.readUTF());
+
+                    String xml = null;
+
+                    if (in.readBoolean())
+                    {
+                        byte[] bytes = new byte[in.readInt()];
+
+                        in.readFully(bytes);
+                        xml = new String(bytes, "UTF-8");
+                    }
+
+                    entries.put(
+                            caps,
+                            new Entry(
+                                    intern(identities),
+                                    internFeatures(features),
+                                    xml,
+                                    lastUsed,
+                                    null));
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ioe)
+        {
+            logger.error(
+                    "Failed to load the entity capabilities cache " + file,
+                    ioe);
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Loaded " + entries.size() + " entity capabilities in "
+                        + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    /**
+     * Parses a specific disco#info XML into a <tt>DiscoverInfo</tt>.
+     *
+     * @param xml the disco#info XML to be parsed
+     * @return the <tt>DiscoverInfo</tt> parsed from <tt>xml</tt> or
+     * <tt>null</tt> if <tt>xml</tt> could not be parsed
+     */
+    static DiscoverInfo parse(String xml)
+    {
+        if ((xml == null) || (xml.length() == 0))
+            return null;
+
+        IQProvider discoverInfoProvider
+            = (IQProvider)
+                ProviderManager.getInstance().getIQProvider(
+                        "query",
+                        "http://jabber.org/protocol/disco#info");
+
+        if (discoverInfoProvider == null)
+            return null;
+
+        try
+        {
+            XmlPullParser parser = new MXParser();
+
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(new StringReader(xml));
+            // Start the parser.
+            parser.next();
+            return (DiscoverInfo) discoverInfoProvider.parseIQ(parser);
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Associates a specific <tt>DiscoverInfo</tt> with a specific
+     * <tt>Caps</tt> and persists the association unless it is known already.
+     *
+     * @param caps the <tt>Caps</tt> to associate <tt>discoverInfo</tt> with
+     * @param discoverInfo the <tt>DiscoverInfo</tt> to be associated with
+     * <tt>caps</tt>
+     */
+    void put(EntityCapsManager.Caps caps, DiscoverInfo discoverInfo)
+    {
+        Entry entry = entries.get(caps);
+
+        if (entry != null)
+        {
+            /*
+             * A ver is the hash of the DiscoverInfo so the DiscoverInfo
+             * associated with it does not change.
+             */
+            entry.lastUsed = System.currentTimeMillis();
+            entry.discoverInfo = discoverInfo;
+            return;
+        }
+
+        entries.put(caps, createEntry(discoverInfo));
+        evict();
+        scheduleStore();
+    }
+
+    /**
+     * Schedules the persisting of the cache in the background unless it has
+     * been scheduled already.
+     */
+    private synchronized void scheduleStore()
+    {
+        modified = true;
+        if ((storeThread != null) || (file == null))
+            return;
+
+        storeThread
+            = new Thread(EntityCapsCache.class.getName())
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(STORE_DELAY);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                    }
+                    synchronized (EntityCapsCache.this)
+                    {
+                        storeThread = null;
+                    }
+                    store();
+                }
+            };
+        storeThread.setDaemon(true);
+        storeThread.start();
+    }
+
+    /**
+     * Persists the cache in {@link #file} if it has changed since it was last
+     * persisted.
+     *
+     * @return <tt>true</tt> if the cache is persisted; otherwise,
+     * <tt>false</tt>
+     */
+    synchronized boolean store()
+    {
+        if (file == null)
+            return false;
+        if (!modified)
+            return true;
+        modified = false;
+
+        try
+        {
+            if (file.exists())
+            {
+                try
+                {
+                    fileTransaction.beginTransaction();
+                }
+                catch (IllegalStateException ise)
+                {
+                    fileTransaction = null;
+                }
+            }
+
+            DataOutputStream out
+                = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(file)));
+
+            try
+            {
+                /*
+                 * The entries may change while they are written so they are
+                 * copied in order to write their count first.
+                 */
+                List<Map.Entry<EntityCapsManager.Caps, Entry>> entries
+                    = new ArrayList<Map.Entry<EntityCapsManager.Caps, Entry>>(
+                            this.entries.entrySet());
+
+                out.writeInt(FILE_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<EntityCapsManager.Caps, Entry> e : entries)
+                {
+                    EntityCapsManager.Caps caps = e.getKey();
+                    Entry entry = e.getValue();
+
+                    out.writeUTF(caps.node);
+                    out.writeUTF(caps.hash);
+                    out.writeUTF(caps.ver);
+                    out.writeLong(entry.lastUsed);
+                    out.writeInt(entry.identities.length);
+                    for (String identity : entry.identities)
+                    {
+                        out.writeBoolean(identity != null);
+                        if (identity != null)
+                            out.writeUTF(identity);
+                    }
+                    out.writeInt(entry.features.length);
+                    for (String feature : entry.features)
+                        out.writeUTF(feature);
+                    out.writeBoolean(entry.xml != null);
+                    if (entry.xml != null)
+                    {
+                        byte[] bytes = entry.xml.getBytes("UTF-8");
+
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if (fileTransaction != null)
+            {
+                try
+                {
+                    fileTransaction.commit();
+                }
+                catch (IllegalStateException ise)
+                {
+                    // There was no transaction to commit.
+                }
+            }
+        }
+        catch (IOException ioe)
+        {
+            logger.error(
+                    "Failed to store the entity capabilities cache " + file,
+                    ioe);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Represents a <tt>DiscoverInfo</tt> in the cache in a compact form.
+     */
+    private static class Entry
+    {
+        /**
+         * The <tt>DiscoverInfo</tt> represented by this <tt>Entry</tt> or
+         * <tt>null</tt> if it has not been created from the compact form yet.
+         */
+        volatile DiscoverInfo discoverInfo;
+
+        /**
+         * The features of the <tt>DiscoverInfo</tt>. Shared by the entries
+         * with the same features.
+         */
+        final String[] features;
+
+        /**
+         * The categories, the types and the names of the identities of the
+         * <tt>DiscoverInfo</tt> in groups of three.
+         */
+        final String[] identities;
+
+        /**
+         * The time at which the <tt>DiscoverInfo</tt> was last used.
+         */
+        volatile long lastUsed;
+
+        /**
+         * The XML of the <tt>DiscoverInfo</tt> if it has extensions which
+         * do not have a compact form; otherwise, <tt>null</tt>.
+         */
+        final String xml;
+
+        /**
+         * Initializes a new <tt>Entry</tt>.
+         *
+         * @param identities the categories, the types and the names of the
+         * identities of the <tt>DiscoverInfo</tt> in groups of three
+         * @param features the features of the <tt>DiscoverInfo</tt>
+         * @param xml the XML of the <tt>DiscoverInfo</tt> if it has extensions
+         * @param lastUsed the time at which the <tt>DiscoverInfo</tt> was last
+         * used
+         * @param discoverInfo the <tt>DiscoverInfo</tt> or <tt>null</tt> to
+         * create it from the compact form when it is first asked for
+         */
+        Entry(
+                String[] identities,
+                String[] features,
+                String xml,
+                long lastUsed,
+                DiscoverInfo discoverInfo)
+        {
+            this.identities = identities;
+            this.features = features;
+            this.xml = xml;
+            this.lastUsed = lastUsed;
+            this.discoverInfo = discoverInfo;
+        }
+
+        /**
+         * Creates the <tt>DiscoverInfo</tt> represented by this
+         * <tt>Entry</tt>.
+         *
+         * @param caps the <tt>Caps</tt> with which the <tt>DiscoverInfo</tt>
+         * is associated
+         * @return the <tt>DiscoverInfo</tt> represented by this <tt>Entry</tt>
+         * or <tt>null</tt> if its XML could not be parsed
+         */
+        DiscoverInfo toDiscoverInfo(EntityCapsManager.Caps caps)
+        {
+            DiscoverInfo discoverInfo;
+
+            if (xml == null)
+            {
+                discoverInfo = new DiscoverInfo();
+                for (int i = 0; i + 2 < identities.length; i += 3)
+                {
+                    DiscoverInfo.Identity identity
+                        = new DiscoverInfo.Identity(
+                                identities[i],
+                                identities[i + 2]);
+
+                    identity.setType(identities[i + 1]);
+                    discoverInfo.addIdentity(identity);
+                }
+                for (String feature : features)
+                    discoverInfo.addFeature(feature);
+            }
+            else
+            {
+                discoverInfo = parse(xml);
+                if (discoverInfo == null)
+                    return null;
+            }
+            discoverInfo.setFrom(null);
+            discoverInfo.setTo(null);
+            discoverInfo.setPacketID(null);
+            discoverInfo.setType(IQ.Type.RESULT);
+            discoverInfo.setNode(caps.getNodeVer());
+            return discoverInfo;
+        }
+    }
+}
@@ -6,17 +6,14 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions.caps;
 
-import java.io.*;
 import java.lang.reflect.*;
 import java.security.*;
 import java.util.*;
 import java.util.concurrent.*;
 
-import net.java.sip.communicator.impl.protocol.jabber.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
 
-import org.jitsi.service.configuration.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
@@ -25,8 +22,6 @@ import org.jivesoftware.smack.util.Base64;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smackx.*;
 import org.jivesoftware.smackx.packet.*;
-import org.xmlpull.mxp1.*;
-import org.xmlpull.v1.*;
 
 /**
  * Keeps track of entity capabilities.
@@ -46,10 +41,11 @@ public class EntityCapsManager
         = Logger.getLogger(EntityCapsManager.class);
 
     /**
-     * The prefix of the <tt>ConfigurationService</tt> properties which persist
-     * {@link #caps2discoverInfo}.
+     * The prefix of the <tt>ConfigurationService</tt> properties which
+     * persisted {@link #caps2discoverInfo} before it got its own file. They
+     * are moved to the file the first time the cache is used.
      */
-    private static final String CAPS_PROPERTY_NAME_PREFIX
+    static final String CAPS_PROPERTY_NAME_PREFIX
         = "net.java.sip.communicator.impl.protocol.jabber.extensions.caps."
             + "EntityCapsManager.CAPS.";
 
@@ -66,17 +62,16 @@ public class EntityCapsManager
     private static String entityNode = "http://jitsi.org";
 
     /**
-     * The <tt>Map</tt> of <tt>Caps</tt> to <tt>DiscoverInfo</tt> which
-     * associates a node#ver with the entity capabilities so that they don't
-     * have to be retrieved every time their necessary. Because ver is
-     * constructed from the entity capabilities using a specific hash method,
-     * the hash method is also associated with the entity capabilities along
-     * with the node and the ver in order to disambiguate cases of equal ver
-     * values for different entity capabilities constructed using different hash
-     * methods.
+     * The cache of <tt>Caps</tt> to <tt>DiscoverInfo</tt> which associates a
+     * node#ver with the entity capabilities so that they don't have to be
+     * retrieved every time their necessary. Because ver is constructed from
+     * the entity capabilities using a specific hash method, the hash method is
+     * also associated with the entity capabilities along with the node and the
+     * ver in order to disambiguate cases of equal ver values for different
+     * entity capabilities constructed using different hash methods. Created
+     * and loaded from its file when first needed.
      */
-    private static final Map<Caps, DiscoverInfo> caps2discoverInfo
-        = new ConcurrentHashMap<Caps, DiscoverInfo>();
+    private static volatile EntityCapsCache caps2discoverInfo;
 
     /**
      * Map of Full JID -&gt; DiscoverInfo/null. In case of c2s connection the
@@ -135,43 +130,50 @@ public class EntityCapsManager
          */
         info.setNode(caps.getNodeVer());
 
-        synchronized (caps2discoverInfo)
-        {
-            DiscoverInfo oldInfo = caps2discoverInfo.put(caps, info);
+        /*
+         * If the specified info is a new association for the specified node,
+         * the cache remembers it across application instances in order to not
+         * query for it over the network.
+         */
+        getCaps2DiscoverInfo().put(caps, info);
+    }
 
-            /*
-             * If the specified info is a new association for the specified
-             * node, remember it across application instances in order to not
-             * query for it over the network.
-             */
-            if ((oldInfo == null) || !oldInfo.equals(info))
-            {
-                String xml = info.getChildElementXML();
+    /**
+     * Gets the cache of <tt>Caps</tt> to <tt>DiscoverInfo</tt> and creates it
+     * if it has not been created yet.
+     *
+     * @return the cache of <tt>Caps</tt> to <tt>DiscoverInfo</tt>
+     */
+    private static EntityCapsCache getCaps2DiscoverInfo()
+    {
+        EntityCapsCache caps2discoverInfo = EntityCapsManager.caps2discoverInfo;
 
-                if ((xml != null) && (xml.length() != 0))
+        if (caps2discoverInfo == null)
+        {
+            synchronized (EntityCapsManager.class)
+            {
+                caps2discoverInfo = EntityCapsManager.caps2discoverInfo;
+                if (caps2discoverInfo == null)
                 {
-                    JabberActivator
-                        .getConfigurationService()
-                            .setProperty(getCapsPropertyName(caps), xml);
+                    caps2discoverInfo = new EntityCapsCache();
+                    EntityCapsManager.caps2discoverInfo = caps2discoverInfo;
                 }
             }
         }
+        return caps2discoverInfo;
     }
 
     /**
-     * Gets the name of the property in the <tt>ConfigurationService</tt> which
-     * is or is to be associated with a specific <tt>Caps</tt> value.
-     *
-     * @param caps the <tt>Caps</tt> value for which the associated
-     * <tt>ConfigurationService</tt> property name is to be returned
-     * @return the name of the property in the <tt>ConfigurationService</tt>
-     * which is or is to be associated with a specific <tt>Caps</tt> value
+     * Persists the changes to the cache of <tt>Caps</tt> to
+     * <tt>DiscoverInfo</tt> which have not been persisted yet, e.g. before the
+     * application exits.
      */
-    private static String getCapsPropertyName(Caps caps)
+    public static void storeDiscoverInfoCache()
     {
-        return
-            CAPS_PROPERTY_NAME_PREFIX
-                + caps.node + '#' + caps.hash + '#' + caps.ver;
+        EntityCapsCache caps2discoverInfo = EntityCapsManager.caps2discoverInfo;
+
+        if (caps2discoverInfo != null)
+            caps2discoverInfo.store();
     }
 
     /**
@@ -409,91 +411,12 @@ public class EntityCapsManager
      */
     public static DiscoverInfo getDiscoverInfoByCaps(Caps caps)
     {
-        synchronized (caps2discoverInfo)
-        {
-            DiscoverInfo discoverInfo = caps2discoverInfo.get(caps);
-
-            /*
-             * If we don't have the discoverInfo in the runtime cache yet, we
-             * may have it remembered in a previous application instance.
-             */
-            if (discoverInfo == null)
-            {
-                ConfigurationService configurationService
-                    = JabberActivator.getConfigurationService();
-                String capsPropertyName = getCapsPropertyName(caps);
-                String xml = configurationService.getString(capsPropertyName);
-
-                if ((xml != null) && (xml.length() != 0))
-                {
-                    IQProvider discoverInfoProvider
-                        = (IQProvider)
-                            ProviderManager.getInstance().getIQProvider(
-                                    "query",
-                                    "http://jabber.org/protocol/disco#info");
-
-                    if (discoverInfoProvider != null)
-                    {
-                        XmlPullParser parser = new MXParser();
-
-                        try
-                        {
-                            parser.setFeature(
-                                    XmlPullParser.FEATURE_PROCESS_NAMESPACES,
-                                    true);
-                            parser.setInput(new StringReader(xml));
-                            // Start the parser.
-                            parser.next();
-                        }
-                        catch (XmlPullParserException xppex)
-                        {
-                            parser = null;
-                        }
-                        catch (IOException ioex)
-                        {
-                            parser = null;
-                        }
-
-                        if (parser != null)
-                        {
-                            try
-                            {
-                                discoverInfo
-                                    = (DiscoverInfo)
-                                        discoverInfoProvider.parseIQ(parser);
-                            }
-                            catch (Exception ex)
-                            {
-                            }
-
-                            if (discoverInfo != null)
-                            {
-                                if (caps.isValid(discoverInfo))
-                                    caps2discoverInfo.put(caps, discoverInfo);
-                                else
-                                {
-                                    logger.error(
-                                            "Invalid DiscoverInfo for "
-                                                + caps.getNodeVer()
-                                                + ": "
-                                                + discoverInfo);
-                                    /*
-                                     * The discoverInfo doesn't seem valid
-                                     * according to the caps which means that we
-                                     * must have stored invalid information.
-                                     * Delete the invalid information in order
-                                     * to not try to validate it again.
-                                     */
-                                    configurationService.removeProperty(
-                                            capsPropertyName);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            return discoverInfo;
-        }
+        /*
+         * If we don't have the discoverInfo in the runtime cache yet, the
+         * cache has loaded it if it was remembered in a previous application
+         * instance.
+         */
+        return getCaps2DiscoverInfo().get(caps);
     }
 
     /**
@@ -978,6 +901,43 @@ public class EntityCapsManager
             return nodeVer;
         }
 
+        /**
+         * Determines whether a specific <tt>Object</tt> is a <tt>Caps</tt>
+         * with the same node, hash and ver as this instance. The ext is not
+         * compared because it does not take part in the ver.
+         *
+         * @param obj the <tt>Object</tt> to compare to this instance
+         * @return <tt>true</tt> if <tt>obj</tt> is a <tt>Caps</tt> with the
+         * same node, hash and ver as this instance; otherwise, <tt>false</tt>
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof Caps))
+                return false;
+
+            Caps caps = (Caps) obj;
+
+            return
+                nodeVer.equals(caps.nodeVer)
+                    && hash.equals(caps.hash)
+                    && node.equals(caps.node);
+        }
+
+        /**
+         * Returns a hash code value for this <tt>Caps</tt> consistent with
+         * {@link #equals(Object)}.
+         *
+         * @return a hash code value for this <tt>Caps</tt>
+         */
+        @Override
+        public int hashCode()
+        {
+            return nodeVer.hashCode() + 31 * hash.hashCode();
+        }
+
         /**
          * Determines whether a specific <tt>DiscoverInfo</tt> is valid
          * according to this <tt>Caps</tt> i.e. whether the
@@ -0,0 +1,202 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.rsm;
+
+import org.jivesoftware.smack.util.*;
+import org.jivesoftware.smackx.packet.*;
+
+/**
+ * A disco#items IQ which carries a result set management
+ * (<a href="http://xmpp.org/extensions/xep-0059.html">XEP-0059</a>)
+ * <tt>set</tt> element: a request asks for a page of at most <tt>max</tt>
+ * items which follow a specific item and a result tells which items its page
+ * contains and how many items there are in total.
+ */
+public class PagedDiscoverItems
+    extends DiscoverItems
+{
+    /**
+     * The namespace of the result set management <tt>set</tt> element.
+     */
+    public static final String NAMESPACE = "http://jabber.org/protocol/rsm";
+
+    /**
+     * The ID of the item after which the requested page starts or
+     * <tt>null</tt> to request the first page.
+     */
+    private String after;
+
+    /**
+     * The total number of items or <tt>-1</tt> if it is not known.
+     */
+    private int count = -1;
+
+    /**
+     * The ID of the first item in the page of a result or <tt>null</tt>.
+     */
+    private String first;
+
+    /**
+     * The ID of the last item in the page of a result or <tt>null</tt>.
+     */
+    private String last;
+
+    /**
+     * The maximum number of items in the requested page or <tt>-1</tt> if
+     * the request does not limit it.
+     */
+    private int max = -1;
+
+    /**
+     * Returns the ID of the item after which the requested page starts.
+     *
+     * @return the ID of the item after which the requested page starts or
+     * <tt>null</tt> if the first page is requested
+     */
+    public String getAfter()
+    {
+        return after;
+    }
+
+    /**
+     * Returns the XML representation of the disco#items query including the
+     * <tt>set</tt> element if any of its values is set.
+     *
+     * @return the XML representation of the disco#items query
+     */
+    @Override
+    public String getChildElementXML()
+    {
+        String xml = super.getChildElementXML();
+        StringBuilder set = new StringBuilder();
+
+        if (max >= 0)
+            set.append("<max>").append(max).append("</max>");
+        if (after != null)
+        {
+            set.append("<after>").append(StringUtils.escapeForXML(after))
+                .append("</after>");
+        }
+        if (first != null)
+        {
+            set.append("<first>").append(StringUtils.escapeForXML(first))
+                .append("</first>");
+        }
+        if (last != null)
+        {
+            set.append("<last>").append(StringUtils.escapeForXML(last))
+                .append("</last>");
+        }
+        if (count >= 0)
+            set.append("<count>").append(count).append("</count>");
+
+        int end = xml.lastIndexOf("</query>");
+
+        if ((set.length() == 0) || (end == -1))
+            return xml;
+        return
+            xml.substring(0, end)
+                + "<set xmlns=\"" + NAMESPACE + "\">" + set + "</set>"
+                + xml.substring(end);
+    }
+
+    /**
+     * Returns the total number of items.
+     *
+     * @return the total number of items or <tt>-1</tt> if it is not known
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the ID of the first item in the page of this result.
+     *
+     * @return the ID of the first item in the page of this result or
+     * <tt>null</tt>
+     */
+    public String getFirst()
+    {
+        return first;
+    }
+
+    /**
+     * Returns the ID of the last item in the page of this result. It is the
+     * value of <tt>after</tt> with which the next page is requested.
+     *
+     * @return the ID of the last item in the page of this result or
+     * <tt>null</tt> if the responder does not support result set management
+     */
+    public String getLast()
+    {
+        return last;
+    }
+
+    /**
+     * Returns the maximum number of items in the requested page.
+     *
+     * @return the maximum number of items in the requested page or <tt>-1</tt>
+     * if the request does not limit it
+     */
+    public int getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Sets the ID of the item after which the requested page starts.
+     *
+     * @param after the ID of the item after which the requested page starts or
+     * <tt>null</tt> to request the first page
+     */
+    public void setAfter(String after)
+    {
+        this.after = after;
+    }
+
+    /**
+     * Sets the total number of items.
+     *
+     * @param count the total number of items or <tt>-1</tt> if it is not known
+     */
+    public void setCount(int count)
+    {
+        this.count = count;
+    }
+
+    /**
+     * Sets the ID of the first item in the page of this result.
+     *
+     * @param first the ID of the first item in the page of this result
+     */
+    public void setFirst(String first)
+    {
+        this.first = first;
+    }
+
+    /**
+     * Sets the ID of the last item in the page of this result.
+     *
+     * @param last the ID of the last item in the page of this result
+     */
+    public void setLast(String last)
+    {
+        this.last = last;
+    }
+
+    /**
+     * Sets the maximum number of items in the requested page.
+     *
+     * @param max the maximum number of items in the requested page or
+     * <tt>-1</tt> not to limit it
+     */
+    public void setMax(int max)
+    {
+        this.max = max;
+    }
+}
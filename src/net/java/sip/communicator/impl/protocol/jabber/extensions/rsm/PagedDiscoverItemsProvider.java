@@ -0,0 +1,91 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.rsm;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+import org.jivesoftware.smackx.packet.*;
+import org.xmlpull.v1.*;
+
+/**
+ * Parses disco#items IQs into <tt>PagedDiscoverItems</tt> so that the result
+ * set management <tt>set</tt> element of the paged results is available along
+ * with their items. Results without a <tt>set</tt> element are parsed as
+ * smack's <tt>DiscoverItemsProvider</tt> does.
+ */
+public class PagedDiscoverItemsProvider
+    implements IQProvider
+{
+    /**
+     * Creates a new PagedDiscoverItemsProvider.
+     * ProviderManager requires that every IQProvider has a public,
+     * no-argument constructor
+     */
+    public PagedDiscoverItemsProvider()
+    {}
+
+    /**
+     * Parses a disco#items IQ.
+     *
+     * @param parser an XML parser positioned at the <tt>query</tt> element.
+     * @return a new <tt>PagedDiscoverItems</tt> instance.
+     * @throws Exception if an error occurs parsing the XML.
+     */
+    public IQ parseIQ(XmlPullParser parser)
+        throws Exception
+    {
+        PagedDiscoverItems discoverItems = new PagedDiscoverItems();
+
+        discoverItems.setNode(parser.getAttributeValue("", "node"));
+
+        boolean done = false;
+
+        while (!done)
+        {
+            int eventType = parser.next();
+
+            if (eventType == XmlPullParser.START_TAG)
+            {
+                String name = parser.getName();
+
+                if ("item".equals(name))
+                {
+                    DiscoverItems.Item item
+                        = new DiscoverItems.Item(
+                                parser.getAttributeValue("", "jid"));
+
+                    item.setName(parser.getAttributeValue("", "name"));
+                    item.setNode(parser.getAttributeValue("", "node"));
+                    item.setAction(parser.getAttributeValue("", "action"));
+                    discoverItems.addItem(item);
+                }
+                else if ("first".equals(name))
+                    discoverItems.setFirst(parser.nextText());
+                else if ("last".equals(name))
+                    discoverItems.setLast(parser.nextText());
+                else if ("count".equals(name))
+                {
+                    try
+                    {
+                        discoverItems.setCount(
+                                Integer.parseInt(parser.nextText().trim()));
+                    }
+                    catch (NumberFormatException nfe)
+                    {
+                        // The count is optional.
+                    }
+                }
+            }
+            else if ((eventType == XmlPullParser.END_TAG)
+                    && "query".equals(parser.getName()))
+            {
+                done = true;
+            }
+        }
+        return discoverItems;
+    }
+}
@@ -51,6 +51,19 @@ public class FileElement
 
     private ThumbnailElement thumbnail;
 
+    /**
+     * The offset in bytes from which the file is to be transferred as
+     * requested by the receiver in a <tt>&lt;range/&gt;</tt> element.
+     */
+    private long rangeOffset = 0;
+
+    /**
+     * The number of bytes to be transferred as requested by the receiver in a
+     * <tt>&lt;range/&gt;</tt> element or <tt>-1</tt> for the rest of the
+     * file.
+     */
+    private long rangeLength = -1;
+
     /**
      * The element name of this <tt>IQProvider</tt>.
      */
@@ -81,6 +94,16 @@ public class FileElement
     {
         this(baseFile.getName(), baseFile.getSize());
 
+        setDate(baseFile.getDate());
+        setDesc(baseFile.getDesc());
+        setHash(baseFile.getHash());
+        setRanged(baseFile.isRanged());
+        if (baseFile instanceof FileElement)
+        {
+            rangeOffset = ((FileElement) baseFile).rangeOffset;
+            rangeLength = ((FileElement) baseFile).rangeLength;
+        }
+
         this.thumbnail = thumbnail;
     }
 
@@ -109,7 +132,8 @@ public class FileElement
         buffer.append("<").append(getElementName()).append(" xmlns=\"")
             .append(getNamespace()).append("\" ");
 
-        if (getName() != null)
+        // The file of a response which only requests a range has no name.
+        if (getName() != null && getName().length() > 0)
         {
             buffer.append("name=\"").append(
                 StringUtils.escapeForXML(getName())).append("\" ");
@@ -145,7 +169,12 @@ public class FileElement
 
             if (isRanged())
             {
-                buffer.append("<range/>");
+                buffer.append("<range");
+                if (rangeOffset > 0)
+                    buffer.append(" offset=\"").append(rangeOffset).append('"');
+                if (rangeLength >= 0)
+                    buffer.append(" length=\"").append(rangeLength).append('"');
+                buffer.append("/>");
             }
 
             if (thumbnail != null)
@@ -174,6 +203,43 @@ public class FileElement
         return thumbnail;
     }
 
+    /**
+     * Returns the offset in bytes from which the file is to be transferred.
+     *
+     * @return the offset in bytes from which the file is to be transferred
+     */
+    public long getRangeOffset()
+    {
+        return rangeOffset;
+    }
+
+    /**
+     * Returns the number of bytes to be transferred.
+     *
+     * @return the number of bytes to be transferred or <tt>-1</tt> for the
+     * rest of the file
+     */
+    public long getRangeLength()
+    {
+        return rangeLength;
+    }
+
+    /**
+     * Sets the range of the file to be transferred and marks this
+     * <tt>FileElement</tt> as ranged.
+     *
+     * @param offset the offset in bytes from which the file is to be
+     * transferred
+     * @param length the number of bytes to be transferred or <tt>-1</tt> for
+     * the rest of the file
+     */
+    public void setRange(long offset, long length)
+    {
+        setRanged(true);
+        this.rangeOffset = offset;
+        this.rangeLength = length;
+    }
+
     /**
      * Sets the given <tt>thumbnail</tt> to this <tt>FileElement</tt>.
      * @param thumbnail the <tt>ThumbnailElement</tt> to set
@@ -207,6 +273,8 @@ public class FileElement
         String desc = null;
         ThumbnailElement thumbnail = null;
         boolean isRanged = false;
+        long rangeOffset = 0;
+        long rangeLength = -1;
 
         // feature
         DataForm form = null;
@@ -238,6 +306,10 @@ public class FileElement
                 else if (elementName.equals("range"))
                 {
                     isRanged = true;
+                    rangeOffset
+                        = parseLong(parser.getAttributeValue("", "offset"), 0);
+                    rangeLength
+                        = parseLong(parser.getAttributeValue("", "length"), -1);
                 }
                 else if (elementName.equals("x")
                         && namespace.equals("jabber:x:data"))
@@ -316,7 +388,17 @@ public class FileElement
                         file.setThumbnailElement(thumbnail);
 
                     file.setDesc(desc);
-                    file.setRanged(isRanged);
+                    if (isRanged)
+                        file.setRange(rangeOffset, rangeLength);
+                    initiation.setFile(file);
+                }
+                // The receiver of a file answers with a file element which
+                // only contains the range it requests.
+                else if (elementName.equals("file") && isRanged)
+                {
+                    FileElement file = new FileElement("", 0);
+
+                    file.setRange(rangeOffset, rangeLength);
                     initiation.setFile(file);
                 }
             }
@@ -328,4 +410,31 @@ public class FileElement
 
         return initiation;
     }
+
+    /**
+     * Parses the value of a non-negative numeric attribute.
+     *
+     * @param value the value of the attribute or <tt>null</tt>
+     * @param defaultValue the value to return if <tt>value</tt> is missing or
+     * invalid
+     * @return the parsed value or <tt>defaultValue</tt>
+     */
+    private static long parseLong(String value, long defaultValue)
+    {
+        if (value != null && value.trim().length() != 0)
+        {
+            try
+            {
+                long l = Long.parseLong(value.trim());
+
+                if (l >= 0)
+                    return l;
+            }
+            catch (NumberFormatException e)
+            {
+                logger.warn("Received an invalid range: " + value);
+            }
+        }
+        return defaultValue;
+    }
 }
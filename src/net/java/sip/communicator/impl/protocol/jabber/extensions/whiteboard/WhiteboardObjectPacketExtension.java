@@ -8,9 +8,11 @@
 package net.java.sip.communicator.impl.protocol.jabber.extensions.whiteboard;
 
 import java.io.*;
+import java.util.*;
 
 import javax.xml.parsers.*;
 
+import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
 
 import org.jivesoftware.smack.packet.*;
@@ -36,6 +38,13 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
      */
     public static final String NAMESPACE = "http://jabber.org/protocol/swb";
 
+    /**
+     * The feature advertised by the clients which understand the
+     * {@link #ACTION_APPEND} updates and the messages which carry several
+     * updates. The other clients only read the first update of a message.
+     */
+    public static final String FEATURE_DELTAS = NAMESPACE + "#deltas";
+
     /**
      * A type string constant indicating that the current object must be deleted.
      */
@@ -51,6 +60,14 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
      */
     public static final String ACTION_MOVE = "MOVE";
 
+    /**
+     * A type string constant indicating that points must be appended to the
+     * current object. The points are sent as the first point followed by the
+     * differences between consecutive points, so that a stroke being drawn
+     * does not have to be sent again in full each time it grows.
+     */
+    public static final String ACTION_APPEND = "APPEND";
+
     /**
      * The current WhiteboardObject to be sent.
      */
@@ -68,6 +85,24 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
      */
     private String whiteboardObjectID;
 
+    /**
+     * The points to be appended to the WhiteboardObject
+     * (for an append message).
+     */
+    private List<WhiteboardPoint> points;
+
+    /**
+     * The index in the points of the WhiteboardObject of the first point to be
+     * appended (for an append message).
+     */
+    private int pointIndex;
+
+    /**
+     * The time in milliseconds at which the message has been sent or
+     * <tt>-1</tt> if it is not known.
+     */
+    private long timestamp = -1;
+
     /**
      * Default WhiteboardObjectPacketExtension constructor.
      */
@@ -88,6 +123,23 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
         this.action = action;
     }
 
+    /**
+     * WhiteboardObjectPacketExtension constructor for an append message.
+     *
+     * @param id Identifier of the WhiteboardObject to which points are appended
+     * @param pointIndex the index in the points of the WhiteboardObject of the
+     * first appended point
+     * @param points the points to be appended
+     */
+    public WhiteboardObjectPacketExtension (
+      String id, int pointIndex, List<WhiteboardPoint> points)
+    {
+        this.whiteboardObjectID = id;
+        this.pointIndex = pointIndex;
+        this.points = points;
+        this.action = ACTION_APPEND;
+    }
+
     /**
      * Constructs and initializes a WhiteboardObjectPacketExtension.
      *
@@ -167,6 +219,16 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
                 this.setWhiteboardObjectID (e.getAttribute ("id"));
                 this.action = WhiteboardObjectPacketExtension.ACTION_DELETE;
             }
+            else if (elementName.equals ("append"))
+            {
+                //we have points to append
+                this.setWhiteboardObjectID (e.getAttribute ("id"));
+                this.pointIndex = Integer.parseInt (e.getAttribute ("index"));
+                this.points = parseDeltaPoints (e.getAttribute ("d"));
+                if (e.hasAttribute ("t"))
+                    this.timestamp = Long.parseLong (e.getAttribute ("t"));
+                this.action = WhiteboardObjectPacketExtension.ACTION_APPEND;
+            }
             else //we have a problem :p
                 if (logger.isDebugEnabled())
                     logger.debug ("elementName unknow\n");
@@ -223,6 +285,19 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
             s = "<delete id=\"#i\"/>";
             s = s.replaceAll ("#i", getWhiteboardObjectID());
         }
+        else if(getAction ().equals (
+          WhiteboardObjectPacketExtension.ACTION_APPEND))
+        {
+            StringBuilder sb = new StringBuilder ("<append id=\"");
+            sb.append (getWhiteboardObjectID ());
+            sb.append ("\" index=\"").append (pointIndex);
+            if (timestamp >= 0)
+                sb.append ("\" t=\"").append (timestamp);
+            sb.append ("\" d=\"");
+            appendDeltaPoints (sb, points);
+            sb.append ("\"/>");
+            s = sb.toString ();
+        }
         else
             s = getWhiteboardObject ().toXML ();
 
@@ -231,6 +306,78 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
           "\">"+s+"</" + WhiteboardObjectPacketExtension.ELEMENT_NAME + ">";
     }
 
+    /**
+     * Appends to a <tt>StringBuilder</tt> a list of points in the
+     * "x0 y0 dx1 dy1 dx2 dy2" format, i.e. the first point followed by the
+     * differences between consecutive points.
+     *
+     * @param sb the <tt>StringBuilder</tt> to append to
+     * @param points the points to be appended
+     */
+    private static void appendDeltaPoints (
+      StringBuilder sb, List<WhiteboardPoint> points)
+    {
+        // The differences are taken from the points as the receiver will
+        // compute them so that the rounding errors do not accumulate.
+        double x = 0;
+        double y = 0;
+        boolean first = true;
+
+        for (WhiteboardPoint point : points)
+        {
+            double dx = point.getX () - x;
+            double dy = point.getY () - y;
+
+            if (!first)
+                sb.append (' ');
+            appendCoordinate (sb, dx);
+            sb.append (' ');
+            appendCoordinate (sb, dy);
+            x += dx;
+            y += dy;
+            first = false;
+        }
+    }
+
+    /**
+     * Appends a coordinate to a <tt>StringBuilder</tt> without a fractional
+     * part if it is an integer, which is the usual case for points which come
+     * from the mouse.
+     *
+     * @param sb the <tt>StringBuilder</tt> to append to
+     * @param value the coordinate to append
+     */
+    private static void appendCoordinate (StringBuilder sb, double value)
+    {
+        if (value == Math.rint (value) && Math.abs (value) < Long.MAX_VALUE)
+            sb.append ((long) value);
+        else
+            sb.append (value);
+    }
+
+    /**
+     * Converts a String in the "x0 y0 dx1 dy1 dx2 dy2" format into a list of
+     * points.
+     *
+     * @param d the String to be converted
+     * @return the list of points represented by <tt>d</tt>
+     */
+    private static List<WhiteboardPoint> parseDeltaPoints (String d)
+    {
+        List<WhiteboardPoint> list = new ArrayList<WhiteboardPoint>();
+        String[] values = d.trim ().split ("\\s+");
+        double x = 0;
+        double y = 0;
+
+        for (int i = 0; i + 1 < values.length; i += 2)
+        {
+            x += Double.parseDouble (values[i]);
+            y += Double.parseDouble (values[i + 1]);
+            list.add (new WhiteboardPoint (x, y));
+        }
+        return list;
+    }
+
     /**
      * Returns the current action associated with the WhiteboardObject to send.
      * (DELETE - DRAW - MOVE)
@@ -284,4 +431,48 @@ public class WhiteboardObjectPacketExtension implements PacketExtension
     {
         this.whiteboardObjectID = objectID;
     }
+
+    /**
+     * Returns the points to be appended to the WhiteboardObject.
+     * (For an append message)
+     *
+     * @return the points to be appended
+     */
+    public List<WhiteboardPoint> getPoints ()
+    {
+        return points;
+    }
+
+    /**
+     * Returns the index in the points of the WhiteboardObject of the first
+     * point to be appended.
+     * (For an append message)
+     *
+     * @return the index of the first point to be appended
+     */
+    public int getPointIndex ()
+    {
+        return pointIndex;
+    }
+
+    /**
+     * Returns the time at which this message has been sent.
+     *
+     * @return the time in milliseconds at which this message has been sent or
+     * <tt>-1</tt> if it is not known
+     */
+    public long getTimestamp ()
+    {
+        return timestamp;
+    }
+
+    /**
+     * Sets the time at which this message is sent.
+     *
+     * @param timestamp the time in milliseconds at which this message is sent
+     */
+    public void setTimestamp (long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
 }
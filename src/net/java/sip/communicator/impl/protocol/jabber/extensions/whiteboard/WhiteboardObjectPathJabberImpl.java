@@ -172,11 +172,11 @@ public class WhiteboardObjectPathJabberImpl
 
         StringBuilder sb = new StringBuilder ();
 
-        int size = listPoints.size ();
-        for (int i = 0; i < size; i++)
+        boolean first = true;
+        for (WhiteboardPoint point : listPoints)
         {
-            WhiteboardPoint point = listPoints.get (i);
-            sb.append ((i == 0) ? "M" : "L");
+            sb.append (first ? "M" : "L");
+            first = false;
             sb.append (point.getX ());
             sb.append (" ");
             sb.append (point.getY ());
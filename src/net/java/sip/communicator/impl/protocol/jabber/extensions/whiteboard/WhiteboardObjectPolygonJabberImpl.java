@@ -229,9 +229,8 @@ public class WhiteboardObjectPolygonJabberImpl
 
         StringBuilder sb = new StringBuilder ();
 
-        for (int i = 0; i < listPoints.size (); i++)
+        for (WhiteboardPoint point : listPoints)
         {
-            WhiteboardPoint point = listPoints.get (i);
             sb.append (point.getX ());
             sb.append (",");
             sb.append (point.getY ());
@@ -8,6 +8,7 @@ package net.java.sip.communicator.impl.protocol.rss;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -43,19 +44,38 @@ public class OperationSetBasicInstantMessagingRssImpl
     private Timer timer = null;
 
     /**
-     * The value corresponding to the time in ms
-     * of the RSS refreshing period (here 5min)
+     * The value corresponding to the time in ms between two checks for feeds
+     * which are due to be refreshed (here 1min). Each feed is refreshed at
+     * its own adaptive rate, see <tt>RssFeedReader.isPollDue</tt>.
      */
-    private static final int PERIOD_REFRESH_RSS = 300000;
+    private static final int PERIOD_CHECK_RSS = 60000;
 
     /**
      * The value corresponding to the time in ms that we wait before the
      * initial refresh RSS when starting the application. Ideally this should
-     * be less than <tt>PERIOD_REFRESH_RSS</tt> but more than a minute in order
-     * to prevent from overloading the system on startup.
+     * be less than <tt>RssFeedReader.MIN_POLL_INTERVAL</tt> but more than a
+     * minute in order to prevent from overloading the system on startup.
      */
     private static final int INITIAL_RSS_LOAD_DELAY = 150000;
 
+    /**
+     * The maximum number of feeds retrieved at the same time.
+     */
+    private static final int MAX_FETCH_THREADS = 4;
+
+    /**
+     * The pool of threads which retrieve the feeds. Its threads terminate
+     * when they have been idle for a minute.
+     */
+    private final ThreadPoolExecutor fetchPool;
+
+    /**
+     * The contacts whose feed is waiting to be or being refreshed by the
+     * periodic check.
+     */
+    private final Set<ContactRssImpl> pendingFetches
+        = new HashSet<ContactRssImpl>();
+
     /**
      * The localised message that we should show to the user before we remove
      * a dead RSS contact
@@ -85,6 +105,23 @@ public class OperationSetBasicInstantMessagingRssImpl
         this.opSetPersPresence = opSetPersPresence;
         this.parentProvider = provider;
 
+        fetchPool
+            = new ThreadPoolExecutor(
+                    MAX_FETCH_THREADS, MAX_FETCH_THREADS,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread thread = new Thread(r, "RssFeedFetcher");
+
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        fetchPool.allowCoreThreadTimeOut(true);
+
         parentProvider.addRegistrationStateChangeListener(this);
         if(parentProvider.isRegistered())
         {
@@ -202,23 +239,55 @@ public class OperationSetBasicInstantMessagingRssImpl
     }
 
     /**
-     * Refreshes all the registered feeds.
+     * Refreshes the registered feeds which are due to be refreshed. The feeds
+     * are retrieved by the fetch pool; a feed whose previous refresh is still
+     * pending is skipped.
      */
     public void refreshAllRssFeeds()
     {
          Vector<ContactRssImpl> rssContactList = new Vector<ContactRssImpl>();
          opSetPersPresence.getContactListRoot().getRssURLList(rssContactList);
 
-         for (ContactRssImpl contact : rssContactList)
+         long now = System.currentTimeMillis();
+
+         for (final ContactRssImpl contact : rssContactList)
          {
-             try
-             {
-                 submitRssQuery(contact, false);
-             }
-             catch (Exception ex)
+             RssFeedReader rssFeed = contact.getRssFeedReader();
+
+             if ((rssFeed != null) && !rssFeed.isPollDue(now))
+                 continue;
+
+             synchronized (pendingFetches)
              {
-                 logger.error("Failed to refresh feed for " + contact, ex);
+                 if (!pendingFetches.add(contact))
+                     continue;
              }
+
+             fetchPool.execute(
+                     new Runnable()
+                     {
+                         public void run()
+                         {
+                             try
+                             {
+                                 submitRssQuery(contact, false);
+                             }
+                             catch (Exception ex)
+                             {
+                                 logger.error(
+                                         "Failed to refresh feed for "
+                                             + contact,
+                                         ex);
+                             }
+                             finally
+                             {
+                                 synchronized (pendingFetches)
+                                 {
+                                     pendingFetches.remove(contact);
+                                 }
+                             }
+                         }
+                     });
          }
     }
 
@@ -246,7 +315,7 @@ public class OperationSetBasicInstantMessagingRssImpl
         this.timer = new Timer();
         this.timer.scheduleAtFixedRate(refresh,
                                        INITIAL_RSS_LOAD_DELAY,
-                                       PERIOD_REFRESH_RSS);
+                                       PERIOD_CHECK_RSS);
 
         if (logger.isTraceEnabled())
             logger.trace("Done.");
@@ -264,10 +333,16 @@ public class OperationSetBasicInstantMessagingRssImpl
      *
      * @param contact the <tt>Contact</tt> added
      */
-    public void threadedContactFeedUpdate(ContactRssImpl contact)
+    public void threadedContactFeedUpdate(final ContactRssImpl contact)
     {
-        RssThread rssThr = new RssThread(this, contact);
-        rssThr.start();
+        fetchPool.execute(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        refreshRssFeed(contact);
+                    }
+                });
     }
 
     /**
@@ -9,6 +9,7 @@ package net.java.sip.communicator.impl.protocol.rss;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.zip.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
@@ -30,6 +31,25 @@ public class RssFeedReader
 {
     private static final Logger logger
         = Logger.getLogger(ContactRssImpl.class);
+
+    /**
+     * The timeout in milliseconds for connecting to and reading from the
+     * server of a feed.
+     */
+    private static final int CONNECT_TIMEOUT = 30000;
+
+    /**
+     * The shortest time in milliseconds between two automatic refreshes of a
+     * feed. Feeds which keep publishing new items are polled at this rate.
+     */
+    static final long MIN_POLL_INTERVAL = 300000;
+
+    /**
+     * The longest time in milliseconds between two automatic refreshes of a
+     * feed. Feeds which do not publish new items back off to this rate.
+     */
+    static final long MAX_POLL_INTERVAL = 3600000;
+
     /**
      * The URL of the contact/feed, used to make a TCP query for the XML file
      * containing the actual RSS feed.
@@ -65,6 +85,37 @@ public class RssFeedReader
      */
     private boolean isFeedJoinable = false;
 
+    /**
+     * The entity tag of the last retrieved version of the feed sent by the
+     * server if any, used to make the next retrieval conditional.
+     */
+    private String entityTag = null;
+
+    /**
+     * The last modification time of the last retrieved version of the feed
+     * sent by the server if any, used to make the next retrieval conditional.
+     */
+    private long lastModified = 0;
+
+    /**
+     * The checksum of the last retrieved version of the feed, used to avoid
+     * parsing the feed again when a server which does not support conditional
+     * requests sends an unchanged feed.
+     */
+    private long contentChecksum = -1;
+
+    /**
+     * The time in milliseconds between the automatic refreshes of this feed
+     * which adapts to the observed frequency of new items.
+     */
+    private volatile long pollInterval = MIN_POLL_INTERVAL;
+
+    /**
+     * The time in milliseconds at which this feed is due to be refreshed
+     * automatically.
+     */
+    private volatile long nextPollTime = 0;
+
      /**
      * Creates an instance of a RSS reader with the specified string used
      * as an URL for the actual feed.
@@ -82,7 +133,10 @@ public class RssFeedReader
 
     /**
      * Refreshes the RSS feed associated with this reader, and does not store
-     * the feed items (see getNewFeeds for this).
+     * the feed items (see getNewFeeds for this). The feed is requested
+     * conditionally so that a server which supports it does not send a feed
+     * which has not changed, and a feed which has not changed is not parsed
+     * again.
      *
      * @throws OperationFailedException with code ILLEGAL_ARGUMENT
      * @throws FileNotFoundException if the feed does not exist any more.
@@ -91,12 +145,67 @@ public class RssFeedReader
     private void retrieveFlow()
         throws OperationFailedException, FileNotFoundException
     {
-
-        SyndFeedInput input = new SyndFeedInput();
+        byte[] content;
+        String contentType;
+        String newEntityTag = null;
+        long newLastModified = 0;
 
         try
         {
-            this.feed = input.build(new XmlReader(rssURL));
+            URLConnection connection = rssURL.openConnection();
+
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(CONNECT_TIMEOUT);
+            if (connection instanceof HttpURLConnection)
+            {
+                HttpURLConnection httpConnection
+                    = (HttpURLConnection) connection;
+
+                if (feed != null)
+                {
+                    if (entityTag != null)
+                    {
+                        httpConnection.setRequestProperty(
+                                "If-None-Match",
+                                entityTag);
+                    }
+                    if (lastModified != 0)
+                        httpConnection.setIfModifiedSince(lastModified);
+                }
+                if (httpConnection.getResponseCode()
+                        == HttpURLConnection.HTTP_NOT_MODIFIED)
+                {
+                    httpConnection.disconnect();
+                    if (feed != null)
+                    {
+                        if (logger.isTraceEnabled())
+                            logger.trace("RSS feed not modified: " + rssURL);
+                        this.isFeedJoinable = true;
+                        return;
+                    }
+                    throw new IOException("Unexpected HTTP 304 response");
+                }
+                newEntityTag = httpConnection.getHeaderField("ETag");
+                newLastModified = httpConnection.getLastModified();
+            }
+
+            InputStream in = connection.getInputStream();
+
+            try
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+
+                while ((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+                content = out.toByteArray();
+            }
+            finally
+            {
+                in.close();
+            }
+            contentType = connection.getContentType();
         }
         catch (FileNotFoundException ex)
         {
@@ -113,6 +222,40 @@ public class RssFeedReader
                 , OperationFailedException.GENERAL_ERROR
                 , ex);
         }
+
+        CRC32 checksum = new CRC32();
+
+        checksum.update(content);
+        if ((feed != null) && (checksum.getValue() == contentChecksum))
+        {
+            if (logger.isTraceEnabled())
+                logger.trace("RSS feed unchanged: " + rssURL);
+            this.entityTag = newEntityTag;
+            this.lastModified = newLastModified;
+            this.isFeedJoinable = true;
+            return;
+        }
+
+        SyndFeedInput input = new SyndFeedInput();
+
+        try
+        {
+            InputStream in = new ByteArrayInputStream(content);
+
+            this.feed
+                = input.build(
+                        (contentType == null)
+                            ? new XmlReader(in)
+                            : new XmlReader(in, contentType));
+        }
+        catch (IOException ex)
+        {
+            this.isFeedJoinable = false;
+            throw new OperationFailedException(
+                "Failed to create and XmlReader for url: " + rssURL
+                , OperationFailedException.GENERAL_ERROR
+                , ex);
+        }
         catch(FeedException fex)
         {
             this.isFeedJoinable = false;
@@ -122,8 +265,9 @@ public class RssFeedReader
                 , fex);
         }
         this.isFeedJoinable = true;
-
-        this.feed.getEntries();
+        this.entityTag = newEntityTag;
+        this.lastModified = newLastModified;
+        this.contentChecksum = checksum.getValue();
 
         this.title = this.feed.getTitle();
 
@@ -147,6 +291,10 @@ public class RssFeedReader
         int i;
         boolean hasSomeNews = false;
 
+        // Whether or not the retrieval succeeds, do not poll the feed again
+        // before its current interval elapses.
+        nextPollTime = System.currentTimeMillis() + pollInterval;
+
         // Try to retrieve the feed and to complete this instanciation.
         this.retrieveFlow();
 
@@ -166,6 +314,7 @@ public class RssFeedReader
                     + newsAbstract
                     + "<hr>");
         }
+        adaptPollInterval(hasSomeNews);
         if (!hasSomeNews)
         {
             return null;
@@ -176,6 +325,36 @@ public class RssFeedReader
         return printedFeed.toString();
     }
 
+    /**
+     * Adapts the time between the automatic refreshes of this feed to the
+     * observed frequency of new items: the interval is halved when a refresh
+     * finds new items and grows by half when it does not, within
+     * {@link #MIN_POLL_INTERVAL} and {@link #MAX_POLL_INTERVAL}.
+     *
+     * @param hasNews <tt>true</tt> if the last refresh found new items
+     */
+    private void adaptPollInterval(boolean hasNews)
+    {
+        long interval
+            = hasNews
+                ? Math.max(MIN_POLL_INTERVAL, pollInterval / 2)
+                : Math.min(MAX_POLL_INTERVAL, pollInterval + pollInterval / 2);
+
+        pollInterval = interval;
+        nextPollTime = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Determines whether this feed is due to be refreshed automatically.
+     *
+     * @param now the current time in milliseconds
+     * @return <tt>true</tt> if this feed is due to be refreshed
+     */
+    public boolean isPollDue(long now)
+    {
+        return now >= nextPollTime;
+    }
+
     public String getNoNewFeedString()
     {
         return "<strong>No new articles in your feed since"
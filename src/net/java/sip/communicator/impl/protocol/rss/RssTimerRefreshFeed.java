@@ -36,9 +36,9 @@ public class RssTimerRefreshFeed
     }
 
     /**
-     * What the timer is supposed to do each time the PERIOD_REFRESH_RSS expire.
-     * In facts, it launch a new thread responsible for starting one or more
-     * rss queries
+     * What the timer is supposed to do each time the PERIOD_CHECK_RSS expire.
+     * In facts, it submits the feeds which are due to be refreshed to the
+     * fetch pool.
      */
     @Override
     public void run()
@@ -982,7 +982,7 @@ public abstract class EventPackageNotifier
      * <tt>Subscription</tt> when its subscription duration expires.
      */
     private class SubscriptionTimeoutTask
-        extends TimerTask
+        extends TimerWheel.Task
     {
 
         /**
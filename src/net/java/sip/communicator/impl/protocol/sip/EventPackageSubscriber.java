@@ -35,6 +35,24 @@ public class EventPackageSubscriber
     private static final Logger logger
         = Logger.getLogger(EventPackageSubscriber.class);
 
+    /**
+     * The option tag of the extension for subscriptions to lists of resources
+     * defined in RFC 4662.
+     */
+    static final String EVENTLIST_OPTION_TAG = "eventlist";
+
+    /**
+     * The sub-type of the content type of the Resource List Meta-Information
+     * documents defined in RFC 4662.
+     */
+    static final String RLMI_CONTENT_SUB_TYPE = "rlmi+xml";
+
+    /**
+     * The sub-type of the multipart content type of the NOTIFY bodies sent by
+     * resource list servers as defined in RFC 4662.
+     */
+    static final String RELATED_CONTENT_SUB_TYPE = "related";
+
     /**
      * The number of seconds before a subscription managed by this instance
      * expires that this subscriber should attempt to refresh it.
@@ -444,6 +462,35 @@ public class EventPackageSubscriber
         }
         req.setHeader(accept);
 
+        // RFC 4662: Supported: eventlist and the additional content types of
+        // the notifications of a resource list server
+        if (subscription.isEventList())
+        {
+            try
+            {
+                req.addHeader(
+                        headerFactory.createSupportedHeader(
+                                EVENTLIST_OPTION_TAG));
+                req.addHeader(
+                        headerFactory.createAcceptHeader(
+                                "application",
+                                RLMI_CONTENT_SUB_TYPE));
+                req.addHeader(
+                        headerFactory.createAcceptHeader(
+                                "multipart",
+                                RELATED_CONTENT_SUB_TYPE));
+            }
+            catch (ParseException e)
+            {
+                logger.error("wrong eventlist header", e);
+                throw new OperationFailedException(
+                        "An unexpected error occurred while"
+                        + "constructing the eventlist headers",
+                        OperationFailedException.INTERNAL_ERROR,
+                        e);
+            }
+        }
+
         // Expires
         ExpiresHeader expHeader;
         try
@@ -566,7 +613,11 @@ public class EventPackageSubscriber
         ContentTypeHeader ctheader
             = (ContentTypeHeader) request.getHeader(ContentTypeHeader.NAME);
         if ((ctheader != null)
-                && !ctheader.getContentSubType().equalsIgnoreCase(contentSubType))
+                && !ctheader.getContentSubType()
+                        .equalsIgnoreCase(contentSubType)
+                && !((subscription != null)
+                        && subscription.isEventList()
+                        && isEventListContentType(ctheader)))
         {
             // send a 415 response (rfc3261)
             Response response;
@@ -670,6 +721,23 @@ public class EventPackageSubscriber
         return true;
     }
 
+    /**
+     * Determines whether a specific content type is one of the content types
+     * of the notifications of a resource list server.
+     *
+     * @param ctheader the <tt>ContentTypeHeader</tt> to check
+     * @return <tt>true</tt> if <tt>ctheader</tt> is multipart/related or
+     * application/rlmi+xml; otherwise, <tt>false</tt>
+     */
+    private static boolean isEventListContentType(ContentTypeHeader ctheader)
+    {
+        String subType = ctheader.getContentSubType();
+
+        return
+            RELATED_CONTENT_SUB_TYPE.equalsIgnoreCase(subType)
+                || RLMI_CONTENT_SUB_TYPE.equalsIgnoreCase(subType);
+    }
+
     /**
      * Implements {@link MethodProcessor#processResponse(ResponseEvent)}.
      * Handles only responses to SUBSCRIBE requests because they are the only
@@ -782,10 +850,25 @@ public class EventPackageSubscriber
                  subscription.setTimerTask(refreshTask);
 
                  int refreshDelay = expHeader.getExpires();
+                 long refreshSpread;
                  // try to keep a margin if the refresh delay allows it
                  if (refreshDelay >= (2*refreshMargin))
+                 {
                      refreshDelay -= refreshMargin;
-                 timer.schedule(refreshTask, refreshDelay * 1000);
+                     refreshSpread = refreshMargin * 500L;
+                 }
+                 else
+                     refreshSpread = refreshDelay * 100L;
+                 /*
+                  * Spread the refreshes of the subscriptions created together
+                  * (e.g. of the whole contact list at registration time) so
+                  * that they do not all get sent at once.
+                  */
+                 timer.schedule(
+                         refreshTask,
+                         TimerScheduler.jitter(
+                                 refreshDelay * 1000L,
+                                 refreshSpread));
 
                  // do it to remember the dialog in case of a polling
                  // subscription (which means no call to finalizeSubscription)
@@ -1248,6 +1331,21 @@ public class EventPackageSubscriber
         protected abstract void processTerminatedRequest(
             RequestEvent requestEvent,
             String reasonCode);
+
+        /**
+         * Determines whether this <tt>Subscription</tt> is to a list of
+         * resources served by a resource list server as defined in RFC 4662.
+         * The SUBSCRIBE requests of such a subscription announce support for
+         * the eventlist extension and its NOTIFY requests may carry
+         * multipart/related bodies.
+         *
+         * @return <tt>true</tt> if this is a subscription to a list of
+         * resources; otherwise, <tt>false</tt>
+         */
+        protected boolean isEventList()
+        {
+            return false;
+        }
     }
 
     /**
@@ -1255,7 +1353,7 @@ public class EventPackageSubscriber
      * <tt>Subscription</tt>.
      */
     private class SubscriptionRefreshTask
-        extends TimerTask
+        extends TimerWheel.Task
     {
 
         /**
@@ -0,0 +1,256 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+/**
+ * Splits MIME multipart bodies (RFC 2046) such as the multipart/related
+ * bodies of the NOTIFY requests sent by resource list servers (RFC 4662)
+ * into their parts.
+ */
+class MultipartContent
+{
+    /**
+     * The bytes of CRLF.
+     */
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    /**
+     * Prevents the initialization of <tt>MultipartContent</tt> instances.
+     */
+    private MultipartContent()
+    {
+    }
+
+    /**
+     * Gets the value of a specific parameter of a content type e.g. the
+     * <tt>boundary</tt> of a multipart content type.
+     *
+     * @param contentType the value of a Content-Type header
+     * @param name the name of the parameter
+     * @return the value of the parameter <tt>name</tt> of
+     * <tt>contentType</tt> without quotes or <tt>null</tt> if
+     * <tt>contentType</tt> does not have such a parameter
+     */
+    static String getParameter(String contentType, String name)
+    {
+        if (contentType == null)
+            return null;
+
+        StringTokenizer params = new StringTokenizer(contentType, ";");
+
+        // skip the type/subtype
+        if (params.hasMoreTokens())
+            params.nextToken();
+        while (params.hasMoreTokens())
+        {
+            String param = params.nextToken().trim();
+            int eq = param.indexOf('=');
+
+            if ((eq > 0)
+                    && param.substring(0, eq).trim().equalsIgnoreCase(name))
+            {
+                String value = param.substring(eq + 1).trim();
+
+                if ((value.length() > 1)
+                        && value.startsWith("\"")
+                        && value.endsWith("\""))
+                    value = value.substring(1, value.length() - 1);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether a content type is of a specific type and sub-type
+     * regardless of its parameters.
+     *
+     * @param contentType the value of a Content-Type header
+     * @param type the type e.g. <tt>application</tt>
+     * @param subType the sub-type e.g. <tt>pidf+xml</tt>
+     * @return <tt>true</tt> if <tt>contentType</tt> is
+     * <tt>type</tt>/<tt>subType</tt>; otherwise, <tt>false</tt>
+     */
+    static boolean isContentType(
+            String contentType,
+            String type,
+            String subType)
+    {
+        if (contentType == null)
+            return false;
+
+        int end = contentType.indexOf(';');
+        String mediaType
+            = ((end < 0) ? contentType : contentType.substring(0, end)).trim();
+
+        return mediaType.equalsIgnoreCase(type + "/" + subType);
+    }
+
+    /**
+     * Finds the first occurrence of a sequence of bytes in an array of bytes.
+     *
+     * @param data the bytes to search
+     * @param pattern the bytes to search for
+     * @param from the index in <tt>data</tt> to start the search at
+     * @return the index of the first occurrence of <tt>pattern</tt> in
+     * <tt>data</tt> at or after <tt>from</tt> or <tt>-1</tt>
+     */
+    private static int indexOf(byte[] data, byte[] pattern, int from)
+    {
+        int last = data.length - pattern.length;
+
+        outer:
+        for (int i = from; i <= last; i++)
+        {
+            for (int j = 0; j < pattern.length; j++)
+            {
+                if (data[i + j] != pattern[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Splits a multipart body into its parts.
+     *
+     * @param content the multipart body
+     * @param boundary the boundary of the parts of <tt>content</tt> as
+     * specified by the boundary parameter of its content type
+     * @return the parts of <tt>content</tt> in the order they appear in it;
+     * an empty list if <tt>content</tt> is not a valid multipart body
+     */
+    static List<Part> parse(byte[] content, String boundary)
+    {
+        List<Part> parts = new ArrayList<Part>();
+        byte[] delimiter = ("--" + boundary).getBytes();
+        int index = indexOf(content, delimiter, 0);
+
+        while (index >= 0)
+        {
+            int start = index + delimiter.length;
+
+            // the close delimiter
+            if ((start + 1 < content.length)
+                    && (content[start] == '-')
+                    && (content[start + 1] == '-'))
+                break;
+
+            // the rest of the delimiter line
+            int lineEnd = indexOf(content, CRLF, start);
+
+            if (lineEnd < 0)
+                break;
+            start = lineEnd + CRLF.length;
+
+            int next = indexOf(content, delimiter, start);
+
+            if (next < 0)
+                break;
+
+            // the CRLF preceding the next delimiter belongs to it
+            int end = next;
+
+            if ((end - 2 >= start)
+                    && (content[end - 2] == '\r')
+                    && (content[end - 1] == '\n'))
+                end -= 2;
+
+            parts.add(createPart(content, start, end));
+            index = next;
+        }
+        return parts;
+    }
+
+    /**
+     * Creates a <tt>Part</tt> from the headers and the body of a body part.
+     *
+     * @param content the multipart body
+     * @param start the index of the first byte of the body part
+     * @param end the index after the last byte of the body part
+     * @return the new <tt>Part</tt>
+     */
+    private static Part createPart(byte[] content, int start, int end)
+    {
+        Part part = new Part();
+        int bodyStart;
+
+        if ((end - start >= 2)
+                && (content[start] == '\r')
+                && (content[start + 1] == '\n'))
+        {
+            // no headers
+            bodyStart = start + 2;
+        }
+        else
+        {
+            int headersEnd
+                = indexOf(
+                        content,
+                        new byte[] { '\r', '\n', '\r', '\n' },
+                        start);
+
+            if ((headersEnd < 0) || (headersEnd > end))
+                headersEnd = end;
+            bodyStart = Math.min(headersEnd + 4, end);
+
+            String headers = new String(content, start, headersEnd - start);
+
+            // unfold the headers
+            headers = headers.replaceAll("\r\n[ \t]+", " ");
+            for (String header : headers.split("\r\n"))
+            {
+                int colon = header.indexOf(':');
+
+                if (colon <= 0)
+                    continue;
+
+                String name = header.substring(0, colon).trim();
+                String value = header.substring(colon + 1).trim();
+
+                if (name.equalsIgnoreCase("Content-Type"))
+                    part.contentType = value;
+                else if (name.equalsIgnoreCase("Content-ID"))
+                {
+                    if (value.startsWith("<") && value.endsWith(">"))
+                        value = value.substring(1, value.length() - 1);
+                    part.contentId = value;
+                }
+            }
+        }
+
+        part.content = new byte[end - bodyStart];
+        System.arraycopy(content, bodyStart, part.content, 0, end - bodyStart);
+        return part;
+    }
+
+    /**
+     * A body part of a multipart body.
+     */
+    static class Part
+    {
+        /**
+         * The body of this part.
+         */
+        byte[] content;
+
+        /**
+         * The Content-ID of this part without the angle brackets or
+         * <tt>null</tt>.
+         */
+        String contentId;
+
+        /**
+         * The Content-Type of this part including its parameters or
+         * <tt>null</tt>.
+         */
+        String contentType;
+    }
+}
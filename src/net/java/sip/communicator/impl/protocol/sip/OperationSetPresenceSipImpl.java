@@ -6,6 +6,7 @@
  */
 package net.java.sip.communicator.impl.protocol.sip;
 
+import java.io.*;
 import java.net.URI;
 import java.text.*;
 import java.util.*;
@@ -14,6 +15,7 @@ import javax.sip.*;
 import javax.sip.address.*;
 import javax.sip.header.*;
 import javax.sip.message.*;
+import javax.xml.stream.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -177,6 +179,22 @@ public class OperationSetPresenceSipImpl
     private static final String STATUS_ICON_ELEMENT = "status-icon";
     private static final String NS_STATUS_ICON_ELT  = "rpid:status-icon";
 
+    // the constant parts of the pidf documents we publish
+    private static final String PIDF_TEMPLATE_PRESENCE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+            + "<" + PRESENCE_ELEMENT
+            + " " + NS_ELEMENT + "=\"" + PIDF_NS_VALUE + "\""
+            + " " + RPID_NS_ELEMENT + "=\"" + RPID_NS_VALUE + "\""
+            + " " + DM_NS_ELEMENT + "=\"" + DM_NS_VALUE + "\""
+            + " " + ENTITY_ATTRIBUTE + "=\"";
+    private static final String PIDF_TEMPLATE_PERSON =
+            "\"><" + NS_PERSON_ELT + " " + ID_ATTRIBUTE + "=\"" + PERSON_ID
+            + "\"><" + NS_ACTIVITY_ELT + ">";
+    private static final String PIDF_TEMPLATE_TUPLE =
+            "</" + NS_PERSON_ELT + "><" + TUPLE_ELEMENT + " " + ID_ATTRIBUTE
+            + "=\"" + TUPLE_ID + "\"><" + STATUS_ELEMENT + "><"
+            + BASIC_ELEMENT + ">";
+
     // namespace wildcard
     private static final String ANY_NS          = "*";
 
@@ -190,6 +208,11 @@ public class OperationSetPresenceSipImpl
     private static final String PACKAGE_ATTRIBUTE = "package";
     private static final String WATCHER_ELEMENT= "watcher";
 
+    // rlmi elements and attributes (rfc4662)
+    private static final String RLMI_RESOURCE_ELEMENT = "resource";
+    private static final String RLMI_INSTANCE_ELEMENT = "instance";
+    private static final String URI_ATTRIBUTE = "uri";
+
     /**
      * The <code>EventPackageNotifier</code> which provides the ability of this
      * instance to act as a notifier for the presence event package.
@@ -213,6 +236,13 @@ public class OperationSetPresenceSipImpl
      */
     private AuthorizationHandler authorizationHandler = null;
 
+    /**
+     * The subscription to the presence of our contact list through the
+     * resource list server (RFC 4662) if any. While it is active, we do not
+     * subscribe to each contact separately.
+     */
+    private RlsSubscriberSubscription rlsSubscription = null;
+
     /**
      * Watcher status from the watchers info list.
      */
@@ -1079,7 +1109,9 @@ public class OperationSetPresenceSipImpl
         }
         contact = ssContactList.createContact((ContactGroupSipImpl) parentGroup,
                 contactIdentifier, true, contactType);
-        if (this.presenceEnabled)
+        // the resource list server notifies us about the contacts added to
+        // the list
+        if (this.presenceEnabled && (rlsSubscription == null))
         {
             subscriber.subscribe(new PresenceSubscriberSubscription(contact));
         }
@@ -1276,7 +1308,11 @@ public class OperationSetPresenceSipImpl
                 // try to keep a margin if the refresh delay allows it
                 if (republishDelay >= (2*REFRESH_MARGIN))
                     republishDelay -= REFRESH_MARGIN;
-                timer.schedule(this.republishTask, republishDelay * 1000);
+                timer.schedule(
+                        this.republishTask,
+                        TimerScheduler.jitter(
+                                republishDelay * 1000L,
+                                republishDelay * 100L));
 
             // UNAUTHORIZED (401/407)
             }
@@ -1975,100 +2011,113 @@ public class OperationSetPresenceSipImpl
      */
      public byte[] getPidfPresenceStatus(ContactSipImpl contact)
      {
-         Document doc = this.createDocument();
-
-         if (doc == null)
-             return null;
-
          String contactUri = contact.getSipAddress().getURI().toString();
+         PresenceStatus presenceStatus = contact.getPresenceStatus();
+         StringBuilder doc = new StringBuilder(512);
 
          // <presence>
-         Element presence = doc.createElement(PRESENCE_ELEMENT);
-         presence.setAttribute(NS_ELEMENT, PIDF_NS_VALUE);
-         presence.setAttribute(RPID_NS_ELEMENT, RPID_NS_VALUE);
-         presence.setAttribute(DM_NS_ELEMENT, DM_NS_VALUE);
-         presence.setAttribute(ENTITY_ATTRIBUTE, contactUri);
-         doc.appendChild(presence);
-
-         // <person>
-         Element person = doc.createElement(NS_PERSON_ELT);
-         person.setAttribute(ID_ATTRIBUTE, PERSON_ID);
-         presence.appendChild(person);
-
-         // <activities>
-         Element activities = doc.createElement(NS_ACTIVITY_ELT);
-         person.appendChild(activities);
+         doc.append(PIDF_TEMPLATE_PRESENCE);
+         appendEscaped(doc, contactUri);
 
-         // <status-icon>
-         URI imageUri = ssContactList.getImageUri();
-         if(imageUri != null)
-         {
-             Element statusIcon = doc.createElement(NS_STATUS_ICON_ELT);
-             statusIcon.setTextContent(imageUri.toString());
-             person.appendChild(statusIcon);
-         }
+         // <person><activities>
+         doc.append(PIDF_TEMPLATE_PERSON);
 
          // the correct activity
-         if (contact.getPresenceStatus()
-                         .equals(sipStatusEnum.getStatus(SipStatusEnum.AWAY)))
+         if (presenceStatus.equals(sipStatusEnum.getStatus(SipStatusEnum.AWAY)))
          {
-             Element away = doc.createElement(NS_AWAY_ELT);
-             activities.appendChild(away);
+             doc.append('<').append(NS_AWAY_ELT).append("/>");
          }
-         else if (contact.getPresenceStatus()
-                         .equals(sipStatusEnum.getStatus(SipStatusEnum.BUSY)))
+         else if (presenceStatus.equals(
+                 sipStatusEnum.getStatus(SipStatusEnum.BUSY)))
          {
-             Element busy = doc.createElement(NS_BUSY_ELT);
-             activities.appendChild(busy);
+             doc.append('<').append(NS_BUSY_ELT).append("/>");
          }
-         else if (contact.getPresenceStatus()
-                 .equals(sipStatusEnum.getStatus(SipStatusEnum.ON_THE_PHONE)))
+         else if (presenceStatus.equals(
+                 sipStatusEnum.getStatus(SipStatusEnum.ON_THE_PHONE)))
          {
-             Element otp = doc.createElement(NS_OTP_ELT);
-             activities.appendChild(otp);
+             doc.append('<').append(NS_OTP_ELT).append("/>");
          }
+         doc.append("</").append(NS_ACTIVITY_ELT).append('>');
 
-         // <tuple>
-         Element tuple = doc.createElement(TUPLE_ELEMENT);
-         tuple.setAttribute(ID_ATTRIBUTE, TUPLE_ID);
-         presence.appendChild(tuple);
-
-         // <status>
-         Element status = doc.createElement(STATUS_ELEMENT);
-         tuple.appendChild(status);
-
-         // <basic>
-         Element basic = doc.createElement(BASIC_ELEMENT);
-         if (contact.getPresenceStatus()
-                     .equals(sipStatusEnum.getStatus(SipStatusEnum.OFFLINE)))
+         // <status-icon>
+         URI imageUri = ssContactList.getImageUri();
+         if(imageUri != null)
          {
-             basic.appendChild(doc.createTextNode(OFFLINE_STATUS));
+             doc.append('<').append(NS_STATUS_ICON_ELT).append('>');
+             appendEscaped(doc, imageUri.toString());
+             doc.append("</").append(NS_STATUS_ICON_ELT).append('>');
+         }
+
+         // <tuple><status><basic>
+         doc.append(PIDF_TEMPLATE_TUPLE);
+         if (presenceStatus.equals(
+                 sipStatusEnum.getStatus(SipStatusEnum.OFFLINE)))
+         {
+             doc.append(OFFLINE_STATUS);
          }
          else
          {
-             basic.appendChild(doc.createTextNode(ONLINE_STATUS));
+             doc.append(ONLINE_STATUS);
          }
-         status.appendChild(basic);
+         doc.append("</").append(BASIC_ELEMENT).append("></")
+             .append(STATUS_ELEMENT).append('>');
 
          // <contact>
-         Element contactUriEl = doc.createElement(CONTACT_ELEMENT);
-         Node cValue = doc.createTextNode(contactUri);
-         contactUriEl.appendChild(cValue);
-         tuple.appendChild(contactUriEl);
+         doc.append('<').append(CONTACT_ELEMENT).append('>');
+         appendEscaped(doc, contactUri);
+         doc.append("</").append(CONTACT_ELEMENT).append('>');
 
          // <note> we write our real status here, this status SHOULD not be
          // used for automatic parsing but some (bad) IM clients do this...
          // we don't use xml:lang here because it's not really relevant
-         Element noteNodeEl = doc.createElement(NOTE_ELEMENT);
-         noteNodeEl.appendChild(doc.createTextNode(contact.getPresenceStatus()
-                 .getStatusName()));
-         tuple.appendChild(noteNodeEl);
+         doc.append('<').append(NOTE_ELEMENT).append('>');
+         appendEscaped(doc, presenceStatus.getStatusName());
+         doc.append("</").append(NOTE_ELEMENT).append("></")
+             .append(TUPLE_ELEMENT).append("></")
+             .append(PRESENCE_ELEMENT).append('>');
 
-         String res = convertDocument(doc);
-         if (res == null)
+         try
+         {
+             return doc.toString().getBytes("UTF-8");
+         }
+         catch (UnsupportedEncodingException e)
+         {
+             logger.error("Can't encode the pidf document", e);
              return null;
+         }
+     }
+
+     /**
+      * Appends a string to an XML document escaping the characters which may
+      * not appear as is in text and attribute values.
+      *
+      * @param doc the XML document being built
+      * @param value the string to append
+      */
+     private static void appendEscaped(StringBuilder doc, String value)
+     {
+         for (int i = 0, length = value.length(); i < length; i++)
+         {
+             char c = value.charAt(i);
 
-         return res.getBytes();
+             switch (c)
+             {
+             case '<':
+                 doc.append("&lt;");
+                 break;
+             case '>':
+                 doc.append("&gt;");
+                 break;
+             case '&':
+                 doc.append("&amp;");
+                 break;
+             case '"':
+                 doc.append("&quot;");
+                 break;
+             default:
+                 doc.append(c);
+             }
+         }
      }
 
      /**
@@ -2084,39 +2133,27 @@ public class OperationSetPresenceSipImpl
       */
      public void setPidfPresenceStatus(String presenceDoc)
      {
-         Document doc = convertDocument(presenceDoc);
+         PresenceDocumentParser.Pidf pidf;
 
-         if (doc == null)
+         try
+         {
+             pidf = PresenceDocumentParser.parsePidf(presenceDoc);
+         }
+         catch (XMLStreamException e)
+         {
+             logger.error("Can't parse the presence document", e);
              return;
+         }
 
          if (logger.isDebugEnabled())
              logger.debug("parsing:\n" + presenceDoc);
 
          // <presence>
-         NodeList presList = doc.getElementsByTagNameNS(PIDF_NS_VALUE,
-                 PRESENCE_ELEMENT);
-
-         if (presList.getLength() == 0)
+         if (pidf == null)
          {
-             presList = doc.getElementsByTagNameNS(ANY_NS, PRESENCE_ELEMENT);
-
-             if (presList.getLength() == 0)
-             {
-                 logger.error("no presence element in this document");
-                 return;
-             }
-         }
-         if (presList.getLength() > 1)
-         {
-             logger.warn("more than one presence element in this document");
-         }
-         Node presNode = presList.item(0);
-         if (presNode.getNodeType() != Node.ELEMENT_NODE)
-         {
-             logger.error("the presence node is not an element");
+             logger.error("no presence element in this document");
              return;
          }
-         Element presence = (Element) presNode;
 
          // RPID area
 
@@ -2126,100 +2163,38 @@ public class OperationSetPresenceSipImpl
 
          PresenceStatus personStatus = null;
          URI personStatusIcon = null;
-         NodeList personList = presence.getElementsByTagNameNS(ANY_NS,
-                 PERSON_ELEMENT);
 
-         //if (personList.getLength() > 1) {
-         //    logger.error("more than one person in this document");
-         //    return;
-         //}
-
-         if (personList.getLength() > 0)
+         if (AWAY_ELEMENT.equals(pidf.activity))
          {
-             Node personNode = personList.item(0);
-             if (personNode.getNodeType() != Node.ELEMENT_NODE)
-             {
-                 logger.error("the person node is not an element");
-                 return;
-             }
-             Element person = (Element) personNode;
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.AWAY);
+         }
+         else if (BUSY_ELEMENT.equals(pidf.activity))
+         {
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.BUSY);
+         }
+         else if (OTP_ELEMENT.equals(pidf.activity))
+         {
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.ON_THE_PHONE);
+         }
 
-             NodeList activityList =
-                 person.getElementsByTagNameNS(ANY_NS, ACTIVITY_ELEMENT);
-             if (activityList.getLength() > 0)
+         String statusIconContent = pidf.statusIcon;
+         if (statusIconContent != null
+                 && statusIconContent.trim().length() != 0)
+         {
+             try
              {
-                 Element activity = null;
-                 // find the first correct activity
-                 for (int i = 0; i < activityList.getLength(); i++)
-                 {
-                     Node activityNode = activityList.item(i);
-
-                     if (activityNode.getNodeType() != Node.ELEMENT_NODE)
-                         continue;
-
-                     activity = (Element) activityNode;
-
-                     NodeList statusList = activity.getChildNodes();
-                     for (int j = 0; j < statusList.getLength(); j++)
-                     {
-                         Node statusNode = statusList.item(j);
-                         if (statusNode.getNodeType() == Node.ELEMENT_NODE)
-                         {
-                             String statusname = statusNode.getLocalName();
-                             if (statusname.equals(AWAY_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.AWAY);
-                                 break;
-                             }
-                             else if (statusname.equals(BUSY_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.BUSY);
-                                 break;
-                             }
-                             else if (statusname.equals(OTP_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.ON_THE_PHONE);
-                                 break;
-                             }
-                         }
-                     }
-                     if (personStatus != null)
-                         break;
-                 }
+                 personStatusIcon = URI.create(statusIconContent);
              }
-             NodeList statusIconList = person.getElementsByTagNameNS(ANY_NS,
-                     STATUS_ICON_ELEMENT);
-             if (statusIconList.getLength() > 0)
+             catch (IllegalArgumentException ex)
              {
-                 Element statusIcon;
-                 Node statusIconNode = statusIconList.item(0);
-                 if (statusIconNode.getNodeType() == Node.ELEMENT_NODE)
-                 {
-                     statusIcon = (Element) statusIconNode;
-                     String content = getTextContent(statusIcon);
-                     if (content != null && content.trim().length() != 0)
-                     {
-                         try
-                         {
-                             personStatusIcon = URI.create(content);
-                         }
-                         catch (IllegalArgumentException ex)
-                         {
-                             logger.error("Person's status icon uri: " +
-                                     content + " is invalid");
-                         }
-                     }
-                 }
+                 logger.error("Person's status icon uri: " +
+                         statusIconContent + " is invalid");
              }
          }
 
           if(personStatusIcon != null)
           {
-              String contactID =
-                  XMLUtils.getAttribute(presNode, ENTITY_ATTRIBUTE);
+              String contactID = pidf.entity;
 
               if (contactID.startsWith("pres:"))
               {
@@ -2235,29 +2210,21 @@ public class OperationSetPresenceSipImpl
          List<Object[]> newPresenceStates = new Vector<Object[]>(3, 2);
 
          // <tuple>
-         NodeList tupleList = getPidfChilds(presence, TUPLE_ELEMENT);
-         for (int i = 0; i < tupleList.getLength(); i++)
+         for (PresenceDocumentParser.Tuple tuple : pidf.getTuples())
          {
-             Node tupleNode = tupleList.item(i);
-
-             if (tupleNode.getNodeType() != Node.ELEMENT_NODE)
-                 continue;
-
-             Element tuple = (Element) tupleNode;
-
              // <contact>
-             NodeList contactList = getPidfChilds(tuple, CONTACT_ELEMENT);
+             List<PresenceDocumentParser.TupleContact> contactList
+                 = tuple.getContacts();
 
              // we use a vector here and not an unique contact to handle an
              // error case where many contacts are associated with a status
              // Vector<ContactSipImpl>
              List<Object[]> sipcontact = new Vector<Object[]>(1, 3);
              String contactID = null;
-             if (contactList.getLength() == 0)
+             if (contactList.isEmpty())
              {
                  // use the entity attribute of the presence node
-                 contactID = XMLUtils.getAttribute(
-                         presNode, ENTITY_ATTRIBUTE);
+                 contactID = pidf.entity;
                  // also accept entity URIs starting with pres: instead of sip:
                  if (contactID.startsWith("pres:"))
                  {
@@ -2273,16 +2240,9 @@ public class OperationSetPresenceSipImpl
              else
              {
                  // this is normally not permitted by RFC3863
-                 for (int j = 0; j < contactList.getLength(); j++)
+                 for (PresenceDocumentParser.TupleContact contact : contactList)
                  {
-                     Node contactNode = contactList.item(j);
-
-                     if (contactNode.getNodeType() != Node.ELEMENT_NODE)
-                         continue;
-
-                     Element contact = (Element) contactNode;
-
-                     contactID = getTextContent(contact);
+                     contactID = getTextContent(contact.id, CONTACT_ELEMENT);
                      // also accept entity URIs starting with pres: instead
                      // of sip:
                      if (contactID.startsWith("pres:"))
@@ -2298,7 +2258,7 @@ public class OperationSetPresenceSipImpl
                      Object tab[] = new Object[2];
 
                      // search if the contact has a priority
-                     String prioStr = contact.getAttribute(PRIORITY_ATTRIBUTE);
+                     String prioStr = contact.priority;
                      Float prio = null;
                      try
                      {
@@ -2369,82 +2329,24 @@ public class OperationSetPresenceSipImpl
                  continue;
              }
 
-             // <status>
-             NodeList statusList = getPidfChilds(tuple, STATUS_ELEMENT);
-
-             // in case of many status, just consider the last one
+             // <status><basic>
+             // in case of many status or basic, just consider the last one
              // this is normally not permitted by RFC3863
-             int index = statusList.getLength() - 1;
-             Node statusNode = null;
-             do
-             {
-                 Node temp = statusList.item(index);
-                 if (temp.getNodeType() == Node.ELEMENT_NODE)
-                 {
-                     statusNode = temp;
-                     break;
-                 }
-                 index--;
-             }
-             while (index >= 0);
-
-             Element basic = null;
+             PresenceDocumentParser.Text basic = tuple.getBasic();
 
-             if (statusNode == null)
+             if (basic == null)
              {
                  if (logger.isDebugEnabled())
-                     logger.debug("no valid status in this tuple");
-             }
-             else
-             {
-                 Element status = (Element) statusNode;
-
-                 // <basic>
-                 NodeList basicList = getPidfChilds(status, BASIC_ELEMENT);
-
-                 // in case of many basic, just consider the last one
-                 // this is normally not permitted by RFC3863
-                 index = basicList.getLength() - 1;
-                 Node basicNode = null;
-                 do
-                 {
-                     Node temp = basicList.item(index);
-                     if (temp.getNodeType() == Node.ELEMENT_NODE)
-                     {
-                         basicNode = temp;
-                         break;
-                     }
-                     index--;
-                 }
-                 while (index >= 0);
-
-                 if (basicNode == null)
-                 {
-                     if (logger.isDebugEnabled())
-                         logger.debug("no valid <basic> in this status");
-                 }
-                 else
-                 {
-                     basic = (Element) basicNode;
-                 }
+                     logger.debug("no valid <basic> in this tuple");
              }
 
              // search for a <note> that can define a more precise
              // status this is not recommended by RFC3863 but some im
              // clients use this.
-             NodeList noteList = getPidfChilds(tuple, NOTE_ELEMENT);
-
              boolean changed = false;
-             for (int k = 0; k < noteList.getLength() && !changed; k++)
+             for (PresenceDocumentParser.Text note : tuple.getNotes())
              {
-                 Node noteNode = noteList.item(k);
-
-                 if (noteNode.getNodeType() != Node.ELEMENT_NODE)
-                     continue;
-
-                 Element note = (Element) noteNode;
-
-                 String state = getTextContent(note);
+                 String state = getTextContent(note.text, NOTE_ELEMENT);
 
                  Iterator<PresenceStatus> states
                      = sipStatusEnum.getSupportedStatusSet();
@@ -2461,11 +2363,15 @@ public class OperationSetPresenceSipImpl
                          break;
                      }
                  }
+                 if (changed)
+                     break;
              }
 
              if (changed == false && basic != null)
              {
-                 if (getTextContent(basic).equalsIgnoreCase(ONLINE_STATUS))
+                 String basicStatus = getTextContent(basic.text, BASIC_ELEMENT);
+
+                 if (basicStatus.equalsIgnoreCase(ONLINE_STATUS))
                  {
                      // if its online(open) we use the person status
                      // if any, otherwise just mark as online
@@ -2484,8 +2390,7 @@ public class OperationSetPresenceSipImpl
                                  newPresenceStates);
                      }
                  }
-                 else if (getTextContent(basic).equalsIgnoreCase(
-                         OFFLINE_STATUS))
+                 else if (basicStatus.equalsIgnoreCase(OFFLINE_STATUS))
                  {
                      // if its offline we ignore person status
                      newPresenceStates = setStatusForContacts(
@@ -2531,51 +2436,37 @@ public class OperationSetPresenceSipImpl
             return;
         }
 
-        Document doc = convertDocument(watcherInfoDoc);
+        PresenceDocumentParser.WatcherInfo watcherInfo;
 
-         if (doc == null)
-             return;
+        try
+        {
+            watcherInfo
+                = PresenceDocumentParser.parseWatcherInfo(watcherInfoDoc);
+        }
+        catch (XMLStreamException e)
+        {
+            logger.error("Can't parse the watcherinfo document", e);
+            return;
+        }
 
          if (logger.isDebugEnabled())
              logger.debug("parsing:\n" + watcherInfoDoc);
 
         // <watcherinfo>
-        NodeList watchList = doc.getElementsByTagNameNS(
-                WATCHERINFO_NS_VALUE, WATCHERINFO_ELEMENT);
-        if (watchList.getLength() == 0)
-        {
-            watchList = doc.getElementsByTagNameNS(
-                     ANY_NS, WATCHERINFO_ELEMENT);
-
-            if (watchList.getLength() == 0)
-            {
-                logger.error("no watcherinfo element in this document");
-                return;
-            }
-        }
-        if (watchList.getLength() > 1)
-        {
-            logger.warn("more than one watcherinfo element in this document");
-        }
-        Node watcherInfoNode = watchList.item(0);
-        if (watcherInfoNode.getNodeType() != Node.ELEMENT_NODE)
+        if (watcherInfo == null)
         {
-            logger.error("the watcherinfo node is not an element");
+            logger.error("no watcherinfo element in this document");
             return;
         }
 
-        Element watcherInfo = (Element)watcherInfoNode;
-
         // we don't take in account whether the state is full or partial.
         if(logger.isDebugEnabled())
-            logger.debug("Watcherinfo is with state: "
-                    + watcherInfo.getAttribute(STATE_ATTRIBUTE));
+            logger.debug("Watcherinfo is with state: " + watcherInfo.state);
 
         int currentVersion = -1;
         try
         {
-            currentVersion =
-                Integer.parseInt(watcherInfo.getAttribute(VERSION_ATTRIBUTE));
+            currentVersion = Integer.parseInt(watcherInfo.version);
         }
         catch(Throwable t)
         {
@@ -2591,33 +2482,21 @@ public class OperationSetPresenceSipImpl
             subscriber.version = currentVersion;
 
         // we need watcher list only for our resource
-        Element wlist = XMLUtils.locateElement(
-                watcherInfo, WATCHERLIST_ELEMENT, RESOURCE_ATTRIBUTE,
-                parentProvider.getRegistrarConnection()
-                    .getAddressOfRecord().getURI().toString());
+        PresenceDocumentParser.WatcherList wlist
+            = watcherInfo.getWatcherList(
+                    parentProvider.getRegistrarConnection()
+                        .getAddressOfRecord().getURI().toString());
 
-        if(wlist == null ||
-            !wlist.getAttribute(PACKAGE_ATTRIBUTE).equals(PRESENCE_ELEMENT))
+        if(wlist == null || !wlist.packageName.equals(PRESENCE_ELEMENT))
         {
             logger.error("Watcher list for us is missing in this document!");
             return;
         }
 
-        NodeList watcherList = wlist.getElementsByTagNameNS(ANY_NS,
-                 WATCHER_ELEMENT);
-        for(int i = 0; i < watcherList.getLength(); i++)
+        for (PresenceDocumentParser.Watcher watcher : wlist.watchers)
         {
-            Node watcherNode = watcherList.item(i);
-            if (watcherNode.getNodeType() != Node.ELEMENT_NODE)
-            {
-                logger.error("the watcher node is not an element");
-                return;
-            }
-
-            Element watcher = (Element)watcherNode;
-
-            String status = watcher.getAttribute(STATUS_ELEMENT);
-            String contactID = getTextContent(watcher);
+            String status = watcher.status;
+            String contactID = getTextContent(watcher.id, WATCHER_ELEMENT);
 
             //String event - subscribe, approved, deactivated, probation,
             //rejected, timeout, giveup, noresource
@@ -2707,49 +2586,23 @@ public class OperationSetPresenceSipImpl
     }
 
      /**
-      * Secured call to XMLUtils.getText (no null returned but an empty string)
+      * Secured access to the text of an element (no null returned but an
+      * empty string)
       *
-      * @param node the node with which call <tt>XMLUtils.getText()</tt>
+      * @param text the text of the element as read by the parser
+      * @param elementName the name of the element for logging purposes
       *
-      * @return the string contained in the node or an empty string if there is
-      * no text information in the node.
+      * @return <tt>text</tt> or an empty string if there is no text
+      * information in the element.
       */
-     private String getTextContent(Element node)
+     private String getTextContent(String text, String elementName)
      {
-         String res = XMLUtils.getText(node);
-
-         if (res == null)
+         if (text == null)
          {
-             logger.warn("no text for element '" + node.getNodeName() + "'");
+             logger.warn("no text for element '" + elementName + "'");
              return "";
          }
-
-         return res;
-     }
-
-     /**
-      * Gets the list of the descendant of an element in the pidf namespace.
-      * If the list is empty, we try to get this list in any namespace.
-      * This method is useful for being able to read pidf document without any
-      * namespace or with a wrong namespace.
-      *
-      * @param element the base element concerned.
-      * @param childName the name of the descendants to match on.
-      *
-      * @return The list of all the descendant node.
-      */
-     private NodeList getPidfChilds(Element element, String childName)
-     {
-         NodeList res;
-
-         res = element.getElementsByTagNameNS(PIDF_NS_VALUE, childName);
-
-         if (res.getLength() == 0)
-         {
-             res = element.getElementsByTagNameNS(ANY_NS, childName);
-         }
-
-         return res;
+         return text;
      }
 
      /**
@@ -2851,7 +2704,8 @@ public class OperationSetPresenceSipImpl
      {
          if (this.presenceEnabled == false
              || !contact.isResolvable()
-             || !contact.isPersistent())
+             || !contact.isPersistent()
+             || (rlsSubscription != null))
              return;
 
          // Attempt to subscribe.
@@ -2966,7 +2820,7 @@ public class OperationSetPresenceSipImpl
      /**
       * A <tt>TimerTask</tt> handling refresh of PUBLISH requests.
       */
-     private class RePublishTask extends TimerTask
+     private class RePublishTask extends TimerWheel.Task
      {
          /**
           * Send a new PUBLISH request to refresh the publication
@@ -3021,7 +2875,7 @@ public class OperationSetPresenceSipImpl
      /**
       * A task handling polling of offline contacts.
       */
-     private class PollOfflineContactsTask extends TimerTask
+     private class PollOfflineContactsTask extends TimerWheel.Task
      {
          /**
           * Check if we can't subscribe to this contact now
@@ -3115,6 +2969,7 @@ public class OperationSetPresenceSipImpl
             }
             // Stop any task associated with the timer
             cancelTimer();
+            stopResourceListSubscription(true);
             // Destroy XCAP contacts
             ssContactList.destroy();
             // This will not be called by anyone else, so call it the method
@@ -3146,23 +3001,17 @@ public class OperationSetPresenceSipImpl
             * anything because we've already set it up in response to
             * the first REGISTERED.
             */
-            if ((!presenceEnabled) || (pollingTask != null))
+            if ((!presenceEnabled)
+                    || (pollingTask != null)
+                    || (rlsSubscription != null))
             {
                 return;
             }
 
-            // Subcribe to each contact in the list
-            for (ContactSipImpl contact : ssContactList
-                    .getAllContacts(ssContactList.getRootGroup()))
-            {
-                forcePollContact(contact);
-            }
-
-            // create the new polling task
-            pollingTask = new PollOfflineContactsTask();
-
-            // start polling the offline contacts
-            timer.schedule(pollingTask, pollingTaskPeriod, pollingTaskPeriod);
+            // Subscribe once to the whole list if we have a resource list
+            // server and to each contact in the list otherwise
+            if (!subscribeToResourceList())
+                subscribeToAllContacts();
 
             if(this.useDistantPA)
             {
@@ -3240,6 +3089,7 @@ public class OperationSetPresenceSipImpl
 
             // stop any task associated with the timer
             cancelTimer();
+            stopResourceListSubscription(false);
             waitedCallIds.clear();
 
             // update ourself and the UI that our status is OFFLINE
@@ -3253,6 +3103,275 @@ public class OperationSetPresenceSipImpl
         }
     }
 
+    /**
+     * Subscribes to each contact in the list and starts polling the offline
+     * ones.
+     */
+    private void subscribeToAllContacts()
+    {
+        for (ContactSipImpl contact : ssContactList
+                .getAllContacts(ssContactList.getRootGroup()))
+        {
+            forcePollContact(contact);
+        }
+
+        if (pollingTask == null)
+        {
+            // create the new polling task
+            pollingTask = new PollOfflineContactsTask();
+
+            // start polling the offline contacts
+            timer.schedule(pollingTask, pollingTaskPeriod, pollingTaskPeriod);
+        }
+    }
+
+    /**
+     * Subscribes to the presence of the whole contact list through the
+     * resource list server of the account (RFC 4662). The uri configured in
+     * the account is used if any, otherwise the uri of the service the
+     * contact list has published to the rls-services of the XCAP server.
+     *
+     * @return <tt>true</tt> if the subscription has been sent;
+     * <tt>false</tt> if there is no resource list server or the subscription
+     * could not be sent in which case we have to subscribe to each contact
+     */
+    private boolean subscribeToResourceList()
+    {
+        String rlsUri
+            = parentProvider.getAccountID().getAccountPropertyString(
+                    SipAccountID.RLS_URI);
+
+        if ((rlsUri == null) || (rlsUri.trim().length() == 0))
+            rlsUri = ssContactList.getRlsServiceUri();
+        if (rlsUri == null)
+            return false;
+
+        try
+        {
+            RlsSubscriberSubscription subscription
+                = new RlsSubscriberSubscription(
+                        parentProvider.parseAddressString(rlsUri.trim()));
+
+            rlsSubscription = subscription;
+            subscriber.subscribe(subscription);
+            return true;
+        }
+        catch (ParseException ex)
+        {
+            logger.error("Invalid resource list server URI " + rlsUri, ex);
+        }
+        catch (OperationFailedException ex)
+        {
+            logger.error(
+                    "Failed to subscribe to the resource list " + rlsUri,
+                    ex);
+        }
+        rlsSubscription = null;
+        return false;
+    }
+
+    /**
+     * Gives up a subscription to the resource list server which failed or
+     * turned out not to be served by a resource list server and subscribes to
+     * each contact instead.
+     *
+     * @param subscription the failed subscription
+     * @param unsubscribe <tt>true</tt> to terminate the subscription
+     */
+    private void fallBackToContactSubscriptions(
+            RlsSubscriberSubscription subscription,
+            boolean unsubscribe)
+    {
+        if (rlsSubscription != subscription)
+            return;
+
+        rlsSubscription = null;
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "No resource list server at " + subscription.getAddress()
+                        + ", subscribing to each contact.");
+        }
+        if (unsubscribe)
+        {
+            try
+            {
+                subscriber.unsubscribe(subscription.getAddress(), false);
+            }
+            catch (Throwable ex)
+            {
+                if (ex instanceof ThreadDeath)
+                    throw (ThreadDeath) ex;
+                logger.error(
+                        "Failed to unsubscribe from the resource list",
+                        ex);
+            }
+        }
+        if (parentProvider.isRegistered())
+            subscribeToAllContacts();
+    }
+
+    /**
+     * Stops the subscription to the resource list server if any.
+     *
+     * @param unsubscribe <tt>true</tt> to send an unsubscription;
+     * <tt>false</tt> to only forget the subscription e.g. because the
+     * connection failed
+     */
+    private void stopResourceListSubscription(boolean unsubscribe)
+    {
+        RlsSubscriberSubscription subscription = rlsSubscription;
+
+        if (subscription == null)
+            return;
+
+        rlsSubscription = null;
+        try
+        {
+            if (unsubscribe)
+                subscriber.unsubscribe(subscription.getAddress(), false);
+            else
+                subscriber.removeSubscription(subscription.getAddress());
+        }
+        catch (Throwable ex)
+        {
+            logger.error("Failed to remove the resource list subscription", ex);
+        }
+    }
+
+    /**
+     * Processes the body of a NOTIFY of the resource list server: a
+     * multipart/related body with a Resource List Meta-Information document
+     * and the presence documents of the resources whose state changed.
+     *
+     * @param content the multipart/related body
+     * @param boundary the boundary of the parts of <tt>content</tt>
+     */
+    private void processResourceListContent(byte[] content, String boundary)
+    {
+        if (boundary == null)
+        {
+            logger.error("multipart NOTIFY body without boundary");
+            return;
+        }
+
+        List<MultipartContent.Part> parts
+            = MultipartContent.parse(content, boundary);
+
+        // the meta-information first so that the states of the resources
+        // are known when their presence documents are processed
+        for (MultipartContent.Part part : parts)
+        {
+            if (MultipartContent.isContentType(
+                    part.contentType,
+                    "application",
+                    EventPackageSubscriber.RLMI_CONTENT_SUB_TYPE))
+            {
+                setRlmiStatus(new String(part.content));
+            }
+        }
+        for (MultipartContent.Part part : parts)
+        {
+            if (MultipartContent.isContentType(
+                    part.contentType, "application", PIDF_XML))
+            {
+                setPidfPresenceStatus(new String(part.content));
+            }
+            else if (MultipartContent.isContentType(
+                    part.contentType,
+                    "multipart",
+                    EventPackageSubscriber.RELATED_CONTENT_SUB_TYPE))
+            {
+                // a nested list
+                processResourceListContent(
+                        part.content,
+                        MultipartContent.getParameter(
+                                part.contentType,
+                                "boundary"));
+            }
+        }
+    }
+
+    /**
+     * Applies the subscription states of the resources listed in a Resource
+     * List Meta-Information document (RFC 4662) to the matching contacts.
+     * The presence of the resources with an active subscription is carried
+     * by the presence documents which accompany the meta-information.
+     *
+     * @param rlmiDoc the Resource List Meta-Information document
+     */
+    private void setRlmiStatus(String rlmiDoc)
+    {
+        Document doc = convertDocument(rlmiDoc);
+
+        if (doc == null)
+            return;
+
+        NodeList resources
+            = doc.getElementsByTagNameNS(ANY_NS, RLMI_RESOURCE_ELEMENT);
+
+        for (int i = 0; i < resources.getLength(); i++)
+        {
+            Element resource = (Element) resources.item(i);
+            String uri = resource.getAttribute(URI_ATTRIBUTE);
+            ContactSipImpl contact
+                = (uri.length() == 0) ? null : resolveContactID(uri);
+
+            if (contact == null)
+                continue;
+
+            NodeList instances
+                = resource.getElementsByTagNameNS(
+                        ANY_NS,
+                        RLMI_INSTANCE_ELEMENT);
+            String state = null;
+
+            // a resource is active if any of its instances is
+            for (int j = 0; j < instances.getLength(); j++)
+            {
+                String instanceState
+                    = ((Element) instances.item(j)).getAttribute(
+                            STATE_ATTRIBUTE);
+
+                if (SubscriptionStateHeader.ACTIVE.equalsIgnoreCase(
+                        instanceState))
+                {
+                    state = SubscriptionStateHeader.ACTIVE;
+                    break;
+                }
+                else if (SubscriptionStateHeader.PENDING.equalsIgnoreCase(
+                        instanceState))
+                {
+                    state = SubscriptionStateHeader.PENDING;
+                }
+                else if (state == null)
+                {
+                    state = SubscriptionStateHeader.TERMINATED;
+                }
+            }
+
+            // a full state notification lists resources without instances
+            // until the server has subscribed to them
+            if (state == null)
+                continue;
+
+            if (SubscriptionStateHeader.TERMINATED.equals(state))
+            {
+                if (contact.getPresenceStatus().isOnline())
+                {
+                    changePresenceStatusForContact(
+                            contact,
+                            sipStatusEnum.getStatus(SipStatusEnum.OFFLINE));
+                }
+            }
+            else if (!contact.isResolved())
+            {
+                finalizeSubscription(contact);
+            }
+            contact.setSubscriptionState(state);
+        }
+    }
+
     /**
      * Gets the identifying address of a specific <code>ContactSipImpl</code> in
      * the form of a <code>Address</code> value.
@@ -3610,6 +3729,149 @@ public class OperationSetPresenceSipImpl
         }
     }
 
+    /**
+     * Represents a subscription to the presence of the whole contact list
+     * through a resource list server as defined in RFC 4662. Falls back to
+     * subscriptions to each contact when the server does not serve the list.
+     */
+    private class RlsSubscriberSubscription
+        extends EventPackageSubscriber.Subscription
+    {
+        /**
+         * Initializes a new <tt>RlsSubscriberSubscription</tt> to the list
+         * served by the resource list server at a specific address.
+         *
+         * @param toAddress the URI of the list on the resource list server
+         */
+        public RlsSubscriberSubscription(Address toAddress)
+        {
+            super(toAddress);
+        }
+
+        /**
+         * Returns <tt>true</tt> because this is a subscription to a list of
+         * resources.
+         *
+         * @return <tt>true</tt>
+         */
+        @Override
+        protected boolean isEventList()
+        {
+            return true;
+        }
+
+        /**
+         * Determines whether a SIP message has a Require header with the
+         * eventlist option tag which a resource list server adds to its
+         * responses and notifications.
+         *
+         * @param message the SIP message to check
+         * @return <tt>true</tt> if <tt>message</tt> requires the eventlist
+         * extension; otherwise, <tt>false</tt>
+         */
+        private boolean requiresEventList(javax.sip.message.Message message)
+        {
+            ListIterator<?> requireHeaders
+                = message.getHeaders(RequireHeader.NAME);
+
+            while ((requireHeaders != null) && requireHeaders.hasNext())
+            {
+                RequireHeader requireHeader
+                    = (RequireHeader) requireHeaders.next();
+
+                if (EventPackageSubscriber.EVENTLIST_OPTION_TAG
+                        .equalsIgnoreCase(requireHeader.getOptionTag()))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Processes the multipart/related notifications of the resource list
+         * server. A plain presence document means that the server does not
+         * serve the list and that we have to subscribe to each contact.
+         *
+         * @param requestEvent the <tt>RequestEvent</tt> carrying the NOTIFY
+         * @param rawContent the body of the NOTIFY
+         */
+        @Override
+        protected void processActiveRequest(
+                RequestEvent requestEvent,
+                byte[] rawContent)
+        {
+            if (rawContent == null)
+                return;
+
+            ContentTypeHeader ctheader
+                = (ContentTypeHeader)
+                    requestEvent.getRequest().getHeader(
+                            ContentTypeHeader.NAME);
+
+            if ((ctheader != null)
+                    && EventPackageSubscriber.RELATED_CONTENT_SUB_TYPE
+                            .equalsIgnoreCase(ctheader.getContentSubType()))
+            {
+                processResourceListContent(
+                        rawContent,
+                        ctheader.getParameter("boundary"));
+            }
+            else if (!requiresEventList(requestEvent.getRequest()))
+            {
+                fallBackToContactSubscriptions(this, true);
+            }
+        }
+
+        /**
+         * Subscribes to each contact because the resource list server
+         * rejected the subscription.
+         *
+         * @param responseEvent the <tt>ResponseEvent</tt> carrying the
+         * failure response
+         * @param statusCode the status code of the failure response
+         */
+        @Override
+        protected void processFailureResponse(
+                ResponseEvent responseEvent,
+                int statusCode)
+        {
+            fallBackToContactSubscriptions(this, false);
+        }
+
+        /**
+         * Checks that the subscription has been accepted by a resource list
+         * server i.e. that the response requires the eventlist extension and
+         * subscribes to each contact otherwise.
+         *
+         * @param responseEvent the <tt>ResponseEvent</tt> carrying the
+         * success response
+         * @param statusCode the status code of the success response
+         */
+        @Override
+        protected void processSuccessResponse(
+                ResponseEvent responseEvent,
+                int statusCode)
+        {
+            if (!requiresEventList(responseEvent.getResponse()))
+                fallBackToContactSubscriptions(this, true);
+        }
+
+        /**
+         * Subscribes to each contact because the resource list server
+         * terminated the subscription.
+         *
+         * @param requestEvent the <tt>RequestEvent</tt> carrying the
+         * terminating NOTIFY
+         * @param reasonCode the reason of the termination
+         */
+        @Override
+        protected void processTerminatedRequest(
+                RequestEvent requestEvent,
+                String reasonCode)
+        {
+            fallBackToContactSubscriptions(this, false);
+        }
+    }
+
     /**
      * Represents a subscription to the presence.winfo event package.
      *
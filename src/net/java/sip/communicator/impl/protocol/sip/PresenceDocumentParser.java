@@ -0,0 +1,760 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Streaming parser of the PIDF (RFC 3863) and watcherinfo (RFC 3858)
+ * documents carried by presence NOTIFY requests. The documents are read with a
+ * pull parser into small models holding only what
+ * <tt>OperationSetPresenceSipImpl</tt> uses instead of being built into DOM
+ * trees.
+ * <p>
+ * The models keep the tolerance of the DOM based processing: namespaces are
+ * ignored for the RPID elements and the PIDF elements in the PIDF namespace
+ * are preferred to the ones in other namespaces only when both are present.
+ */
+final class PresenceDocumentParser
+{
+    /**
+     * The PIDF namespace.
+     */
+    private static final String PIDF_NS_VALUE = "urn:ietf:params:xml:ns:pidf";
+
+    /**
+     * The watcherinfo namespace.
+     */
+    private static final String WATCHERINFO_NS_VALUE
+        = "urn:ietf:params:xml:ns:watcherinfo";
+
+    /**
+     * The factory of the pull parsers. Configured once, it is safe to create
+     * parsers from it concurrently.
+     */
+    private static final XMLInputFactory inputFactory;
+
+    static
+    {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // presence documents come from the network
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+    }
+
+    /**
+     * Prevents the initialization of <tt>PresenceDocumentParser</tt>
+     * instances.
+     */
+    private PresenceDocumentParser()
+    {
+    }
+
+    /**
+     * Parses a PIDF document.
+     *
+     * @param document the PIDF document
+     * @return the parsed document or <tt>null</tt> if it does not have a
+     * presence element
+     * @throws XMLStreamException if <tt>document</tt> is not well formed
+     */
+    static Pidf parsePidf(String document)
+        throws XMLStreamException
+    {
+        XMLStreamReader reader
+            = inputFactory.createXMLStreamReader(new StringReader(document));
+
+        try
+        {
+            while (reader.hasNext())
+            {
+                if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+                        && "presence".equals(reader.getLocalName()))
+                {
+                    Pidf pidf = new Pidf();
+
+                    pidf.entity = getAttribute(reader, "entity");
+                    parsePresence(reader, pidf);
+                    return pidf;
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses a watcherinfo document.
+     *
+     * @param document the watcherinfo document
+     * @return the parsed document or <tt>null</tt> if it does not have a
+     * watcherinfo element
+     * @throws XMLStreamException if <tt>document</tt> is not well formed
+     */
+    static WatcherInfo parseWatcherInfo(String document)
+        throws XMLStreamException
+    {
+        XMLStreamReader reader
+            = inputFactory.createXMLStreamReader(new StringReader(document));
+
+        try
+        {
+            while (reader.hasNext())
+            {
+                if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+                        && "watcherinfo".equals(reader.getLocalName()))
+                {
+                    WatcherInfo watcherInfo = new WatcherInfo();
+
+                    watcherInfo.inWatcherInfoNs
+                        = WATCHERINFO_NS_VALUE.equals(
+                                reader.getNamespaceURI());
+                    watcherInfo.state = getAttribute(reader, "state");
+                    watcherInfo.version = getAttribute(reader, "version");
+                    parseWatcherInfo(reader, watcherInfo);
+                    return watcherInfo;
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Gets the value of an attribute without namespace of the current element
+     * the way DOM does i.e. an empty string if the attribute is missing.
+     *
+     * @param reader the parser positioned on a start element
+     * @param name the name of the attribute
+     * @return the value of the attribute or an empty string
+     */
+    private static String getAttribute(XMLStreamReader reader, String name)
+    {
+        String value = reader.getAttributeValue(null, name);
+
+        return (value == null) ? "" : value;
+    }
+
+    /**
+     * Determines whether the current element is in the PIDF namespace.
+     *
+     * @param reader the parser positioned on a start element
+     * @return <tt>true</tt> if the current element is in the PIDF namespace
+     */
+    private static boolean isPidf(XMLStreamReader reader)
+    {
+        return PIDF_NS_VALUE.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * Parses the content of the presence element.
+     *
+     * @param reader the parser positioned on the presence start element
+     * @param pidf the model to fill in
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static void parsePresence(XMLStreamReader reader, Pidf pidf)
+        throws XMLStreamException
+    {
+        boolean personSeen = false;
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                String name = reader.getLocalName();
+
+                if (!personSeen && "person".equals(name))
+                {
+                    personSeen = true;
+                    parsePerson(reader, pidf);
+                }
+                else if ("tuple".equals(name))
+                {
+                    Tuple tuple = new Tuple(isPidf(reader));
+
+                    parseTuple(reader, tuple);
+                    pidf.tuples.add(tuple);
+                }
+                else
+                    depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * Parses the first person element of a PIDF document i.e. the RPID
+     * activities and status icon.
+     *
+     * @param reader the parser positioned on the person start element
+     * @param pidf the model to fill in
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static void parsePerson(XMLStreamReader reader, Pidf pidf)
+        throws XMLStreamException
+    {
+        boolean statusIconSeen = false;
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                String name = reader.getLocalName();
+
+                if ("activities".equals(name))
+                    parseActivities(reader, pidf);
+                else if (!statusIconSeen && "status-icon".equals(name))
+                {
+                    statusIconSeen = true;
+                    pidf.statusIcon = readText(reader);
+                }
+                else
+                    depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * Parses an RPID activities element keeping the first activity we know
+     * about.
+     *
+     * @param reader the parser positioned on the activities start element
+     * @param pidf the model to fill in
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static void parseActivities(XMLStreamReader reader, Pidf pidf)
+        throws XMLStreamException
+    {
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                String name = reader.getLocalName();
+
+                if ((depth == 1)
+                        && (pidf.activity == null)
+                        && ("away".equals(name)
+                                || "busy".equals(name)
+                                || "on-the-phone".equals(name)))
+                {
+                    pidf.activity = name;
+                }
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * Parses a tuple element.
+     *
+     * @param reader the parser positioned on the tuple start element
+     * @param tuple the model to fill in
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static void parseTuple(XMLStreamReader reader, Tuple tuple)
+        throws XMLStreamException
+    {
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                String name = reader.getLocalName();
+
+                if ("contact".equals(name))
+                {
+                    TupleContact contact = new TupleContact(isPidf(reader));
+
+                    contact.priority = getAttribute(reader, "priority");
+                    contact.id = readText(reader);
+                    tuple.contacts.add(contact);
+                }
+                else if ("status".equals(name))
+                {
+                    Status status = new Status(isPidf(reader));
+
+                    parseStatus(reader, status);
+                    tuple.statuses.add(status);
+                }
+                else if ("note".equals(name))
+                {
+                    Text note = new Text(isPidf(reader));
+
+                    note.text = readText(reader);
+                    tuple.notes.add(note);
+                }
+                else
+                    depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * Parses a status element of a tuple.
+     *
+     * @param reader the parser positioned on the status start element
+     * @param status the model to fill in
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static void parseStatus(XMLStreamReader reader, Status status)
+        throws XMLStreamException
+    {
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                if ("basic".equals(reader.getLocalName()))
+                {
+                    Text basic = new Text(isPidf(reader));
+
+                    basic.text = readText(reader);
+                    status.basics.add(basic);
+                }
+                else
+                    depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * Parses the content of the watcherinfo element.
+     *
+     * @param reader the parser positioned on the watcherinfo start element
+     * @param watcherInfo the model to fill in
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static void parseWatcherInfo(
+            XMLStreamReader reader,
+            WatcherInfo watcherInfo)
+        throws XMLStreamException
+    {
+        WatcherList watcherList = null;
+        int watcherListDepth = 0;
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                String name = reader.getLocalName();
+
+                if ((watcherList != null) && "watcher".equals(name))
+                {
+                    Watcher watcher = new Watcher();
+
+                    watcher.status = getAttribute(reader, "status");
+                    watcher.id = readText(reader);
+                    watcherList.watchers.add(watcher);
+                    continue;
+                }
+
+                depth++;
+                if ((watcherList == null) && "watcher-list".equals(name))
+                {
+                    watcherList = new WatcherList();
+                    watcherList.resource = getAttribute(reader, "resource");
+                    watcherList.packageName = getAttribute(reader, "package");
+                    watcherInfo.watcherLists.add(watcherList);
+                    watcherListDepth = depth;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                if (depth == watcherListDepth)
+                    watcherList = null;
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the first text child of the current element the way DOM based
+     * processing does and skips the rest of the element.
+     *
+     * @param reader the parser positioned on a start element
+     * @return the first text child of the current element or <tt>null</tt> if
+     * it does not have one
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static String readText(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        String text = null;
+        int depth = 1;
+
+        while ((depth > 0) && reader.hasNext())
+        {
+            switch (reader.next())
+            {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if ((depth == 1) && (text == null))
+                    text = reader.getText();
+                break;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Gets the elements of a list which are in the PIDF namespace if there are
+     * any and all of them otherwise.
+     *
+     * @param elements the elements to filter
+     * @return the elements to consider
+     */
+    private static <T extends PidfElement> List<T> preferPidf(List<T> elements)
+    {
+        List<T> pidfElements = null;
+
+        for (T element : elements)
+        {
+            if (element.pidf)
+            {
+                if (pidfElements == null)
+                    pidfElements = new ArrayList<T>(elements.size());
+                pidfElements.add(element);
+            }
+        }
+        return (pidfElements == null) ? elements : pidfElements;
+    }
+
+    /**
+     * An element of a PIDF document which may be in the PIDF namespace or in
+     * another one.
+     */
+    static class PidfElement
+    {
+        /**
+         * Whether this element is in the PIDF namespace.
+         */
+        final boolean pidf;
+
+        /**
+         * Initializes a new <tt>PidfElement</tt>.
+         *
+         * @param pidf whether the element is in the PIDF namespace
+         */
+        PidfElement(boolean pidf)
+        {
+            this.pidf = pidf;
+        }
+    }
+
+    /**
+     * The parts of a PIDF document presence status is derived from.
+     */
+    static class Pidf
+    {
+        /**
+         * The local name of the first activity of the person we know about
+         * i.e. <tt>away</tt>, <tt>busy</tt> or <tt>on-the-phone</tt>, or
+         * <tt>null</tt>.
+         */
+        String activity;
+
+        /**
+         * The entity attribute of the presence element.
+         */
+        String entity;
+
+        /**
+         * The text of the status icon of the person or <tt>null</tt>.
+         */
+        String statusIcon;
+
+        /**
+         * All tuple elements of the presence element.
+         */
+        private final List<Tuple> tuples = new ArrayList<Tuple>(2);
+
+        /**
+         * Gets the tuples to consider.
+         *
+         * @return the tuples in the PIDF namespace if there are any and all
+         * tuples otherwise
+         */
+        List<Tuple> getTuples()
+        {
+            return preferPidf(tuples);
+        }
+    }
+
+    /**
+     * A tuple element of a PIDF document.
+     */
+    static class Tuple
+        extends PidfElement
+    {
+        /**
+         * The contact elements of the tuple.
+         */
+        private final List<TupleContact> contacts
+            = new ArrayList<TupleContact>(1);
+
+        /**
+         * The note elements of the tuple.
+         */
+        private final List<Text> notes = new ArrayList<Text>(1);
+
+        /**
+         * The status elements of the tuple.
+         */
+        private final List<Status> statuses = new ArrayList<Status>(1);
+
+        /**
+         * Initializes a new <tt>Tuple</tt>.
+         *
+         * @param pidf whether the element is in the PIDF namespace
+         */
+        Tuple(boolean pidf)
+        {
+            super(pidf);
+        }
+
+        /**
+         * Gets the basic status of this tuple i.e. the last basic element of
+         * its last status element. Many of them are not permitted by RFC 3863.
+         *
+         * @return the text of the basic status of this tuple or <tt>null</tt>
+         * if it has none
+         */
+        Text getBasic()
+        {
+            List<Status> statuses = preferPidf(this.statuses);
+
+            if (statuses.isEmpty())
+                return null;
+
+            List<Text> basics
+                = preferPidf(statuses.get(statuses.size() - 1).basics);
+
+            return basics.isEmpty() ? null : basics.get(basics.size() - 1);
+        }
+
+        /**
+         * Gets the contacts to consider.
+         *
+         * @return the contact elements of this tuple
+         */
+        List<TupleContact> getContacts()
+        {
+            return preferPidf(contacts);
+        }
+
+        /**
+         * Gets the notes to consider.
+         *
+         * @return the note elements of this tuple
+         */
+        List<Text> getNotes()
+        {
+            return preferPidf(notes);
+        }
+    }
+
+    /**
+     * A contact element of a tuple.
+     */
+    static class TupleContact
+        extends PidfElement
+    {
+        /**
+         * The text of the element or <tt>null</tt>.
+         */
+        String id;
+
+        /**
+         * The priority attribute of the element or an empty string.
+         */
+        String priority;
+
+        /**
+         * Initializes a new <tt>TupleContact</tt>.
+         *
+         * @param pidf whether the element is in the PIDF namespace
+         */
+        TupleContact(boolean pidf)
+        {
+            super(pidf);
+        }
+    }
+
+    /**
+     * A status element of a tuple.
+     */
+    static class Status
+        extends PidfElement
+    {
+        /**
+         * The basic elements of the status.
+         */
+        private final List<Text> basics = new ArrayList<Text>(1);
+
+        /**
+         * Initializes a new <tt>Status</tt>.
+         *
+         * @param pidf whether the element is in the PIDF namespace
+         */
+        Status(boolean pidf)
+        {
+            super(pidf);
+        }
+    }
+
+    /**
+     * An element of a PIDF document with text content.
+     */
+    static class Text
+        extends PidfElement
+    {
+        /**
+         * The first text child of the element or <tt>null</tt>.
+         */
+        String text;
+
+        /**
+         * Initializes a new <tt>Text</tt>.
+         *
+         * @param pidf whether the element is in the PIDF namespace
+         */
+        Text(boolean pidf)
+        {
+            super(pidf);
+        }
+    }
+
+    /**
+     * The parts of a watcherinfo document we use.
+     */
+    static class WatcherInfo
+    {
+        /**
+         * Whether the watcherinfo element is in the watcherinfo namespace.
+         */
+        boolean inWatcherInfoNs;
+
+        /**
+         * The state attribute of the watcherinfo element.
+         */
+        String state;
+
+        /**
+         * The version attribute of the watcherinfo element.
+         */
+        String version;
+
+        /**
+         * The watcher-list elements of the document.
+         */
+        final List<WatcherList> watcherLists = new ArrayList<WatcherList>(1);
+
+        /**
+         * Gets the watcher list of a specific resource.
+         *
+         * @param resource the resource
+         * @return the first watcher list of <tt>resource</tt> or
+         * <tt>null</tt>
+         */
+        WatcherList getWatcherList(String resource)
+        {
+            for (WatcherList watcherList : watcherLists)
+            {
+                if (watcherList.resource.equals(resource))
+                    return watcherList;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A watcher-list element.
+     */
+    static class WatcherList
+    {
+        /**
+         * The package attribute of the element.
+         */
+        String packageName;
+
+        /**
+         * The resource attribute of the element.
+         */
+        String resource;
+
+        /**
+         * The watcher elements of the list.
+         */
+        final List<Watcher> watchers = new ArrayList<Watcher>();
+    }
+
+    /**
+     * A watcher element.
+     */
+    static class Watcher
+    {
+        /**
+         * The text of the element i.e. the URI of the watcher or
+         * <tt>null</tt>.
+         */
+        String id;
+
+        /**
+         * The status attribute of the element.
+         */
+        String status;
+    }
+}
@@ -469,6 +469,18 @@ public abstract class ServerStoredContactList
      */
     public abstract byte[] getImage(URI imageUri);
 
+    /**
+     * Gets the uri of the presence service of the contact list on the
+     * resource list server which has been published by this list.
+     *
+     * @return the uri of the service or <tt>null</tt> if none has been
+     * published.
+     */
+    public String getRlsServiceUri()
+    {
+        return null;
+    }
+
     /**
      * Creates a group with the specified name and parent in the server stored
      * contact list.
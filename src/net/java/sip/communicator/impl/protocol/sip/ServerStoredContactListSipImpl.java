@@ -22,6 +22,7 @@ import net.java.sip.communicator.impl.protocol.sip.xcap.model.resourcelists.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.ServerStoredDetails.ImageDetail;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.sip.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.util.xml.XMLUtils;
@@ -75,6 +76,12 @@ public class ServerStoredContactListSipImpl
     private static final String CONTACT_TYPE_NS =
         "http://jitsi.org/contact-type";
 
+    /**
+     * The time in milliseconds pres-rules changes are collected for before
+     * they are put to the server with a single request.
+     */
+    private static final long PRES_RULES_UPDATE_DELAY = 500;
+
     /**
      * The XCAP client.
      */
@@ -86,6 +93,30 @@ public class ServerStoredContactListSipImpl
      */
     private RulesetType presRules;
 
+    /**
+     * The timer which puts the collected pres-rules changes to the server.
+     * Created on demand.
+     */
+    private Timer presRulesTimer;
+
+    /**
+     * The scheduled task which is to put the pres-rules to the server or
+     * <tt>null</tt> if there are no pending pres-rules changes.
+     */
+    private TimerTask presRulesUpdateTask;
+
+    /**
+     * The uri of the presence service of the contact list which has been put
+     * to the rls-services or <tt>null</tt> if it has not been put.
+     */
+    private String rlsServiceUri;
+
+    /**
+     * The names of the lists of the resource-lists the presence service at
+     * {@link #rlsServiceUri} is made of.
+     */
+    private List<String> rlsServiceListNames;
+
     /**
      * Creates a ServerStoredContactList wrapper for the specified BuddyList.
      *
@@ -191,7 +222,7 @@ public class ServerStoredContactListSipImpl
             // Update resoure-lists
             try
             {
-                updateResourceLists();
+                putContactEntry(newContact);
             }
             catch (XCapException e)
             {
@@ -276,7 +307,7 @@ public class ServerStoredContactListSipImpl
             // Update resoure-lists
             try
             {
-                updateResourceLists();
+                deleteContactEntry(parentGroup, contact);
             }
             catch (XCapException e)
             {
@@ -339,7 +370,10 @@ public class ServerStoredContactListSipImpl
         {
             try
             {
-                updateResourceLists();
+                if (wasContactPersistent)
+                    moveContactEntry(oldParentGroup, contact);
+                else
+                    putContactEntry(contact);
             }
             catch (XCapException e)
             {
@@ -406,7 +440,7 @@ public class ServerStoredContactListSipImpl
         {
             try
             {
-                updateResourceLists();
+                putContactEntry(contact);
             }
             catch (XCapException e)
             {
@@ -719,6 +753,10 @@ public class ServerStoredContactListSipImpl
             {
                 updateResourceLists();
             }
+            else
+            {
+                updateRlsService(resourceLists);
+            }
             // Process pres-rules
             if (xCapClient.isPresRulesSupported())
             {
@@ -812,6 +850,26 @@ public class ServerStoredContactListSipImpl
     @Override
     synchronized public void destroy()
     {
+        if (presRulesUpdateTask != null)
+        {
+            presRulesUpdateTask.cancel();
+            presRulesUpdateTask = null;
+            try
+            {
+                putPresRules();
+            }
+            catch (XCapException e)
+            {
+                logger.error("Cannot save presence rules!", e);
+            }
+        }
+        if (presRulesTimer != null)
+        {
+            presRulesTimer.cancel();
+            presRulesTimer = null;
+        }
+        rlsServiceUri = null;
+        rlsServiceListNames = null;
         xCapClient.disconnect();
 
         List<ContactSipImpl> contacts = getAllContacts(rootGroup);
@@ -1374,20 +1432,236 @@ public class ServerStoredContactListSipImpl
         resourceLists.getList().add(serverRootList);
 
         xCapClient.putResourceLists(resourceLists);
+        updateRlsService(resourceLists);
     }
 
     /**
-     * Puts pres-rules to the server.
+     * Puts to the rls-services a presence service made of the lists of
+     * specific resource-lists unless it has already been put with the same
+     * lists or the account has its own resource list server uri configured.
+     * The uri of the service is derived from the user address e.g.
+     * <tt>sip:alice-buddylist@example.com</tt>. Errors are logged because
+     * the presence of the contacts can still be subscribed to one by one.
+     *
+     * @param resourceLists the resource-lists as they are on the server.
+     */
+    private void updateRlsService(ResourceListsType resourceLists)
+    {
+        if (!xCapClient.isConnected()
+            || !xCapClient.isRlsServicesSupported())
+        {
+            return;
+        }
+        AccountID accountID = sipProvider.getAccountID();
+        String configuredUri
+                = accountID.getAccountPropertyString(SipAccountID.RLS_URI);
+        if (configuredUri != null && configuredUri.trim().length() != 0)
+        {
+            return;
+        }
+        List<String> listNames = new ArrayList<String>();
+        for (ListType list : resourceLists.getList())
+        {
+            listNames.add(list.getName());
+        }
+        if (rlsServiceUri != null && listNames.equals(rlsServiceListNames))
+        {
+            return;
+        }
+        try
+        {
+            SipUri userUri = (SipUri) sipProvider.parseAddressString(
+                    accountID.getAccountPropertyString(
+                            ProtocolProviderFactory.USER_ID)).getURI();
+            String serviceUri = "sip:" + userUri.getUser() + "-buddylist@"
+                    + userUri.getHost();
+            xCapClient.putRlsService(serviceUri, listNames);
+            rlsServiceUri = serviceUri;
+            rlsServiceListNames = listNames;
+        }
+        catch (ParseException e)
+        {
+            logger.error("Cannot create the resource list service uri", e);
+        }
+        catch (XCapException e)
+        {
+            logger.error("Cannot put the resource list service", e);
+        }
+    }
+
+    /**
+     * Gets the uri of the presence service of the contact list which has
+     * been put to the rls-services of the XCAP server.
+     *
+     * @return the uri of the service or <tt>null</tt> if it has not been put.
+     */
+    @Override
+    synchronized public String getRlsServiceUri()
+    {
+        return xCapClient.isConnected() ? rlsServiceUri : null;
+    }
+
+    /**
+     * Gets the names of the lists leading from the resource-lists element to
+     * the list of a specific group on the server.
      *
+     * @param group the group.
+     * @return the names of the lists leading to the list of <tt>group</tt>.
+     */
+    private List<String> getListNames(ContactGroupSipImpl group)
+    {
+        LinkedList<String> listNames = new LinkedList<String>();
+        // contacts of the root group are stored in a special list
+        if (rootGroup.equals(group))
+        {
+            listNames.add(ROOT_GROUP_NAME);
+            return listNames;
+        }
+        while (group != null && !rootGroup.equals(group))
+        {
+            listNames.addFirst(group.getGroupName());
+            group = (ContactGroupSipImpl) group.getParentContactGroup();
+        }
+        return listNames;
+    }
+
+    /**
+     * Puts the resource-lists entry of a contact to the server or the whole
+     * resource-lists if the entry alone cannot be put.
+     *
+     * @param contact the contact to put.
      * @throws XCapException if there is some error during operation.
      */
-    synchronized void updatePresRules()
+    private void putContactEntry(ContactSipImpl contact)
+            throws XCapException
+    {
+        if (!xCapClient.isConnected()
+            || !xCapClient.isResourceListsSupported())
+        {
+            return;
+        }
+        if (!xCapClient.putResourceListsEntry(
+                getListNames(
+                    (ContactGroupSipImpl) contact.getParentContactGroup()),
+                contact.getEntry()))
+        {
+            updateResourceLists();
+        }
+    }
+
+    /**
+     * Deletes the resource-lists entry of a contact from the server or puts
+     * the whole resource-lists if the entry alone cannot be deleted.
+     *
+     * @param parentGroup the group the contact has been removed from.
+     * @param contact the removed contact.
+     * @throws XCapException if there is some error during operation.
+     */
+    private void deleteContactEntry(
+            ContactGroupSipImpl parentGroup,
+            ContactSipImpl contact)
             throws XCapException
+    {
+        if (!xCapClient.isConnected()
+            || !xCapClient.isResourceListsSupported())
+        {
+            return;
+        }
+        if (!xCapClient.deleteResourceListsEntry(
+                getListNames(parentGroup),
+                contact.getEntry().getUri()))
+        {
+            updateResourceLists();
+        }
+    }
+
+    /**
+     * Moves the resource-lists entry of a contact on the server or puts the
+     * whole resource-lists if the entry alone cannot be moved.
+     *
+     * @param oldParentGroup the group the contact has been moved from.
+     * @param contact the moved contact.
+     * @throws XCapException if there is some error during operation.
+     */
+    private void moveContactEntry(
+            ContactGroupSipImpl oldParentGroup,
+            ContactSipImpl contact)
+            throws XCapException
+    {
+        if (!xCapClient.isConnected()
+            || !xCapClient.isResourceListsSupported())
+        {
+            return;
+        }
+        if (!xCapClient.deleteResourceListsEntry(
+                    getListNames(oldParentGroup),
+                    contact.getEntry().getUri())
+                || !xCapClient.putResourceListsEntry(
+                    getListNames(
+                        (ContactGroupSipImpl) contact.getParentContactGroup()),
+                    contact.getEntry()))
+        {
+            updateResourceLists();
+        }
+    }
+
+    /**
+     * Schedules putting the pres-rules to the server. The changes made within
+     * {@link #PRES_RULES_UPDATE_DELAY} are put with a single request. The
+     * errors of the request are logged.
+     */
+    synchronized void updatePresRules()
     {
         if (!xCapClient.isConnected() || !xCapClient.isPresRulesSupported())
         {
             return;
         }
+        if (presRulesUpdateTask != null)
+        {
+            return;
+        }
+        if (presRulesTimer == null)
+        {
+            presRulesTimer = new Timer("SIP pres-rules update timer", true);
+        }
+        presRulesUpdateTask = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (ServerStoredContactListSipImpl.this)
+                {
+                    if (presRulesUpdateTask != this)
+                        return;
+                    presRulesUpdateTask = null;
+                    try
+                    {
+                        putPresRules();
+                    }
+                    catch (XCapException e)
+                    {
+                        logger.error("Cannot save presence rules!", e);
+                    }
+                }
+            }
+        };
+        presRulesTimer.schedule(presRulesUpdateTask, PRES_RULES_UPDATE_DELAY);
+    }
+
+    /**
+     * Puts pres-rules to the server.
+     *
+     * @throws XCapException if there is some error during operation.
+     */
+    private void putPresRules()
+            throws XCapException
+    {
+        if (presRules == null
+            || !xCapClient.isConnected()
+            || !xCapClient.isPresRulesSupported())
+        {
+            return;
+        }
         xCapClient.putPresRules(presRules);
     }
 
@@ -84,7 +84,7 @@ public class SipRegistrarConnection
     /**
     * The timer we use for rescheduling registrations.
     */
-    private Timer reRegisterTimer = new Timer();
+    private final TimerScheduler reRegisterTimer = new TimerScheduler();
 
     /**
     * A copy of our last sent register request. (used when unregistering)
@@ -680,7 +680,7 @@ public class SipRegistrarConnection
     * it will resend the REGISTER request.
     */
     private class ReRegisterTask
-        extends TimerTask
+        extends TimerWheel.Task
     {
         /**
         * Creates a new instance of the ReRegister task prepared to reregister
@@ -718,9 +718,6 @@ public class SipRegistrarConnection
     private void cancelPendingRegistrations()
     {
         reRegisterTimer.cancel();
-        reRegisterTimer = null;
-
-        reRegisterTimer = new Timer();
     }
 
     /**
@@ -8,46 +8,147 @@ package net.java.sip.communicator.impl.protocol.sip;
 
 import java.util.*;
 
+import net.java.sip.communicator.service.threading.*;
+import net.java.sip.communicator.util.*;
+
 /**
  * Represents an analogy of <code>Timer</code> which does not have the
  * disadvantage of <code>Timer</code> to always create its thread at
  * construction time. It also allows the currently scheduled
  * <code>TimerTask</code>s to be canceled while still being able to schedule new
  * <code>TimerTask</code>s later on.
+ * <p>
+ * The tasks of all <code>TimerScheduler</code>s are timed by the
+ * {@link TimerWheel} shared by all SIP accounts rather than by a thread per
+ * <code>TimerScheduler</code>. The tasks of a <code>TimerScheduler</code>
+ * which have expired are executed one at a time in a pool thread.
  *
  * @author Lubomir Marinov
  */
 public class TimerScheduler
 {
+    /**
+     * The <tt>Logger</tt> used by the <tt>TimerScheduler</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(TimerScheduler.class);
+
+    /**
+     * The <tt>Random</tt> used to spread the delays of the tasks.
+     */
+    private static final Random random = new Random();
+
+    /**
+     * The tasks scheduled by this instance which are yet to be executed.
+     */
+    private final Set<TimerWheel.Task> tasks = new HashSet<TimerWheel.Task>();
 
     /**
-     * The timer which will handle all scheduled tasks.
+     * The executions of the tasks of this instance which have expired and
+     * wait for the execution of the previous ones to complete.
      */
-    private Timer timer;
+    private final LinkedList<Runnable> expiredTasks
+        = new LinkedList<Runnable>();
+
+    /**
+     * The indicator which determines whether a pool thread is executing
+     * {@link #expiredTasks}.
+     */
+    private boolean executingExpiredTasks = false;
 
     /**
      * Discarding any currently scheduled <code>TimerTask</code>s.
      */
     public synchronized void cancel()
     {
-       if (timer != null)
-       {
-           timer.cancel();
-           timer = null;
-       }
+        if (!tasks.isEmpty())
+        {
+            TimerWheel.Task[] tasks
+                = this.tasks.toArray(new TimerWheel.Task[this.tasks.size()]);
+
+            this.tasks.clear();
+            for (TimerWheel.Task task : tasks)
+                task.cancel();
+        }
+        if (logger.isDebugEnabled())
+            logger.debug(TimerWheel.getSharedInstance());
+    }
+
+    /**
+     * Executes the execution of a task of this instance which has expired in
+     * a pool thread after the executions of the tasks which have expired
+     * before it.
+     *
+     * @param execution the execution of the task which has expired
+     */
+    void executeExpired(Runnable execution)
+    {
+        synchronized (expiredTasks)
+        {
+            expiredTasks.add(execution);
+            if (executingExpiredTasks)
+                return;
+            executingExpiredTasks = true;
+        }
+
+        ThreadingUtils.execute(
+                ThreadingService.BLOCKING_POOL,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        runExpiredTasks();
+                    }
+                });
+    }
+
+    /**
+     * Executes {@link #expiredTasks} one after the other until there are no
+     * more of them.
+     */
+    private void runExpiredTasks()
+    {
+        while (true)
+        {
+            Runnable execution;
+
+            synchronized (expiredTasks)
+            {
+                execution = expiredTasks.poll();
+                if (execution == null)
+                {
+                    executingExpiredTasks = false;
+                    return;
+                }
+            }
+            execution.run();
+        }
     }
 
     /**
-     * Gets the timer which handles all scheduled tasks. If it still doesn't
-     * exists, a new <tt>Timer</tt> is created.
+     * Randomly shortens a specific delay by up to a specific spread so that
+     * tasks which would otherwise be executed at the same time, e.g. the
+     * refreshes of subscriptions created together, are spread over time.
      *
-     * @return the <tt>Timer</tt> which handles all scheduled tasks
+     * @param delay the delay in milliseconds to be shortened
+     * @param spread the maximum number of milliseconds by which
+     * <tt>delay</tt> is to be shortened
+     * @return a random delay in milliseconds between <tt>delay - spread</tt>
+     * and <tt>delay</tt> which is not negative
      */
-    private synchronized Timer getTimer()
+    public static long jitter(long delay, long spread)
     {
-       if (timer == null)
-           timer = new Timer(true);
-       return timer;
+        if (spread <= 0)
+            return delay;
+
+        long jitter;
+
+        synchronized (random)
+        {
+            jitter = (long) (random.nextDouble() * spread);
+        }
+        return Math.max(0, delay - jitter);
     }
 
     /**
@@ -61,9 +162,9 @@ public class TimerScheduler
      *            the delay in milliseconds before the specified
      *            <code>TimerTask</code> is executed
      */
-    public synchronized void schedule(TimerTask task, long delay)
+    public synchronized void schedule(TimerWheel.Task task, long delay)
     {
-        getTimer().schedule(task, delay);
+        schedule(task, delay, 0);
     }
 
     /**
@@ -81,8 +182,24 @@ public class TimerScheduler
      *            the time in milliseconds between successive executions of the
      *            specified <code>TimerTask</code>
      */
-    public synchronized void schedule(TimerTask task, long delay, long period)
+    public synchronized void schedule(
+            TimerWheel.Task task,
+            long delay,
+            long period)
+    {
+        TimerWheel.getSharedInstance().schedule(task, this, delay, period);
+        tasks.add(task);
+    }
+
+    /**
+     * Notifies this instance that a specific task it has scheduled has been
+     * executed for the last time or has been canceled.
+     *
+     * @param task the task which has been removed from the
+     * <tt>TimerWheel</tt>
+     */
+    synchronized void taskRemoved(TimerWheel.Task task)
     {
-        getTimer().schedule(task, delay, period);
+        tasks.remove(task);
     }
 }
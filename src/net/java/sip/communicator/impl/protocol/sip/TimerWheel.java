@@ -0,0 +1,619 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.threading.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Implements a hashed timer wheel which times the tasks of all SIP accounts,
+ * e.g. the refreshes and the timeouts of subscriptions, on a single daemon
+ * thread. Scheduled tasks are kept in doubly-linked lists in the buckets of
+ * the wheel so that scheduling and canceling a task take constant time no
+ * matter how many tasks are pending. The price is that a task is executed
+ * with the precision of a tick of the wheel only.
+ * <p>
+ * The thread of the wheel only keeps the time. The tasks which expire are
+ * executed in the {@link ThreadingService#BLOCKING_POOL} because they send
+ * requests and may block, e.g. a REGISTER, which would otherwise delay the
+ * tasks of the other accounts. The tasks of a <tt>TimerScheduler</tt> are
+ * executed one after the other in the order in which they expire, as they
+ * were by the <tt>Timer</tt> of an account.
+ * </p>
+ * <p>
+ * The wheel keeps the number of pending tasks, the number of executed tasks
+ * and the number of tasks which have been executed late so that its load can
+ * be monitored.
+ */
+public class TimerWheel
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>TimerWheel</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger = Logger.getLogger(TimerWheel.class);
+
+    /**
+     * The default duration in milliseconds of a tick of a
+     * <tt>TimerWheel</tt>.
+     */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /**
+     * The number of buckets of a <tt>TimerWheel</tt>. Must be a power of two.
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * The <tt>TimerWheel</tt> shared by all SIP accounts. Created on demand.
+     */
+    private static TimerWheel sharedInstance;
+
+    /**
+     * The first tasks of the doubly-linked lists of the buckets of this
+     * wheel.
+     */
+    private final Task[] buckets = new Task[WHEEL_SIZE];
+
+    /**
+     * The last tick of this wheel whose bucket has been processed.
+     */
+    private long currentTick = 0;
+
+    /**
+     * The number of tasks executed by this wheel.
+     */
+    private long executedCount = 0;
+
+    /**
+     * The number of tasks executed by this wheel later than a tick after
+     * their scheduled execution time.
+     */
+    private long lateCount = 0;
+
+    /**
+     * The maximum delay in milliseconds with which this wheel has executed a
+     * task after its scheduled execution time.
+     */
+    private long maxLateness = 0;
+
+    /**
+     * The name of the thread of this wheel.
+     */
+    private final String name;
+
+    /**
+     * The number of tasks scheduled with this wheel which are yet to be
+     * executed.
+     */
+    private int pendingCount = 0;
+
+    /**
+     * The time in milliseconds at which the first tick of this wheel started.
+     */
+    private final long startTime = currentTimeMillis();
+
+    /**
+     * The thread which executes the tasks of this wheel. Started on demand.
+     */
+    private Thread thread;
+
+    /**
+     * The duration in milliseconds of a tick of this wheel.
+     */
+    private final long tickDuration;
+
+    /**
+     * Initializes a new <tt>TimerWheel</tt> instance.
+     *
+     * @param name the name of the thread of the new instance
+     * @param tickDuration the duration in milliseconds of a tick of the new
+     * instance
+     */
+    public TimerWheel(String name, long tickDuration)
+    {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("tickDuration");
+
+        this.name = name;
+        this.tickDuration = tickDuration;
+    }
+
+    /**
+     * Gets the <tt>TimerWheel</tt> shared by all SIP accounts.
+     *
+     * @return the <tt>TimerWheel</tt> shared by all SIP accounts
+     */
+    public static synchronized TimerWheel getSharedInstance()
+    {
+        if (sharedInstance == null)
+        {
+            sharedInstance
+                = new TimerWheel(
+                        TimerWheel.class.getName(),
+                        DEFAULT_TICK_DURATION);
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Gets the current time in milliseconds as measured by a monotonic clock.
+     *
+     * @return the current time in milliseconds as measured by a monotonic
+     * clock
+     */
+    private static long currentTimeMillis()
+    {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /**
+     * Cancels a specific task if it is scheduled with this wheel.
+     *
+     * @param task the task to cancel
+     * @return <tt>true</tt> if <tt>task</tt> was prevented from executing
+     * (again); otherwise, <tt>false</tt>
+     */
+    synchronized boolean cancel(Task task)
+    {
+        if ((task.wheel != this) || (task.state != Task.SCHEDULED))
+            return false;
+
+        task.state = Task.CANCELLED;
+        if (task.bucket >= 0)
+        {
+            unlink(task);
+            pendingCount--;
+        }
+        return true;
+    }
+
+    /**
+     * Hands a specific task which has expired over to the pool which executes
+     * the tasks of this wheel.
+     *
+     * @param task the task to execute
+     */
+    private void dispatch(final Task task)
+    {
+        Runnable execution
+            = new Runnable()
+            {
+                public void run()
+                {
+                    execute(task);
+                }
+            };
+        TimerScheduler scheduler = task.scheduler;
+
+        if (scheduler == null)
+            ThreadingUtils.execute(ThreadingService.BLOCKING_POOL, execution);
+        else
+            scheduler.executeExpired(execution);
+    }
+
+    /**
+     * Executes a specific task which has expired and, if it is periodic and
+     * has not been canceled meanwhile, schedules its next execution.
+     *
+     * @param task the task to execute
+     */
+    private void execute(Task task)
+    {
+        // The task may have been canceled while it waited to be executed.
+        synchronized (this)
+        {
+            if (task.state != Task.SCHEDULED)
+                return;
+        }
+
+        try
+        {
+            task.run();
+        }
+        catch (Throwable t)
+        {
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+
+            // The wheel is shared so a failing task must not kill it.
+            logger.error("Failed to execute " + task, t);
+        }
+
+        TimerScheduler scheduler = null;
+
+        synchronized (this)
+        {
+            if (task.state == Task.SCHEDULED)
+            {
+                if (task.period > 0)
+                    link(task, currentTimeMillis() + task.period);
+                else
+                {
+                    task.state = Task.EXECUTED;
+                    scheduler = task.scheduler;
+                }
+            }
+        }
+        if (scheduler != null)
+            scheduler.taskRemoved(task);
+    }
+
+    /**
+     * Gets the number of tasks executed by this wheel.
+     *
+     * @return the number of tasks executed by this wheel
+     */
+    public synchronized long getExecutedCount()
+    {
+        return executedCount;
+    }
+
+    /**
+     * Gets the number of tasks executed by this wheel later than a tick after
+     * their scheduled execution time, e.g. because other tasks were executing
+     * for too long.
+     *
+     * @return the number of tasks executed late by this wheel
+     */
+    public synchronized long getLateCount()
+    {
+        return lateCount;
+    }
+
+    /**
+     * Gets the maximum delay in milliseconds with which this wheel has
+     * executed a task after its scheduled execution time.
+     *
+     * @return the maximum delay in milliseconds with which this wheel has
+     * executed a task
+     */
+    public synchronized long getMaxLateness()
+    {
+        return maxLateness;
+    }
+
+    /**
+     * Gets the number of tasks scheduled with this wheel which are yet to be
+     * executed.
+     *
+     * @return the number of tasks scheduled with this wheel which are yet to
+     * be executed
+     */
+    public synchronized int getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    /**
+     * Adds a specific task to the bucket of this wheel which corresponds to a
+     * specific execution time.
+     *
+     * @param task the task to add
+     * @param executionTime the time in milliseconds at which <tt>task</tt>
+     * is to be executed
+     */
+    private void link(Task task, long executionTime)
+    {
+        long tick
+            = (executionTime - startTime + tickDuration - 1) / tickDuration;
+
+        if (tick <= currentTick)
+            tick = currentTick + 1;
+
+        int bucket = (int) (tick & (WHEEL_SIZE - 1));
+        Task head = buckets[bucket];
+
+        task.executionTime = executionTime;
+        task.tick = tick;
+        task.bucket = bucket;
+        task.prev = null;
+        task.next = head;
+        if (head != null)
+            head.prev = task;
+        buckets[bucket] = task;
+        pendingCount++;
+
+        if (thread == null)
+        {
+            thread
+                = new Thread(name)
+                {
+                    @Override
+                    public void run()
+                    {
+                        runInThread();
+                    }
+                };
+            thread.setDaemon(true);
+            thread.start();
+        }
+        else if (pendingCount == 1)
+            notifyAll();
+    }
+
+    /**
+     * Runs in {@link #thread} and dispatches the tasks of this wheel as they
+     * expire.
+     */
+    private void runInThread()
+    {
+        List<Task> expired = new ArrayList<Task>();
+
+        while (true)
+        {
+            long now;
+
+            synchronized (this)
+            {
+                long nowTick;
+
+                while (true)
+                {
+                    now = currentTimeMillis();
+                    nowTick = (now - startTime) / tickDuration;
+                    if (pendingCount == 0)
+                    {
+                        // There is nothing to process so skip the idle ticks.
+                        currentTick = nowTick;
+                        try
+                        {
+                            wait();
+                        }
+                        catch (InterruptedException ie)
+                        {
+                        }
+                    }
+                    else if (nowTick > currentTick)
+                        break;
+                    else
+                    {
+                        long timeout
+                            = startTime
+                                + (currentTick + 1) * tickDuration
+                                - now;
+
+                        try
+                        {
+                            wait(Math.max(1, timeout));
+                        }
+                        catch (InterruptedException ie)
+                        {
+                        }
+                    }
+                }
+
+                /*
+                 * If the thread has fallen behind by more than a rotation, all
+                 * buckets have to be processed once.
+                 */
+                long lastTick = Math.min(nowTick, currentTick + WHEEL_SIZE);
+
+                for (long tick = currentTick + 1; tick <= lastTick; tick++)
+                {
+                    Task task = buckets[(int) (tick & (WHEEL_SIZE - 1))];
+
+                    while (task != null)
+                    {
+                        Task next = task.next;
+
+                        if (task.tick <= nowTick)
+                        {
+                            unlink(task);
+                            pendingCount--;
+                            expired.add(task);
+                        }
+                        task = next;
+                    }
+                }
+                currentTick = nowTick;
+
+                for (Task task : expired)
+                {
+                    long lateness = now - task.executionTime;
+
+                    executedCount++;
+                    if (lateness > tickDuration)
+                        lateCount++;
+                    if (lateness > maxLateness)
+                        maxLateness = lateness;
+                }
+            }
+
+            for (Task task : expired)
+            {
+                long lateness = currentTimeMillis() - task.executionTime;
+
+                if ((lateness > tickDuration) && logger.isDebugEnabled())
+                {
+                    logger.debug(
+                            "Executing " + task + " " + lateness
+                                + " ms late.");
+                }
+                dispatch(task);
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Schedules a specific task for execution with this wheel.
+     *
+     * @param task the task to schedule
+     * @param scheduler the <tt>TimerScheduler</tt> on behalf of which
+     * <tt>task</tt> is scheduled or <tt>null</tt>
+     * @param delay the delay in milliseconds before <tt>task</tt> is
+     * executed
+     * @param period the time in milliseconds between successive executions
+     * of <tt>task</tt> or <tt>0</tt> if it is to be executed once
+     * @throws IllegalStateException if <tt>task</tt> has already been
+     * scheduled or canceled
+     */
+    synchronized void schedule(
+            Task task,
+            TimerScheduler scheduler,
+            long delay,
+            long period)
+    {
+        if (delay < 0)
+            throw new IllegalArgumentException("delay");
+        if (period < 0)
+            throw new IllegalArgumentException("period");
+        if (task.state != Task.VIRGIN)
+        {
+            throw new IllegalStateException(
+                    "Task already scheduled or cancelled");
+        }
+
+        task.wheel = this;
+        task.scheduler = scheduler;
+        task.period = period;
+        task.state = Task.SCHEDULED;
+        link(task, currentTimeMillis() + delay);
+    }
+
+    /**
+     * Returns a string representation of this wheel and of its statistics.
+     *
+     * @return a string representation of this wheel and of its statistics
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return
+            getClass().getSimpleName() + " " + name
+                + ": pending=" + pendingCount
+                + ", executed=" + executedCount
+                + ", late=" + lateCount
+                + ", maxLateness=" + maxLateness + "ms";
+    }
+
+    /**
+     * Removes a specific task from the bucket of this wheel it is in.
+     *
+     * @param task the task to remove
+     */
+    private void unlink(Task task)
+    {
+        if (task.prev == null)
+            buckets[task.bucket] = task.next;
+        else
+            task.prev.next = task.next;
+        if (task.next != null)
+            task.next.prev = task.prev;
+
+        task.bucket = -1;
+        task.prev = null;
+        task.next = null;
+    }
+
+    /**
+     * Represents a <tt>TimerTask</tt> which may be scheduled with a
+     * <tt>TimerWheel</tt>. Canceling it removes it from the wheel right away.
+     */
+    public static abstract class Task
+        extends TimerTask
+    {
+        /**
+         * The state of a <tt>Task</tt> which has been canceled.
+         */
+        private static final int CANCELLED = 3;
+
+        /**
+         * The state of a <tt>Task</tt> which has been executed and is not
+         * periodic.
+         */
+        private static final int EXECUTED = 2;
+
+        /**
+         * The state of a <tt>Task</tt> which has been scheduled and has not
+         * been executed or canceled.
+         */
+        private static final int SCHEDULED = 1;
+
+        /**
+         * The state of a <tt>Task</tt> which has not been scheduled yet.
+         */
+        private static final int VIRGIN = 0;
+
+        /**
+         * The index of the bucket of {@link #wheel} this task is in or
+         * <tt>-1</tt>.
+         */
+        private int bucket = -1;
+
+        /**
+         * The time in milliseconds at which this task is to be executed next.
+         */
+        private long executionTime;
+
+        /**
+         * The task after this one in its bucket.
+         */
+        private Task next;
+
+        /**
+         * The time in milliseconds between successive executions of this
+         * task or <tt>0</tt> if it is executed once.
+         */
+        private long period;
+
+        /**
+         * The task before this one in its bucket.
+         */
+        private Task prev;
+
+        /**
+         * The <tt>TimerScheduler</tt> on behalf of which this task is
+         * scheduled or <tt>null</tt>.
+         */
+        private volatile TimerScheduler scheduler;
+
+        /**
+         * The state of this task, guarded by {@link #wheel}.
+         */
+        private int state = VIRGIN;
+
+        /**
+         * The tick of {@link #wheel} at which this task is to be executed.
+         */
+        private long tick;
+
+        /**
+         * The <tt>TimerWheel</tt> with which this task has been scheduled.
+         */
+        private volatile TimerWheel wheel;
+
+        /**
+         * Cancels this task. A task which has been scheduled once will not be
+         * executed, a periodic task will not be executed again.
+         *
+         * @return <tt>true</tt> if this task was prevented from executing
+         * (again); otherwise, <tt>false</tt>
+         */
+        @Override
+        public boolean cancel()
+        {
+            super.cancel();
+
+            TimerWheel wheel = this.wheel;
+
+            if ((wheel != null) && wheel.cancel(this))
+            {
+                TimerScheduler scheduler = this.scheduler;
+
+                if (scheduler != null)
+                    scheduler.taskRemoved(this);
+                return true;
+            }
+            else
+                return false;
+        }
+    }
+}
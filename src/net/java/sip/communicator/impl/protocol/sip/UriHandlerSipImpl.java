@@ -12,6 +12,7 @@ import net.java.sip.communicator.service.argdelegation.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 import org.osgi.framework.*;
@@ -346,7 +347,9 @@ public class UriHandlerSipImpl
 
         if (answer == PopupDialog.YES_OPTION)
         {
-            new ProtocolRegistrationThread(uri, provider).start();
+            ThreadingUtils.execute(
+                ThreadingService.REGISTRATION_POOL,
+                new ProtocolRegistrationThread(uri, provider));
         }
     }
 
@@ -406,8 +409,8 @@ public class UriHandlerSipImpl
      *
      */
     private class ProtocolRegistrationThread
-        extends Thread
-        implements RegistrationStateChangeListener
+        implements Runnable,
+                   RegistrationStateChangeListener
     {
 
         private ProtocolProviderService handlerProvider = null;
@@ -429,7 +432,6 @@ public class UriHandlerSipImpl
         public ProtocolRegistrationThread(String uri,
             ProtocolProviderService handlerProvider)
         {
-            super("UriHandlerProviderRegistrationThread:uri=" + uri);
             this.uri = uri;
             this.handlerProvider = handlerProvider;
         }
@@ -439,7 +441,6 @@ public class UriHandlerSipImpl
          * listener and then tries to rehandle the uri this thread was initiaded
          * with.
          */
-        @Override
         public void run()
         {
             handlerProvider.addRegistrationStateChangeListener(this);
@@ -471,17 +472,15 @@ public class UriHandlerSipImpl
         {
             if (evt.getNewState() == RegistrationState.REGISTERED)
             {
-                Thread uriRehandleThread = new Thread()
-                {
-                    @Override
-                    public void run()
+                ThreadingUtils.execute(
+                    ThreadingService.REGISTRATION_POOL,
+                    new Runnable()
                     {
-                        handleUri(uri);
-                    }
-                };
-
-                uriRehandleThread.setName("UriRehandleThread:uri=" + uri);
-                uriRehandleThread.start();
+                        public void run()
+                        {
+                            handleUri(uri);
+                        }
+                    });
             }
 
             // we're only interested in a single event so we stop listening
@@ -59,6 +59,11 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
      */
     public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
 
+    /**
+     * HTTP If-Match header.
+     */
+    public static final String HEADER_IF_MATCH = "If-Match";
+
     /**
      * XCap-error content type.
      */
@@ -165,7 +170,24 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
     public XCapHttpResponse get(XCapResourceId resourceId)
             throws XCapException
     {
-        return get(getResourceURI(resourceId));
+        return get(getResourceURI(resourceId), null);
+    }
+
+    /**
+     * Gets the resource from the server unless it still has a specific ETag.
+     *
+     * @param resourceId resource identifier.
+     * @param eTag the ETag of the copy of the resource we already have or
+     * <tt>null</tt> to get the resource unconditionally.
+     * @return the server response, with HTTP code 304 if the resource still
+     * has the ETag <tt>eTag</tt>.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse get(XCapResourceId resourceId, String eTag)
+            throws XCapException
+    {
+        return get(getResourceURI(resourceId), eTag);
     }
 
     /**
@@ -178,6 +200,22 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
      */
     protected XCapHttpResponse get(URI uri)
             throws XCapException
+    {
+        return get(uri, null);
+    }
+
+    /**
+     * Gets resource from the server unless it still has a specific ETag.
+     *
+     * @param uri the resource uri.
+     * @param eTag the ETag to send in an If-None-Match header or
+     * <tt>null</tt>.
+     * @return the server response.
+     * @throws XCapException if there is error during reading the resource's
+     *                       content.
+     */
+    protected XCapHttpResponse get(URI uri, String eTag)
+            throws XCapException
     {
         DefaultHttpClient httpClient = null;
         try
@@ -186,6 +224,8 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
 
             HttpGet getMethod = new HttpGet(uri);
             getMethod.setHeader("Connection", "close");
+            if (eTag != null)
+                getMethod.setHeader(HEADER_IF_NONE_MATCH, eTag);
 
             HttpResponse response = httpClient.execute(getMethod);
             XCapHttpResponse result = createResponse(response);
@@ -275,6 +315,24 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
      */
     public XCapHttpResponse put(XCapResource resource)
             throws XCapException
+    {
+        return put(resource, null);
+    }
+
+    /**
+     * Puts the resource to the server if the document it belongs to still has
+     * a specific ETag.
+     *
+     * @param resource the resource  to be saved on the server.
+     * @param eTag the ETag the document of the resource is expected to have
+     * or <tt>null</tt> to put the resource unconditionally.
+     * @return the server response, with HTTP code 412 if the document does
+     * not have the ETag <tt>eTag</tt> anymore.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse put(XCapResource resource, String eTag)
+            throws XCapException
     {
         DefaultHttpClient httpClient = null;
         try
@@ -284,6 +342,8 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
             URI resourceUri = getResourceURI(resource.getId());
             HttpPut putMethod = new HttpPut(resourceUri);
             putMethod.setHeader("Connection", "close");
+            if (eTag != null)
+                putMethod.setHeader(HEADER_IF_MATCH, eTag);
             StringEntity stringEntity = new StringEntity(resource.getContent());
             stringEntity.setContentType(resource.getContentType());
             stringEntity.setContentEncoding("UTF-8");
@@ -325,6 +385,24 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
      */
     public XCapHttpResponse delete(XCapResourceId resourceId)
             throws XCapException
+    {
+        return delete(resourceId, null);
+    }
+
+    /**
+     * Deletes the resource from the server if the document it belongs to
+     * still has a specific ETag.
+     *
+     * @param resourceId resource identifier.
+     * @param eTag the ETag the document of the resource is expected to have
+     * or <tt>null</tt> to delete the resource unconditionally.
+     * @return the server response, with HTTP code 412 if the document does
+     * not have the ETag <tt>eTag</tt> anymore.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse delete(XCapResourceId resourceId, String eTag)
+            throws XCapException
     {
         assertConnected();
         DefaultHttpClient httpClient = null;
@@ -335,6 +413,8 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
             URI resourceUri = getResourceURI(resourceId);
             HttpDelete deleteMethod = new HttpDelete(resourceUri);
             deleteMethod.setHeader("Connection", "close");
+            if (eTag != null)
+                deleteMethod.setHeader(HEADER_IF_MATCH, eTag);
 
             if (logger.isDebugEnabled())
             {
@@ -434,7 +514,9 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
 
     /**
      * Creates XCAP response from HTTP response.
-     * If HTTP code is 200, 201 or 409 the HTTP content would be read.
+     * If HTTP code is 200, 201 or 409 the HTTP content would be read. The
+     * ETag is read whatever the HTTP code is e.g. for 304 responses and for
+     * the responses to DELETE.
      *
      * @param response the HTTP response.
      * @return the XCAP response.
@@ -453,11 +535,10 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
                     HEADER_CONTENT_TYPE);
             byte[] content = StreamUtils.read(
                     response.getEntity().getContent());
-            String eTag = getSingleHeaderValue(response, HEADER_ETAG);
             xcapHttpResponse.setContentType(contentType);
             xcapHttpResponse.setContent(content);
-            xcapHttpResponse.setETag(eTag);
         }
+        xcapHttpResponse.setETag(getSingleHeaderValue(response, HEADER_ETAG));
         xcapHttpResponse.setHttpCode(statusCode);
         return xcapHttpResponse;
     }
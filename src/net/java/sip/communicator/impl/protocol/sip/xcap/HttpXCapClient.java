@@ -54,6 +54,20 @@ public interface HttpXCapClient
     public XCapHttpResponse get(XCapResourceId resourceId)
             throws XCapException;
 
+    /**
+     * Gets the resource from the server unless it still has a specific ETag.
+     *
+     * @param resourceId resource identifier.
+     * @param eTag the ETag of the copy of the resource we already have or
+     * <tt>null</tt> to get the resource unconditionally.
+     * @return the server response, with HTTP code 304 if the resource still
+     * has the ETag <tt>eTag</tt>.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse get(XCapResourceId resourceId, String eTag)
+            throws XCapException;
+
     /**
      * Puts the resource to the server.
      *
@@ -65,6 +79,21 @@ public interface HttpXCapClient
     public XCapHttpResponse put(XCapResource resource)
             throws XCapException;
 
+    /**
+     * Puts the resource to the server if the document it belongs to still has
+     * a specific ETag.
+     *
+     * @param resource the resource  to be saved on the server.
+     * @param eTag the ETag the document of the resource is expected to have
+     * or <tt>null</tt> to put the resource unconditionally.
+     * @return the server response, with HTTP code 412 if the document does
+     * not have the ETag <tt>eTag</tt> anymore.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse put(XCapResource resource, String eTag)
+            throws XCapException;
+
     /**
      * Deletes the resource from the server.
      *
@@ -76,6 +105,21 @@ public interface HttpXCapClient
     public XCapHttpResponse delete(XCapResourceId resourceId)
             throws XCapException;
 
+    /**
+     * Deletes the resource from the server if the document it belongs to
+     * still has a specific ETag.
+     *
+     * @param resourceId resource identifier.
+     * @param eTag the ETag the document of the resource is expected to have
+     * or <tt>null</tt> to delete the resource unconditionally.
+     * @return the server response, with HTTP code 412 if the document does
+     * not have the ETag <tt>eTag</tt> anymore.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse delete(XCapResourceId resourceId, String eTag)
+            throws XCapException;
+
     /**
      * Gets connected user name.
      *
@@ -6,6 +6,8 @@
  */
 package net.java.sip.communicator.impl.protocol.sip.xcap;
 
+import java.util.*;
+
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.resourcelists.*;
 
 /**
@@ -67,6 +69,44 @@ public interface ResourceListsClient
     public void deleteResourceLists()
             throws XCapException;
 
+    /**
+     * Puts a single entry of the resource-lists to the server with a node
+     * selector, replacing the entry with the same uri if any. The entry is
+     * only put if the resource-lists document on the server has not been
+     * changed since it has last been read or written by this client.
+     *
+     * @param listNames the names of the lists leading from the
+     * resource-lists element to the list of the entry.
+     * @param entry the entry to be saved on the server.
+     * @return true if the entry has been saved; false if the state of the
+     * document on the server is unknown or has changed and the whole
+     * resource-lists have to be put instead.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public boolean putResourceListsEntry(
+            List<String> listNames,
+            EntryType entry)
+            throws XCapException;
+
+    /**
+     * Deletes a single entry of the resource-lists from the server with a
+     * node selector. The entry is only deleted if the resource-lists document
+     * on the server has not been changed since it has last been read or
+     * written by this client.
+     *
+     * @param listNames the names of the lists leading from the
+     * resource-lists element to the list of the entry.
+     * @param uri the uri of the entry to be deleted.
+     * @return true if the entry has been deleted; false if the state of the
+     * document on the server is unknown or has changed and the whole
+     * resource-lists have to be put instead.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public boolean deleteResourceListsEntry(List<String> listNames, String uri)
+            throws XCapException;
+
     /**
      * Gets the resource-lists from the server.
      *
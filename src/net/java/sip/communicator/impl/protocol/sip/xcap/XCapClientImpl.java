@@ -8,6 +8,10 @@ package net.java.sip.communicator.impl.protocol.sip.xcap;
 
 import java.io.*;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.sip.address.*;
 
@@ -16,8 +20,10 @@ import net.java.sip.communicator.impl.protocol.sip.xcap.model.*;
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.commonpolicy.*;
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.prescontent.*;
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.resourcelists.*;
+import net.java.sip.communicator.impl.protocol.sip.xcap.model.rlsservices.*;
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.xcapcaps.*;
 import net.java.sip.communicator.util.*;
+import net.java.sip.communicator.util.Logger;
 
 import org.apache.http.*;
 import org.jitsi.util.*;
@@ -32,6 +38,11 @@ import org.jitsi.util.*;
  */
 public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
 {
+    /**
+     * Class logger.
+     */
+    private static final Logger logger = Logger.getLogger(XCapClientImpl.class);
+
     /**
      * Current xcap-caps.
      */
@@ -52,6 +63,25 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
      */
     private boolean presContentSupported;
 
+    /**
+     * Indicates whether or not rls-services is supported.
+     */
+    private boolean rlsServicesSupported;
+
+    /**
+     * The last known ETag and content of the documents read from or written
+     * to the server mapped by document selector. Kept across disconnections
+     * so that documents which did not change are not downloaded again on the
+     * next connection to the same server with the same user.
+     */
+    private final Map<String, CachedDocument> documentCache
+        = new HashMap<String, CachedDocument>();
+
+    /**
+     * The server uri and user address {@link #documentCache} is for.
+     */
+    private String documentCacheOwner;
+
     /**
      * Connects user to XCap server. Loads xcap-caps server capabilities and
      * anaylyze if resource-lists, pres-rules, pres-content is supported.
@@ -67,6 +97,17 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
             throws XCapException
     {
         super.connect(uri, userAddress, username, password);
+
+        String cacheOwner = uri + " " + userAddress.getURI();
+
+        synchronized (documentCache)
+        {
+            if (!cacheOwner.equals(documentCacheOwner))
+            {
+                documentCache.clear();
+                documentCacheOwner = cacheOwner;
+            }
+        }
         try
         {
             xCapCaps = loadXCapCaps();
@@ -90,6 +131,10 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
             {
                 presContentSupported = true;
             }
+            if (RlsServicesClient.NAMESPACE.equals(namespace))
+            {
+                rlsServicesSupported = true;
+            }
         }
     }
 
@@ -102,6 +147,7 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
         super.disconnect();
         xCapCaps = null;
         resourceListsSupported = false;
+        rlsServicesSupported = false;
     }
 
     /**
@@ -186,6 +232,286 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
         deleteResource(resourceId);
     }
 
+    /**
+     * Puts a single entry of the resource-lists to the server with a node
+     * selector, replacing the entry with the same uri if any. The entry is
+     * only put if the resource-lists document on the server has not been
+     * changed since it has last been read or written by this client.
+     *
+     * @param listNames the names of the lists leading from the
+     * resource-lists element to the list of the entry.
+     * @param entry the entry to be saved on the server.
+     * @return true if the entry has been saved; false if the state of the
+     * document on the server is unknown or has changed and the whole
+     * resource-lists have to be put instead.
+     * @throws IllegalStateException if the user has not been connected, or
+     *                               resource-lists is not supported.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public boolean putResourceListsEntry(
+            List<String> listNames,
+            EntryType entry)
+            throws XCapException
+    {
+        assertConnected();
+        assertResourceListsSupported();
+        String resourceListsDocument = getResourceListsDocument();
+        String eTag = getCachedETag(resourceListsDocument);
+        String node = getEntryNodeSelector(listNames, entry.getUri());
+        if (eTag == null || node == null)
+        {
+            return false;
+        }
+        try
+        {
+            XCapResource resource = new XCapResource(
+                    new XCapResourceId(resourceListsDocument, node),
+                    ResourceListsParser.toXml(entry),
+                    ResourceListsClient.ELEMENT_CONTENT_TYPE);
+            XCapHttpResponse response = this.put(resource, eTag);
+            int httpCode = response.getHttpCode();
+            return processNodeResponse(resourceListsDocument, response,
+                    httpCode == HttpStatus.SC_OK
+                        || httpCode == HttpStatus.SC_CREATED);
+        }
+        catch (ParsingException e)
+        {
+            throw new XCapException("Entry cannot be parsed", e);
+        }
+    }
+
+    /**
+     * Deletes a single entry of the resource-lists from the server with a
+     * node selector. The entry is only deleted if the resource-lists document
+     * on the server has not been changed since it has last been read or
+     * written by this client.
+     *
+     * @param listNames the names of the lists leading from the
+     * resource-lists element to the list of the entry.
+     * @param uri the uri of the entry to be deleted.
+     * @return true if the entry has been deleted; false if the state of the
+     * document on the server is unknown or has changed and the whole
+     * resource-lists have to be put instead.
+     * @throws IllegalStateException if the user has not been connected, or
+     *                               resource-lists is not supported.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public boolean deleteResourceListsEntry(List<String> listNames, String uri)
+            throws XCapException
+    {
+        assertConnected();
+        assertResourceListsSupported();
+        String resourceListsDocument = getResourceListsDocument();
+        String eTag = getCachedETag(resourceListsDocument);
+        String node = getEntryNodeSelector(listNames, uri);
+        if (eTag == null || node == null)
+        {
+            return false;
+        }
+        XCapHttpResponse response = this.delete(
+                new XCapResourceId(resourceListsDocument, node), eTag);
+        return processNodeResponse(resourceListsDocument, response,
+                response.getHttpCode() == HttpStatus.SC_OK);
+    }
+
+    /**
+     * Puts to the server a presence service with a specific uri whose list
+     * is made of the lists of the resource-lists with specific names. Only
+     * the service element is put so that the other services of the user are
+     * kept; the whole rls-services document is put if it does not exist yet.
+     *
+     * @param serviceUri the uri of the service.
+     * @param listNames the names of the top-level lists of the
+     * resource-lists the service is made of.
+     * @throws IllegalStateException if the user has not been connected, or
+     *                               rls-services is not supported.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public void putRlsService(String serviceUri, List<String> listNames)
+            throws XCapException
+    {
+        assertConnected();
+        assertRlsServicesSupported();
+        String rlsServicesDocument = getRlsServicesDocument();
+        List<String> anchors = new ArrayList<String>(listNames.size());
+        for (String listName : listNames)
+        {
+            StringBuilder node = new StringBuilder("/resource-lists");
+            if (!appendStep(node, "list", "name", listName))
+            {
+                throw new XCapException(
+                        "List name cannot be selected: " + listName);
+            }
+            anchors.add(getResourceURI(new XCapResourceId(
+                    getResourceListsDocument(), node.toString())).toString());
+        }
+        StringBuilder node = new StringBuilder("/rls-services");
+        if (!appendStep(node, "service", "uri", serviceUri))
+        {
+            throw new XCapException(
+                    "Service uri cannot be selected: " + serviceUri);
+        }
+        try
+        {
+            XCapResource resource = new XCapResource(
+                    new XCapResourceId(rlsServicesDocument, node.toString()),
+                    RlsServicesParser.serviceToXml(
+                            serviceUri, anchors, "presence"),
+                    ResourceListsClient.ELEMENT_CONTENT_TYPE);
+            XCapHttpResponse response = this.put(resource);
+            int httpCode = response.getHttpCode();
+            if (processNodeResponse(rlsServicesDocument, response,
+                    httpCode == HttpStatus.SC_OK
+                        || httpCode == HttpStatus.SC_CREATED))
+            {
+                return;
+            }
+            // the document does not exist yet
+            putResource(new XCapResource(
+                    new XCapResourceId(rlsServicesDocument),
+                    RlsServicesParser.toXml(serviceUri, anchors, "presence"),
+                    RlsServicesClient.CONTENT_TYPE));
+        }
+        catch (ParsingException e)
+        {
+            throw new XCapException("RlsServices cannot be parsed", e);
+        }
+    }
+
+    /**
+     * Processes the response to a conditional node PUT or DELETE. Failures
+     * which mean that our idea of the document is wrong (the document changed
+     * on the server, the parent list or the entry do not exist) invalidate
+     * the cached document so that the caller falls back to putting the whole
+     * document. Other failures are reported as an <tt>XCapException</tt>.
+     *
+     * @param document the document selector.
+     * @param response the server response.
+     * @param success whether the response reports success.
+     * @return true if the node operation has been applied; false if the
+     * whole document has to be put instead.
+     * @throws XCapException if the server reported an unexpected error.
+     */
+    private boolean processNodeResponse(
+            String document,
+            XCapHttpResponse response,
+            boolean success)
+            throws XCapException
+    {
+        int httpCode = response.getHttpCode();
+        if (success)
+        {
+            // we no longer have the content matching the new ETag but the
+            // ETag still allows further node operations
+            cacheDocument(document, response.getETag(), null);
+            return true;
+        }
+        invalidateDocument(document);
+        if (httpCode == HttpStatus.SC_PRECONDITION_FAILED
+                || httpCode == HttpStatus.SC_CONFLICT
+                || httpCode == HttpStatus.SC_NOT_FOUND)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(String.format(
+                        "Node operation on %1s failed with %2s, "
+                            + "the whole document will be put",
+                        document,
+                        httpCode));
+            }
+            return false;
+        }
+        String xCapErrorMessage = getXCapErrorMessage(response);
+        throw new XCapException(String.format(
+                "Error %1s while updating %2s on XCAP server%3s",
+                httpCode,
+                document,
+                xCapErrorMessage == null ? "" : ". " + xCapErrorMessage));
+    }
+
+    /**
+     * Creates the node selector (rfc4825) of an entry of the resource-lists,
+     * percent-encoded so that it can be appended to the document uri.
+     *
+     * @param listNames the names of the lists leading from the
+     * resource-lists element to the list of the entry.
+     * @param uri the uri of the entry.
+     * @return the node selector or null if it cannot be expressed e.g.
+     * because a name contains both kinds of quotes.
+     */
+    private static String getEntryNodeSelector(
+            List<String> listNames,
+            String uri)
+    {
+        StringBuilder node = new StringBuilder("/resource-lists");
+        for (String listName : listNames)
+        {
+            if (!appendStep(node, "list", "name", listName))
+            {
+                return null;
+            }
+        }
+        if (!appendStep(node, "entry", "uri", uri))
+        {
+            return null;
+        }
+        return node.toString();
+    }
+
+    /**
+     * Appends a location step selecting an element by attribute value to a
+     * node selector.
+     *
+     * @param node the node selector to append to.
+     * @param element the element name.
+     * @param attribute the attribute name.
+     * @param value the attribute value.
+     * @return false if <tt>value</tt> cannot be quoted.
+     */
+    private static boolean appendStep(
+            StringBuilder node,
+            String element,
+            String attribute,
+            String value)
+    {
+        if (value == null)
+        {
+            return false;
+        }
+        char quote = value.indexOf('"') == -1 ? '"' : '\'';
+        if (value.indexOf(quote) != -1)
+        {
+            return false;
+        }
+        String step = element + "[@" + attribute + "=" + quote + value + quote
+                + "]";
+        node.append('/');
+        try
+        {
+            for (byte b : step.getBytes("UTF-8"))
+            {
+                int c = b & 0xFF;
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                        || (c >= '0' && c <= '9')
+                        || "-._~!$&'()*+,;=:@".indexOf(c) != -1)
+                {
+                    node.append((char) c);
+                }
+                else
+                {
+                    node.append('%').append(
+                            Integer.toHexString(0x100 | c).substring(1)
+                                .toUpperCase());
+                }
+            }
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Gets the resource-lists from the server.
      *
@@ -532,6 +858,21 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
         }
     }
 
+    /**
+     * Utility method throwing an exception if the rls-services
+     * is not supported.
+     *
+     * @throws IllegalStateException if the user is not connected.
+     */
+    protected void assertRlsServicesSupported()
+    {
+        if (!rlsServicesSupported)
+        {
+            throw new IllegalStateException(
+                    "XCAP server doesn't support rls-services");
+        }
+    }
+
     /**
      * Utility method throwing an exception if the pres-content
      * is not supported.
@@ -557,10 +898,17 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
     private void putResource(XCapResource resource)
             throws XCapException
     {
+        String document = resource.getId().getDocument();
         XCapHttpResponse response = this.put(resource);
         int httpCode = response.getHttpCode();
-        if (httpCode != HttpStatus.SC_OK && httpCode != HttpStatus.SC_CREATED)
+        if (httpCode == HttpStatus.SC_OK || httpCode == HttpStatus.SC_CREATED)
+        {
+            cacheDocument(document, response.getETag(), resource.getContent());
+        }
+        else
         {
+            invalidateDocument(document);
+
             String errorMessage;
             String xCapErrorMessage = getXCapErrorMessage(response);
             if (xCapErrorMessage != null)
@@ -596,15 +944,30 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
     {
         try
         {
-            // Load resource from the server
-            XCapHttpResponse response = this.get(resourceId);
+            // Load resource from the server unless our copy is up to date
+            String document = resourceId.getDocument();
+            CachedDocument cached = getCachedDocument(document);
+            String eTag = null;
+            if (resourceId.getNode() == null && cached != null
+                    && cached.content != null)
+            {
+                eTag = cached.eTag;
+            }
+            XCapHttpResponse response = this.get(resourceId, eTag);
             int httpCode = response.getHttpCode();
             byte[] content = response.getContent();
+            if (httpCode == HttpStatus.SC_NOT_MODIFIED && eTag != null)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug(document + " not modified, using cached copy");
+                return cached.content;
+            }
             // Analyze the response
             if (httpCode != HttpStatus.SC_OK)
             {
                 if (httpCode == HttpStatus.SC_NOT_FOUND)
                 {
+                    invalidateDocument(document);
                     return null;
                 }
                 String errorMessage;
@@ -643,6 +1006,7 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
             if (StringUtils.isNullOrEmpty(response.getContentType())
                     || (content == null || content.length == 0))
             {
+                invalidateDocument(document);
                 return null;
             }
 
@@ -654,7 +1018,12 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
                 throw new XCapException(errorMessage);
             }
 
-            return new String(content, "UTF-8");
+            String xml = new String(content, "UTF-8");
+            if (resourceId.getNode() == null)
+            {
+                cacheDocument(document, response.getETag(), xml);
+            }
+            return xml;
         }
         catch (IOException e)
         {
@@ -675,6 +1044,7 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
     private void deleteResource(XCapResourceId resourceId)
             throws XCapException
     {
+        invalidateDocument(resourceId.getDocument());
         XCapHttpResponse response = this.delete(resourceId);
         int httpCode = response.getHttpCode();
         if (httpCode != HttpStatus.SC_OK && httpCode != HttpStatus.SC_NOT_FOUND)
@@ -700,6 +1070,68 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
         }
     }
 
+    /**
+     * Gets the cached copy of a document.
+     *
+     * @param document the document selector.
+     * @return the cached copy or null.
+     */
+    private CachedDocument getCachedDocument(String document)
+    {
+        synchronized (documentCache)
+        {
+            return documentCache.get(document);
+        }
+    }
+
+    /**
+     * Gets the last known ETag of a document.
+     *
+     * @param document the document selector.
+     * @return the ETag or null if unknown.
+     */
+    private String getCachedETag(String document)
+    {
+        CachedDocument cached = getCachedDocument(document);
+        return cached == null ? null : cached.eTag;
+    }
+
+    /**
+     * Remembers the ETag and content of a document as they are on the server.
+     *
+     * @param document the document selector.
+     * @param eTag the ETag of the document, if null the document is
+     * forgotten.
+     * @param content the content of the document or null if unknown.
+     */
+    private void cacheDocument(String document, String eTag, String content)
+    {
+        synchronized (documentCache)
+        {
+            if (eTag == null)
+            {
+                documentCache.remove(document);
+            }
+            else
+            {
+                documentCache.put(document, new CachedDocument(eTag, content));
+            }
+        }
+    }
+
+    /**
+     * Forgets a document e.g. because its state on the server is unknown.
+     *
+     * @param document the document selector.
+     */
+    private void invalidateDocument(String document)
+    {
+        synchronized (documentCache)
+        {
+            documentCache.remove(document);
+        }
+    }
+
     /**
      * Returns resource lists uri according to rfc4825.
      *
@@ -732,6 +1164,17 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
                 userAddress.getURI().toString());
     }
 
+    /**
+     * Gets rls-services uri according to rfc4826.
+     *
+     * @return rls-services uri.
+     */
+    private String getRlsServicesDocument()
+    {
+        return String.format(RlsServicesClient.DOCUMENT_FORMAT,
+                userAddress.getURI().toString());
+    }
+
     /**
      * Gets pres-content uri according to rfc.
      *
@@ -769,4 +1212,42 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
     {
         return presContentSupported;
     }
+
+    /**
+     * Indicates whether or not rls-services is supported.
+     */
+    public boolean isRlsServicesSupported()
+    {
+        assertConnected();
+        return rlsServicesSupported;
+    }
+
+    /**
+     * The ETag and content of a document as they are on the server.
+     */
+    private static class CachedDocument
+    {
+        /**
+         * The ETag of the document.
+         */
+        final String eTag;
+
+        /**
+         * The content of the document or null if only the ETag is known
+         * e.g. after a node operation.
+         */
+        final String content;
+
+        /**
+         * Creates a cached document.
+         *
+         * @param eTag the ETag of the document.
+         * @param content the content of the document or null.
+         */
+        CachedDocument(String eTag, String content)
+        {
+            this.eTag = eTag;
+            this.content = content;
+        }
+    }
 }
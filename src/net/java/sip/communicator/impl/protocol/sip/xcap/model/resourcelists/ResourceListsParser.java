@@ -153,6 +153,39 @@ public final class ResourceListsParser
         }
     }
 
+    /**
+     * Creates the XML of a single entry element e.g. to put it to the server
+     * with an XCAP node selector.
+     *
+     * @param entry the entry to analyze.
+     * @return the entry xml without XML declaration.
+     * @throws ParsingException if there is some error during parsing.
+     */
+    public static String toXml(EntryType entry)
+            throws ParsingException
+    {
+        if (entry == null)
+        {
+            throw new IllegalArgumentException("entry cannot be null");
+        }
+        try
+        {
+            Document document = createDocument();
+            document.appendChild(elementFromEntry(document, entry));
+            String xml = createXml(document);
+            // XCAP element bodies are XML fragments
+            if (xml.startsWith("<?xml"))
+            {
+                xml = xml.substring(xml.indexOf("?>") + 2).trim();
+            }
+            return xml;
+        }
+        catch (Exception ex)
+        {
+            throw new ParsingException(ex);
+        }
+    }
+
     /**
      * Creates list object from the element.
      *
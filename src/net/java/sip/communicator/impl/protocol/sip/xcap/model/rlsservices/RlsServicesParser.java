@@ -0,0 +1,164 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip.xcap.model.rlsservices;
+
+import static org.jitsi.util.StringUtils.isNullOrEmpty;
+import static org.jitsi.util.xml.XMLUtils.createDocument;
+import static org.jitsi.util.xml.XMLUtils.createXml;
+
+import java.util.*;
+
+import net.java.sip.communicator.impl.protocol.sip.xcap.model.*;
+
+import org.w3c.dom.*;
+
+/**
+ * Utility class that helps to create the rls-services xml (rfc4826) of a
+ * service whose list is made of references to lists of the resource-lists.
+ */
+public final class RlsServicesParser
+{
+    private static String NAMESPACE = "urn:ietf:params:xml:ns:rls-services";
+
+    private static String RESOURCE_LISTS_NAMESPACE =
+            "urn:ietf:params:xml:ns:resource-lists";
+
+    private static String RLS_SERVICES_ELEMENT = "rls-services";
+
+    private static String SERVICE_ELEMENT = "service";
+
+    private static String SERVICE_URI_ATTR = "uri";
+
+    private static String LIST_ELEMENT = "list";
+
+    private static String EXTERNAL_ELEMENT = "rl:external";
+
+    private static String EXTERNAL_ANCHOR_ATTR = "anchor";
+
+    private static String PACKAGES_ELEMENT = "packages";
+
+    private static String PACKAGE_ELEMENT = "package";
+
+    private RlsServicesParser()
+    {
+    }
+
+    /**
+     * Creates the rls-services xml with a single service.
+     *
+     * @param uri the uri of the service.
+     * @param anchors the absolute XCAP uris of the lists the service is made
+     * of.
+     * @param eventPackage the event package served by the service.
+     * @return the rls-services xml.
+     * @throws ParsingException if there is some error during creating.
+     */
+    public static String toXml(
+            String uri,
+            List<String> anchors,
+            String eventPackage)
+            throws ParsingException
+    {
+        try
+        {
+            Document document = createDocument();
+            Element rlsServicesElement = document.createElementNS(NAMESPACE,
+                    RLS_SERVICES_ELEMENT);
+            rlsServicesElement.appendChild(
+                    elementFromService(document, uri, anchors, eventPackage));
+            document.appendChild(rlsServicesElement);
+            return createXml(document);
+        }
+        catch (Exception ex)
+        {
+            throw new ParsingException(ex);
+        }
+    }
+
+    /**
+     * Creates the xml of a service to be put as an element of the
+     * rls-services.
+     *
+     * @param uri the uri of the service.
+     * @param anchors the absolute XCAP uris of the lists the service is made
+     * of.
+     * @param eventPackage the event package served by the service.
+     * @return the service xml.
+     * @throws ParsingException if there is some error during creating.
+     */
+    public static String serviceToXml(
+            String uri,
+            List<String> anchors,
+            String eventPackage)
+            throws ParsingException
+    {
+        try
+        {
+            Document document = createDocument();
+            document.appendChild(
+                    elementFromService(document, uri, anchors, eventPackage));
+            String xml = createXml(document);
+            // XCAP element bodies are XML fragments
+            if (xml.startsWith("<?xml"))
+            {
+                xml = xml.substring(xml.indexOf("?>") + 2).trim();
+            }
+            return xml;
+        }
+        catch (Exception ex)
+        {
+            throw new ParsingException(ex);
+        }
+    }
+
+    /**
+     * Creates service element.
+     *
+     * @param document the xml document.
+     * @param uri the uri of the service.
+     * @param anchors the absolute XCAP uris of the lists the service is made
+     * of.
+     * @param eventPackage the event package served by the service.
+     * @return the service element.
+     * @throws Exception if there is some error during creating.
+     */
+    private static Element elementFromService(
+            Document document,
+            String uri,
+            List<String> anchors,
+            String eventPackage)
+            throws Exception
+    {
+        if (isNullOrEmpty(uri))
+        {
+            throw new Exception("service uri attribute is missed");
+        }
+        Element serviceElement = document.createElementNS(NAMESPACE,
+                SERVICE_ELEMENT);
+        serviceElement.setAttribute(SERVICE_URI_ATTR, uri);
+
+        Element listElement = document.createElementNS(NAMESPACE,
+                LIST_ELEMENT);
+        for (String anchor : anchors)
+        {
+            Element externalElement = document.createElementNS(
+                    RESOURCE_LISTS_NAMESPACE, EXTERNAL_ELEMENT);
+            externalElement.setAttribute(EXTERNAL_ANCHOR_ATTR, anchor);
+            listElement.appendChild(externalElement);
+        }
+        serviceElement.appendChild(listElement);
+
+        Element packagesElement = document.createElementNS(NAMESPACE,
+                PACKAGES_ELEMENT);
+        Element packageElement = document.createElementNS(NAMESPACE,
+                PACKAGE_ELEMENT);
+        packageElement.setTextContent(eventPackage);
+        packagesElement.appendChild(packageElement);
+        serviceElement.appendChild(packagesElement);
+        return serviceElement;
+    }
+}
@@ -11,7 +11,6 @@
 package net.java.sip.communicator.impl.protocol.ssh;
 
 import java.io.*;
-import java.util.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
@@ -49,9 +48,10 @@ public class ContactSSHImpl
     private SSHContactInfo sshConfigurationForm;
 
     /**
-     * A Timer Daemon to update the status of this contact
+     * The task which periodically updates the status of this contact or
+     * <tt>null</tt> if the status is not being updated
      */
-    private Timer timer = new Timer(true);
+    private ContactTimerSSHImpl statusUpdateTask;
 
     /**
      * A Daemon to retrieve and fire messages received from remote machine
@@ -207,6 +207,12 @@ public class ContactSSHImpl
      */
     public void closeShellIO()
     {
+        if (contactSSHReaderDaemon != null)
+        {
+            contactSSHReaderDaemon.isActive(false);
+            contactSSHReaderDaemon = null;
+        }
+
         try
         {
             shellReader.close();
@@ -296,19 +302,25 @@ public class ContactSSHImpl
      * Starts the timer and its task to periodically update the status of
      * remote machine
      */
-    public void startTimerTask()
+    public synchronized void startTimerTask()
     {
-        timer.scheduleAtFixedRate(new ContactTimerSSHImpl(this),
-                2000, sshConfigurationForm.getUpdateInterval()*1000);
+        if (statusUpdateTask != null)
+            statusUpdateTask.cancel();
+        statusUpdateTask = new ContactTimerSSHImpl(this);
+        statusUpdateTask.start();
     }
 
     /**
      * Stops the timer and its task to stop updating the status of
      * remote machine
      */
-    public void stopTimerTask()
+    public synchronized void stopTimerTask()
     {
-        timer.cancel();
+        if (statusUpdateTask != null)
+        {
+            statusUpdateTask.cancel();
+            statusUpdateTask = null;
+        }
     }
 
 
@@ -14,24 +14,79 @@ package net.java.sip.communicator.impl.protocol.ssh;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.util.*;
 
 /**
- * Timer Task to update the reachability status of SSH Contact in contact list.
+ * Task to update the reachability status of SSH Contact in contact list.
  * (Reachability of remote machine from user's machine)
- * The timer is started at either of the two places
+ * The task is started at either of the two places
  * - A new contact - OperationSetPersistentPresenceSSHImpl
  *                                                  .createUnresolvedContact
  * - Existing Contact - OperationSetPersistentPresenceSSHImpl.subscribe
  *
+ * The tasks of all contacts share a single scheduler with a few daemon
+ * threads instead of a <tt>Timer</tt> thread per contact. The checks are
+ * spread with a random jitter so that the contacts are not checked all at
+ * once, and an unreachable machine is checked less and less often.
+ *
  * @author Shobhit Jindal
  */
 public class ContactTimerSSHImpl
-        extends TimerTask
+        implements Runnable
 {
     private static final Logger logger
-            = Logger.getLogger(OperationSetFileTransferSSHImpl.class);
+            = Logger.getLogger(ContactTimerSSHImpl.class);
+
+    /**
+     * The delay in milliseconds of the first check of a contact.
+     */
+    private static final long INITIAL_DELAY = 2000;
+
+    /**
+     * The fraction of the update interval by which the delay of a check is
+     * randomly shortened or extended.
+     */
+    private static final double JITTER = 0.1;
+
+    /**
+     * The maximum factor by which the update interval is multiplied while a
+     * machine is unreachable.
+     */
+    private static final int MAX_BACKOFF_FACTOR = 8;
+
+    /**
+     * The maximum time in milliseconds to wait for a machine to reply to a
+     * reachability check.
+     */
+    private static final int MAX_REACHABILITY_TIMEOUT = 5000;
+
+    /**
+     * The number of threads which check the reachability of the machines of
+     * all contacts.
+     */
+    private static final int SCHEDULER_THREADS = 2;
+
+    /**
+     * The <tt>Random</tt> used to compute the jitter of the checks.
+     */
+    private static final Random random = new Random();
+
+    /**
+     * The scheduler shared by the tasks of all contacts. Created on demand.
+     */
+    private static ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * The number of consecutive checks which found the machine unreachable.
+     */
+    private int failedChecks = 0;
+
+    /**
+     * The scheduled next check or <tt>null</tt> if the task is not started.
+     */
+    private ScheduledFuture<?> nextCheck;
 
     /**
      * The contact ID of the remote machine
@@ -43,14 +98,160 @@ public class ContactTimerSSHImpl
      */
     private OperationSetPersistentPresenceSSHImpl persistentPresence;
 
+    /**
+     * The indicator which determines whether the task has been started and
+     * not cancelled.
+     */
+    private boolean started = false;
+
+    /**
+     * Creates a new instance of ContactTimerSSHImpl
+     *
+     * @param sshContact the <tt>Contact</tt>
+     */
+    public ContactTimerSSHImpl(ContactSSH sshContact)
+    {
+        this.sshContact = sshContact;
+        this.persistentPresence = (OperationSetPersistentPresenceSSHImpl)
+            sshContact.getParentPresenceOperationSet();
+    }
+
+    /**
+     * Gets the scheduler shared by the tasks of all contacts.
+     *
+     * @return the scheduler shared by the tasks of all contacts
+     */
+    private static synchronized ScheduledThreadPoolExecutor getScheduler()
+    {
+        if (scheduler == null)
+        {
+            scheduler
+                = new ScheduledThreadPoolExecutor(
+                        SCHEDULER_THREADS,
+                        new ThreadFactory()
+                        {
+                            public Thread newThread(Runnable r)
+                            {
+                                Thread thread
+                                    = new Thread(r, "SSHReachabilityChecker");
+
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+            scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Gets the update interval of the contact in milliseconds.
+     *
+     * @return the update interval of the contact in milliseconds
+     */
+    private long getUpdateInterval()
+    {
+        return Math.max(1, sshContact.getSSHConfigurationForm()
+                .getUpdateInterval()) * 1000L;
+    }
+
+    /**
+     * Starts checking the reachability of the machine of the contact
+     * periodically. The first check is delayed by a random jitter so that
+     * the contacts loaded together are not checked at the same time.
+     */
+    public synchronized void start()
+    {
+        if (started)
+            return;
+        started = true;
+        failedChecks = 0;
+        schedule(INITIAL_DELAY + (long) (random.nextDouble() * INITIAL_DELAY));
+    }
+
+    /**
+     * Stops checking the reachability of the machine of the contact.
+     */
+    public synchronized void cancel()
+    {
+        started = false;
+        if (nextCheck != null)
+        {
+            nextCheck.cancel(false);
+            nextCheck = null;
+        }
+    }
+
+    /**
+     * Schedules the next check.
+     *
+     * @param delay the delay in milliseconds of the next check
+     */
+    private synchronized void schedule(long delay)
+    {
+        if (started)
+            nextCheck = getScheduler().schedule(
+                    this, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the delay of the next check from the update interval of the
+     * contact, the number of consecutive failed checks and a random jitter.
+     *
+     * @return the delay in milliseconds of the next check
+     */
+    private long getNextDelay()
+    {
+        long delay
+            = getUpdateInterval()
+                * Math.min(1 << Math.min(failedChecks, 30), MAX_BACKOFF_FACTOR);
+        double jitter = (random.nextDouble() * 2 - 1) * JITTER;
+
+        return Math.max(1, Math.round(delay * (1 + jitter)));
+    }
+
     /**
      * The method which is called at regular intervals to update the status
      * of remote machines
      *
      * Presently only ONLINE and OFFILINE status are checked
      */
-    @Override
     public void run()
+    {
+        synchronized (this)
+        {
+            if (!started)
+                return;
+        }
+
+        boolean reachable = false;
+
+        try
+        {
+            reachable = checkReachability();
+        }
+        catch (RuntimeException ex)
+        {
+            logger.error("Failed to check the reachability of " + sshContact,
+                ex);
+        }
+
+        synchronized (this)
+        {
+            failedChecks = reachable ? 0 : (failedChecks + 1);
+            schedule(getNextDelay());
+        }
+    }
+
+    /**
+     * Checks whether the machine of the contact is reachable and updates the
+     * status of the contact accordingly.
+     *
+     * @return <tt>true</tt> if the machine is reachable; otherwise,
+     * <tt>false</tt>
+     */
+    private boolean checkReachability()
     {
         try
         {
@@ -58,8 +259,8 @@ public class ContactTimerSSHImpl
                     sshContact.getSSHConfigurationForm().getHostName());
 
             //check if machine is reachable
-            if(remoteMachine.isReachable(
-                    sshContact.getSSHConfigurationForm().getUpdateInterval()))
+            if(remoteMachine.isReachable((int) Math.min(
+                    getUpdateInterval(), MAX_REACHABILITY_TIMEOUT)))
             {
                 if (sshContact.getPresenceStatus().equals(SSHStatusEnum.OFFLINE)
                 || sshContact.getPresenceStatus().equals(SSHStatusEnum
@@ -73,7 +274,7 @@ public class ContactTimerSSHImpl
                         logger.debug("SSH Host " + sshContact
                         .getSSHConfigurationForm().getHostName() + ": Online");
                 }
-
+                return true;
             }
             else throw new IOException();
 
@@ -91,19 +292,7 @@ public class ContactTimerSSHImpl
                     logger.debug("SSH Host " + sshContact.getSSHConfigurationForm()
                 .getHostName() + ": Offline");
             }
+            return false;
         }
     }
-    /**
-     * Creates a new instance of ContactTimerSSHImpl
-     *
-     * @param sshContact the <tt>Contact</tt>
-     */
-    public ContactTimerSSHImpl(ContactSSH sshContact)
-    {
-        super();
-        this.sshContact = sshContact;
-        this.persistentPresence = (OperationSetPersistentPresenceSSHImpl)
-            sshContact.getParentPresenceOperationSet();
-    }
-
 }
@@ -132,8 +132,9 @@ public class OperationSetBasicInstantMessagingSSHImpl
 
         try
         {
-            sshContact.sendLine(message.getContent());
+            // the echo of the command may be read as soon as it is sent
             sshContact.setCommandSent(true);
+            sshContact.sendLine(message.getContent());
         }
         catch (IOException ex)
         {
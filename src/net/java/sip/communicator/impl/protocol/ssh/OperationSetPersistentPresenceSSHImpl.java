@@ -614,6 +614,8 @@ public class OperationSetPersistentPresenceSSHImpl
 
         parentGroup.removeContact((ContactSSHImpl)contact);
 
+        ((ContactSSHImpl)contact).stopTimerTask();
+
         fireSubscriptionEvent(contact,
                 ((ContactSSHImpl)contact).getParentContactGroup()
                 , SubscriptionEvent.SUBSCRIPTION_REMOVED);
@@ -14,6 +14,7 @@ package net.java.sip.communicator.impl.protocol.ssh;
 import java.io.*;
 
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
 
 /**
  *
@@ -22,63 +23,53 @@ import net.java.sip.communicator.service.protocol.*;
 public class SSHReaderDaemon
         extends Thread
 {
+    private static final Logger logger
+            = Logger.getLogger(SSHReaderDaemon.class);
 
     /**
-     * A Buffer to aggregate replies to be sent as one message
-     */
-    private StringBuffer replyBuffer;
-
-    /**
-     * The identifier of Contact representing the remote machine
+     * The size of the buffer the output of the remote machine is read into
      */
-    private ContactSSHImpl sshContact;
+    private static final int READ_BUFFER_SIZE = 8192;
 
     /**
-     * The identifier of the message received from server
+     * The maximum length of the output held back while waiting for the end
+     * of the echo of a command sent
      */
-    private String message;
+    private static final int MAX_MESSAGE_LENGTH = 16384;
 
     /**
-     * An identifier representing the state of Reader Daemon
+     * A Buffer to aggregate replies to be sent as one message
      */
-    private boolean isActive = false;
+    private final StringBuilder replyBuffer = new StringBuilder();
 
     /**
-     * This OperationSet delivers incoming message
+     * Whether a part of the response to the last command sent has been
+     * delivered already, i.e. the echo of the command has been removed
      */
-    private OperationSetBasicInstantMessagingSSHImpl instantMessaging;
+    private boolean responsePartDelivered = false;
 
     /**
-     * Input Stream of remote user to be read
+     * The identifier of Contact representing the remote machine
      */
-    private InputStream shellInputStream;
+    private ContactSSHImpl sshContact;
 
     /**
-     * Buffered Reader associated with above input stream
+     * An identifier representing the state of Reader Daemon
      */
-    private InputStreamReader shellReader;
-
-//    /**
-//     * This OperationSet delivers incoming message
-//     */
-//    private OperationSetPersistentPresenceSSHImpl persistentPresence;
+    private volatile boolean isActive = false;
 
     /**
-     * Bytes available in Input Stream before reading
+     * This OperationSet delivers incoming message
      */
-    private int bytesAvailable;
-
-    private int bytesRead;
-
-    int bufferCount;
-
-    char buf;
+    private OperationSetBasicInstantMessagingSSHImpl instantMessaging;
 
     /**
      * Creates a new instance of SSHReaderDaemon
      */
     public SSHReaderDaemon(ContactSSH sshContact)
     {
+        super("SSHReaderDaemon");
+
         this.sshContact = (ContactSSHImpl)sshContact;
         instantMessaging =
             (OperationSetBasicInstantMessagingSSHImpl)
@@ -88,114 +79,158 @@ public class SSHReaderDaemon
                             OperationSetBasicInstantMessaging.class);
     }
 
+    /**
+     * Creates a new instance of SSHReaderDaemon which is not bound to a
+     * contact. The methods reading the shell and delivering its output are
+     * to be overridden.
+     */
+    SSHReaderDaemon()
+    {
+        super("SSHReaderDaemon");
+    }
+
     /**
      * Reads the remote machine, updating the chat window as necessary
-     * in a background thread
+     * in a background thread. The output is read in blocks and every block
+     * is delivered as soon as it arrives. Only the echo of a command sent is
+     * held back until its line is complete so that it may be removed from
+     * the response.
      */
     @Override
     public void run()
     {
-        shellInputStream = sshContact.getShellInputStream();
-        shellReader = sshContact.getShellReader();
-        replyBuffer = new StringBuffer();
-
+        Reader shellReader = getShellReader();
+        char[] readBuffer = new char[READ_BUFFER_SIZE];
 
         try
         {
-            do
+            while(isActive)
             {
-                bytesAvailable = shellInputStream.available();
-
-                if(bytesAvailable == 0 )
-                {
-                    // wait if more data is available
-                    // for a slower connection this value need to be raised
-                    // to avoid splitting of messages
-                    Thread.sleep(250);
-                    continue;
-                }
-
-                bufferCount = 0;
-
-//                if(replyBuffer > 0)
-
-                do
-                {
-                    // store the responses in a buffer
-                    storeMessage(replyBuffer);
-
-                    Thread.sleep(250);
+                // blocks until output is available or the shell is closed
+                int charsRead = shellReader.read(readBuffer);
 
-                    bytesAvailable = shellInputStream.available();
+                if(charsRead < 0)
+                    break;
 
-                }while(bytesAvailable > 0  && bufferCount<16384);
+                replyBuffer.append(readBuffer, 0, charsRead);
 
-                message = replyBuffer.toString();
+                // the echo of a command sent is delivered along with the
+                // output which follows it on the next line
+                if(isCommandSent()
+                        && !responsePartDelivered
+                        && (replyBuffer.indexOf("\n") < 0)
+                        && (replyBuffer.length() < MAX_MESSAGE_LENGTH))
+                    continue;
 
-                if(sshContact.isCommandSent())
-                {
-                    // if the response is as a result of a command sent
-                    sshContact.setMessageType(
-                            ContactSSH.CONVERSATION_MESSAGE_RECEIVED);
+                deliverMessage(shellReader.ready());
+            }
+        }
+        catch(IOException ex)
+        {
+            // the shell is closed when the reader is no longer active
+            if(isActive)
+                logger.error("Failed to read from " + sshContact, ex);
+        }
 
-                    message = message.substring(message.indexOf('\n') + 1);
+        if(replyBuffer.length() > 0)
+            deliverMessage(false);
+    }
 
-                    sshContact.setCommandSent(false);
-                }
-                else
-                {
-                    // server sent an asynchronous message to the terminal
-                    // display it as a system message
-                    sshContact.setMessageType(
-                            ContactSSH.SYSTEM_MESSAGE_RECEIVED);
+    /**
+     * Delivers the output aggregated in the reply buffer as a message of the
+     * contact and clears the buffer. The output which follows a command sent
+     * is delivered as its response until the remote machine prints its
+     * prompt, i.e. until the output read so far does not end with a complete
+     * line.
+     *
+     * @param outputPending <tt>true</tt> if more output of the remote machine
+     * is available already so the last line may not be complete yet
+     */
+    private void deliverMessage(boolean outputPending)
+    {
+        String message = replyBuffer.toString();
 
-                    //popup disabled
-//                    JOptionPane.showMessageDialog(
-//                            null,
-//                            message,
-//                            "Message from " + sshContact.getDisplayName(),
-//                            JOptionPane.INFORMATION_MESSAGE);
-                }
+        replyBuffer.setLength(0);
 
-                instantMessaging.deliverMessage(
-                        instantMessaging.createMessage(message),
-                        sshContact);
+        if(isCommandSent())
+        {
+            // only the first part of the response starts with the echo
+            if(!responsePartDelivered)
+                message = message.substring(message.indexOf('\n') + 1);
+
+            if((message.length() == 0)
+                    || message.endsWith("\n")
+                    || outputPending)
+                responsePartDelivered = true;
+            else
+            {
+                setCommandSent(false);
+                responsePartDelivered = false;
+            }
 
-                replyBuffer.delete(0, replyBuffer.length());
+            // nothing but the echo has been received so far
+            if(message.length() == 0)
+                return;
 
-            }while(isActive);
+            // if the response is as a result of a command sent
+            deliverMessage(message, ContactSSH.CONVERSATION_MESSAGE_RECEIVED);
         }
-        catch(Exception ex)
+        else
         {
-            ex.printStackTrace();
+            // server sent an asynchronous message to the terminal
+            // display it as a system message
+            deliverMessage(message, ContactSSH.SYSTEM_MESSAGE_RECEIVED);
         }
     }
 
     /**
-     * Stores the response from server in a temporary buffer
-     * the bytes available are determined before the function is called
-     *
-     * @param replyBuffer to store the response from server
+     * Returns the reader of the output of the remote machine.
      *
-     * @throws IOException if the network goes down
+     * @return the reader of the shell of the contact
      */
-    private void storeMessage(StringBuffer replyBuffer) throws IOException
+    Reader getShellReader()
     {
-        do
-        {
-            buf = (char)shellInputStream.read();
-
-//            System.out.println(String.valueOf(buf)+ " " + (int)buf);
-
-            replyBuffer.append(String.valueOf(buf));
-
-//                    logger.debug(shellReader.readLine());
+        return sshContact.getShellReader();
+    }
 
-            bufferCount++;
+    /**
+     * Determines whether the output being read is the response to a command
+     * sent to the remote machine.
+     *
+     * @return <tt>true</tt> if a command has been sent and its response has
+     * not been completely delivered yet
+     */
+    boolean isCommandSent()
+    {
+        return sshContact.isCommandSent();
+    }
 
-            bytesAvailable--;
+    /**
+     * Sets whether the output being read is the response to a command sent
+     * to the remote machine.
+     *
+     * @param commandSent <tt>false</tt> once the response has been delivered
+     */
+    void setCommandSent(boolean commandSent)
+    {
+        sshContact.setCommandSent(commandSent);
+    }
 
-        }while(bytesAvailable>0 && bufferCount<32700);
+    /**
+     * Delivers a part of the output of the remote machine as a message of the
+     * contact.
+     *
+     * @param message the output to deliver
+     * @param messageType <tt>ContactSSH.CONVERSATION_MESSAGE_RECEIVED</tt> for
+     * the response to a command sent or
+     * <tt>ContactSSH.SYSTEM_MESSAGE_RECEIVED</tt> for any other output
+     */
+    void deliverMessage(String message, int messageType)
+    {
+        sshContact.setMessageType(messageType);
+        instantMessaging.deliverMessage(
+                instantMessaging.createMessage(message),
+                sshContact);
     }
 
     public void isActive(boolean isActive)
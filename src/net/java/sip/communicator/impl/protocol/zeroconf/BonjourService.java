@@ -8,7 +8,9 @@ package net.java.sip.communicator.impl.protocol.zeroconf;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.impl.protocol.zeroconf.jmdns.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -16,7 +18,9 @@ import net.java.sip.communicator.util.*;
 
 /**
  * Class dealing with JmDNS and treating all the
- * incoming connections on the bonjour port
+ * incoming connections on the bonjour port. A single thread accepts the
+ * connections and reads and writes all chat connections through a
+ * <tt>Selector</tt>.
  * @author Christian Vincenot
  */
 public class BonjourService extends Thread
@@ -27,7 +31,16 @@ public class BonjourService extends Thread
         Logger.getLogger(BonjourService.class);
 
     private int port = 5298;
-    private ServerSocket sock = null;
+    private ServerSocketChannel sock = null;
+    private Selector selector = null;
+
+    /**
+     * The <tt>ChatConnection</tt>s which are to be registered with
+     * {@link #selector} or the operations of which are to be updated by the
+     * selector thread.
+     */
+    private final Queue<ChatConnection> interestOpsUpdates
+        = new ConcurrentLinkedQueue<ChatConnection>();
     private String id = null;
     private JmDNS jmdns=null;
     private final Map<String, Object> props = new Hashtable<String, Object>();
@@ -108,11 +121,21 @@ public class BonjourService extends Thread
 
         changeStatus(opSetPersPresence.getPresenceStatus());
 
+        try
+        {
+            selector = Selector.open();
+        }
+        catch (IOException ex)
+        {
+            logger.error("ZEROCONF: FATAL ERROR => Couldn't open selector", ex);
+            return;
+        }
+
         sock = createSocket(port);
         if (sock == null)
             return;
 
-        port = sock.getLocalPort();
+        port = sock.socket().getLocalPort();
 
         if (logger.isDebugEnabled())
             logger.debug("ZEROCONF: ServerSocket bound to port "+port);
@@ -142,40 +165,50 @@ public class BonjourService extends Thread
 
         while (dead == false)
         {
-            if (sock == null || sock.isClosed())
+            if (sock == null || !sock.isOpen())
             {
                 sock = createSocket(port);
                 /* What should we do now? TEMPORARY: shutdown()*/
-                if (sock == null) shutdown();
-                port = sock.getLocalPort();
+                if (sock == null)
+                {
+                    shutdown();
+                    break;
+                }
+                port = sock.socket().getLocalPort();
                 props.put("port.p2pj", Integer.toString(port));
                 //TODO: update JmDNS in case the port had to be changed!
             }
             try
             {
-                Socket connection = sock.accept();
-                ContactZeroconfImpl contact = getContact(null,
-                                                    connection.getInetAddress());
-                /*if (status.equals(ZeroconfStatusEnum.OFFLINE)
-                || status.equals(ZeroconfStatusEnum.INVISIBLE) */
+                if (sock.keyFor(selector) == null)
+                    sock.register(selector, SelectionKey.OP_ACCEPT);
+
+                selector.select();
                 if (dead == true) break;
 
-                if  ((contact == null)
-                  || (contact.getClientThread() != null))
+                ChatConnection connection;
+
+                while ((connection = interestOpsUpdates.poll()) != null)
+                    connection.updateInterestOps(selector);
+
+                Iterator<SelectionKey> keys
+                    = selector.selectedKeys().iterator();
+
+                while (keys.hasNext())
                 {
-                    if (contact == null)
-                        logger.error("ZEROCONF: Connexion from "
-                                + "unknown contact ["
-                                + connection.getInetAddress()
-                                +"]. REJECTING!");
-                    else if (contact.getClientThread() == null)
-                        logger.error("ZEROCONF: Redundant chat "
-                                + "channel ["
-                                + contact
-                                +"]. REJECTING!");
-                    connection.close();
+                    SelectionKey key = keys.next();
+
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else
+                    {
+                        ((ChatConnection) key.attachment())
+                            .handleSelected(key);
+                    }
                 }
-                else new ClientThread(connection, this);
             }
             catch(Exception e)
             {
@@ -183,11 +216,105 @@ public class BonjourService extends Thread
             }
         }
 
+        try
+        {
+            for (SelectionKey key : selector.keys())
+            {
+                Object attachment = key.attachment();
+
+                if (attachment instanceof ChatConnection)
+                    ((ChatConnection) attachment).closeChannel();
+            }
+            selector.close();
+        }
+        catch (Exception e)
+        {
+            logger.error(e);
+        }
+
         if (logger.isDebugEnabled())
             logger.debug("ZEROCONF: Going Offline - "
                           +"BonjourService Thread exiting!");
     }
 
+    /**
+     * Accepts a chat connection from a contact, unless we're already chatting
+     * with the contact.
+     *
+     * @throws IOException if accepting the connection fails
+     */
+    private void accept()
+        throws IOException
+    {
+        SocketChannel connection = sock.accept();
+
+        if (connection == null)
+            return;
+
+        InetAddress address = connection.socket().getInetAddress();
+        ContactZeroconfImpl contact = getContact(null, address);
+        /*if (status.equals(ZeroconfStatusEnum.OFFLINE)
+        || status.equals(ZeroconfStatusEnum.INVISIBLE) */
+
+        if  ((contact == null)
+          || (contact.getChatConnection() != null))
+        {
+            if (contact == null)
+                logger.error("ZEROCONF: Connexion from "
+                        + "unknown contact ["
+                        + address
+                        +"]. REJECTING!");
+            else
+                logger.error("ZEROCONF: Redundant chat "
+                        + "channel ["
+                        + contact
+                        +"]. REJECTING!");
+            connection.close();
+        }
+        else new ChatConnection(connection, this);
+    }
+
+    /**
+     * Connects to a specific contact in order to chat with it. Blocks the
+     * calling thread until the connection is established.
+     *
+     * @param contact the contact to connect to
+     * @return the new <tt>ChatConnection</tt> with <tt>contact</tt>
+     * @throws IOException if the connection cannot be established
+     */
+    ChatConnection connect(ContactZeroconfImpl contact)
+        throws IOException
+    {
+        SocketChannel channel
+            = SocketChannel.open(
+                    new InetSocketAddress(
+                            contact.getIpAddress(),
+                            contact.getPort()));
+
+        try
+        {
+            return new ChatConnection(channel, this);
+        }
+        catch (IOException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Asks the selector thread to register a specific
+     * <tt>ChatConnection</tt> or to update the operations it is selected for.
+     *
+     * @param connection the <tt>ChatConnection</tt> to update
+     */
+    void updateInterestOps(ChatConnection connection)
+    {
+        interestOpsUpdates.add(connection);
+        if (selector != null)
+            selector.wakeup();
+    }
+
     /**
      * Might be used for shutdown...
      */
@@ -201,31 +328,46 @@ public class BonjourService extends Thread
         {   sock.close();   }
         catch (Exception ex)
         {   logger.error(ex);  }
+        if (selector != null)
+            selector.wakeup();
 
         changeStatus(ZeroconfStatusEnum.OFFLINE);
         if(jmdns != null)
             jmdns.close();
     }
 
-    private ServerSocket createSocket(int port)
+    private ServerSocketChannel createSocket(int port)
     {
-        ServerSocket sock=null;
+        ServerSocketChannel sock=null;
         try
         {
-            sock = new ServerSocket(port);
-        }
-        catch(Exception e)
-        {
-            logger.error("ZEROCONF: Couldn't bind socket to port "
-                               +port+"! Switching to an other port...");
+            sock = ServerSocketChannel.open();
+            sock.configureBlocking(false);
             try
             {
-                sock = new ServerSocket(0);
+                sock.socket().bind(new InetSocketAddress(port));
+            }
+            catch(Exception e)
+            {
+                logger.error("ZEROCONF: Couldn't bind socket to port "
+                                   +port+"! Switching to an other port...");
+                sock.socket().bind(new InetSocketAddress(0));
             }
-            catch (IOException ex)
+        }
+        catch (IOException ex)
+        {
+            logger.error("ZEROCONF: FATAL ERROR => "
+                              +"Couldn't bind to a port!!", ex);
+            if (sock != null)
             {
-                logger.error("ZEROCONF: FATAL ERROR => "
-                                  +"Couldn't bind to a port!!", ex);
+                try
+                {
+                    sock.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+                sock = null;
             }
         }
 
@@ -682,8 +824,8 @@ public class BonjourService extends Thread
                 if (((contact.getAddress().equals(id)) || (id == null))
                   &&((contact.getIpAddress().equals(ip)) || (ip == null)))
                 {
-                     if (contact.getClientThread() != null)
-                         contact.getClientThread().cleanThread();
+                     if (contact.getChatConnection() != null)
+                         contact.getChatConnection().close();
                      contacts.remove(contact);
                      return;
                  }
@@ -8,35 +8,73 @@ package net.java.sip.communicator.impl.protocol.zeroconf;
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
 
 /**
- * Class creating a thread responsible for handling the chat
- * with the remote user on the other end of the socket
+ * Class responsible for handling the chat with the remote user on the other
+ * end of a socket. The socket is non-blocking and is read and written by the
+ * selector thread of the {@link BonjourService} which handles all chat
+ * connections.
  *
  * @author Christian Vincenot
  */
-public class ClientThread
-    extends Thread
+public class ChatConnection
 {
-    private static final Logger logger = Logger.getLogger(ClientThread.class);
+    private static final Logger logger = Logger.getLogger(ChatConnection.class);
 
     private OperationSetBasicInstantMessagingZeroconfImpl opSetBasicIM;
     private OperationSetTypingNotificationsZeroconfImpl opSetTyping;
-    private Socket sock;
+    private SocketChannel channel;
     private InetAddress remoteIPAddress;
-    private OutputStream out;
-    private DataInputStream in;
     private BonjourService bonjourService;
-    private ContactZeroconfImpl contact=null;
+    private volatile ContactZeroconfImpl contact=null;
     private boolean streamState = false;
 
     private String messagesQueue=null;
 
     /**
-     * Sets the contact with which we're chatting in this ClientThread
+     * Splits the bytes read from {@link #channel} into messages.
+     */
+    private final ChatStreamDecoder decoder = new ChatStreamDecoder();
+
+    /**
+     * The bytes waiting to be written to {@link #channel} when it is ready.
+     * Also the lock which guards the writing to {@link #channel} and the
+     * closing of this connection.
+     */
+    private final LinkedList<ByteBuffer> writeQueue
+        = new LinkedList<ByteBuffer>();
+
+    /**
+     * The indicator which determines whether the end of the stream has been
+     * sent to the remote user.
+     */
+    private boolean byeSent = false;
+
+    /**
+     * The indicator which determines whether {@link #channel} has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * The indicator which determines whether {@link #channel} is to be closed
+     * as soon as {@link #writeQueue} has been written.
+     */
+    private boolean closeWhenWritten = false;
+
+    /**
+     * The key of {@link #channel} in the selector of {@link #bonjourService}.
+     * Accessed in the selector thread only.
+     */
+    private SelectionKey selectionKey;
+
+    /**
+     * Sets the contact with which we're chatting in this ChatConnection
      * @param contact Zeroconf contact with which we're chatting
      */
     protected void setContact(ContactZeroconfImpl contact)
@@ -71,15 +109,18 @@ public class ClientThread
     }
 
     /**
-     * Creates a new instance of ClientThread reponsible
-     * for handling the conversation with the remote user.
-     * @param sock Socket created for chatting
-     * @param bonjourService BonjourService which spawned this ClientThread
+     * Creates a new instance of ChatConnection reponsible
+     * for handling the conversation with the remote user and registers it
+     * with the selector of a specific <tt>BonjourService</tt>.
+     * @param channel connected channel created for chatting
+     * @param bonjourService BonjourService which handles this ChatConnection
+     * @throws IOException if <tt>channel</tt> cannot be made non-blocking
      */
-    public ClientThread(Socket sock, BonjourService bonjourService)
+    public ChatConnection(SocketChannel channel, BonjourService bonjourService)
+        throws IOException
     {
-        this.sock = sock;
-        this.remoteIPAddress = sock.getInetAddress();
+        this.channel = channel;
+        this.remoteIPAddress = channel.socket().getInetAddress();
         this.bonjourService = bonjourService;
         this.opSetBasicIM =
             (OperationSetBasicInstantMessagingZeroconfImpl) bonjourService
@@ -90,77 +131,14 @@ public class ClientThread
             (OperationSetTypingNotificationsZeroconfImpl) bonjourService
                 .getPPS()
                 .getOperationSet(OperationSetTypingNotifications.class);
-        this.setDaemon(true);
-
-        try
-        {
-            out = sock.getOutputStream();
-            in = new DataInputStream(sock.getInputStream());
-        }
-        catch (IOException e)
-        {
-            logger.error("Creating ClientThread: Couldn't get I/O for "
-                    +"the connection", e);
-            //System.exit(1);
-            return;
-        }
 
-        this.start();
-    }
+        channel.configureBlocking(false);
 
-    /*
-     * Read a message from the socket.
-     * TODO: clean the code a bit and optimize it.
-     */
-    private String readMessage()
-    {
-        String line;
-        byte[] bytes = new byte[10];
-
-        try
-        {
-            int i=0;
-
-            while (i < 9)
-            {
-                i += in.read(bytes,0,9-i);
-            }
-
-            line = new String(bytes);
-            bytes = new byte[1];
-            if ((line.getBytes())[0] == '\n')
-                line = line.substring(1);
-
-            if (line.startsWith("<message"))
-            {
-                while (true)
-                {
-                    bytes[0] = in.readByte();
-                    line += new String(bytes);
-
-                    if ((line.endsWith("</message>"))
-                        || (line.endsWith("stream>")))
-                        return line;
-                }
-            }
-            else
-            {
-                while (true)
-                {
-                    bytes[0] = in.readByte();
-                    line += new String(bytes);
-                    if ( ">".compareTo(new String(bytes)) == 0 )
-                        return line;
-                }
-            }
-        }
-        catch (IOException e)
-        {
-            logger.error("Couldn't get I/O for the connection", e);
-            //System.exit(1);
-        }
+        if (logger.isDebugEnabled())
+            logger.debug("Bonjour: NEW CONNEXION with "
+                + remoteIPAddress.getHostAddress());
 
-        return null;
+        bonjourService.updateInterestOps(this);
     }
 
     /*
@@ -262,8 +240,8 @@ public class ClientThread
                             +"contact. Closing socket.");
                     return -1;
                 }
-                else if (contact.getClientThread() == null)
-                    contact.setClientThread(this);
+                else if (contact.getChatConnection() == null)
+                    contact.setChatConnection(this);
 
                 opSetBasicIM.fireMessageReceived(msg, contact);
 
@@ -292,7 +270,8 @@ public class ClientThread
 
             case MessageZeroconfImpl.STREAM_CLOSE:
                 sendBye();
-                contact.setClientThread(null);
+                if ((contact != null) && (contact.getChatConnection() == this))
+                    contact.setChatConnection(null);
                 return 1;
 
             case MessageZeroconfImpl.UNDEF:
@@ -306,32 +285,48 @@ public class ClientThread
     }
 
 
+    /**
+     * Writes a specific <tt>String</tt> to the remote user. The bytes which
+     * cannot be written right away are queued and written by the selector
+     * thread when the socket is ready.
+     *
+     * @param string the <tt>String</tt> to write
+     */
     private void write(String string)
     {
-        //System.out.println("Writing " + string + "!!!!!!!!!");
-        byte[] bytes = string.getBytes();
+        ByteBuffer bytes;
+
         try
         {
-            out.write(bytes);
-            out.flush();
+            bytes = ByteBuffer.wrap(string.getBytes("UTF-8"));
         }
-        catch (IOException e)
+        catch (UnsupportedEncodingException uee)
         {
-            logger.error("Couldn't get I/O for the connection");
-            if (contact != null)
-            {
-                contact.setClientThread(null);
-            }
+            // UTF-8 is always supported.
+            throw new RuntimeException(uee);
+        }
+
+        synchronized (writeQueue)
+        {
+            if (closed)
+                return;
 
             try
             {
-                sock.close();
+                if (writeQueue.isEmpty())
+                    channel.write(bytes);
+                if (bytes.hasRemaining())
+                {
+                    writeQueue.add(bytes);
+                    if (writeQueue.size() == 1)
+                        bonjourService.updateInterestOps(this);
+                }
             }
-            catch (IOException ex)
+            catch (IOException e)
             {
-                logger.error(ex);
+                logger.error("Couldn't get I/O for the connection");
+                closeChannel();
             }
-
         }
     }
 
@@ -366,6 +361,12 @@ public class ClientThread
 
     private void sendBye()
     {
+        synchronized (writeQueue)
+        {
+            if (byeSent)
+                return;
+            byeSent = true;
+        }
         write("</stream:stream>\n");
     }
 
@@ -384,7 +385,7 @@ public class ClientThread
 
             case ContactZeroconfImpl.ICHAT:
                 return new String(
-                    "<message to='"+sock.getInetAddress().getHostAddress()
+                    "<message to='"+remoteIPAddress.getHostAddress()
                     +"' type='chat' id='"+bonjourService.getID()+"'>"
                     + "<body>"+msg.getContent()+"</body>"
                     + "<html xmlns='http://www.w3.org/1999/xhtml'>"
@@ -433,56 +434,148 @@ public class ClientThread
             if (logger.isDebugEnabled())
                 logger.debug("ZEROCONF: Stream not opened... "
                     +"will send the message later");
-            messagesQueue += toXHTML(msg);
+            messagesQueue = (messagesQueue == null)
+                ? toXHTML(msg)
+                : (messagesQueue + toXHTML(msg));
         }
         else write(toXHTML(msg));
     }
 
     /**
-     * Walk?
+     * Ends the chat: says bye to the remote user and closes the socket once
+     * everything has been written.
      */
-    @Override
-    public void run()
+    public void close()
     {
-        if (logger.isDebugEnabled())
-            logger.debug("Bonjour: NEW CONNEXION from "
-                + sock.getInetAddress().getCanonicalHostName()
-                +" / "+sock.getInetAddress().getHostAddress());
-        String input;
-        MessageZeroconfImpl msg=null;
+        sendBye();
 
+        synchronized (writeQueue)
+        {
+            if (writeQueue.isEmpty())
+                closeChannel();
+            else
+            {
+                closeWhenWritten = true;
+                bonjourService.updateInterestOps(this);
+            }
+        }
+    }
 
-        input = readMessage();
-        msg = parseMessage(input);
+    /**
+     * Closes the socket right away and detaches this connection from its
+     * contact.
+     */
+    void closeChannel()
+    {
+        synchronized (writeQueue)
+        {
+            if (closed)
+                return;
+            closed = true;
+            writeQueue.clear();
+        }
 
-        while (handleMessage(msg) == 0 && !sock.isClosed())
+        if ((contact != null) && (contact.getChatConnection() == this))
+            contact.setChatConnection(null);
+
+        try
+        {
+            channel.close();
+        }
+        catch (IOException ex)
         {
-            input = readMessage();
-            msg = parseMessage(input);
+            logger.error(ex);
         }
 
         if (logger.isDebugEnabled())
-            logger.debug("ZEROCONF : OUT OF LOOP !! Closed chat.");
-        cleanThread();
+            logger.debug("ZEROCONF : Closed chat.");
     }
 
     /**
-     * Clean-up the thread to exit
+     * Handles the readiness of the socket selected by the selector thread of
+     * the <tt>BonjourService</tt>: writes the queued bytes and reads and
+     * handles the received messages.
+     *
+     * @param key the <tt>SelectionKey</tt> of the socket
      */
-    public void cleanThread()
+    void handleSelected(SelectionKey key)
     {
-        /* I wonder if that's ok... */
-        if (sock != null && sock.isClosed() == false)
+        try
         {
-            sendBye();
-            try
+            if (key.isWritable())
             {
-                sock.close();
+                synchronized (writeQueue)
+                {
+                    while (!writeQueue.isEmpty())
+                    {
+                        ByteBuffer bytes = writeQueue.getFirst();
+
+                        channel.write(bytes);
+                        if (bytes.hasRemaining())
+                            break;
+                        writeQueue.removeFirst();
+                    }
+                }
+                updateInterestOps(key.selector());
             }
-            catch (IOException ex)
+
+            if (key.isValid() && key.isReadable())
             {
-                logger.error(ex);
+                if (decoder.read(channel) < 0)
+                {
+                    closeChannel();
+                    return;
+                }
+
+                String input;
+
+                while ((input = decoder.nextFragment()) != null)
+                {
+                    if (handleMessage(parseMessage(input)) != 0)
+                    {
+                        close();
+                        break;
+                    }
+                }
             }
         }
+        catch (IOException e)
+        {
+            logger.error("Couldn't get I/O for the connection", e);
+            closeChannel();
+        }
+    }
+
+    /**
+     * Registers the socket with a specific <tt>Selector</tt> or updates the
+     * operations it is selected for depending on whether there are bytes
+     * waiting to be written. Called in the selector thread.
+     *
+     * @param selector the <tt>Selector</tt> of the <tt>BonjourService</tt>
+     * @throws IOException if the socket cannot be registered
+     */
+    void updateInterestOps(Selector selector)
+        throws IOException
+    {
+        synchronized (writeQueue)
+        {
+            if (closed)
+                return;
+            if (closeWhenWritten && writeQueue.isEmpty())
+            {
+                closeChannel();
+                return;
+            }
+
+            int ops
+                = writeQueue.isEmpty()
+                    ? SelectionKey.OP_READ
+                    : (SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+
+            if (selectionKey == null)
+                selectionKey = channel.register(selector, ops, this);
+            else if (selectionKey.isValid())
+                selectionKey.interestOps(ops);
+        }
     }
 }
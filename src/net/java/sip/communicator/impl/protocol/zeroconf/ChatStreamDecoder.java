@@ -0,0 +1,245 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Splits the bytes read from a chat connection into the XML fragments which
+ * the zeroconf chat protocol exchanges: a <tt>&lt;message&gt;</tt> element is
+ * a fragment up to and including its closing tag while anything else (the
+ * XML declaration, the stream tags, ...) is a fragment up to and including
+ * the next <tt>&gt;</tt>. The bytes are scanned in place and only complete
+ * fragments are decoded into <tt>String</tt>s.
+ */
+class ChatStreamDecoder
+{
+    /**
+     * The initial capacity of the buffer of bytes which have been read but do
+     * not make complete fragments yet.
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * The maximum length of a fragment. A peer sending a longer fragment is
+     * considered broken.
+     */
+    private static final int MAX_FRAGMENT_LENGTH = 1024 * 1024;
+
+    /**
+     * The end of a <tt>&lt;message&gt;</tt> fragment.
+     */
+    private static final byte[] MESSAGE_END = toBytes("</message>");
+
+    /**
+     * The start of a <tt>&lt;message&gt;</tt> fragment.
+     */
+    private static final byte[] MESSAGE_START = toBytes("<message");
+
+    /**
+     * The end of the stream which ends a <tt>&lt;message&gt;</tt> fragment as
+     * well.
+     */
+    private static final byte[] STREAM_END = toBytes("stream>");
+
+    /**
+     * The bytes which have been read.
+     */
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The <tt>ByteBuffer</tt> which wraps {@link #bytes} in order to read
+     * into it from channels.
+     */
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+
+    /**
+     * The index in {@link #bytes} after the last byte which has been read.
+     */
+    private int end = 0;
+
+    /**
+     * The indicator which determines whether the fragment which starts at
+     * {@link #start} is a <tt>&lt;message&gt;</tt> element or <tt>null</tt>
+     * if that is not known yet.
+     */
+    private Boolean message = null;
+
+    /**
+     * The index in {@link #bytes} from which the search for the end of the
+     * current fragment is to continue so that bytes are not scanned twice.
+     */
+    private int scanIndex = 0;
+
+    /**
+     * The index in {@link #bytes} of the first byte of the current fragment.
+     */
+    private int start = 0;
+
+    /**
+     * Determines whether the bytes in {@link #bytes} which end at a specific
+     * index are a specific sequence of bytes.
+     *
+     * @param endIndex the index of the last byte to compare
+     * @param sequence the sequence of bytes to compare to
+     * @return <tt>true</tt> if the bytes ending at <tt>endIndex</tt> equal
+     * <tt>sequence</tt>; otherwise, <tt>false</tt>
+     */
+    private boolean endsWith(int endIndex, byte[] sequence)
+    {
+        int from = endIndex + 1 - sequence.length;
+
+        if (from < start)
+            return false;
+        for (int i = 0; i < sequence.length; i++)
+            if (bytes[from + i] != sequence[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Determines whether a specific byte is XML white space.
+     *
+     * @param b the byte to check
+     * @return <tt>true</tt> if <tt>b</tt> is XML white space; otherwise,
+     * <tt>false</tt>
+     */
+    private static boolean isWhitespace(byte b)
+    {
+        return (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t');
+    }
+
+    /**
+     * Returns the next complete fragment which has been read.
+     *
+     * @return the next complete fragment which has been read or <tt>null</tt>
+     * if more bytes have to be read to complete it
+     */
+    String nextFragment()
+    {
+        // Skip the white space between the fragments.
+        while ((start < end) && isWhitespace(bytes[start]))
+            start++;
+        if (start == end)
+        {
+            start = end = scanIndex = 0;
+            return null;
+        }
+        if (scanIndex < start)
+            scanIndex = start;
+
+        if (message == null)
+        {
+            int length = Math.min(end - start, MESSAGE_START.length);
+
+            for (int i = 0; i < length; i++)
+            {
+                if (bytes[start + i] != MESSAGE_START[i])
+                {
+                    message = Boolean.FALSE;
+                    break;
+                }
+            }
+            if (message == null)
+            {
+                if (length < MESSAGE_START.length)
+                    return null;
+                message = Boolean.TRUE;
+            }
+        }
+
+        for (int i = scanIndex; i < end; i++)
+        {
+            if ((bytes[i] == '>')
+                    && (!message
+                            || endsWith(i, MESSAGE_END)
+                            || endsWith(i, STREAM_END)))
+            {
+                String fragment;
+
+                try
+                {
+                    fragment = new String(bytes, start, i + 1 - start, "UTF-8");
+                }
+                catch (UnsupportedEncodingException uee)
+                {
+                    // UTF-8 is always supported.
+                    throw new RuntimeException(uee);
+                }
+                start = scanIndex = i + 1;
+                message = null;
+                return fragment;
+            }
+        }
+        scanIndex = end;
+        return null;
+    }
+
+    /**
+     * Reads the bytes available in a specific channel.
+     *
+     * @param channel the channel to read from
+     * @return the number of bytes which have been read or <tt>-1</tt> if the
+     * channel has reached end-of-stream
+     * @throws IOException if reading from <tt>channel</tt> fails or the
+     * current fragment is longer than {@link #MAX_FRAGMENT_LENGTH}
+     */
+    int read(ReadableByteChannel channel)
+        throws IOException
+    {
+        if (end == bytes.length)
+        {
+            if (start > 0)
+            {
+                // Move the current fragment to the start of the buffer.
+                System.arraycopy(bytes, start, bytes, 0, end - start);
+                end -= start;
+                scanIndex -= start;
+                start = 0;
+            }
+            else if (bytes.length < MAX_FRAGMENT_LENGTH)
+            {
+                byte[] newBytes = new byte[2 * bytes.length];
+
+                System.arraycopy(bytes, 0, newBytes, 0, end);
+                bytes = newBytes;
+                byteBuffer = ByteBuffer.wrap(bytes);
+            }
+            else
+            {
+                throw new IOException(
+                        "Fragment longer than " + MAX_FRAGMENT_LENGTH
+                            + " bytes");
+            }
+        }
+
+        byteBuffer.limit(bytes.length).position(end);
+
+        int read = channel.read(byteBuffer);
+
+        if (read > 0)
+            end += read;
+        return read;
+    }
+
+    /**
+     * Gets the ASCII bytes of a specific <tt>String</tt>.
+     *
+     * @param s the <tt>String</tt> to get the bytes of
+     * @return the ASCII bytes of <tt>s</tt>
+     */
+    private static byte[] toBytes(String s)
+    {
+        byte[] bytes = new byte[s.length()];
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) s.charAt(i);
+        return bytes;
+    }
+}
@@ -36,10 +36,10 @@ public class ContactZeroconfImpl
     private String contactID = null;
 
     /**
-     * The ClientThread attached to this contact if we're already chatting
+     * The ChatConnection attached to this contact if we're already chatting
      * with him.
      */
-    private ClientThread thread = null;
+    private volatile ChatConnection connection = null;
 
     /*
      * Type of Client.
@@ -171,23 +171,23 @@ public class ContactZeroconfImpl
     }
 
     /**
-     * Return the ClientThread responsible for handling with this contact
-     * @return ClientThread corresponding to the chat with this contact or null
-     * if no chat was started
+     * Return the ChatConnection responsible for handling with this contact
+     * @return ChatConnection corresponding to the chat with this contact or
+     * null if no chat was started
      */
-    protected ClientThread getClientThread()
+    protected ChatConnection getChatConnection()
     {
-        return thread;
+        return connection;
     }
 
     /**
-     * Set the ClientThread responsible for handling with this contact
-     * @param thread ClientThread corresponding to the chat with this contact
-     * or null if the chat is over
+     * Set the ChatConnection responsible for handling with this contact
+     * @param connection ChatConnection corresponding to the chat with this
+     * contact or null if the chat is over
      */
-    protected void setClientThread(ClientThread thread)
+    protected void setChatConnection(ChatConnection connection)
     {
-        this.thread = thread;
+        this.connection = connection;
     }
 
     /**
@@ -7,7 +7,6 @@
 package net.java.sip.communicator.impl.protocol.zeroconf;
 
 import java.io.*;
-import java.net.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
@@ -95,21 +94,19 @@ public class OperationSetBasicInstantMessagingZeroconfImpl
      */
     private void deliverMessage(Message message, ContactZeroconfImpl to)
     {
-            ClientThread thread = to.getClientThread();
+            ChatConnection connection = to.getChatConnection();
             try
             {
-                if (thread == null)
+                if (connection == null)
                 {
-                    Socket sock;
                     if (logger.isDebugEnabled())
                         logger.debug("ZEROCONF: Creating a chat connexion to "
                             +to.getIpAddress()+":"+to.getPort());
-                    sock = new Socket(to.getIpAddress(), to.getPort());
-                    thread = new ClientThread(sock, to.getBonjourService());
-                    thread.setStreamOpen();
-                    thread.setContact(to);
-                    to.setClientThread(thread);
-                    thread.sendHello();
+                    connection = to.getBonjourService().connect(to);
+                    connection.setStreamOpen();
+                    connection.setContact(to);
+                    to.setChatConnection(connection);
+                    connection.sendHello();
                     if (to.getClientType() == ContactZeroconfImpl.GAIM)
                     {
                         try
@@ -125,7 +122,7 @@ public class OperationSetBasicInstantMessagingZeroconfImpl
 
                 //System.out.println("ZEROCONF: Message content => "+
                 //message.getContent());
-                thread.sendMessage((MessageZeroconfImpl) message);
+                connection.sendMessage((MessageZeroconfImpl) message);
 
                 fireMessageDelivered(message, to);
             }
@@ -58,8 +58,8 @@ public class OperationSetTypingNotificationsZeroconfImpl
 
         ContactZeroconfImpl to = (ContactZeroconfImpl)notifiedContact;
 
-        ClientThread thread = to.getClientThread();
-        if (thread == null) return;/*throw new IllegalStateException(
+        ChatConnection connection = to.getChatConnection();
+        if (connection == null) return;/*throw new IllegalStateException(
                "No communication channel opened to chat with this contact");*/
 
         if (typingState != STATE_TYPING)
@@ -67,6 +67,6 @@ public class OperationSetTypingNotificationsZeroconfImpl
 
         MessageZeroconfImpl message =
                 new MessageZeroconfImpl("",null, MessageZeroconfImpl.TYPING);
-        thread.sendMessage(message);
+        connection.sendMessage(message);
     }
 }
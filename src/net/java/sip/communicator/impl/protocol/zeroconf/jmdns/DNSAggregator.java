@@ -0,0 +1,232 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf.jmdns;
+
+import java.io.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Aggregates the questions and answers which are to be multicast within a
+ * short interval into as few messages as possible (See Draft Cheshire
+ * chapters 6.4. and 7.2.). Duplicate questions and answers are sent once.
+ * When the questions and the answers do not fit into a single message, they
+ * are split into several messages: the questions come first and, in queries,
+ * each message which is followed by more known answers has the truncated bit
+ * set.
+ */
+abstract class DNSAggregator
+{
+    private static final Logger logger
+        = Logger.getLogger(DNSAggregator.class);
+
+    /**
+     * The answers waiting to be sent.
+     */
+    private final Set<DNSRecord> answers = new LinkedHashSet<DNSRecord>();
+
+    /**
+     * The milliseconds for which the questions and answers are held back
+     * in order to aggregate them with the ones which follow.
+     */
+    private final long delay;
+
+    /**
+     * The flags of the messages which are sent.
+     */
+    private final int flags;
+
+    /**
+     * The task which is scheduled to send the questions and answers waiting
+     * to be sent or <tt>null</tt> if none are waiting.
+     */
+    private TimerTask flushTask;
+
+    /**
+     * The questions waiting to be sent.
+     */
+    private final Set<DNSQuestion> questions
+        = new LinkedHashSet<DNSQuestion>();
+
+    /**
+     * The timer on which the questions and answers are sent.
+     */
+    private final Timer timer;
+
+    /**
+     * Creates an aggregator of queries or responses.
+     *
+     * @param timer the timer on which the messages are to be sent.
+     * @param flags the flags of the messages.
+     * @param delay the milliseconds to hold the questions and answers back.
+     */
+    DNSAggregator(Timer timer, int flags, long delay)
+    {
+        this.timer = timer;
+        this.flags = flags;
+        this.delay = delay;
+    }
+
+    /**
+     * Queues an answer (or a known answer in a query) to be sent.
+     */
+    synchronized void addAnswer(DNSRecord rec)
+    {
+        if (rec != null)
+        {
+            answers.add(rec);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Queues a question to be sent along with the known answers to it.
+     *
+     * @param question the question.
+     * @param knownAnswers the answers to the question which are known.
+     */
+    synchronized void addQuestion(
+            DNSQuestion question,
+            Collection<? extends DNSRecord> knownAnswers)
+    {
+        questions.add(question);
+        if (knownAnswers != null)
+        {
+            answers.addAll(knownAnswers);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Sends the questions and answers which are waiting to be sent right
+     * away.
+     *
+     * @return the number of messages which have been sent.
+     */
+    int flush() throws IOException
+    {
+        List<DNSQuestion> questions;
+        List<DNSRecord> answers;
+
+        synchronized (this)
+        {
+            if (flushTask != null)
+            {
+                flushTask.cancel();
+                flushTask = null;
+            }
+            questions = new ArrayList<DNSQuestion>(this.questions);
+            answers = new ArrayList<DNSRecord>(this.answers);
+            this.questions.clear();
+            this.answers.clear();
+        }
+
+        boolean query
+            = (flags & DNSConstants.FLAGS_QR_MASK)
+                == DNSConstants.FLAGS_QR_QUERY;
+        long now = System.currentTimeMillis();
+        int count = 0;
+        DNSOutgoing out = new DNSOutgoing(flags);
+
+        for (DNSQuestion question : questions)
+        {
+            try
+            {
+                out.addQuestion(question);
+            }
+            catch (IOException e)
+            {
+                send(out);
+                count++;
+                out = new DNSOutgoing(flags);
+                out.addQuestion(question);
+            }
+        }
+        for (DNSRecord answer : answers)
+        {
+            try
+            {
+                // Known answers are sent with their remaining TTL.
+                out.addAnswer(answer, query ? now : 0);
+            }
+            catch (IOException e)
+            {
+                if (query)
+                {
+                    out.flags |= DNSConstants.FLAGS_TC;
+                }
+                send(out);
+                count++;
+                out = new DNSOutgoing(flags);
+                try
+                {
+                    out.addAnswer(answer, query ? now : 0);
+                }
+                catch (IOException ioe)
+                {
+                    logger.warn("Dropping answer too large for a message "
+                        + answer);
+                }
+            }
+        }
+        if (!out.isEmpty())
+        {
+            send(out);
+            count++;
+        }
+        if (logger.isDebugEnabled() && (count != 0))
+            logger.debug("Sent " + questions.size() + " questions and "
+                + answers.size() + " answers in " + count + " messages");
+        return count;
+    }
+
+    /**
+     * Schedules the questions and answers waiting to be sent to be sent
+     * after {@link #delay} unless that has been done already.
+     */
+    private void scheduleFlush()
+    {
+        if (flushTask == null)
+        {
+            flushTask
+                = new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            flush();
+                        }
+                        catch (Throwable t)
+                        {
+                            if (t instanceof ThreadDeath)
+                                throw (ThreadDeath) t;
+                            logger.warn("run() exception ", t);
+                        }
+                    }
+                };
+            try
+            {
+                timer.schedule(flushTask, delay);
+            }
+            catch (IllegalStateException e)
+            {
+                // The timer has been cancelled i.e. JmDNS has been closed.
+                flushTask = null;
+                questions.clear();
+                answers.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends a message.
+     */
+    abstract void send(DNSOutgoing out) throws IOException;
+}
@@ -4,6 +4,7 @@
 package net.java.sip.communicator.impl.protocol.zeroconf.jmdns;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.util.*;
 
@@ -41,6 +42,12 @@ import net.java.sip.communicator.util.*;
  *     ...do something with entry...
  * }
  * </pre>
+ * <p/>
+ * The linked lists are never modified once they are in the cache, additions
+ * and removals replace them with modified copies. Consequently, reads do not
+ * lock the cache and may iterate over the cache while it is being modified.
+ * The records are also kept in the order of their expiration so that the
+ * expired ones may be removed without scanning the whole cache.
  *
  * @version %I%, %G%
  * @author  Arthur van Hoff, Werner Randelshofer, Rick Blair
@@ -70,24 +77,35 @@ class DNSCache
      * name.
      * Values are linked lists of CacheNode instances.
      */
-    private HashMap<String, CacheNode> hashtable;
+    private final ConcurrentHashMap<String, CacheNode> hashtable;
+
+    /**
+     * The records in the cache ordered by the times at which they expire.
+     * Records which have been removed from the cache are left in the queue
+     * and skipped when they are polled.
+     */
+    private final PriorityQueue<Expiration> expirations
+        = new PriorityQueue<Expiration>();
 
     /**
      * Cache nodes are used to implement storage of multiple DNSEntry's of the
-     * same name in the cache.
+     * same name in the cache. They are immutable so that the linked lists may
+     * be read while the cache is being modified.
      */
     public static class CacheNode
     {
-        private DNSEntry value;
-        private CacheNode next;
+        private final DNSEntry value;
+        private final CacheNode next;
 
         public CacheNode(DNSEntry value)
+        {
+            this(value, null);
+        }
+
+        CacheNode(DNSEntry value, CacheNode next)
         {
             this.value = value;
-//            String SLevel = System.getProperty("jmdns.debug");
-//            if (SLevel == null)
-//                SLevel = "INFO";
-//            logger.setLevel(Level.parse(SLevel));
+            this.next = next;
         }
 
         public CacheNode next()
@@ -101,6 +119,26 @@ class DNSCache
         }
     }
 
+    /**
+     * The time at which a record in the cache expires.
+     */
+    private static class Expiration
+        implements Comparable<Expiration>
+    {
+        final DNSRecord record;
+        final long time;
+
+        Expiration(DNSRecord record)
+        {
+            this.record = record;
+            this.time = record.getExpirationTime(100);
+        }
+
+        public int compareTo(Expiration other)
+        {
+            return (time < other.time) ? -1 : ((time == other.time) ? 0 : 1);
+        }
+    }
 
     /**
      * Create a table with a given initial size.
@@ -108,11 +146,7 @@ class DNSCache
      */
     public DNSCache(final int size)
     {
-        hashtable = new HashMap<String, CacheNode>(size);
-
-//        String SLevel = System.getProperty("jmdns.debug");
-//        if (SLevel == null) SLevel = "INFO";
-//        logger.setLevel(Level.parse(SLevel));
+        hashtable = new ConcurrentHashMap<String, CacheNode>(size);
     }
 
     /**
@@ -121,6 +155,7 @@ class DNSCache
     public synchronized void clear()
     {
         hashtable.clear();
+        expirations.clear();
         size = 0;
     }
 
@@ -131,18 +166,23 @@ class DNSCache
     public synchronized void add(final DNSEntry entry)
     {
         //logger.log("DNSCache.add("+entry.getName()+")");
-        CacheNode newValue = new CacheNode(entry);
         CacheNode node = hashtable.get(entry.getName());
         if (node == null)
         {
-            hashtable.put(entry.getName(), newValue);
+            hashtable.put(entry.getName(), new CacheNode(entry));
         }
         else
         {
-            newValue.next = node.next;
-            node.next = newValue;
+            hashtable.put(
+                entry.getName(),
+                new CacheNode(node.value, new CacheNode(entry, node.next)));
         }
         size++;
+
+        if (entry instanceof DNSRecord)
+        {
+            expirations.add(new Expiration((DNSRecord) entry));
+        }
     }
 
     /**
@@ -153,36 +193,76 @@ class DNSCache
     public synchronized boolean remove(DNSEntry entry)
     {
         CacheNode node = hashtable.get(entry.getName());
-        if (node != null)
+        CacheNode next = null;
+        boolean found = false;
+        int index = 0;
+
+        for (CacheNode n = node; n != null; n = n.next, index++)
         {
-            if (node.value == entry)
+            if (n.value == entry)
             {
-                if (node.next == null)
-                {
-                    hashtable.remove(entry.getName());
-                }
-                else
-                {
-                    hashtable.put(entry.getName(), node.next);
-                }
-                size--;
-                return true;
+                next = n.next;
+                found = true;
+                break;
             }
+        }
+        if (!found)
+        {
+            return false;
+        }
 
-            CacheNode previous = node;
-            node = node.next;
-            while (node != null)
+        // Copy the nodes which precede the removed one.
+        DNSEntry[] preceding = new DNSEntry[index];
+        for (int i = 0; i < index; i++, node = node.next)
+        {
+            preceding[i] = node.value;
+        }
+        for (int i = index - 1; i >= 0; i--)
+        {
+            next = new CacheNode(preceding[i], next);
+        }
+        if (next == null)
+        {
+            hashtable.remove(entry.getName());
+        }
+        else
+        {
+            hashtable.put(entry.getName(), next);
+        }
+        size--;
+
+        // Drop the removed records from the expiration queue once they
+        // outnumber the records in the cache.
+        if (expirations.size() > 2 * size + 64)
+        {
+            List<Expiration> live = new ArrayList<Expiration>(size);
+            for (Expiration expiration : expirations)
             {
-                if (node.value == entry)
+                if (contains(expiration.record))
                 {
-                    previous.next = node.next;
-                    size--;
-                    return true;
+                    live.add(expiration);
                 }
-                previous = node;
-                node = node.next;
             }
-            ;
+            expirations.clear();
+            expirations.addAll(live);
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether a specific entry (not just an equal one) is in the
+     * table.
+     * @param entry to be found in table.
+     * @return Returns true if the entry is in the table.
+     */
+    public boolean contains(DNSEntry entry)
+    {
+        for (CacheNode node = find(entry.getName()); node != null; node = node.next)
+        {
+            if (node.value == entry)
+            {
+                return true;
+            }
         }
         return false;
     }
@@ -192,7 +272,7 @@ class DNSCache
      * @param entry to be found in table.
      * @return Returns the entry that was found.
      */
-    public synchronized DNSEntry get(DNSEntry entry)
+    public DNSEntry get(DNSEntry entry)
     {
         for (CacheNode node = find(entry.getName()); node != null; node = node.next)
         {
@@ -211,7 +291,7 @@ class DNSCache
      * @param clazz
      * @return Return the entry if found, null otherwise.
      */
-    public synchronized DNSEntry get(String name, int type, int clazz)
+    public DNSEntry get(String name, int type, int clazz)
     {
         for (CacheNode node = find(name); node != null; node = node.next)
         {
@@ -223,6 +303,62 @@ class DNSCache
         return null;
     }
 
+    /**
+     * Get the records in the table which answer a question and may be
+     * included in a query as known answers, i.e. which have more than half
+     * of their TTL remaining (See Draft Cheshire chapter 7.1.).
+     * @param question the question to find the known answers of.
+     * @param now the current time.
+     * @return Returns the known answers of the question.
+     */
+    public List<DNSRecord> getKnownAnswers(DNSQuestion question, long now)
+    {
+        List<DNSRecord> knownAnswers = new ArrayList<DNSRecord>();
+        for (CacheNode node = find(question.getName()); node != null; node = node.next)
+        {
+            if (node.value instanceof DNSRecord)
+            {
+                DNSRecord rec = (DNSRecord) node.value;
+                if (question.answeredBy(rec) && !rec.isStale(now))
+                {
+                    knownAnswers.add(rec);
+                }
+            }
+        }
+        return knownAnswers;
+    }
+
+    /**
+     * Removes the records which have expired from the table. Only the
+     * records which are due according to the times at which they were
+     * added are looked at; records the TTL of which has been reset in the
+     * meantime are kept and looked at again when they are due.
+     * @param now the current time.
+     * @return Returns the records which have been removed.
+     */
+    public synchronized List<DNSRecord> removeExpired(long now)
+    {
+        List<DNSRecord> expired = new ArrayList<DNSRecord>();
+        while (!expirations.isEmpty() && (expirations.peek().time <= now))
+        {
+            DNSRecord rec = expirations.poll().record;
+            if (!contains(rec))
+            {
+                continue;
+            }
+            if (rec.isExpired(now))
+            {
+                remove(rec);
+                expired.add(rec);
+            }
+            else
+            {
+                expirations.add(new Expiration(rec));
+            }
+        }
+        return expired;
+    }
+
     /**
      * Iterates over all cache nodes.
      * The iterator returns instances of DNSCache.CacheNode.
@@ -243,7 +379,7 @@ class DNSCache
      * @param name to be found.
      * @return Returns an instance of DNSCache.CacheNode or null.
      */
-    public synchronized CacheNode find(String name)
+    public CacheNode find(String name)
     {
         return hashtable.get(name);
     }
@@ -251,7 +387,7 @@ class DNSCache
     /**
      * List all entries for debugging.
      */
-    public synchronized void print()
+    public void print()
     {
         for (Iterator<CacheNode> i = iterator(); i.hasNext();)
         {
@@ -264,7 +400,7 @@ class DNSCache
     }
 
     @Override
-    public synchronized String toString()
+    public String toString()
     {
         StringBuffer aLog = new StringBuffer();
         aLog.append("\t---- cache ----");
@@ -65,8 +65,8 @@ final class DNSOutgoing
         {
             throw new IllegalStateException("Questions must be added before answers");
         }
-        numQuestions++;
         writeQuestion(rec);
+        numQuestions++;
     }
 
     /**
@@ -273,9 +273,18 @@ final class DNSOutgoing
 
     void writeQuestion(DNSQuestion question) throws IOException
     {
-        writeName(question.name);
-        writeShort(question.type);
-        writeShort(question.clazz);
+        int save = off;
+        try
+        {
+            writeName(question.name);
+            writeShort(question.type);
+            writeShort(question.clazz);
+        }
+        catch (IOException e)
+        {
+            rollback(save);
+            throw e;
+        }
     }
 
     void writeRecord(DNSRecord rec, long now) throws IOException
@@ -297,11 +306,28 @@ final class DNSOutgoing
         }
         catch (IOException e)
         {
-            off = save;
+            rollback(save);
             throw e;
         }
     }
 
+    /**
+     * Discards what has been written from a specific offset on, including
+     * the names written there, so that names added later are not compressed
+     * into pointers to the discarded bytes.
+     */
+    private void rollback(int save)
+    {
+        off = save;
+        for (Iterator<Integer> i = names.values().iterator(); i.hasNext();)
+        {
+            if (i.next() >= save)
+            {
+                i.remove();
+            }
+        }
+    }
+
     /**
      * Finish the message before sending it off.
      */
@@ -109,6 +109,18 @@ public class JmDNS
      */
     private Timer timer;
 
+    /**
+     * Aggregates the questions and known answers of the queries sent within
+     * a short interval into as few messages as possible.
+     */
+    private DNSAggregator queryAggregator;
+
+    /**
+     * Aggregates the answers of the multicast responses which are due at the
+     * same time into as few messages as possible.
+     */
+    private DNSAggregator responseAggregator;
+
     /**
      * The source for random values.
      * This is used to introduce random delays in responses. This reduces the
@@ -232,6 +244,30 @@ public class JmDNS
         // REMIND: If I could pass in a name for the Timer thread,
         //         I would pass 'JmDNS.Timer'.
         timer = new Timer();
+        queryAggregator
+            = new DNSAggregator(
+                    timer,
+                    DNSConstants.FLAGS_QR_QUERY,
+                    DNSConstants.SHARED_QUERY_TIME)
+            {
+                @Override
+                void send(DNSOutgoing out) throws IOException
+                {
+                    JmDNS.this.send(out);
+                }
+            };
+        responseAggregator
+            = new DNSAggregator(
+                    timer,
+                    DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA,
+                    0)
+            {
+                @Override
+                void send(DNSOutgoing out) throws IOException
+                {
+                    JmDNS.this.send(out);
+                }
+            };
         new RecordReaper().start();
 
         incomingListener = new Thread(
@@ -1284,32 +1320,12 @@ public class JmDNS
 
                 // Remove expired answers from the cache
                 // -------------------------------------
-                // To prevent race conditions, we defensively copy all cache
-                // entries into a list.
-                List<DNSEntry> list = new ArrayList<DNSEntry>();
-                synchronized (cache)
-                {
-                    for (Iterator<DNSCache.CacheNode> i = cache.iterator();
-                            i.hasNext();)
-                    {
-                        for (DNSCache.CacheNode n = i.next();
-                            n != null;
-                            n = n.next())
-                        {
-                            list.add(n.getValue());
-                        }
-                    }
-                }
-                // Now, we remove them.
+                // The cache keeps its records in the order of their
+                // expiration so only the expired ones are looked at.
                 long now = System.currentTimeMillis();
-                for (Iterator<DNSEntry> i = list.iterator(); i.hasNext();)
+                for (DNSRecord c : cache.removeExpired(now))
                 {
-                    DNSRecord c = (DNSRecord)i.next();
-                    if (c.isExpired(now))
-                    {
-                        updateRecord(now, c);
-                        cache.remove(c);
-                    }
+                    updateRecord(now, c);
                 }
             }
         }
@@ -2182,26 +2198,37 @@ public class JmDNS
                         {
                             if (logger.isDebugEnabled())
                                 logger.debug("run() JmDNS responding");
-                            DNSOutgoing out = null;
                             if (isUnicast)
                             {
-                                out = new DNSOutgoing(
+                                DNSOutgoing out = new DNSOutgoing(
                                     DNSConstants.FLAGS_QR_RESPONSE
                                     | DNSConstants.FLAGS_AA,
                                     false);
-                            }
 
-                            for (Iterator<DNSQuestion> i = questions.iterator();
-                                    i.hasNext();)
-                            {
-                                out.addQuestion(i.next());
+                                for (Iterator<DNSQuestion> i = questions.iterator();
+                                        i.hasNext();)
+                                {
+                                    out.addQuestion(i.next());
+                                }
+                                for (Iterator<DNSRecord> i = answers.iterator();
+                                        i.hasNext();)
+                                {
+                                    out = addAnswer(in, addr, port, out, i.next());
+                                }
+                                send(out);
                             }
-                            for (Iterator<DNSRecord> i = answers.iterator();
-                                    i.hasNext();)
+                            else
                             {
-                                out = addAnswer(in, addr, port, out, i.next());
+                                // Multicast answers are aggregated with the
+                                // answers to the other queries which are due.
+                                for (DNSRecord answer : answers)
+                                {
+                                    if (!answer.suppressedBy(in))
+                                    {
+                                        responseAggregator.addAnswer(answer);
+                                    }
+                                }
                             }
-                            send(out);
                         }
                         this.cancel();
                     }
@@ -2248,24 +2275,24 @@ public class JmDNS
                     {
                         if (logger.isDebugEnabled())
                             logger.debug("run() JmDNS querying type");
-                        DNSOutgoing out =
-                            new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                        out.addQuestion(
-                            new DNSQuestion(
-                                "_services._mdns._udp.local.",
-                                DNSConstants.TYPE_PTR,
-                                DNSConstants.CLASS_IN));
+                        List<DNSRecord> knownAnswers
+                            = new ArrayList<DNSRecord>();
                         for (String serviceType : serviceTypes.values())
                         {
-                            out.addAnswer(
+                            knownAnswers.add(
                                 new DNSRecord.Pointer(
                                     "_services._mdns._udp.local.",
                                     DNSConstants.TYPE_PTR,
                                     DNSConstants.CLASS_IN,
                                     DNSConstants.DNS_TTL,
-                                    serviceType), 0);
+                                    serviceType));
                         }
-                        send(out);
+                        queryAggregator.addQuestion(
+                            new DNSQuestion(
+                                "_services._mdns._udp.local.",
+                                DNSConstants.TYPE_PTR,
+                                DNSConstants.CLASS_IN),
+                            knownAnswers);
                     }
                     else
                     {
@@ -2329,32 +2356,29 @@ public class JmDNS
                         if (logger.isDebugEnabled())
                             logger.debug("run() JmDNS querying service");
                         long now = System.currentTimeMillis();
-                        DNSOutgoing out =
-                            new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                        out.addQuestion(
+                        DNSQuestion question =
                             new DNSQuestion(
                                 type,
                                 DNSConstants.TYPE_PTR,
-                                DNSConstants.CLASS_IN));
-                        for (Iterator<ServiceInfo> s = services.values().iterator(); s.hasNext();)
+                                DNSConstants.CLASS_IN);
+                        // The services of the type which are known, whether
+                        // they are cached or ours, are not to be answered.
+                        List<DNSRecord> knownAnswers =
+                            cache.getKnownAnswers(question, now);
+                        for (ServiceInfo info : services.values())
                         {
-                            final ServiceInfo info = s.next();
-                            try
+                            if (info.type.equalsIgnoreCase(type))
                             {
-                                out.addAnswer(
+                                knownAnswers.add(
                                     new DNSRecord.Pointer(
                                         info.type,
                                         DNSConstants.TYPE_PTR,
                                         DNSConstants.CLASS_IN,
                                         DNSConstants.DNS_TTL,
-                                        info.getQualifiedName()), now);
-                            }
-                            catch (IOException ee)
-                            {
-                                break;
+                                        info.getQualifiedName()));
                             }
                         }
-                        send(out);
+                        queryAggregator.addQuestion(question, knownAnswers);
                     }
                     else
                     {
@@ -2422,42 +2446,32 @@ public class JmDNS
                     if (count++ < 3 && !info.hasData())
                     {
                         long now = System.currentTimeMillis();
-                        DNSOutgoing out =
-                            new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                        out.addQuestion(
+                        List<DNSQuestion> questions =
+                            new ArrayList<DNSQuestion>(3);
+                        questions.add(
                             new DNSQuestion(
                                 info.getQualifiedName(),
                                 DNSConstants.TYPE_SRV,
                                 DNSConstants.CLASS_IN));
-                        out.addQuestion(
+                        questions.add(
                             new DNSQuestion(
                                 info.getQualifiedName(),
                                 DNSConstants.TYPE_TXT,
                                 DNSConstants.CLASS_IN));
                         if (info.server != null)
                         {
-                            out.addQuestion(
+                            questions.add(
                                 new DNSQuestion(
                                     info.server,
                                     DNSConstants.TYPE_A,
                                     DNSConstants.CLASS_IN));
                         }
-                        out.addAnswer((DNSRecord) cache.get(
-                            info.getQualifiedName(),
-                            DNSConstants.TYPE_SRV,
-                            DNSConstants.CLASS_IN), now);
-                        out.addAnswer((DNSRecord) cache.get(
-                            info.getQualifiedName(),
-                            DNSConstants.TYPE_TXT,
-                            DNSConstants.CLASS_IN), now);
-                        if (info.server != null)
+                        for (DNSQuestion question : questions)
                         {
-                            out.addAnswer((DNSRecord) cache.get(
-                                info.server,
-                                DNSConstants.TYPE_A,
-                                DNSConstants.CLASS_IN), now);
+                            queryAggregator.addQuestion(
+                                question,
+                                cache.getKnownAnswers(question, now));
                         }
-                        send(out);
                     }
                     else
                     {
@@ -0,0 +1,346 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.threading;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.service.threading.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * A <tt>ThreadPoolExecutor</tt> which measures how long its tasks wait in its
+ * queue and how long they execute. A bounded pool executes a task which cannot
+ * be queued because the queue is full in an overflow thread rather than in the
+ * thread which submitted it, because the submitters are often threads which
+ * must not block for long such as the one which reads the packets of a
+ * connection. There are at most as many overflow threads as the pool has
+ * threads. Once they are all busy too, the submitter waits until the queue has
+ * room again, which slows down the source of the tasks instead of creating an
+ * unbounded number of threads. An unbounded pool has no queue and starts a new
+ * thread whenever all of its threads are busy.
+ */
+class InstrumentedThreadPoolExecutor
+    extends ThreadPoolExecutor
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>InstrumentedThreadPoolExecutor</tt>
+     * class for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(InstrumentedThreadPoolExecutor.class);
+
+    /**
+     * The time in seconds after which an idle thread terminates.
+     */
+    private static final long KEEP_ALIVE_TIME = 60;
+
+    /**
+     * The name of the pool.
+     */
+    private final String name;
+
+    /**
+     * The largest number of tasks which have waited in the queue.
+     */
+    private final AtomicInteger maxQueueSize = new AtomicInteger();
+
+    /**
+     * The number of tasks which could not be queued when they were submitted.
+     */
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+
+    /**
+     * The permits to start an overflow thread or <tt>null</tt> if the pool is
+     * unbounded.
+     */
+    private final Semaphore overflowThreads;
+
+    /**
+     * The number of tasks whose times have been measured.
+     */
+    private long measuredTaskCount = 0;
+
+    /**
+     * The sum in milliseconds of the times spent by the tasks in the queue.
+     */
+    private long queueTimeSum = 0;
+
+    /**
+     * The longest time in milliseconds spent by a task in the queue.
+     */
+    private long maxQueueTime = 0;
+
+    /**
+     * The sum in milliseconds of the times spent executing the tasks.
+     */
+    private long executionTimeSum = 0;
+
+    /**
+     * Initializes a new unbounded <tt>InstrumentedThreadPoolExecutor</tt>
+     * for tasks which may block indefinitely.
+     *
+     * @param name the name of the pool
+     * @param threadFactory the <tt>ThreadFactory</tt> which creates the
+     * threads of the pool
+     */
+    InstrumentedThreadPoolExecutor(String name, ThreadFactory threadFactory)
+    {
+        super(
+                0,
+                Integer.MAX_VALUE,
+                KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                threadFactory);
+
+        this.name = name;
+        overflowThreads = null;
+    }
+
+    /**
+     * Initializes a new bounded <tt>InstrumentedThreadPoolExecutor</tt>.
+     *
+     * @param name the name of the pool
+     * @param maxThreads the maximum number of threads of the pool
+     * @param queueCapacity the maximum number of tasks waiting in the queue
+     * @param threadFactory the <tt>ThreadFactory</tt> which creates the
+     * threads of the pool
+     */
+    InstrumentedThreadPoolExecutor(
+            String name,
+            int maxThreads,
+            int queueCapacity,
+            ThreadFactory threadFactory)
+    {
+        super(
+                maxThreads,
+                maxThreads,
+                KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                threadFactory);
+
+        this.name = name;
+        overflowThreads = new Semaphore(maxThreads);
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(
+                new RejectedExecutionHandler()
+                {
+                    public void rejectedExecution(
+                            Runnable r,
+                            ThreadPoolExecutor executor)
+                    {
+                        taskRejected(r);
+                    }
+                });
+    }
+
+    /**
+     * Executes a task, measuring the time it waits in the queue and the time
+     * it executes.
+     *
+     * @param command the task to execute
+     */
+    @Override
+    public void execute(Runnable command)
+    {
+        if (command == null)
+            throw new NullPointerException("command");
+
+        super.execute(new MeasuredTask(command));
+
+        int queueSize = getQueue().size();
+        int max;
+
+        while (queueSize > (max = maxQueueSize.get()))
+        {
+            if (maxQueueSize.compareAndSet(max, queueSize))
+                break;
+        }
+    }
+
+    /**
+     * Executes a task which could not be queued in a new overflow thread
+     * unless the pool has been shut down. The tasks of the pools may wait for
+     * long so executing them in the thread which submitted them could block
+     * it for as long. If all the overflow threads are busy, waits until the
+     * queue has room for the task.
+     *
+     * @param r the task which could not be queued
+     */
+    private void taskRejected(final Runnable r)
+    {
+        if (isShutdown())
+        {
+            throw new RejectedExecutionException(
+                    "The " + name + " pool has been shut down.");
+        }
+
+        long rejected = rejectedTaskCount.incrementAndGet();
+
+        // Only warn once in a while as a full queue rejects many tasks.
+        if ((rejected & (rejected - 1)) == 0)
+        {
+            logger.warn(
+                    "The queue of the " + name + " pool is full, "
+                        + rejected + " tasks could not be queued.");
+        }
+
+        if (!overflowThreads.tryAcquire())
+        {
+            waitForQueue(r);
+            return;
+        }
+
+        Thread thread
+            = getThreadFactory().newThread(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                r.run();
+                            }
+                            finally
+                            {
+                                overflowThreads.release();
+                            }
+                        }
+                    });
+
+        if (thread == null)
+        {
+            overflowThreads.release();
+            throw new RejectedExecutionException(
+                    "Failed to create an overflow thread for the " + name
+                        + " pool.");
+        }
+        thread.start();
+    }
+
+    /**
+     * Queues a task which could not be queued when it was submitted, waiting
+     * until the queue has room for it.
+     *
+     * @param r the task to queue
+     */
+    private void waitForQueue(Runnable r)
+    {
+        try
+        {
+            getQueue().put(r);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(
+                    "Interrupted while waiting for the queue of the " + name
+                        + " pool.");
+        }
+
+        // The threads of the pool may have timed out in the meantime.
+        if (getPoolSize() == 0)
+            prestartCoreThread();
+    }
+
+    /**
+     * Records the times of a task.
+     *
+     * @param queueTime the time in milliseconds spent by the task in the queue
+     * @param executionTime the time in milliseconds spent executing the task
+     */
+    private synchronized void taskCompleted(long queueTime, long executionTime)
+    {
+        measuredTaskCount++;
+        queueTimeSum += queueTime;
+        executionTimeSum += executionTime;
+        if (maxQueueTime < queueTime)
+            maxQueueTime = queueTime;
+    }
+
+    /**
+     * Returns the current statistics of this pool.
+     *
+     * @return the current statistics of this pool
+     */
+    synchronized ThreadPoolStatistics getStatistics()
+    {
+        return
+            new ThreadPoolStatistics(
+                    name,
+                    getMaximumPoolSize(),
+                    getPoolSize(),
+                    getActiveCount(),
+                    getQueue().size(),
+                    maxQueueSize.get(),
+                    getCompletedTaskCount(),
+                    rejectedTaskCount.get(),
+                    (measuredTaskCount == 0)
+                        ? 0
+                        : (queueTimeSum / measuredTaskCount),
+                    maxQueueTime,
+                    (measuredTaskCount == 0)
+                        ? 0
+                        : (executionTimeSum / measuredTaskCount));
+    }
+
+    /**
+     * Wraps a task in order to measure the time it waits in the queue and the
+     * time it executes, and to log the exceptions it throws rather than
+     * letting them terminate the thread of the pool.
+     */
+    private class MeasuredTask
+        implements Runnable
+    {
+        /**
+         * The time in milliseconds at which the task has been submitted.
+         */
+        private final long submitTime = System.currentTimeMillis();
+
+        /**
+         * The wrapped task.
+         */
+        private final Runnable task;
+
+        /**
+         * Initializes a new <tt>MeasuredTask</tt>.
+         *
+         * @param task the task to wrap
+         */
+        MeasuredTask(Runnable task)
+        {
+            this.task = task;
+        }
+
+        /**
+         * Executes the wrapped task.
+         */
+        public void run()
+        {
+            long startTime = System.currentTimeMillis();
+
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Uncaught exception in the " + name + " pool.", t);
+            }
+            finally
+            {
+                taskCompleted(
+                        startTime - submitTime,
+                        System.currentTimeMillis() - startTime);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.threading;
+
+import net.java.sip.communicator.service.threading.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.osgi.framework.*;
+
+/**
+ * Registers the <tt>ThreadingService</tt> implementation.
+ */
+public class ThreadingActivator
+    implements BundleActivator
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ThreadingActivator</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ThreadingActivator.class);
+
+    /**
+     * The OSGi <tt>BundleContext</tt>.
+     */
+    private static BundleContext bundleContext;
+
+    /**
+     * The <tt>ConfigurationService</tt> which configures the pools.
+     */
+    private static ConfigurationService configurationService;
+
+    /**
+     * The registered <tt>ThreadingService</tt> implementation.
+     */
+    private ThreadingServiceImpl threadingService;
+
+    /**
+     * Starts this bundle and registers the <tt>ThreadingService</tt>.
+     *
+     * @param bundleContext the <tt>BundleContext</tt> of this bundle
+     * @throws Exception if the bundle cannot be started
+     */
+    public void start(BundleContext bundleContext)
+        throws Exception
+    {
+        ThreadingActivator.bundleContext = bundleContext;
+
+        threadingService = new ThreadingServiceImpl();
+        bundleContext.registerService(
+                ThreadingService.class.getName(),
+                threadingService,
+                null);
+
+        if (logger.isDebugEnabled())
+            logger.debug("Threading service registered.");
+    }
+
+    /**
+     * Stops this bundle and shuts down the pools.
+     *
+     * @param bundleContext the <tt>BundleContext</tt> of this bundle
+     * @throws Exception if the bundle cannot be stopped
+     */
+    public void stop(BundleContext bundleContext)
+        throws Exception
+    {
+        if (threadingService != null)
+        {
+            threadingService.stop();
+            threadingService = null;
+        }
+        configurationService = null;
+        ThreadingActivator.bundleContext = null;
+    }
+
+    /**
+     * Returns the <tt>ConfigurationService</tt> obtained from the bundle
+     * context.
+     *
+     * @return the <tt>ConfigurationService</tt> obtained from the bundle
+     * context or <tt>null</tt> if it is not available
+     */
+    static ConfigurationService getConfigurationService()
+    {
+        if (configurationService == null && bundleContext != null)
+        {
+            configurationService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        ConfigurationService.class);
+        }
+        return configurationService;
+    }
+}
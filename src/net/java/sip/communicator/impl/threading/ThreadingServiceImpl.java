@@ -0,0 +1,314 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.threading;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.service.threading.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Implements <tt>ThreadingService</tt> with an
+ * <tt>InstrumentedThreadPoolExecutor</tt> per pool. The pools are bounded
+ * except the ones whose tasks may block indefinitely. The pools are created on
+ * demand and their threads terminate when they are idle.
+ */
+public class ThreadingServiceImpl
+    implements ThreadingService
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ThreadingServiceImpl</tt> class
+     * for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ThreadingServiceImpl.class);
+
+    /**
+     * The prefix of the names of the properties which configure the pools.
+     */
+    private static final String PNAME_PREFIX
+        = "net.java.sip.communicator.impl.threading.";
+
+    /**
+     * The name of the property which specifies the maximum number of threads
+     * of a pool, following the name of the pool.
+     */
+    private static final String PNAME_MAX_THREADS = "MAX_THREADS";
+
+    /**
+     * The name of the property which specifies the maximum number of tasks
+     * waiting in the queue of a pool, following the name of the pool.
+     */
+    private static final String PNAME_QUEUE_CAPACITY = "QUEUE_CAPACITY";
+
+    /**
+     * The name of the property which indicates whether the pools run their
+     * tasks in virtual threads when the Java runtime supports them.
+     */
+    public static final String PNAME_USE_VIRTUAL_THREADS
+        = PNAME_PREFIX + "USE_VIRTUAL_THREADS";
+
+    /**
+     * The default maximum number of threads of a pool.
+     */
+    private static final int DEFAULT_MAX_THREADS = 4;
+
+    /**
+     * The default maximum number of tasks waiting in the queue of a pool.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * The default maximum numbers of threads of the pools which need more
+     * threads than {@link #DEFAULT_MAX_THREADS}.
+     */
+    private static final Map<String, Integer> DEFAULT_POOL_MAX_THREADS
+        = new HashMap<String, Integer>();
+
+    /**
+     * The names of the pools which are not bounded because their tasks may
+     * block indefinitely.
+     */
+    private static final Set<String> UNBOUNDED_POOLS = new HashSet<String>();
+
+    static
+    {
+        // The tasks of calls may wait for the connectivity establishment.
+        DEFAULT_POOL_MAX_THREADS.put(CALL_POOL, 16);
+
+        // The tasks of authorizations wait for the user.
+        UNBOUNDED_POOLS.add(AUTHORIZATION_POOL);
+        UNBOUNDED_POOLS.add(BLOCKING_POOL);
+    }
+
+    /**
+     * The pools mapped by their names.
+     */
+    private final Map<String, InstrumentedThreadPoolExecutor> pools
+        = new TreeMap<String, InstrumentedThreadPoolExecutor>();
+
+    /**
+     * The indicator which determines whether this service has been stopped.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Executes a task in a specific pool.
+     *
+     * @param poolName the name of the pool to execute <tt>task</tt> in
+     * @param task the task to execute
+     */
+    public void execute(String poolName, Runnable task)
+    {
+        getExecutor(poolName).execute(task);
+    }
+
+    /**
+     * Returns the <tt>ExecutorService</tt> of a specific pool, creating the
+     * pool if it does not exist yet.
+     *
+     * @param poolName the name of the pool
+     * @return the <tt>ExecutorService</tt> of the pool named
+     * <tt>poolName</tt>
+     */
+    public synchronized ExecutorService getExecutor(String poolName)
+    {
+        if (stopped)
+        {
+            throw new RejectedExecutionException(
+                    "The threading service has been stopped.");
+        }
+
+        InstrumentedThreadPoolExecutor pool = pools.get(poolName);
+
+        if (pool == null)
+        {
+            pool = createPool(poolName);
+            pools.put(poolName, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the current statistics of all the pools.
+     *
+     * @return the current statistics of all the pools
+     */
+    public List<ThreadPoolStatistics> getStatistics()
+    {
+        List<InstrumentedThreadPoolExecutor> pools;
+
+        synchronized (this)
+        {
+            pools
+                = new ArrayList<InstrumentedThreadPoolExecutor>(
+                        this.pools.values());
+        }
+
+        List<ThreadPoolStatistics> statistics
+            = new ArrayList<ThreadPoolStatistics>(pools.size());
+
+        for (InstrumentedThreadPoolExecutor pool : pools)
+            statistics.add(pool.getStatistics());
+        return statistics;
+    }
+
+    /**
+     * Shuts down all the pools. The tasks which have already been submitted
+     * are still executed.
+     */
+    void stop()
+    {
+        List<InstrumentedThreadPoolExecutor> pools;
+
+        synchronized (this)
+        {
+            stopped = true;
+            pools
+                = new ArrayList<InstrumentedThreadPoolExecutor>(
+                        this.pools.values());
+            this.pools.clear();
+        }
+
+        for (InstrumentedThreadPoolExecutor pool : pools)
+        {
+            if (logger.isInfoEnabled())
+                logger.info(pool.getStatistics());
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates a pool configured with the properties of its name. The pools
+     * whose tasks may block indefinitely are not bounded and ignore the
+     * <tt>MAX_THREADS</tt> and <tt>QUEUE_CAPACITY</tt> properties.
+     *
+     * @param poolName the name of the pool
+     * @return the new pool
+     */
+    private InstrumentedThreadPoolExecutor createPool(String poolName)
+    {
+        Integer defaultMaxThreads = DEFAULT_POOL_MAX_THREADS.get(poolName);
+        int maxThreads
+            = (defaultMaxThreads == null)
+                ? DEFAULT_MAX_THREADS
+                : defaultMaxThreads;
+        int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        boolean useVirtualThreads = false;
+        ConfigurationService cfg = ThreadingActivator.getConfigurationService();
+
+        if (cfg != null)
+        {
+            String prefix = PNAME_PREFIX + poolName + ".";
+
+            maxThreads = cfg.getInt(prefix + PNAME_MAX_THREADS, maxThreads);
+            queueCapacity
+                = cfg.getInt(prefix + PNAME_QUEUE_CAPACITY, queueCapacity);
+            useVirtualThreads
+                = cfg.getBoolean(PNAME_USE_VIRTUAL_THREADS, useVirtualThreads);
+        }
+
+        ThreadFactory threadFactory = null;
+
+        if (useVirtualThreads)
+            threadFactory = createVirtualThreadFactory(poolName);
+        if (threadFactory == null)
+            threadFactory = createThreadFactory(poolName);
+
+        if (UNBOUNDED_POOLS.contains(poolName))
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Creating the unbounded " + poolName + " pool.");
+            return new InstrumentedThreadPoolExecutor(poolName, threadFactory);
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Creating the " + poolName + " pool with " + maxThreads
+                        + " threads and a queue of " + queueCapacity
+                        + " tasks.");
+        }
+
+        return
+            new InstrumentedThreadPoolExecutor(
+                    poolName,
+                    Math.max(1, maxThreads),
+                    Math.max(1, queueCapacity),
+                    threadFactory);
+    }
+
+    /**
+     * Creates a <tt>ThreadFactory</tt> which creates daemon threads named
+     * after a pool.
+     *
+     * @param poolName the name of the pool
+     * @return a <tt>ThreadFactory</tt> which creates the threads of the pool
+     * named <tt>poolName</tt>
+     */
+    private static ThreadFactory createThreadFactory(final String poolName)
+    {
+        return
+            new ThreadFactory()
+            {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread
+                        = new Thread(
+                                r,
+                                poolName + "-"
+                                    + threadCount.incrementAndGet());
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+    }
+
+    /**
+     * Creates a <tt>ThreadFactory</tt> which creates virtual threads named
+     * after a pool if the Java runtime supports them. Reflection is used
+     * because the virtual threads do not exist in the Java versions this
+     * application is built for.
+     *
+     * @param poolName the name of the pool
+     * @return a <tt>ThreadFactory</tt> which creates virtual threads or
+     * <tt>null</tt> if the Java runtime does not support virtual threads
+     */
+    private static ThreadFactory createVirtualThreadFactory(String poolName)
+    {
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            builder
+                = builderClass
+                    .getMethod("name", String.class, long.class)
+                        .invoke(builder, poolName + "-", 1L);
+            return
+                (ThreadFactory)
+                    builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (Exception e)
+        {
+            if (logger.isInfoEnabled())
+            {
+                logger.info(
+                        "Virtual threads are not supported, the " + poolName
+                            + " pool uses platform threads.");
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.plugin.provisioning;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.credentialsstorage.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Stages changes to the <tt>ConfigurationService</tt> and applies them all at
+ * once. The staged properties are applied with
+ * {@link ConfigurationService#setProperties(Map)} which checks all of them
+ * with the vetoable change listeners before changing any of them, saves the
+ * configuration once and notifies the property change listeners only after
+ * all of them have been changed. Nothing is changed if the batch is not
+ * committed.
+ */
+class ConfigurationBatch
+{
+    /**
+     * The <tt>ConfigurationService</tt> to which the staged changes are
+     * applied.
+     */
+    private final ConfigurationService config;
+
+    /**
+     * The <tt>CredentialsStorageService</tt> which stores the staged
+     * passwords.
+     */
+    private final CredentialsStorageService credentialsStorage;
+
+    /**
+     * The staged passwords mapped to the prefixes of the accounts they are to
+     * be stored for.
+     */
+    private final Map<String, String> passwords
+        = new LinkedHashMap<String, String>();
+
+    /**
+     * The staged properties mapped to their new values; <tt>null</tt> values
+     * remove the respective properties.
+     */
+    private final Map<String, Object> properties
+        = new LinkedHashMap<String, Object>();
+
+    /**
+     * The names of the properties of the configuration as they will be once
+     * the staged changes are applied. Read from the configuration when first
+     * needed.
+     */
+    private SortedSet<String> propertyNames;
+
+    /**
+     * Initializes a new <tt>ConfigurationBatch</tt> which is to apply changes
+     * to a specific <tt>ConfigurationService</tt>.
+     *
+     * @param config the <tt>ConfigurationService</tt> to apply the changes to
+     * @param credentialsStorage the <tt>CredentialsStorageService</tt> to
+     * store the passwords with
+     */
+    ConfigurationBatch(
+            ConfigurationService config,
+            CredentialsStorageService credentialsStorage)
+    {
+        this.config = config;
+        this.credentialsStorage = credentialsStorage;
+    }
+
+    /**
+     * Applies the staged changes to the configuration. The properties are
+     * applied and saved first and the passwords are stored afterwards.
+     *
+     * @return the number of the properties and passwords which have been
+     * applied
+     * @throws ConfigPropertyVetoException if a vetoable change listener
+     * rejects any of the staged properties in which case none of them is
+     * applied
+     */
+    int commit()
+        throws ConfigPropertyVetoException
+    {
+        int count = properties.size() + passwords.size();
+
+        if (!properties.isEmpty())
+            config.setProperties(properties);
+        for (Map.Entry<String, String> e : passwords.entrySet())
+            credentialsStorage.storePassword(e.getKey(), e.getValue());
+
+        properties.clear();
+        passwords.clear();
+        propertyNames = null;
+        return count;
+    }
+
+    /**
+     * Returns the names of the properties of the configuration as they will be
+     * once the staged changes are applied.
+     *
+     * @return the names of the properties of the configuration as they will be
+     * once the staged changes are applied
+     */
+    SortedSet<String> getPropertyNames()
+    {
+        if (propertyNames == null)
+        {
+            propertyNames = new TreeSet<String>(config.getAllPropertyNames());
+            for (Map.Entry<String, Object> e : properties.entrySet())
+            {
+                if (e.getValue() == null)
+                    propertyNames.remove(e.getKey());
+                else
+                    propertyNames.add(e.getKey());
+            }
+        }
+        return propertyNames;
+    }
+
+    /**
+     * Stages the removal of a specific property and of the properties under
+     * it as {@link ConfigurationService#removeProperty(String)} does. Nothing
+     * is staged for the properties which do not exist so that a batch which
+     * removes only properties which have already been removed changes
+     * nothing.
+     *
+     * @param name the name of the property to be removed
+     */
+    void removeProperty(String name)
+    {
+        SortedSet<String> propertyNames = getPropertyNames();
+        SortedSet<String> descendants
+            = propertyNames.subSet(name + ".", name + "/");
+
+        for (String descendant : descendants)
+            properties.put(descendant, null);
+        descendants.clear();
+
+        if (propertyNames.remove(name))
+            properties.put(name, null);
+    }
+
+    /**
+     * Stages the setting of a specific property to a specific value.
+     *
+     * @param name the name of the property to be set
+     * @param value the value of the property or <tt>null</tt> to remove it
+     */
+    void setProperty(String name, Object value)
+    {
+        properties.put(name, value);
+        if (propertyNames != null)
+        {
+            if (value == null)
+                propertyNames.remove(name);
+            else
+                propertyNames.add(name);
+        }
+    }
+
+    /**
+     * Stages the storing of a password with the
+     * <tt>CredentialsStorageService</tt>.
+     *
+     * @param accountPrefix the prefix of the account the password is for
+     * @param password the password to be stored
+     */
+    void storePassword(String accountPrefix, String password)
+    {
+        passwords.put(accountPrefix, password);
+    }
+}
@@ -3,6 +3,7 @@ package net.java.sip.communicator.plugin.provisioning;
 import java.awt.*;
 import java.io.*;
 import java.net.*;
+import java.security.*;
 import java.util.*;
 import java.util.List;
 import java.util.regex.*;
@@ -74,6 +75,21 @@ public class ProvisioningServiceImpl
     private static final String PROPERTY_PROVISIONING_MANDATORY
         = "net.java.sip.communicator.plugin.provisioning.MANDATORY";
 
+    /**
+     * Name of the property, whether the provisioning may be done in the
+     * background after a previous provisioning from the same URL has been
+     * applied.
+     */
+    private static final String PROPERTY_PROVISIONING_BACKGROUND_UPDATE
+        = "net.java.sip.communicator.plugin.provisioning.BACKGROUND_UPDATE";
+
+    /**
+     * Name of the property which contains the SHA-1 digest of the last
+     * provisioning file which has been applied.
+     */
+    private static final String PROPERTY_PROVISIONING_DIGEST
+        = "net.java.sip.communicator.plugin.provisioning.DIGEST";
+
     /**
      * Name of the property that contains enforce prefix list (separated by
      * pipe) for the provisioning. The retrieved configuration properties will
@@ -136,21 +152,78 @@ public class ProvisioningServiceImpl
              url = getProvisioningUri();
          }
 
-         if(!StringUtils.isNullOrEmpty(url))
+         if(StringUtils.isNullOrEmpty(url))
+             return;
+
+         ConfigurationService config
+             = ProvisioningActivator.getConfigurationService();
+
+         /* the configuration provisioned from the same URL last time has been
+          * stored already so the startup does not have to wait for the
+          * provisioning server unless the provisioning is mandatory
+          */
+         if(url.equals(config.getString(PROPERTY_PROVISIONING_URL))
+                 && (config.getString(PROPERTY_PROVISIONING_DIGEST) != null)
+                 && config.getBoolean(
+                         PROPERTY_PROVISIONING_BACKGROUND_UPDATE,
+                         true)
+                 && !isProvisioningMandatory())
          {
-             File file = retrieveConfigurationFile(url);
-
-             if(file != null)
+             final String backgroundUrl = url;
+             Thread t = new Thread("ProvisioningServiceImpl.update")
              {
-                 /* store the provisioning URL in local configuration in case
-                  * the provisioning discovery failed (DHCP/DNS unavailable, ...)
-                  */
-                 ProvisioningActivator.getConfigurationService().setProperty(
-                         PROPERTY_PROVISIONING_URL, url);
+                 @Override
+                 public void run()
+                 {
+                     provision(backgroundUrl);
+                 }
+             };
+
+             t.setDaemon(true);
+             t.start();
+         }
+         else
+         {
+             provision(url);
+         }
+     }
+
+     /**
+      * Retrieves the configuration file from a specific provisioning URL and
+      * applies it. If it is the same as the last one which has been applied,
+      * only the removals it asks for (the properties outside of its
+      * enforced prefixes and the ones set to <tt>${null}</tt>) are applied
+      * again in case the local configuration has been changed since.
+      *
+      * @param url provisioning URL
+      */
+     private void provision(String url)
+     {
+         File file = retrieveConfigurationFile(url);
+
+         if(file == null)
+             return;
 
-                 updateConfiguration(file);
+         String digest = getDigest(file);
+
+         if((digest != null)
+                 && digest.equals(
+                         ProvisioningActivator.getConfigurationService()
+                             .getString(PROPERTY_PROVISIONING_DIGEST))
+                 && url.equals(
+                         ProvisioningActivator.getConfigurationService()
+                             .getString(PROPERTY_PROVISIONING_URL)))
+         {
+             if(logger.isInfoEnabled())
+             {
+                 logger.info(
+                         "Provisioning file unchanged, enforcing its removals");
              }
+             updateConfiguration(file, url, digest, true);
+             return;
          }
+
+         updateConfiguration(file, url, digest, false);
      }
 
      /**
@@ -527,17 +600,7 @@ public class ProvisioningServiceImpl
             {
                 // if canceled, lets check whether provisioning is
                 // mandatory
-                boolean provisioningMandatory = false;
-
-                String defaultSettingsProp =
-                    ProvisioningActivator.getResourceService()
-                        .getSettingsString(PROPERTY_PROVISIONING_MANDATORY);
-                if(defaultSettingsProp != null
-                    && Boolean.parseBoolean(defaultSettingsProp))
-                    provisioningMandatory = true;
-
-                if(ProvisioningActivator.getConfigurationService().getBoolean(
-                    PROPERTY_PROVISIONING_MANDATORY, provisioningMandatory))
+                if(isProvisioningMandatory())
                 {
                     String errorMsg;
                     if(errorWhileProvisioning != null)
@@ -652,21 +715,116 @@ public class ProvisioningServiceImpl
         }
     }
 
+    /**
+     * Computes the SHA-1 digest of a specific file.
+     *
+     * @param file the file to compute the digest of
+     * @return the hexadecimal SHA-1 digest of <tt>file</tt> or <tt>null</tt>
+     * if it cannot be computed
+     */
+    private static String getDigest(File file)
+    {
+        InputStream in = null;
+
+        try
+        {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            byte[] buff = new byte[4096];
+            int read;
+
+            in = new FileInputStream(file);
+            while((read = in.read(buff)) != -1)
+                messageDigest.update(buff, 0, read);
+
+            StringBuilder digest = new StringBuilder(40);
+
+            for(byte b : messageDigest.digest())
+            {
+                digest.append(Character.forDigit((b >> 4) & 0xf, 16));
+                digest.append(Character.forDigit(b & 0xf, 16));
+            }
+            return digest.toString();
+        }
+        catch(Exception e)
+        {
+            logger.warn("Cannot compute the digest of the provisioning file",
+                e);
+            return null;
+        }
+        finally
+        {
+            if(in != null)
+            {
+                try
+                {
+                    in.close();
+                }
+                catch(IOException e)
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the provisioning is mandatory i.e. the application
+     * must not start if the provisioning fails.
+     *
+     * @return <tt>true</tt> if the provisioning is mandatory; otherwise,
+     * <tt>false</tt>
+     */
+    private static boolean isProvisioningMandatory()
+    {
+        boolean provisioningMandatory = false;
+
+        String defaultSettingsProp =
+            ProvisioningActivator.getResourceService()
+                .getSettingsString(PROPERTY_PROVISIONING_MANDATORY);
+        if(defaultSettingsProp != null
+            && Boolean.parseBoolean(defaultSettingsProp))
+            provisioningMandatory = true;
+
+        return ProvisioningActivator.getConfigurationService().getBoolean(
+            PROPERTY_PROVISIONING_MANDATORY, provisioningMandatory);
+    }
+
     /**
      * Update configuration with properties retrieved from provisioning URL.
+     * The properties are staged in a <tt>ConfigurationBatch</tt> and applied
+     * all at once so that a provisioning file which cannot be applied leaves
+     * the configuration as it was.
      *
      * @param file provisioning file
+     * @param url the provisioning URL <tt>file</tt> has been retrieved from
+     * @param digest the SHA-1 digest of <tt>file</tt> or <tt>null</tt>
+     * @param removalsOnly <tt>true</tt> to only apply the removals of the
+     * properties outside of the enforced prefixes and of the properties set
+     * to <tt>${null}</tt> because <tt>file</tt> has already been applied
      */
-    private void updateConfiguration(final File file)
+    private void updateConfiguration(
+            final File file,
+            String url,
+            String digest,
+            boolean removalsOnly)
     {
         Properties fileProps = new OrderedProperties();
         InputStream in = null;
+        ConfigurationBatch batch
+            = new ConfigurationBatch(
+                    ProvisioningActivator.getConfigurationService(),
+                    ProvisioningActivator.getCredentialsStorageService());
 
         try
         {
             in = new BufferedInputStream(new FileInputStream(file));
             fileProps.load(in);
 
+            /* store the provisioning URL in local configuration in case
+             * the provisioning discovery failed (DHCP/DNS unavailable, ...)
+             */
+            if(!removalsOnly)
+                batch.setProperty(PROPERTY_PROVISIONING_URL, url);
+
             Iterator<Map.Entry<Object, Object> > it
                 = fileProps.entrySet().iterator();
 
@@ -693,7 +851,7 @@ public class ProvisioningServiceImpl
                 }
                 else if(key.equals(PROVISIONING_ENFORCE_PREFIX_PROP))
                 {
-                    checkEnforcePrefix((String)value);
+                    checkEnforcePrefix(batch, (String)value);
                     continue;
                 }
 
@@ -703,20 +861,38 @@ public class ProvisioningServiceImpl
                     continue;
                 }
 
-                processProperty(key, value);
+                /* the values set by an already applied file are kept as
+                 * they may have been changed locally on purpose
+                 */
+                if(removalsOnly && !"${null}".equals(value))
+                    continue;
+
+                processProperty(batch, key, value);
+            }
+
+            /* remember what has been applied so that the next provisioning
+             * from the same URL can be done in the background and only its
+             * removals be applied if the file is the same (the enforced
+             * prefixes may have removed the digest)
+             */
+            if(!removalsOnly
+                    || !batch.getPropertyNames().contains(
+                            PROPERTY_PROVISIONING_DIGEST))
+            {
+                batch.setProperty(PROPERTY_PROVISIONING_DIGEST, digest);
             }
 
             try
             {
-                /* save and reload the "new" configuration */
-                ProvisioningActivator.getConfigurationService().
-                    storeConfiguration();
-                ProvisioningActivator.getConfigurationService().
-                    reloadConfiguration();
+                /* apply and save the "new" configuration at once */
+                int count = batch.commit();
+
+                if(logger.isInfoEnabled())
+                    logger.info("Applied " + count + " provisioned properties");
             }
             catch(Exception e)
             {
-                logger.error("Cannot reload configuration");
+                logger.error("Cannot apply the provisioned configuration", e);
             }
         }
         catch(IOException e)
@@ -769,15 +945,20 @@ public class ProvisioningServiceImpl
      * property in the configuration service. If the key name end with
      * "PASSWORD", its value is encrypted through credentials storage service,
      * otherwise the property is added/updated in the configuration service.
+     * The changes are staged in a specific <tt>ConfigurationBatch</tt>.
      *
+     * @param batch the <tt>ConfigurationBatch</tt> to stage the change in
      * @param key property key name
      * @param value property value
      */
-    private void processProperty(String key, Object value)
+    private void processProperty(
+            ConfigurationBatch batch,
+            String key,
+            Object value)
     {
         if((value instanceof String) && value.equals("${null}"))
         {
-            ProvisioningActivator.getConfigurationService().removeProperty(key);
+            batch.removeProperty(key);
 
             if(logger.isInfoEnabled())
                 logger.info(key + "=" + value);
@@ -785,7 +966,7 @@ public class ProvisioningServiceImpl
         else if(key.endsWith(".PASSWORD"))
         {
             /* password => credentials storage service */
-            ProvisioningActivator.getCredentialsStorageService().storePassword(
+            batch.storePassword(
                     key.substring(0, key.lastIndexOf(".")),
                     (String)value);
 
@@ -794,8 +975,7 @@ public class ProvisioningServiceImpl
         }
         else
         {
-            ProvisioningActivator.getConfigurationService().setProperty(key,
-                value);
+            batch.setProperty(key, value);
 
             if(logger.isInfoEnabled())
                 logger.info(key + "=" + value);
@@ -804,14 +984,17 @@ public class ProvisioningServiceImpl
 
     /**
      * Walk through all properties and make sure all properties keys match
-     * a specific set of prefixes defined in configuration.
+     * a specific set of prefixes defined in configuration. The properties
+     * include the ones staged in a specific <tt>ConfigurationBatch</tt> and
+     * the removals are staged in it.
      *
+     * @param batch the <tt>ConfigurationBatch</tt> to stage the removals in
      * @param enforcePrefix list of enforce prefix.
      */
-    private void checkEnforcePrefix(String enforcePrefix)
+    private void checkEnforcePrefix(
+            ConfigurationBatch batch,
+            String enforcePrefix)
     {
-        ConfigurationService config =
-            ProvisioningActivator.getConfigurationService();
         String prefixes[] = null;
 
         if(enforcePrefix == null)
@@ -823,7 +1006,7 @@ public class ProvisioningServiceImpl
         prefixes = enforcePrefix.split("\\|");
 
         /* get all properties */
-        for (String key : config.getAllPropertyNames())
+        for (String key : new ArrayList<String>(batch.getPropertyNames()))
         {
             boolean isValid = false;
 
@@ -841,7 +1024,7 @@ public class ProvisioningServiceImpl
              */
             if(!isValid)
             {
-                config.removeProperty(key);
+                batch.removeProperty(key);
             }
         }
     }
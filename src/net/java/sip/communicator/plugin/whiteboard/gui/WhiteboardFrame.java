@@ -226,6 +226,19 @@ public class WhiteboardFrame
      */
     private List<WhiteboardPoint> pathList = new ArrayList<WhiteboardPoint>();
 
+    /**
+     * The path which is being drawn with the pen and sent while it is drawn
+     * or <tt>null</tt> if no path is being drawn.
+     */
+    private WhiteboardShapePath penPath;
+
+    /**
+     * The received shapes which have not been displayed yet mapped by their
+     * identifiers.
+     */
+    private final Map<String, WhiteboardShape> receivedShapes
+        = new LinkedHashMap<String, WhiteboardShape>();
+
     /**
      * WhiteboardPanel where the shapes are drawn
      */
@@ -1584,6 +1597,7 @@ public class WhiteboardFrame
             WhiteboardPoint point = new WhiteboardPoint(mouseX, mouseY);
             pathList.add(point);
             g.drawLine(previousMouseX, previousMouseY, mouseX, mouseY);
+            sendPenPoint(point);
 
             previousMouseX = mouseX;
             previousMouseY = mouseY;
@@ -2024,11 +2038,52 @@ public class WhiteboardFrame
     private void releasedPen()
     {
         doneDrawing = true;
-        appendAndSend(new WhiteboardShapePath(id(), spinModel.getNumber()
-            .intValue(), currentColor, pathList, s2w));
+        if (penPath != null)
+        {
+            // The path has already been sent while it was drawn.
+            displayList.add(penPath);
+            repaint();
+            penPath = null;
+        }
+        else
+        {
+            appendAndSend(new WhiteboardShapePath(id(), spinModel.getNumber()
+                .intValue(), currentColor, pathList, s2w));
+        }
         pathList.clear();
     }
 
+    /**
+     * Sends the path being drawn with the pen with a new point, so that the
+     * contact sees the path while it is drawn. Only the new points are sent
+     * by the session, together with the points drawn during the same frame
+     * interval. If the session cannot send just the new points, the path is
+     * sent once when the mouse is released.
+     *
+     * @param point the new point of the path in screen coordinates
+     */
+    private void sendPenPoint(WhiteboardPoint point)
+    {
+        if (penPath == null)
+        {
+            // Every update would carry the whole path drawn so far.
+            if (!session.isStrokeStreamingSupported())
+                return;
+
+            penPath = new WhiteboardShapePath(id(), spinModel.getNumber()
+                .intValue(), currentColor, pathList, s2w);
+            sendShape(penPath);
+        }
+        else
+        {
+            Point2D w = s2w.transform(
+                new Point2D.Double(point.getX(), point.getY()), null);
+
+            penPath.getPoints().add(new WhiteboardPoint(w.getX(), w.getY()));
+            sendMoveShape(penPath);
+        }
+    }
+
     /**
      * Method to create-add-send a WhiteboardShapeRect when mouse released.
      *
@@ -2335,17 +2390,57 @@ public class WhiteboardFrame
         if (logger.isDebugEnabled())
             logger.debug("receiveWhiteboardObject: " + wbo.getID());
         WhiteboardShape ws = createWhiteboardShape(wbo);
-        for (int i = 0; i < displayList.size(); i++)
+        if (ws == null)
+            return;
+
+        // The objects received together are displayed with a single repaint.
+        boolean addScheduled;
+        synchronized (receivedShapes)
         {
-            WhiteboardShape wbs = displayList.get(i);
-            if (wbs.getID().equals(wbo.getID()))
+            addScheduled = !receivedShapes.isEmpty();
+            receivedShapes.put(ws.getID(), ws);
+        }
+        if (!addScheduled)
+        {
+            SwingUtilities.invokeLater(new Runnable()
             {
-                displayList.set(i, ws);
-                repaint();
-                return;
+                public void run()
+                {
+                    addReceivedShapes();
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds the received shapes to the display list, replacing the shapes
+     * with the same identifiers, and repaints this frame once.
+     */
+    private void addReceivedShapes()
+    {
+        List<WhiteboardShape> shapes;
+        synchronized (receivedShapes)
+        {
+            shapes = new ArrayList<WhiteboardShape>(receivedShapes.values());
+            receivedShapes.clear();
+        }
+
+        for (WhiteboardShape ws : shapes)
+        {
+            boolean replaced = false;
+            for (int i = 0; i < displayList.size(); i++)
+            {
+                WhiteboardShape wbs = displayList.get(i);
+                if (wbs.getID().equals(ws.getID()))
+                {
+                    displayList.set(i, ws);
+                    replaced = true;
+                    break;
+                }
             }
+            if (!replaced)
+                displayList.add(ws);
         }
-        displayList.add(ws);
         repaint();
     }
 
@@ -2358,6 +2453,10 @@ public class WhiteboardFrame
     {
         if (logger.isDebugEnabled())
             logger.debug("receiveDeleteWhiteboardObject");
+        synchronized (receivedShapes)
+        {
+            receivedShapes.remove(id);
+        }
         int i = 0;
         while (i < displayList.size())
         {
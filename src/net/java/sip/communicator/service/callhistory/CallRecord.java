@@ -9,6 +9,7 @@ package net.java.sip.communicator.service.callhistory;
 import java.util.*;
 
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.media.*;
 
 /**
  * Structure used for encapsulating data when writing or reading
@@ -62,6 +63,12 @@ public class CallRecord
      */
     protected int endReason = -1;
 
+    /**
+     * The summary of the media quality of the call or <tt>null</tt> if no
+     * media statistics were collected.
+     */
+    protected CallQualityReport qualityReport = null;
+
     /**
      * Creates CallRecord
      */
@@ -158,4 +165,15 @@ public class CallRecord
     {
         return endReason;
     }
+
+    /**
+     * Returns the summary of the RTP/RTCP statistics of the streams of the
+     * call.
+     * @return the <tt>CallQualityReport</tt> of the call or <tt>null</tt> if
+     * no media statistics were collected.
+     */
+    public CallQualityReport getQualityReport()
+    {
+        return qualityReport;
+    }
 }
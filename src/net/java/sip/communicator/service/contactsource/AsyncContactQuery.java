@@ -10,10 +10,12 @@ import java.util.*;
 import java.util.regex.*;
 
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.threading.*;
+import net.java.sip.communicator.util.*;
 
 /**
  * Provides an abstract implementation of a <tt>ContactQuery</tt> which runs in
- * a separate <tt>Thread</tt>.
+ * the background, in the contact query pool of the <tt>ThreadingService</tt>.
  *
  * @author Lyubomir Marinov
  * @param <T> the very type of <tt>ContactSourceService</tt> which performs the
@@ -49,10 +51,10 @@ public abstract class AsyncContactQuery<T extends ContactSourceService>
         = new LinkedList<SourceContact>();
 
     /**
-     * The <tt>Thread</tt> in which this <tt>AsyncContactQuery</tt> is
-     * performing {@link #query}.
+     * The indicator which determines whether this <tt>AsyncContactQuery</tt>
+     * has been started.
      */
-    private Thread thread;
+    private boolean started = false;
 
     /**
      * Initializes a new <tt>AsyncContactQuery</tt> instance which is to perform
@@ -199,7 +201,7 @@ public abstract class AsyncContactQuery<T extends ContactSourceService>
     }
 
     /**
-     * Performs this <tt>ContactQuery</tt> in a background <tt>Thread</tt>.
+     * Performs this <tt>ContactQuery</tt> in a background thread.
      */
     protected abstract void run();
 
@@ -208,33 +210,31 @@ public abstract class AsyncContactQuery<T extends ContactSourceService>
      */
     public synchronized void start()
     {
-        if (thread == null)
+        if (!started)
         {
-            thread
-                = new Thread()
-                {
-                    @Override
-                    public void run()
+            started = true;
+            ThreadingUtils.execute(
+                    ThreadingService.CONTACT_QUERY_POOL,
+                    new Runnable()
                     {
-                        boolean completed = false;
-
-                        try
-                        {
-                            AsyncContactQuery.this.run();
-                            completed = true;
-                        }
-                        finally
+                        public void run()
                         {
-                            synchronized (AsyncContactQuery.this)
+                            boolean completed = false;
+
+                            try
+                            {
+                                AsyncContactQuery.this.run();
+                                completed = true;
+                            }
+                            finally
                             {
-                                if (thread == Thread.currentThread())
+                                synchronized (AsyncContactQuery.this)
+                                {
                                     stopped(completed);
+                                }
                             }
                         }
-                    }
-                };
-            thread.setDaemon(true);
-            thread.start();
+                    });
         }
         else
             throw new IllegalStateException("thread");
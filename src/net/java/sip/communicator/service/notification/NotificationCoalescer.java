@@ -0,0 +1,421 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.util.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Merges bursts of notifications fired for the same event type and the same
+ * source (e.g. a flood of incoming messages from one chat room or the offline
+ * messages delivered on login) into a single summarized notification.
+ * <p>
+ * Only the message and typing notifications are coalesced by default (see
+ * {@link #DEFAULT_EVENT_TYPE_WINDOWS}) because the handlers of other events
+ * such as DTMF tones and call sounds expect every notification to be
+ * delivered as soon as it is fired. Notifications without a source are never
+ * coalesced because they cannot be told apart.
+ * <p>
+ * The first notification of a burst is delivered immediately. Every
+ * notification with the same (event type, source) fired within the
+ * coalescing window that follows is suppressed and, when the window expires,
+ * the last of them is delivered as a summary carrying the number of
+ * notifications it stands for in its
+ * {@link NotificationData#COALESCED_COUNT_EXTRA} extra. Notifications which
+ * loop sounds are never coalesced because they are expected to be stopped
+ * through the <tt>NotificationData</tt> returned when firing them.
+ */
+class NotificationCoalescer
+{
+    /**
+     * The name of the property which specifies the default coalescing window
+     * in milliseconds of the event types which are not coalesced by default.
+     * The window of a specific event type may be overridden by a property
+     * with the same name followed by a dot and the event type. A window of
+     * <tt>0</tt> disables coalescing.
+     */
+    static final String PNAME_COALESCE_WINDOW
+        = "net.java.sip.communicator.service.notification.COALESCE_WINDOW";
+
+    /**
+     * The default coalescing window in milliseconds of the event types which
+     * are not in {@link #DEFAULT_EVENT_TYPE_WINDOWS}.
+     */
+    static final long DEFAULT_COALESCE_WINDOW = 0;
+
+    /**
+     * The default coalescing windows in milliseconds of the event types which
+     * are coalesced by default i.e. the incoming messages and the typing
+     * notifications fired by the notification wiring.
+     */
+    private static final Map<String, Long> DEFAULT_EVENT_TYPE_WINDOWS
+        = new HashMap<String, Long>();
+
+    static
+    {
+        DEFAULT_EVENT_TYPE_WINDOWS.put("IncomingMessage", Long.valueOf(1000));
+        DEFAULT_EVENT_TYPE_WINDOWS.put(
+                "ProactiveNotification",
+                Long.valueOf(1000));
+    }
+
+    /**
+     * The bursts which are currently being coalesced mapped by their
+     * (event type, source) key.
+     */
+    private final Map<BurstKey, Burst> bursts = new HashMap<BurstKey, Burst>();
+
+    /**
+     * The number of notifications which have been delivered to the handlers
+     * including the summaries of coalesced bursts.
+     */
+    private long deliveredCount = 0;
+
+    /**
+     * The service which delivers the notifications to the handlers.
+     */
+    private final NotificationServiceImpl notificationService;
+
+    /**
+     * The number of notifications which have been merged into a summary
+     * instead of being delivered on their own.
+     */
+    private long suppressedCount = 0;
+
+    /**
+     * The <tt>Timer</tt> which closes the coalescing windows. Created on
+     * demand.
+     */
+    private Timer timer;
+
+    /**
+     * Initializes a new <tt>NotificationCoalescer</tt> which is to deliver
+     * notifications through a specific <tt>NotificationServiceImpl</tt>.
+     *
+     * @param notificationService the <tt>NotificationServiceImpl</tt> to
+     * deliver the notifications through
+     */
+    NotificationCoalescer(NotificationServiceImpl notificationService)
+    {
+        this.notificationService = notificationService;
+    }
+
+    /**
+     * Gets the number of notifications which have been delivered to the
+     * handlers (including the summaries of coalesced bursts).
+     *
+     * @return the number of delivered notifications
+     */
+    synchronized long getDeliveredCount()
+    {
+        return deliveredCount;
+    }
+
+    /**
+     * Gets the number of notifications which have been merged into a summary
+     * instead of being delivered on their own.
+     *
+     * @return the number of suppressed notifications
+     */
+    synchronized long getSuppressedCount()
+    {
+        return suppressedCount;
+    }
+
+    /**
+     * Gets the coalescing window configured for a specific event type.
+     *
+     * @param eventType the event type to get the coalescing window of
+     * @return the coalescing window in milliseconds configured for
+     * <tt>eventType</tt>; <tt>0</tt> if coalescing is disabled
+     */
+    private long getWindow(String eventType)
+    {
+        Long defaultWindow = DEFAULT_EVENT_TYPE_WINDOWS.get(eventType);
+        ConfigurationService cfg
+            = NotificationServiceActivator.getConfigurationService();
+
+        if (cfg == null)
+        {
+            return
+                (defaultWindow == null)
+                    ? DEFAULT_COALESCE_WINDOW
+                    : defaultWindow.longValue();
+        }
+        if (defaultWindow == null)
+        {
+            defaultWindow
+                = Long.valueOf(
+                        cfg.getLong(
+                                PNAME_COALESCE_WINDOW,
+                                DEFAULT_COALESCE_WINDOW));
+        }
+
+        return
+            cfg.getLong(
+                    PNAME_COALESCE_WINDOW + "." + eventType,
+                    defaultWindow.longValue());
+    }
+
+    /**
+     * Determines whether a specific notification may be coalesced i.e. it has
+     * a source and does not loop sounds.
+     *
+     * @param data the <tt>NotificationData</tt> to check
+     * @param notification the <tt>Notification</tt> registered for the event
+     * type of <tt>data</tt>
+     * @return <tt>true</tt> if <tt>data</tt> may be coalesced; otherwise,
+     * <tt>false</tt>
+     */
+    private static boolean isCoalescable(
+            NotificationData data,
+            Notification notification)
+    {
+        if (data.getExtra(NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA)
+                == null)
+            return false;
+        if (data.getExtra(
+                    NotificationData
+                        .SOUND_NOTIFICATION_HANDLER_LOOP_CONDITION_EXTRA)
+                != null)
+            return false;
+
+        NotificationAction action
+            = notification.getAction(NotificationAction.ACTION_SOUND);
+
+        return
+            !(action instanceof SoundNotificationAction)
+                || (((SoundNotificationAction) action).getLoopInterval() < 0);
+    }
+
+    /**
+     * Offers a notification to this coalescer.
+     *
+     * @param data the fired <tt>NotificationData</tt>
+     * @param notification the <tt>Notification</tt> registered for the event
+     * type of <tt>data</tt>
+     * @return <tt>true</tt> if <tt>data</tt> is to be delivered to the
+     * handlers right away; <tt>false</tt> if it has been merged into the
+     * current burst of its event type and source
+     */
+    boolean offer(NotificationData data, Notification notification)
+    {
+        if (!isCoalescable(data, notification))
+        {
+            synchronized (this)
+            {
+                deliveredCount++;
+            }
+            return true;
+        }
+
+        long window = getWindow(data.getEventType());
+
+        synchronized (this)
+        {
+            if (window <= 0)
+            {
+                deliveredCount++;
+                return true;
+            }
+
+            BurstKey key
+                = new BurstKey(
+                        data.getEventType(),
+                        data.getExtra(
+                                NotificationData
+                                    .POPUP_MESSAGE_HANDLER_TAG_EXTRA));
+            Burst burst = bursts.get(key);
+
+            if (burst == null)
+            {
+                bursts.put(key, new Burst());
+                scheduleWindowEnd(key, window);
+                deliveredCount++;
+                return true;
+            }
+            else
+            {
+                burst.last = data;
+                burst.suppressed++;
+                suppressedCount++;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Schedules the end of the coalescing window of a specific burst.
+     *
+     * @param key the key of the burst
+     * @param window the length of the window in milliseconds
+     */
+    private void scheduleWindowEnd(final BurstKey key, long window)
+    {
+        if (timer == null)
+            timer = new Timer(getClass().getName(), true);
+
+        timer.schedule(
+                new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        windowEnded(key);
+                    }
+                },
+                window);
+    }
+
+    /**
+     * Cancels all pending coalescing windows and discards the notifications
+     * suppressed in them.
+     */
+    synchronized void stop()
+    {
+        bursts.clear();
+        if (timer != null)
+        {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Closes the coalescing window of a specific burst. If notifications were
+     * suppressed in it, a summary is delivered and a new window is opened so
+     * that a continuing burst results in at most one notification per window.
+     *
+     * @param key the key of the burst whose window has ended
+     */
+    private void windowEnded(BurstKey key)
+    {
+        NotificationData summary;
+
+        synchronized (this)
+        {
+            Burst burst = bursts.get(key);
+
+            if (burst == null)
+                return;
+            if (burst.suppressed == 0)
+            {
+                bursts.remove(key);
+                return;
+            }
+
+            summary = createSummary(burst.last, burst.suppressed);
+            burst.last = null;
+            burst.suppressed = 0;
+            scheduleWindowEnd(key, getWindow(key.eventType));
+            deliveredCount++;
+        }
+
+        notificationService.fireNotification(summary);
+    }
+
+    /**
+     * Creates the summary of a burst of notifications.
+     *
+     * @param last the last <tt>NotificationData</tt> suppressed in the burst
+     * @param suppressed the number of notifications suppressed in the burst
+     * @return the <tt>NotificationData</tt> which summarizes the burst
+     */
+    private static NotificationData createSummary(
+            NotificationData last,
+            int suppressed)
+    {
+        Map<String, Object> extras
+            = new HashMap<String, Object>(last.getExtras());
+
+        extras.put(
+                NotificationData.COALESCED_COUNT_EXTRA,
+                Integer.valueOf(suppressed));
+
+        String message = last.getMessage();
+
+        if ((message != null) && (suppressed > 1))
+            message += " (+" + (suppressed - 1) + ")";
+
+        return
+            new NotificationData(
+                    last.getEventType(),
+                    last.getTitle(),
+                    message,
+                    last.getIcon(),
+                    extras);
+    }
+
+    /**
+     * The state of a burst of notifications being coalesced.
+     */
+    private static class Burst
+    {
+        /**
+         * The last notification suppressed in the current window.
+         */
+        NotificationData last;
+
+        /**
+         * The number of notifications suppressed in the current window.
+         */
+        int suppressed = 0;
+    }
+
+    /**
+     * Identifies a burst by event type and source. The source is the
+     * {@link NotificationData#POPUP_MESSAGE_HANDLER_TAG_EXTRA} which the
+     * notification wiring sets to the contact or the chat room a notification
+     * is about.
+     */
+    private static class BurstKey
+    {
+        /**
+         * The event type of the burst.
+         */
+        final String eventType;
+
+        /**
+         * The source of the burst.
+         */
+        final Object source;
+
+        /**
+         * Initializes a new <tt>BurstKey</tt>.
+         *
+         * @param eventType the event type of the burst
+         * @param source the source of the burst
+         */
+        BurstKey(String eventType, Object source)
+        {
+            this.eventType = eventType;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof BurstKey))
+                return false;
+
+            BurstKey other = (BurstKey) obj;
+
+            return
+                eventType.equals(other.eventType)
+                    && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * eventType.hashCode() + source.hashCode();
+        }
+    }
+}
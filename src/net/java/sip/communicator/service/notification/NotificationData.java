@@ -43,6 +43,14 @@ public class NotificationData
     public static final String SOUND_NOTIFICATION_HANDLER_LOOP_CONDITION_EXTRA
         = "SoundNotificationHandler.loopCondition";
 
+    /**
+     * The name/key of the <tt>NotificationData</tt> extra which is set on the
+     * summary of a burst of coalesced notifications i.e. an <tt>Integer</tt>
+     * which is the number of notifications the summary stands for.
+     */
+    public static final String COALESCED_COUNT_EXTRA
+        = "NotificationService.coalescedCount";
+
     private final String eventType;
 
     /**
@@ -103,6 +111,12 @@ public class NotificationData
      */
     Map<String, Object> getExtras()
     {
+        if (extras == null)
+        {
+            Map<String, Object> noExtras = Collections.emptyMap();
+
+            return noExtras;
+        }
         return Collections.unmodifiableMap(extras);
     }
 
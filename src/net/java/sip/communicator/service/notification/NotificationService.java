@@ -341,4 +341,23 @@ public interface NotificationService
      * @param data Additional data for the event.
      */
     public boolean isPlayingNotification(NotificationData data);
+
+    /**
+     * Gets the number of notifications which have been delivered to the
+     * handlers. Bursts of notifications fired for the same event type and
+     * source are coalesced and count as one delivery per coalescing window.
+     *
+     * @return the number of notifications which have been delivered to the
+     * handlers
+     */
+    public long getDeliveredNotificationCount();
+
+    /**
+     * Gets the number of notifications which have been merged into the
+     * summary of a burst instead of being delivered on their own.
+     *
+     * @return the number of notifications which have been suppressed by
+     * coalescing
+     */
+    public long getSuppressedNotificationCount();
 }
@@ -26,6 +26,7 @@ public class NotificationServiceActivator
     protected static BundleContext bundleContext;
     private static ConfigurationService configService;
     private ServiceRegistration notificationService;
+    private NotificationServiceImpl notificationServiceImpl;
 
     public void start(BundleContext bc) throws Exception
     {
@@ -36,9 +37,10 @@ public class NotificationServiceActivator
             logger.logEntry();
             logger.info("Notification Service...[  STARTED ]");
 
+            notificationServiceImpl = new NotificationServiceImpl();
             notificationService = bundleContext.registerService(
                 NotificationService.class.getName(),
-                new NotificationServiceImpl(),
+                notificationServiceImpl,
                 null);
 
             logger.info("Notification Service ...[REGISTERED]");
@@ -52,6 +54,7 @@ public class NotificationServiceActivator
     public void stop(BundleContext bc) throws Exception
     {
         notificationService.unregister();
+        notificationServiceImpl.stop();
         logger.info("Notification Service ...[STOPPED]");
     }
 
@@ -46,6 +46,12 @@ class NotificationServiceImpl
     private final List<NotificationChangeListener> changeListeners
         = new Vector<NotificationChangeListener>();
 
+    /**
+     * Merges bursts of notifications with the same event type and source.
+     */
+    private final NotificationCoalescer coalescer
+        = new NotificationCoalescer(this);
+
     private final ConfigurationService configService =
         NotificationServiceActivator.getConfigurationService();
 
@@ -103,7 +109,14 @@ class NotificationServiceImpl
             if((handlers.size() == NUM_ACTIONS) && (notificationCache != null))
             {
                 for(NotificationData event : notificationCache)
-                    fireNotification(event);
+                {
+                    Notification notification
+                        = notifications.get(event.getEventType());
+
+                    if((notification != null)
+                            && coalescer.offer(event, notification))
+                        fireNotification(event);
+                }
 
                 notificationCache.clear();
                 notificationCache = null;
@@ -214,7 +227,7 @@ class NotificationServiceImpl
      *
      * @param data The notification data to act upon.
      */
-    private void fireNotification(NotificationData data)
+    void fireNotification(NotificationData data)
     {
         Notification notification = notifications.get(data.getEventType());
 
@@ -363,12 +376,45 @@ class NotificationServiceImpl
         //cache the notification when the handlers are not yet ready
         if (notificationCache != null)
             notificationCache.add(data);
-        else
+        else if (coalescer.offer(data, notification))
             fireNotification(data);
 
         return data;
     }
 
+    /**
+     * Gets the number of notifications which have been delivered to the
+     * handlers, including the summaries of coalesced bursts.
+     *
+     * @return the number of notifications which have been delivered to the
+     * handlers
+     */
+    public long getDeliveredNotificationCount()
+    {
+        return coalescer.getDeliveredCount();
+    }
+
+    /**
+     * Gets the number of notifications which have been merged into the
+     * summary of a burst instead of being delivered on their own.
+     *
+     * @return the number of notifications which have been suppressed by
+     * coalescing
+     */
+    public long getSuppressedNotificationCount()
+    {
+        return coalescer.getSuppressedCount();
+    }
+
+    /**
+     * Stops merging bursts of notifications and discards the notifications
+     * which are pending in coalescing windows.
+     */
+    void stop()
+    {
+        coalescer.stop();
+    }
+
     /**
      * Notifies all registered <tt>NotificationChangeListener</tt>s that a
      * <tt>NotificationActionTypeEvent</tt> has occurred.
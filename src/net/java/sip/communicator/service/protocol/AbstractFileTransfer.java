@@ -6,6 +6,7 @@
  */
 package net.java.sip.communicator.service.protocol;
 
+import java.io.*;
 import java.util.*;
 
 import net.java.sip.communicator.service.protocol.event.*;
@@ -40,6 +41,35 @@ public abstract class AbstractFileTransfer
 
     private int status;
 
+    /**
+     * The minimum time in milliseconds over which the transfer rate is
+     * measured.
+     */
+    private static final long RATE_MEASUREMENT_INTERVAL = 1000;
+
+    /**
+     * The weight of the latest measurement in the smoothed transfer rate.
+     */
+    private static final double RATE_SMOOTHING_FACTOR = 0.3;
+
+    /**
+     * The number of transferred bytes at the start of the current rate
+     * measurement.
+     */
+    private long rateMeasurementBytes;
+
+    /**
+     * The time in milliseconds at the start of the current rate measurement
+     * or <tt>-1</tt> if no progress has been reported yet.
+     */
+    private long rateMeasurementTimestamp = -1;
+
+    /**
+     * The smoothed transfer rate in bytes per second or <tt>-1</tt> if it is
+     * not known yet.
+     */
+    private double transferRate = -1;
+
     /**
      * Cancels this file transfer. When this method is called transfer should
      * be interrupted.
@@ -53,6 +83,92 @@ public abstract class AbstractFileTransfer
      */
     abstract public long getTransferedBytes();
 
+    /**
+     * Returns the total number of bytes to be transferred through this file
+     * transfer. The default implementation returns the length of the local
+     * file of outgoing transfers and <tt>-1</tt> for incoming transfers;
+     * protocol implementations which know the size of incoming files should
+     * override it.
+     *
+     * @return the total number of bytes to be transferred or <tt>-1</tt> if
+     * it is not known
+     */
+    public long getTotalBytes()
+    {
+        File file = (getDirection() == OUT) ? getLocalFile() : null;
+
+        return ((file != null) && file.isFile()) ? file.length() : -1;
+    }
+
+    /**
+     * Returns the current transfer rate of this file transfer as measured
+     * from the progress events fired for it. The rate is smoothed so that it
+     * may be displayed as is.
+     *
+     * @return the transfer rate in bytes per second or <tt>-1</tt> if it is
+     * not known yet
+     */
+    public synchronized long getTransferRate()
+    {
+        return (transferRate < 0) ? -1 : Math.round(transferRate);
+    }
+
+    /**
+     * Returns the estimated time needed to complete this file transfer at its
+     * current transfer rate.
+     *
+     * @return the estimated remaining time in milliseconds or <tt>-1</tt> if
+     * either the transfer rate or the total number of bytes to be
+     * transferred is not known
+     */
+    public long getEstimatedTimeRemaining()
+    {
+        long totalBytes = getTotalBytes();
+        long rate = getTransferRate();
+
+        if ((totalBytes < 0) || (rate <= 0))
+            return -1;
+
+        long remainingBytes = Math.max(0, totalBytes - getTransferedBytes());
+
+        return remainingBytes * 1000 / rate;
+    }
+
+    /**
+     * Updates the transfer rate with the progress of a new progress event.
+     * The rate is only measured over intervals of at least
+     * {@link #RATE_MEASUREMENT_INTERVAL} so that frequent events do not make
+     * it fluctuate.
+     *
+     * @param timestamp the time in milliseconds of the progress event
+     * @param progress the number of bytes transferred so far
+     */
+    private synchronized void updateTransferRate(long timestamp, long progress)
+    {
+        if ((rateMeasurementTimestamp < 0)
+                || (progress < rateMeasurementBytes))
+        {
+            rateMeasurementTimestamp = timestamp;
+            rateMeasurementBytes = progress;
+            return;
+        }
+
+        long elapsed = timestamp - rateMeasurementTimestamp;
+
+        if (elapsed < RATE_MEASUREMENT_INTERVAL)
+            return;
+
+        double rate = (progress - rateMeasurementBytes) * 1000.0 / elapsed;
+
+        transferRate
+            = (transferRate < 0)
+                ? rate
+                : (RATE_SMOOTHING_FACTOR * rate
+                    + (1 - RATE_SMOOTHING_FACTOR) * transferRate);
+        rateMeasurementTimestamp = timestamp;
+        rateMeasurementBytes = progress;
+    }
+
     /**
      * Adds the given <tt>FileTransferProgressListener</tt> to listen for
      * status changes on this file transfer.
@@ -184,6 +300,8 @@ public abstract class AbstractFileTransfer
      */
     public void fireProgressChangeEvent(long timestamp, long progress)
     {
+        updateTransferRate(timestamp, progress);
+
         Collection<FileTransferProgressListener> listeners = null;
         synchronized (progressListeners)
         {
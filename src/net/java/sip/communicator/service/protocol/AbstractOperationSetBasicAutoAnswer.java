@@ -9,6 +9,7 @@ package net.java.sip.communicator.service.protocol;
 import java.util.*;
 
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.threading.*;
 import net.java.sip.communicator.util.*;
 
 /**
@@ -222,7 +223,7 @@ public abstract class AbstractOperationSetBasicAutoAnswer
 
             if (peer.getState() == CallPeerState.INCOMING_CALL)
             {
-                new Thread(this).start();
+                ThreadingUtils.execute(ThreadingService.CALL_POOL, this);
             }
             else
             {
@@ -279,7 +280,7 @@ public abstract class AbstractOperationSetBasicAutoAnswer
             if (newState == CallPeerState.INCOMING_CALL)
             {
                 evt.getSourceCallPeer().removeCallPeerListener(this);
-                new Thread(this).start();
+                ThreadingUtils.execute(ThreadingService.CALL_POOL, this);
             }
             else if (newState == CallPeerState.DISCONNECTED
                     || newState == CallPeerState.FAILED)
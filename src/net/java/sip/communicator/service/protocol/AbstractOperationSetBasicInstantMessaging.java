@@ -31,12 +31,27 @@ public abstract class AbstractOperationSetBasicInstantMessaging
     private static final Logger logger
         = Logger.getLogger(AbstractOperationSetBasicInstantMessaging.class);
 
+    /**
+     * The empty array of <tt>MessageListener</tt>s used when no listener is
+     * registered.
+     */
+    private static final MessageListener[] NO_LISTENERS
+        = new MessageListener[0];
+
     /**
      * A list of listeners registered for message events.
      */
     private final List<MessageListener> messageListeners =
         new LinkedList<MessageListener>();
 
+    /**
+     * The snapshot of {@link #messageListeners} which message events are
+     * delivered to. Rebuilt whenever a listener is added or removed so that
+     * delivering a message neither locks nor allocates.
+     */
+    private volatile MessageListener[] messageListenersSnapshot
+        = NO_LISTENERS;
+
     /**
      * Registers a MessageListener with this operation set so that it gets
      * notifications of successful message delivery, failure or reception of
@@ -51,6 +66,9 @@ public abstract class AbstractOperationSetBasicInstantMessaging
             if (!messageListeners.contains(listener))
             {
                 messageListeners.add(listener);
+                messageListenersSnapshot
+                    = messageListeners.toArray(
+                            new MessageListener[messageListeners.size()]);
             }
         }
     }
@@ -148,14 +166,10 @@ public abstract class AbstractOperationSetBasicInstantMessaging
      */
     protected void fireMessageEvent(EventObject evt)
     {
-        Collection<MessageListener> listeners = null;
-        synchronized (this.messageListeners)
-        {
-            listeners = new ArrayList<MessageListener>(this.messageListeners);
-        }
+        MessageListener[] listeners = messageListenersSnapshot;
 
         if (logger.isDebugEnabled())
-            logger.debug("Dispatching Message Listeners=" + listeners.size()
+            logger.debug("Dispatching Message Listeners=" + listeners.length
             + " evt=" + evt);
 
         /*
@@ -238,7 +252,14 @@ public abstract class AbstractOperationSetBasicInstantMessaging
     {
         synchronized (messageListeners)
         {
-            messageListeners.remove(listener);
+            if (messageListeners.remove(listener))
+            {
+                messageListenersSnapshot
+                    = messageListeners.isEmpty()
+                        ? NO_LISTENERS
+                        : messageListeners.toArray(
+                                new MessageListener[messageListeners.size()]);
+            }
         }
     }
 
@@ -252,6 +273,9 @@ public abstract class AbstractOperationSetBasicInstantMessaging
     private EventObject messageTransform(   EventObject evt,
                                             MessageEventType eventType){
 
+        if (eventType == MessageEventType.None)
+            return evt;
+
         ProtocolProviderService protocolProvider;
         switch (eventType){
         case MessageDelivered:
@@ -285,43 +309,47 @@ public abstract class AbstractOperationSetBasicInstantMessaging
         if (opSetMessageTransform == null)
             return evt;
 
-        for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                : opSetMessageTransform.transformLayers.entrySet())
+        /*
+         * The layers are a snapshot which is only rebuilt when a layer is
+         * added or removed so there is nothing to lock or copy here and no
+         * layers, the common case, means no work at all.
+         */
+        TransformLayer[] transformLayers
+            = opSetMessageTransform.getTransformLayers();
+
+        for (int i = 0; (i < transformLayers.length) && (evt != null); i++)
         {
-            for (TransformLayer transformLayer : entry.getValue())
-            {
-                if (evt != null){
-                    switch (eventType){
-                    case MessageDelivered:
-                        evt
-                            = transformLayer
-                                .messageDelivered((MessageDeliveredEvent)evt);
-                        break;
-                    case MessageDeliveryPending:
-                        evt
-                            = transformLayer
-                                .messageDeliveryPending(
-                                    (MessageDeliveredEvent)evt);
-                        break;
-                    case MessageDeliveryFailed:
-                        evt
-                            = transformLayer
-                                .messageDeliveryFailed(
-                                    (MessageDeliveryFailedEvent)evt);
-                        break;
-                    case MessageReceived:
-                        evt
-                            = transformLayer
-                                .messageReceived((MessageReceivedEvent)evt);
-                        break;
-                    default:
-                        /*
-                         * We either have nothing to do or we do not know what
-                         * to do. Anyway, we'll silence the compiler.
-                         */
-                        break;
-                    }
-                }
+            TransformLayer transformLayer = transformLayers[i];
+
+            switch (eventType){
+            case MessageDelivered:
+                evt
+                    = transformLayer
+                        .messageDelivered((MessageDeliveredEvent)evt);
+                break;
+            case MessageDeliveryPending:
+                evt
+                    = transformLayer
+                        .messageDeliveryPending(
+                            (MessageDeliveredEvent)evt);
+                break;
+            case MessageDeliveryFailed:
+                evt
+                    = transformLayer
+                        .messageDeliveryFailed(
+                            (MessageDeliveryFailedEvent)evt);
+                break;
+            case MessageReceived:
+                evt
+                    = transformLayer
+                        .messageReceived((MessageReceivedEvent)evt);
+                break;
+            default:
+                /*
+                 * We either have nothing to do or we do not know what to
+                 * do. Anyway, we'll silence the compiler.
+                 */
+                break;
             }
         }
 
@@ -84,6 +84,46 @@ public abstract class AbstractOperationSetMultiUserChat
         }
     }
 
+    /**
+     * Implements
+     * {@link OperationSetMultiUserChat#getExistingChatRooms(String,
+     * ChatRoomDirectoryListener)} on top of
+     * {@link OperationSetMultiUserChat#getExistingChatRooms()} i.e. the chat
+     * rooms are retrieved all at once and filtered locally. Implementations
+     * which are able to retrieve the chat rooms page by page should override
+     * it.
+     *
+     * @param filter the string which the names of the chat rooms are to
+     * contain ignoring case or <tt>null</tt> to retrieve all chat rooms
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names of the chat rooms to
+     * @throws OperationFailedException if we failed retrieving the chat rooms
+     * from the server
+     * @throws OperationNotSupportedException if the server does not support
+     * multi-user chat
+     */
+    public void getExistingChatRooms(
+            String filter,
+            ChatRoomDirectoryListener listener)
+        throws OperationFailedException, OperationNotSupportedException
+    {
+        List<String> chatRoomNames = getExistingChatRooms();
+
+        if (chatRoomNames != null)
+        {
+            ChatRoomDirectory.Listing listing
+                = new ChatRoomDirectory().createListing(
+                        this,
+                        null,
+                        filter,
+                        listener);
+
+            for (String chatRoomName : chatRoomNames)
+                listing.add(chatRoomName);
+            listing.complete();
+        }
+    }
+
     /**
      * Fires a new <code>ChatRoomInvitationReceivedEvent</code> to all currently
      * registered <code>ChatRoomInvitationListener</code>s to notify about the
@@ -31,6 +31,21 @@ public class AccountManager
      */
     private static final long LOAD_STORED_ACCOUNTS_TIMEOUT = 30000;
 
+    /**
+     * The maximum number of <tt>Thread</tt>s which load the stored accounts of
+     * different <tt>ProtocolProviderFactory</tt> services in parallel.
+     */
+    private static final int MAX_LOAD_STORED_ACCOUNTS_THREADS
+        = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The name of the package the <tt>ProtocolProviderFactory</tt>
+     * implementations usually are in and under which the properties of their
+     * stored accounts are indexed by {@link #propertyIndex}.
+     */
+    private static final String PROTOCOL_IMPL_PACKAGE
+        = "net.java.sip.communicator.impl.protocol";
+
     /**
      * The <tt>BundleContext</tt> this service is registered in.
      */
@@ -51,11 +66,18 @@ public class AccountManager
         new LinkedList<ProtocolProviderFactory>();
 
     /**
-     * The <tt>Thread</tt> loading the stored accounts of the
+     * The <tt>Thread</tt>s loading the stored accounts of the
      * <tt>ProtocolProviderFactory</tt> services waiting in
      * {@link #loadStoredAccountsQueue}.
      */
-    private Thread loadStoredAccountsThread;
+    private final List<Thread> loadStoredAccountsThreads
+        = new ArrayList<Thread>(MAX_LOAD_STORED_ACCOUNTS_THREADS);
+
+    /**
+     * The number of {@link #loadStoredAccountsThreads} which are waiting for
+     * a <tt>ProtocolProviderFactory</tt> to be queued.
+     */
+    private int idleLoadStoredAccountsThreadCount = 0;
 
     /**
      * The <tt>Logger</tt> used by this <tt>AccountManagerImpl</tt> instance for
@@ -63,6 +85,13 @@ public class AccountManager
      */
     private final Logger logger = Logger.getLogger(AccountManager.class);
 
+    /**
+     * The index of the names of the configuration properties of the stored
+     * accounts which spares scanning all configuration properties for each
+     * stored account. Created when first needed.
+     */
+    private AccountPropertyIndex propertyIndex;
+
     /**
      * The list of <tt>AccountID</tt>s, corresponding to all stored accounts.
      */
@@ -108,6 +137,19 @@ public class AccountManager
         }
     }
 
+    /**
+     * Releases the resources acquired by this instance throughout its lifetime
+     * such as its listener for the configuration property changes.
+     */
+    synchronized void dispose()
+    {
+        if (propertyIndex != null)
+        {
+            propertyIndex.dispose();
+            propertyIndex = null;
+        }
+    }
+
     /**
      * Loads the accounts stored for a specific
      * <tt>ProtocolProviderFactory</tt>.
@@ -120,13 +162,14 @@ public class AccountManager
         ConfigurationService configService
             = ProtocolProviderActivator.getConfigurationService();
         String factoryPackage = getFactoryImplPackageName(factory);
-        List<String> accounts
-            = configService.getPropertyNamesByPrefix(factoryPackage, true);
+        List<String> accounts = getPropertyNamesByPrefix(factoryPackage, true);
 
         if (logger.isDebugEnabled())
             logger.debug("Discovered " + accounts.size() + " stored "
                     + factoryPackage + " accounts");
 
+        CredentialsStorageService credentialsStorage = null;
+
         for (Iterator<String> storedAccountIter = accounts.iterator();
                 storedAccountIter.hasNext();)
         {
@@ -142,14 +185,18 @@ public class AccountManager
                 logger.debug("Loading account " + storedAccount);
 
             List<String> storedAccountProperties =
-                configService.getPropertyNamesByPrefix(storedAccount, false);
+                getPropertyNamesByPrefix(storedAccount, false);
             Map<String, String> accountProperties =
                 new Hashtable<String, String>();
             boolean disabled = false;
-            CredentialsStorageService credentialsStorage
-                = ServiceUtils.getService(
-                        bundleContext,
-                        CredentialsStorageService.class);
+
+            if (credentialsStorage == null)
+            {
+                credentialsStorage
+                    = ServiceUtils.getService(
+                            bundleContext,
+                            CredentialsStorageService.class);
+            }
 
             for (Iterator<String> storedAccountPropertyIter
                         = storedAccountProperties.iterator();
@@ -254,6 +301,58 @@ public class AccountManager
         return className.substring(0, className.lastIndexOf('.'));
     }
 
+    /**
+     * Gets the index of the names of the configuration properties of the
+     * stored accounts and builds it if it has not been built yet.
+     *
+     * @return the index of the names of the configuration properties of the
+     * stored accounts
+     */
+    private synchronized AccountPropertyIndex getPropertyIndex()
+    {
+        if (propertyIndex == null)
+        {
+            propertyIndex
+                = new AccountPropertyIndex(
+                        ProtocolProviderActivator.getConfigurationService(),
+                        PROTOCOL_IMPL_PACKAGE);
+        }
+        return propertyIndex;
+    }
+
+    /**
+     * Returns the names of the configuration properties under a specific
+     * property name using {@link #propertyIndex} if it indexes them or the
+     * <tt>ConfigurationService</tt> otherwise.
+     *
+     * @param prefix the name of the property to return the properties under
+     * @param exactPrefixMatch <tt>true</tt> to return only the immediate
+     * children of <tt>prefix</tt>; <tt>false</tt> to return all of its
+     * descendants
+     * @return a <tt>List</tt> of the names of the properties under
+     * <tt>prefix</tt>
+     */
+    private List<String> getPropertyNamesByPrefix(
+            String prefix,
+            boolean exactPrefixMatch)
+    {
+        AccountPropertyIndex propertyIndex = getPropertyIndex();
+
+        if (propertyIndex.covers(prefix))
+        {
+            return
+                propertyIndex.getPropertyNamesByPrefix(
+                        prefix,
+                        exactPrefixMatch);
+        }
+        else
+        {
+            return
+                ProtocolProviderActivator.getConfigurationService()
+                    .getPropertyNamesByPrefix(prefix, exactPrefixMatch);
+        }
+    }
+
     /**
      * Check for stored accounts for the supplied <tt>protocolName</tt>.
      * @param protocolName the protocol name to check for
@@ -316,8 +415,7 @@ public class AccountManager
 
                 String factoryPackage = getFactoryImplPackageName(factory);
                 List<String> storedAccounts
-                    = configService
-                        .getPropertyNamesByPrefix(factoryPackage, true);
+                    = getPropertyNamesByPrefix(factoryPackage, true);
 
                 /* Ignore the hidden accounts. */
                 for (Iterator<String> storedAccountIter =
@@ -325,8 +423,7 @@ public class AccountManager
                 {
                     String storedAccount = storedAccountIter.next();
                     List<String> storedAccountProperties =
-                        configService.getPropertyNamesByPrefix(storedAccount,
-                            true);
+                        getPropertyNamesByPrefix(storedAccount, true);
                     boolean hidden = false;
                     String accountUserID = null;
 
@@ -419,8 +516,7 @@ public class AccountManager
 
                 String factoryPackage = getFactoryImplPackageName(factory);
                 List<String> storedAccountsProps
-                    = configService
-                        .getPropertyNamesByPrefix(factoryPackage, true);
+                    = getPropertyNamesByPrefix(factoryPackage, true);
 
                 for (Iterator<String> storedAccountIter =
                          storedAccountsProps.iterator();
@@ -491,9 +587,17 @@ public class AccountManager
             loadStoredAccountsQueue.add(factory);
             loadStoredAccountsQueue.notifyAll();
 
-            if (loadStoredAccountsThread == null)
+            /*
+             * The stored accounts of different factories are independent of
+             * each other so they are loaded in parallel. Start a new Thread
+             * only if the running ones are all busy.
+             */
+            if ((loadStoredAccountsThreads.size()
+                        < MAX_LOAD_STORED_ACCOUNTS_THREADS)
+                    && (loadStoredAccountsQueue.size()
+                            > idleLoadStoredAccountsThreadCount))
             {
-                loadStoredAccountsThread = new Thread()
+                Thread loadStoredAccountsThread = new Thread()
                 {
                     @Override
                     public void run()
@@ -504,6 +608,7 @@ public class AccountManager
                 loadStoredAccountsThread.setDaemon(true);
                 loadStoredAccountsThread
                     .setName("AccountManager.loadStoredAccounts");
+                loadStoredAccountsThreads.add(loadStoredAccountsThread);
                 loadStoredAccountsThread.start();
             }
         }
@@ -522,7 +627,7 @@ public class AccountManager
     }
 
     /**
-     * Running in {@link #loadStoredAccountsThread}, loads the stored accounts
+     * Running in {@link #loadStoredAccountsThreads}, loads the stored accounts
      * of the <tt>ProtocolProviderFactory</tt> services waiting in
      * {@link #loadStoredAccountsQueue}
      */
@@ -548,6 +653,7 @@ public class AccountManager
                          * times and not handing a spurious wakeup will just
                          * cause such an inconvenience.
                          */
+                        idleLoadStoredAccountsThreadCount++;
                         try
                         {
                             loadStoredAccountsQueue
@@ -563,6 +669,10 @@ public class AccountManager
                             interrupted = true;
                             break;
                         }
+                        finally
+                        {
+                            idleLoadStoredAccountsThreadCount--;
+                        }
                         factory = loadStoredAccountsQueue.poll();
                     }
                     if (factory != null)
@@ -594,9 +704,9 @@ public class AccountManager
                 {
                     if (!interrupted && (loadStoredAccountsQueue.size() <= 0))
                     {
-                        if (loadStoredAccountsThread == Thread.currentThread())
+                        if (loadStoredAccountsThreads.remove(
+                                Thread.currentThread()))
                         {
-                            loadStoredAccountsThread = null;
                             loadStoredAccountsQueue.notifyAll();
                         }
                         break;
@@ -783,8 +893,8 @@ public class AccountManager
         String factoryPackage = getFactoryImplPackageName(factory);
 
         // First check if such accountID already exists in the configuration.
-        List<String> storedAccounts =
-            configurationService.getPropertyNamesByPrefix(factoryPackage, true);
+        List<String> storedAccounts
+            = getPropertyNamesByPrefix(factoryPackage, true);
         String accountNodeName = null;
 
         for (Iterator<String> storedAccountIter = storedAccounts.iterator();
@@ -856,8 +966,7 @@ public class AccountManager
                     ConfigurationService.class);
         //first retrieve all accounts that we've registered
         List<String> storedAccounts
-            = configurationService.getPropertyNamesByPrefix(
-                factoryPackage, true);
+            = getPropertyNamesByPrefix(factoryPackage, true);
 
         //find an account with the corresponding id.
         for (String accountRootPropertyName : storedAccounts)
@@ -875,8 +984,7 @@ public class AccountManager
                 //retrieve the names of all properties registered for the
                 //current account.
                 List<String> accountPropertyNames
-                    = configurationService.getPropertyNamesByPrefix(
-                        accountRootPropertyName, false);
+                    = getPropertyNamesByPrefix(accountRootPropertyName, false);
 
                 //set all account properties to null in order to remove them.
                 for (String propName : accountPropertyNames)
@@ -900,13 +1008,13 @@ public class AccountManager
         synchronized (loadStoredAccountsQueue)
         {
             /*
-             * Wait for the Thread which loads the stored account to complete so
-             * that we can be sure later on that it will not load a stored
+             * Wait for the Threads which load the stored accounts to complete
+             * so that we can be sure later on that they will not load a stored
              * account while we are deleting it or another one for that matter.
              */
             boolean interrupted = false;
 
-            while (loadStoredAccountsThread != null)
+            while (!loadStoredAccountsThreads.isEmpty())
                 try
                 {
                     loadStoredAccountsQueue.wait(LOAD_STORED_ACCOUNTS_TIMEOUT);
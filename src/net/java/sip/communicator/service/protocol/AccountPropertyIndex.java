@@ -0,0 +1,159 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.beans.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Keeps the names of the configuration properties under a specific root
+ * (e.g. the package of the protocol implementations) sorted so that the
+ * stored accounts and their properties may be looked up without scanning all
+ * configuration properties for every lookup. The index is built in a single
+ * pass over the configuration and is then kept up to date by listening to the
+ * property changes of the <tt>ConfigurationService</tt>.
+ *
+ * @see AccountManager
+ */
+class AccountPropertyIndex
+    implements PropertyChangeListener
+{
+    /**
+     * The <tt>ConfigurationService</tt> the property names of which are
+     * indexed.
+     */
+    private final ConfigurationService configService;
+
+    /**
+     * The sorted names of the configuration properties under {@link #root}.
+     */
+    private final NavigableSet<String> names
+        = new ConcurrentSkipListSet<String>();
+
+    /**
+     * The name of the property under which the indexed properties are.
+     */
+    private final String root;
+
+    /**
+     * {@link #root} followed by a dot with which the names of the indexed
+     * properties start.
+     */
+    private final String rootPrefix;
+
+    /**
+     * Initializes a new <tt>AccountPropertyIndex</tt> which indexes the names
+     * of the properties of a specific <tt>ConfigurationService</tt> under a
+     * specific root.
+     *
+     * @param configService the <tt>ConfigurationService</tt> the property names
+     * of which are to be indexed
+     * @param root the name of the property under which the properties to be
+     * indexed are
+     */
+    AccountPropertyIndex(ConfigurationService configService, String root)
+    {
+        this.configService = configService;
+        this.root = root;
+        rootPrefix = root + ".";
+
+        /*
+         * Listen before reading the property names so that no change is lost
+         * while the index is being built.
+         */
+        configService.addPropertyChangeListener(this);
+        names.addAll(configService.getPropertyNamesByPrefix(root, false));
+    }
+
+    /**
+     * Determines whether the properties under a specific property name are
+     * indexed by this instance.
+     *
+     * @param prefix the name of the property to check
+     * @return <tt>true</tt> if the properties under <tt>prefix</tt> are
+     * indexed by this instance; otherwise, <tt>false</tt>
+     */
+    boolean covers(String prefix)
+    {
+        return prefix.equals(root) || prefix.startsWith(rootPrefix);
+    }
+
+    /**
+     * Stops listening to the property changes of the
+     * <tt>ConfigurationService</tt> and clears this index.
+     */
+    void dispose()
+    {
+        configService.removePropertyChangeListener(this);
+        names.clear();
+    }
+
+    /**
+     * Returns the names of the indexed properties under a specific property
+     * name. Unlike {@link ConfigurationService#getPropertyNamesByPrefix(String,
+     * boolean)}, only the properties the names of which start with
+     * <tt>prefix</tt> followed by a dot are returned.
+     *
+     * @param prefix the name of the property to return the properties under
+     * @param exactPrefixMatch <tt>true</tt> to return only the immediate
+     * children of <tt>prefix</tt>; <tt>false</tt> to return all of its
+     * descendants
+     * @return a <tt>List</tt> of the names of the properties under
+     * <tt>prefix</tt>
+     */
+    List<String> getPropertyNamesByPrefix(
+            String prefix,
+            boolean exactPrefixMatch)
+    {
+        /*
+         * The character which follows the dot is the slash so all names which
+         * start with the prefix followed by a dot are in the subset below.
+         */
+        SortedSet<String> descendants
+            = names.subSet(prefix + ".", prefix + "/");
+        List<String> result = new ArrayList<String>();
+
+        if (exactPrefixMatch)
+        {
+            int childIndex = prefix.length() + 1;
+
+            for (String name : descendants)
+                if (name.indexOf('.', childIndex) == -1)
+                    result.add(name);
+        }
+        else
+            result.addAll(descendants);
+        return result;
+    }
+
+    /**
+     * Updates this index when a property under {@link #root} is set or
+     * removed.
+     *
+     * @param evt the <tt>PropertyChangeEvent</tt> which describes the change
+     */
+    public void propertyChange(PropertyChangeEvent evt)
+    {
+        String name = evt.getPropertyName();
+
+        if ((name == null) || !name.startsWith(rootPrefix))
+            return;
+
+        /*
+         * The value of a property in the configuration may differ from the
+         * new value in the event, e.g. when a property is removed from the
+         * configuration but there is a default value for it.
+         */
+        if (configService.getProperty(name) == null)
+            names.remove(name);
+        else
+            names.add(name);
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * Helps the implementations of {@link OperationSetMultiUserChat} to deliver
+ * the names of the chat rooms found on a server page by page and caches the
+ * complete lists of chat rooms per server for {@link #CACHE_TTL}
+ * milliseconds so that the servers with many chat rooms (e.g. the large IRC
+ * networks) are not asked to list all of them again and again.
+ */
+public class ChatRoomDirectory
+{
+    /**
+     * The milliseconds for which a complete list of the chat rooms on a server
+     * is cached.
+     */
+    public static final long CACHE_TTL = 10 * 60 * 1000;
+
+    /**
+     * The maximum number of chat room names delivered in a
+     * <tt>ChatRoomDirectoryEvent</tt>.
+     */
+    public static final int PAGE_SIZE = 250;
+
+    /**
+     * The complete lists of chat rooms mapped by server.
+     */
+    private final Map<String, CacheEntry> cache
+        = new HashMap<String, CacheEntry>();
+
+    /**
+     * Removes all cached lists of chat rooms e.g. when the connection to the
+     * server has been closed.
+     */
+    public void clear()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Starts a listing of the chat rooms on a specific server. The names
+     * added to the listing which match <tt>filter</tt> are delivered to
+     * <tt>listener</tt> page by page and, if <tt>server</tt> is not
+     * <tt>null</tt> and the listing is completed, all the added names are
+     * cached as the list of the chat rooms on <tt>server</tt>.
+     *
+     * @param source the <tt>OperationSetMultiUserChat</tt> which lists the
+     * chat rooms
+     * @param server the server the chat rooms of which are listed or
+     * <tt>null</tt> if the listing is not to be cached e.g. because the server
+     * has filtered it already
+     * @param filter the string which the names of the delivered chat rooms are
+     * to contain or <tt>null</tt> to deliver all of them
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names to
+     * @return the new <tt>Listing</tt>
+     */
+    public Listing createListing(
+            OperationSetMultiUserChat source,
+            String server,
+            String filter,
+            ChatRoomDirectoryListener listener)
+    {
+        return new Listing(source, this, server, filter, listener);
+    }
+
+    /**
+     * Delivers the cached list of the chat rooms on a specific server.
+     *
+     * @param source the <tt>OperationSetMultiUserChat</tt> which lists the
+     * chat rooms
+     * @param server the server the chat rooms of which are to be delivered
+     * @param filter the string which the names of the delivered chat rooms are
+     * to contain or <tt>null</tt> to deliver all of them
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names to
+     * @return <tt>true</tt> if a list of the chat rooms on <tt>server</tt> has
+     * been cached within the last {@link #CACHE_TTL} milliseconds and has been
+     * delivered; otherwise, <tt>false</tt>
+     */
+    public boolean deliverCached(
+            OperationSetMultiUserChat source,
+            String server,
+            String filter,
+            ChatRoomDirectoryListener listener)
+    {
+        List<String> chatRoomNames;
+
+        synchronized (cache)
+        {
+            CacheEntry entry = cache.get(server);
+
+            if (entry == null)
+                return false;
+            if (System.currentTimeMillis() - entry.timestamp > CACHE_TTL)
+            {
+                cache.remove(server);
+                return false;
+            }
+            chatRoomNames = entry.chatRoomNames;
+        }
+
+        Listing listing = new Listing(source, null, null, filter, listener);
+
+        for (String chatRoomName : chatRoomNames)
+            listing.add(chatRoomName);
+        listing.complete();
+        return true;
+    }
+
+    /**
+     * Determines whether a specific chat room name matches a specific filter.
+     *
+     * @param chatRoomName the chat room name to check
+     * @param filter the lower-case filter or <tt>null</tt>
+     * @return <tt>true</tt> if <tt>filter</tt> is <tt>null</tt> or
+     * <tt>chatRoomName</tt> contains it ignoring case; otherwise,
+     * <tt>false</tt>
+     */
+    private static boolean matches(String chatRoomName, String filter)
+    {
+        return
+            (filter == null)
+                || chatRoomName.toLowerCase().contains(filter);
+    }
+
+    /**
+     * A complete list of the chat rooms on a server and the time at which it
+     * has been retrieved.
+     */
+    private static class CacheEntry
+    {
+        /**
+         * The names of the chat rooms.
+         */
+        final List<String> chatRoomNames;
+
+        /**
+         * The time in milliseconds at which {@link #chatRoomNames} has been
+         * retrieved.
+         */
+        final long timestamp = System.currentTimeMillis();
+
+        /**
+         * Initializes a new <tt>CacheEntry</tt>.
+         *
+         * @param chatRoomNames the names of the chat rooms
+         */
+        CacheEntry(List<String> chatRoomNames)
+        {
+            this.chatRoomNames = chatRoomNames;
+        }
+    }
+
+    /**
+     * A single listing of the chat rooms on a server. The names are added by
+     * a single thread (e.g. the one which reads the replies of the server)
+     * while another thread may wait for the listing to be completed.
+     */
+    public static class Listing
+    {
+        /**
+         * Whether this listing has been canceled.
+         */
+        private volatile boolean canceled = false;
+
+        /**
+         * The names of all the chat rooms added to this listing if it is to be
+         * cached; otherwise, <tt>null</tt>.
+         */
+        private final List<String> chatRoomNames;
+
+        /**
+         * Whether this listing has been completed.
+         */
+        private boolean completed = false;
+
+        /**
+         * The <tt>ChatRoomDirectory</tt> to cache this listing in or
+         * <tt>null</tt>.
+         */
+        private final ChatRoomDirectory directory;
+
+        /**
+         * The lower-case string which the names of the delivered chat rooms are
+         * to contain or <tt>null</tt>.
+         */
+        private final String filter;
+
+        /**
+         * The time in milliseconds at which a name has last been added to this
+         * listing or at which it has been created.
+         */
+        private volatile long lastActivityTime = System.currentTimeMillis();
+
+        /**
+         * The <tt>ChatRoomDirectoryListener</tt> to deliver the names to.
+         */
+        private final ChatRoomDirectoryListener listener;
+
+        /**
+         * The names which match {@link #filter} and have not been delivered
+         * yet.
+         */
+        private List<String> page = new ArrayList<String>();
+
+        /**
+         * The server the chat rooms of which are listed or <tt>null</tt>.
+         */
+        private final String server;
+
+        /**
+         * The <tt>OperationSetMultiUserChat</tt> which lists the chat rooms.
+         */
+        private final OperationSetMultiUserChat source;
+
+        /**
+         * Initializes a new <tt>Listing</tt>.
+         *
+         * @param source the <tt>OperationSetMultiUserChat</tt> which lists the
+         * chat rooms
+         * @param directory the <tt>ChatRoomDirectory</tt> to cache the listing
+         * in or <tt>null</tt>
+         * @param server the server the chat rooms of which are listed or
+         * <tt>null</tt> if the listing is not to be cached
+         * @param filter the string which the names of the delivered chat rooms
+         * are to contain or <tt>null</tt>
+         * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+         * names to
+         */
+        private Listing(
+                OperationSetMultiUserChat source,
+                ChatRoomDirectory directory,
+                String server,
+                String filter,
+                ChatRoomDirectoryListener listener)
+        {
+            this.source = source;
+            this.directory = (server == null) ? null : directory;
+            this.server = server;
+            this.filter
+                = ((filter == null) || (filter.length() == 0))
+                    ? null
+                    : filter.toLowerCase();
+            this.listener = listener;
+
+            chatRoomNames
+                = (this.directory == null) ? null : new ArrayList<String>();
+        }
+
+        /**
+         * Adds the name of a chat room found on the server to this listing.
+         *
+         * @param chatRoomName the name of the chat room
+         */
+        public void add(String chatRoomName)
+        {
+            lastActivityTime = System.currentTimeMillis();
+            if (canceled)
+                return;
+
+            if (chatRoomNames != null)
+                chatRoomNames.add(chatRoomName);
+            if (matches(chatRoomName, filter))
+            {
+                page.add(chatRoomName);
+                if (page.size() >= PAGE_SIZE)
+                    deliverPage();
+            }
+        }
+
+        /**
+         * Waits for this listing to be completed for as long as names keep
+         * being added to it.
+         *
+         * @param timeout the maximum number of milliseconds to wait for a name
+         * to be added
+         * @return <tt>true</tt> if this listing has been completed and has not
+         * been canceled; <tt>false</tt> if it has been canceled or no name has
+         * been added to it for <tt>timeout</tt> milliseconds
+         * @throws InterruptedException if the current thread has been
+         * interrupted while waiting
+         */
+        public synchronized boolean await(long timeout)
+            throws InterruptedException
+        {
+            while (!completed)
+            {
+                long wait
+                    = lastActivityTime + timeout - System.currentTimeMillis();
+
+                if (wait <= 0)
+                    return false;
+                wait(wait);
+            }
+            return !canceled;
+        }
+
+        /**
+         * Cancels this listing: no more names are delivered and the listing is
+         * not cached. The threads waiting for it keep waiting until it is
+         * completed e.g. because the server has ended its reply.
+         */
+        public void cancel()
+        {
+            canceled = true;
+        }
+
+        /**
+         * Completes this listing: delivers the names which have not been
+         * delivered yet, caches the listing if it is to be cached and wakes
+         * up the threads waiting for it. Only wakes up the waiting threads
+         * if this listing has been canceled.
+         */
+        public void complete()
+        {
+            if (!canceled)
+            {
+                if (!page.isEmpty())
+                    deliverPage();
+                if (directory != null)
+                {
+                    synchronized (directory.cache)
+                    {
+                        directory.cache.put(
+                                server,
+                                new CacheEntry(chatRoomNames));
+                    }
+                }
+            }
+            synchronized (this)
+            {
+                completed = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Delivers the names in {@link #page} to {@link #listener}.
+         */
+        private void deliverPage()
+        {
+            List<String> page = this.page;
+
+            this.page = new ArrayList<String>();
+            listener.chatRoomsReceived(
+                    new ChatRoomDirectoryEvent(source, page));
+        }
+    }
+}
@@ -13,11 +13,24 @@ import java.util.*;
 public class OperationSetInstantMessageTransformImpl
     implements OperationSetInstantMessageTransform
 {
+    /**
+     * The empty array of <tt>TransformLayer</tt>s used when no layer is
+     * registered.
+     */
+    private static final TransformLayer[] NO_LAYERS = new TransformLayer[0];
+
     public final Map<Integer, Vector<TransformLayer>> transformLayers
         = new Hashtable<Integer, Vector<TransformLayer>>();
 
     private static final int defaultPriority = 1;
 
+    /**
+     * The snapshot of {@link #transformLayers} in the order in which the
+     * layers are to transform messages. Rebuilt whenever a layer is added or
+     * removed so that transforming a message neither locks nor allocates.
+     */
+    private volatile TransformLayer[] layers = NO_LAYERS;
+
     public void addTransformLayer(TransformLayer transformLayer)
     {
         this.addTransformLayer(defaultPriority, transformLayer);
@@ -32,6 +45,7 @@ public class OperationSetInstantMessageTransformImpl
                     new Vector<TransformLayer>());
 
             transformLayers.get(defaultPriority).add(transformLayer);
+            updateLayers();
         }
     }
 
@@ -59,7 +73,38 @@ public class OperationSetInstantMessageTransformImpl
             {
                 entry.getValue().remove(transformLayer);
             }
+            updateLayers();
         }
     }
 
+    /**
+     * Gets the registered <tt>TransformLayer</tt>s in the order in which they
+     * are to transform messages. The returned array must not be modified.
+     *
+     * @return the registered <tt>TransformLayer</tt>s in the order in which
+     * they are to transform messages
+     */
+    TransformLayer[] getTransformLayers()
+    {
+        return layers;
+    }
+
+    /**
+     * Rebuilds {@link #layers} from {@link #transformLayers} in the order of
+     * the priorities of the layers. Must be called with
+     * <tt>transformLayers</tt> locked.
+     */
+    private void updateLayers()
+    {
+        List<TransformLayer> layers = new ArrayList<TransformLayer>();
+
+        for (Integer priority : new TreeSet<Integer>(transformLayers.keySet()))
+            layers.addAll(transformLayers.get(priority));
+
+        this.layers
+            = layers.isEmpty()
+                ? NO_LAYERS
+                : layers.toArray(new TransformLayer[layers.size()]);
+    }
+
 }
@@ -36,6 +36,31 @@ public interface OperationSetMultiUserChat
     public List<String> getExistingChatRooms()
         throws OperationFailedException, OperationNotSupportedException;
 
+    /**
+     * Retrieves the chat rooms currently available on the server that this
+     * protocol provider is connected to the names of which contain a specific
+     * filter and delivers their names to a specific listener page by page as
+     * they are retrieved so that long lists of chat rooms may be shown
+     * incrementally. The filter is applied by the server where the protocol
+     * allows it. Recently retrieved lists may be served from a cache. Returns
+     * once all the chat rooms have been delivered or the calling thread has
+     * been interrupted.
+     *
+     * @param filter the string which the names of the chat rooms are to
+     * contain ignoring case or <tt>null</tt> to retrieve all chat rooms
+     * @param listener the <tt>ChatRoomDirectoryListener</tt> to deliver the
+     * names of the chat rooms to
+     *
+     * @throws OperationFailedException if we failed retrieving the chat rooms
+     * from the server.
+     * @throws OperationNotSupportedException if the server does not support
+     * multi-user chat
+     */
+    public void getExistingChatRooms(
+            String filter,
+            ChatRoomDirectoryListener listener)
+        throws OperationFailedException, OperationNotSupportedException;
+
     /**
      * Returns a list of the chat rooms that we have joined and are currently
      * active in.
@@ -190,6 +190,7 @@ public class ProtocolProviderActivator
         {
             accountManagerServiceRegistration.unregister();
             accountManagerServiceRegistration = null;
+            accountManager.dispose();
             accountManager = null;
         }
 
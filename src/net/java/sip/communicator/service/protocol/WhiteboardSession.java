@@ -247,4 +247,14 @@ public interface WhiteboardSession
      * @return all the WhiteboardObject supported by this WhiteboardSession.
      */
     public String[] getSupportedWhiteboardObjects();
+
+    /**
+     * Determines whether the participants are known to understand updates
+     * which only carry the points appended to a stroke, so that the stroke
+     * may be sent while it is drawn.
+     *
+     * @return <tt>true</tt> if strokes may be sent while they are drawn;
+     * <tt>false</tt> if they are to be sent once complete
+     */
+    public boolean isStrokeStreamingSupported();
 }
@@ -0,0 +1,70 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Delivers a page of the names of the chat rooms found on a server by
+ * {@link OperationSetMultiUserChat#getExistingChatRooms(String,
+ * ChatRoomDirectoryListener)}.
+ */
+public class ChatRoomDirectoryEvent
+    extends EventObject
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 0L;
+
+    /**
+     * The names of the chat rooms in this page.
+     */
+    private final List<String> chatRoomNames;
+
+    /**
+     * Initializes a new <tt>ChatRoomDirectoryEvent</tt> which delivers a page
+     * of chat room names.
+     *
+     * @param source the <tt>OperationSetMultiUserChat</tt> which has found the
+     * chat rooms
+     * @param chatRoomNames the names of the chat rooms in the page
+     */
+    public ChatRoomDirectoryEvent(
+            OperationSetMultiUserChat source,
+            List<String> chatRoomNames)
+    {
+        super(source);
+
+        this.chatRoomNames = Collections.unmodifiableList(chatRoomNames);
+    }
+
+    /**
+     * Returns the names of the chat rooms in this page.
+     *
+     * @return an unmodifiable <tt>List</tt> of the names of the chat rooms in
+     * this page
+     */
+    public List<String> getChatRoomNames()
+    {
+        return chatRoomNames;
+    }
+
+    /**
+     * Returns the <tt>OperationSetMultiUserChat</tt> which has found the chat
+     * rooms.
+     *
+     * @return the <tt>OperationSetMultiUserChat</tt> which has found the chat
+     * rooms
+     */
+    public OperationSetMultiUserChat getSourceOperationSet()
+    {
+        return (OperationSetMultiUserChat) getSource();
+    }
+}
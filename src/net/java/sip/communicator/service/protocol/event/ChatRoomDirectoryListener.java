@@ -0,0 +1,26 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+import java.util.*;
+
+/**
+ * Receives the names of the chat rooms found on a server page by page as they
+ * are retrieved so that long lists of chat rooms may be shown incrementally.
+ */
+public interface ChatRoomDirectoryListener
+    extends EventListener
+{
+    /**
+     * Called when a page of chat room names has been retrieved. May be called
+     * on any thread.
+     *
+     * @param evt the <tt>ChatRoomDirectoryEvent</tt> containing the names of
+     * the chat rooms in the page
+     */
+    public void chatRoomsReceived(ChatRoomDirectoryEvent evt);
+}
@@ -0,0 +1,171 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Dispatched to notify interested parties that the presence of many members
+ * of a chat room has changed in the same way at once, e.g. when the list of
+ * all members of a chat room is received upon joining it. Delivering a single
+ * event for all of the members allows a listener to process them together
+ * instead of one at a time.
+ */
+public class ChatRoomMemberBulkPresenceChangeEvent
+    extends EventObject
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 0L;
+
+    /**
+     * The type of this event. Values can be any of the MEMBER_XXX fields of
+     * <tt>ChatRoomMemberPresenceChangeEvent</tt>.
+     */
+    private final String eventType;
+
+    /**
+     * The chat room members that the event relates to.
+     */
+    private final List<ChatRoomMember> members;
+
+    /**
+     * An optional String indicating a possible reason as to why the event
+     * might have occurred.
+     */
+    private final String reason;
+
+    /**
+     * Creates a <tt>ChatRoomMemberBulkPresenceChangeEvent</tt> representing
+     * that the presence of a number of <tt>ChatRoomMember</tt>s has changed
+     * in the same way.
+     *
+     * @param sourceRoom the <tt>ChatRoom</tt> that produced this event
+     * @param members the <tt>ChatRoomMember</tt>s that this event is about
+     * @param eventType the event type; one of the MEMBER_XXX constants of
+     * <tt>ChatRoomMemberPresenceChangeEvent</tt>
+     * @param reason the reason explaining why this event might have occurred
+     */
+    public ChatRoomMemberBulkPresenceChangeEvent(
+            ChatRoom sourceRoom,
+            List<? extends ChatRoomMember> members,
+            String eventType,
+            String reason)
+    {
+        super(sourceRoom);
+
+        this.members
+            = Collections.unmodifiableList(
+                    new ArrayList<ChatRoomMember>(members));
+        this.eventType = eventType;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the chat room that produced this event.
+     *
+     * @return the <tt>ChatRoom</tt> that produced this event
+     */
+    public ChatRoom getChatRoom()
+    {
+        return (ChatRoom) getSource();
+    }
+
+    /**
+     * Returns the chat room members that this event is about.
+     *
+     * @return an unmodifiable list of the <tt>ChatRoomMember</tt>s that this
+     * event is about
+     */
+    public List<ChatRoomMember> getChatRoomMembers()
+    {
+        return members;
+    }
+
+    /**
+     * Returns the type of this event which could be one of the MEMBER_XXX
+     * member field values of <tt>ChatRoomMemberPresenceChangeEvent</tt>.
+     *
+     * @return one of the MEMBER_XXX member field values indicating the type
+     * of this event
+     */
+    public String getEventType()
+    {
+        return eventType;
+    }
+
+    /**
+     * A reason String indicating a human readable reason for this event.
+     *
+     * @return a human readable String containing the reason for this event,
+     * or null if no particular reason was specified.
+     */
+    public String getReason()
+    {
+        return reason;
+    }
+
+    /**
+     * Gets the indicator which determines whether this event has occurred
+     * with the well-known reason of listing all users in a <tt>ChatRoom</tt>.
+     *
+     * @return <tt>true</tt> if {@link #getReason()} returns a value of
+     * {@link ChatRoomMemberPresenceChangeEvent#REASON_USER_LIST}; otherwise,
+     * <tt>false</tt>
+     */
+    public boolean isReasonUserList()
+    {
+        return
+            ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST.equals(
+                    getReason());
+    }
+
+    /**
+     * Splits this event into a <tt>ChatRoomMemberPresenceChangeEvent</tt> per
+     * member for the listeners which do not process bulk events.
+     *
+     * @return a list of <tt>ChatRoomMemberPresenceChangeEvent</tt>s, one per
+     * member this event is about, in the order of the members
+     */
+    public List<ChatRoomMemberPresenceChangeEvent>
+        toMemberPresenceChangeEvents()
+    {
+        List<ChatRoomMemberPresenceChangeEvent> evts
+            = new ArrayList<ChatRoomMemberPresenceChangeEvent>(members.size());
+
+        for (ChatRoomMember member : members)
+        {
+            evts.add(
+                    new ChatRoomMemberPresenceChangeEvent(
+                            getChatRoom(),
+                            member,
+                            eventType,
+                            reason));
+        }
+        return evts;
+    }
+
+    /**
+     * Returns a String representation of this event.
+     *
+     * @return String representation of this event
+     */
+    @Override
+    public String toString()
+    {
+        return "ChatRoomMemberBulkPresenceChangeEvent[type="
+            + getEventType()
+            + " sourceRoom="
+            + getChatRoom().toString()
+            + " members="
+            + members.size()
+            + "]";
+    }
+}
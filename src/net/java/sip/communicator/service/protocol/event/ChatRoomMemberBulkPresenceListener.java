@@ -0,0 +1,31 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+/**
+ * A <tt>ChatRoomMemberPresenceListener</tt> which is also able to process
+ * the presence changes of many members of a chat room at once. A
+ * <tt>ChatRoom</tt> delivers a <tt>ChatRoomMemberBulkPresenceChangeEvent</tt>
+ * to the listeners implementing this interface and the equivalent
+ * <tt>ChatRoomMemberPresenceChangeEvent</tt>s, one per member, to the rest of
+ * its <tt>ChatRoomMemberPresenceListener</tt>s.
+ */
+public interface ChatRoomMemberBulkPresenceListener
+    extends ChatRoomMemberPresenceListener
+{
+    /**
+     * Called to notify interested parties that the presence of many members
+     * of a particular chat room has changed in the same way, e.g. when the
+     * list of all members of the chat room has been received.
+     *
+     * @param evt the <tt>ChatRoomMemberBulkPresenceChangeEvent</tt> instance
+     * containing the source chat room, the members and the type and the
+     * reason of the presence change
+     */
+    public void membersPresenceChanged(
+            ChatRoomMemberBulkPresenceChangeEvent evt);
+}
@@ -0,0 +1,472 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.neomedia.*;
+
+/**
+ * Samples the RTP/RTCP statistics of the <tt>MediaStream</tt>s of the peers of
+ * a <tt>Call</tt> at a fixed interval for the whole duration of the call
+ * without requiring any user interface to be displayed.
+ * <p>
+ * The samples of every stream are kept in a fixed-size ring buffer along with
+ * running averages and maximums so that the memory used by a collector does
+ * not grow with the duration of the call. When the collection is stopped, the
+ * samples are summarized and downsampled into a {@link CallQualityReport}.
+ * All collectors share a single daemon sampling thread.
+ */
+public class CallQualityCollector
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>CallQualityCollector</tt> class and
+     * its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(CallQualityCollector.class);
+
+    /**
+     * The name of the property which specifies the interval in milliseconds
+     * at which the statistics of the streams are sampled.
+     */
+    public static final String PNAME_SAMPLING_INTERVAL
+        = "net.java.sip.communicator.service.protocol.media"
+            + ".CALL_QUALITY_SAMPLING_INTERVAL";
+
+    /**
+     * The default interval in milliseconds at which the statistics of the
+     * streams are sampled.
+     */
+    public static final long DEFAULT_SAMPLING_INTERVAL = 5000;
+
+    /**
+     * The number of samples kept per stream. Older samples are overwritten
+     * but still contribute to the averages and maximums.
+     */
+    private static final int SAMPLE_CAPACITY = 720;
+
+    /**
+     * The <tt>MediaType</tt>s of the streams which are sampled.
+     */
+    private static final MediaType[] MEDIA_TYPES
+        = { MediaType.AUDIO, MediaType.VIDEO };
+
+    /**
+     * The number of collectors which are currently sampling.
+     */
+    private static int activeCollectors = 0;
+
+    /**
+     * The <tt>Timer</tt> shared by all collectors to sample their streams.
+     * Created when the first collector starts and cancelled when the last one
+     * stops.
+     */
+    private static Timer timer;
+
+    /**
+     * The <tt>Call</tt> whose streams are sampled.
+     */
+    private final Call call;
+
+    /**
+     * The interval in milliseconds at which the streams are sampled.
+     */
+    private final long samplingInterval;
+
+    /**
+     * The samples of the streams of {@link #call} mapped by the address of
+     * their peer and their <tt>MediaType</tt>.
+     */
+    private final Map<String, StreamSamples> streams
+        = new LinkedHashMap<String, StreamSamples>();
+
+    /**
+     * The <tt>TimerTask</tt> which samples the streams of {@link #call} or
+     * <tt>null</tt> if this collector is not started.
+     */
+    private TimerTask task;
+
+    /**
+     * Initializes a new <tt>CallQualityCollector</tt> which is to sample the
+     * streams of a specific <tt>Call</tt>.
+     *
+     * @param call the <tt>Call</tt> whose streams are to be sampled
+     */
+    public CallQualityCollector(Call call)
+    {
+        this.call = call;
+
+        long samplingInterval = DEFAULT_SAMPLING_INTERVAL;
+
+        try
+        {
+            samplingInterval
+                = ProtocolMediaActivator.getConfigurationService().getLong(
+                        PNAME_SAMPLING_INTERVAL,
+                        DEFAULT_SAMPLING_INTERVAL);
+        }
+        catch (RuntimeException rex)
+        {
+            // The protocol media bundle may not be started.
+        }
+        this.samplingInterval
+            = (samplingInterval > 0)
+                ? samplingInterval
+                : DEFAULT_SAMPLING_INTERVAL;
+    }
+
+    /**
+     * Gets the <tt>Call</tt> whose streams are sampled by this collector.
+     *
+     * @return the <tt>Call</tt> whose streams are sampled by this collector
+     */
+    public Call getCall()
+    {
+        return call;
+    }
+
+    /**
+     * Samples the statistics of all current streams of the peers of
+     * {@link #call}.
+     */
+    private synchronized void sample()
+    {
+        long now = System.currentTimeMillis();
+        Iterator<? extends CallPeer> peers = call.getCallPeers();
+
+        while (peers.hasNext())
+        {
+            CallPeer peer = peers.next();
+
+            if (!(peer instanceof MediaAwareCallPeer))
+                continue;
+
+            CallPeerMediaHandler<?> mediaHandler
+                = ((MediaAwareCallPeer<?, ?, ?>) peer).getMediaHandler();
+
+            if (mediaHandler == null)
+                continue;
+
+            for (MediaType mediaType : MEDIA_TYPES)
+            {
+                MediaStream stream = mediaHandler.getStream(mediaType);
+
+                if ((stream == null) || !stream.isStarted())
+                    continue;
+
+                MediaStreamStats stats = stream.getMediaStreamStats();
+
+                if (stats == null)
+                    continue;
+
+                String key = peer.getAddress() + "/" + mediaType;
+                StreamSamples samples = streams.get(key);
+
+                if (samples == null)
+                {
+                    samples
+                        = new StreamSamples(peer.getAddress(), mediaType, now);
+                    streams.put(key, samples);
+                }
+
+                try
+                {
+                    stats.updateStats();
+                    samples.add(stats, now);
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    if (logger.isDebugEnabled())
+                        logger.debug("Failed to sample stream " + key, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts sampling the streams of {@link #call}. Does nothing if this
+     * collector is already started.
+     */
+    public synchronized void start()
+    {
+        if (task != null)
+            return;
+
+        task
+            = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    sample();
+                }
+            };
+
+        synchronized (CallQualityCollector.class)
+        {
+            if (timer == null)
+                timer = new Timer(CallQualityCollector.class.getName(), true);
+            activeCollectors++;
+            timer.schedule(task, samplingInterval, samplingInterval);
+        }
+    }
+
+    /**
+     * Stops sampling the streams of {@link #call} and summarizes the samples
+     * collected so far.
+     *
+     * @return a <tt>CallQualityReport</tt> which summarizes the samples
+     * collected by this instance; <tt>null</tt> if no stream has been sampled
+     */
+    public synchronized CallQualityReport stop()
+    {
+        if (task != null)
+        {
+            task.cancel();
+            task = null;
+
+            synchronized (CallQualityCollector.class)
+            {
+                if ((--activeCollectors == 0) && (timer != null))
+                {
+                    timer.cancel();
+                    timer = null;
+                }
+            }
+
+            // The streams which are still running contribute a last sample.
+            sample();
+        }
+
+        if (streams.isEmpty())
+            return null;
+
+        List<CallQualityReport.StreamQuality> qualities
+            = new ArrayList<CallQualityReport.StreamQuality>(streams.size());
+
+        for (StreamSamples samples : streams.values())
+        {
+            if (samples.count > 0)
+                qualities.add(samples.toStreamQuality());
+        }
+        return
+            qualities.isEmpty()
+                ? null
+                : new CallQualityReport(qualities);
+    }
+
+    /**
+     * The ring buffer of samples of a single stream.
+     */
+    private static class StreamSamples
+    {
+        /**
+         * The address of the peer of the stream.
+         */
+        final String peerAddress;
+
+        /**
+         * The <tt>MediaType</tt> of the stream.
+         */
+        final MediaType mediaType;
+
+        /**
+         * The time in milliseconds of the first sample.
+         */
+        final long startTime;
+
+        /**
+         * The time in milliseconds of the last sample.
+         */
+        long endTime;
+
+        /**
+         * The values of the samples per metric in the order of
+         * {@link CallQualityReport.Metric#values()}. Unknown values are
+         * <tt>NaN</tt>.
+         */
+        final float[][] values;
+
+        /**
+         * The times in milliseconds of the samples in {@link #values}.
+         */
+        final long[] times = new long[SAMPLE_CAPACITY];
+
+        /**
+         * The index in {@link #values} of the next sample.
+         */
+        int next = 0;
+
+        /**
+         * The total number of samples taken including the overwritten ones.
+         */
+        int count = 0;
+
+        /**
+         * The sums of the known values per metric.
+         */
+        final double[] sums;
+
+        /**
+         * The numbers of the known values per metric.
+         */
+        final int[] knownCounts;
+
+        /**
+         * The maximums of the known values per metric.
+         */
+        final float[] maximums;
+
+        /**
+         * Initializes a new <tt>StreamSamples</tt> instance.
+         *
+         * @param peerAddress the address of the peer of the stream
+         * @param mediaType the <tt>MediaType</tt> of the stream
+         * @param startTime the time in milliseconds of the first sample
+         */
+        StreamSamples(String peerAddress, MediaType mediaType, long startTime)
+        {
+            int metricCount = CallQualityReport.Metric.values().length;
+
+            this.peerAddress = peerAddress;
+            this.mediaType = mediaType;
+            this.startTime = startTime;
+            values = new float[metricCount][SAMPLE_CAPACITY];
+            sums = new double[metricCount];
+            knownCounts = new int[metricCount];
+            maximums = new float[metricCount];
+        }
+
+        /**
+         * Adds a sample of the statistics of the stream.
+         *
+         * @param stats the updated statistics of the stream
+         * @param time the time in milliseconds of the sample
+         */
+        void add(MediaStreamStats stats, long time)
+        {
+            long rtt = stats.getRttMs();
+
+            set(CallQualityReport.Metric.DOWNLOAD_LOSS,
+                    (float) stats.getDownloadPercentLoss());
+            set(CallQualityReport.Metric.UPLOAD_LOSS,
+                    (float) stats.getUploadPercentLoss());
+            set(CallQualityReport.Metric.DOWNLOAD_JITTER,
+                    (float) stats.getDownloadJitterMs());
+            set(CallQualityReport.Metric.UPLOAD_JITTER,
+                    (float) stats.getUploadJitterMs());
+            set(CallQualityReport.Metric.RTT,
+                    (rtt < 0) ? Float.NaN : rtt);
+            set(CallQualityReport.Metric.DOWNLOAD_RATE,
+                    (float) stats.getDownloadRateKiloBitPerSec());
+            set(CallQualityReport.Metric.UPLOAD_RATE,
+                    (float) stats.getUploadRateKiloBitPerSec());
+
+            times[next] = time;
+            next = (next + 1) % SAMPLE_CAPACITY;
+            count++;
+            endTime = time;
+        }
+
+        /**
+         * Sets the value of a specific metric of the current sample and
+         * updates the aggregates of the metric.
+         *
+         * @param metric the metric to set the value of
+         * @param value the value of <tt>metric</tt>; <tt>NaN</tt> if unknown
+         */
+        private void set(CallQualityReport.Metric metric, float value)
+        {
+            int m = metric.ordinal();
+
+            if (Float.isInfinite(value) || (value < 0))
+                value = Float.NaN;
+            values[m][next] = value;
+            if (!Float.isNaN(value))
+            {
+                sums[m] += value;
+                if ((knownCounts[m] == 0) || (value > maximums[m]))
+                    maximums[m] = value;
+                knownCounts[m]++;
+            }
+        }
+
+        /**
+         * Summarizes the samples of the stream and downsamples the samples
+         * retained in the ring buffer.
+         *
+         * @return the <tt>StreamQuality</tt> of the stream
+         */
+        CallQualityReport.StreamQuality toStreamQuality()
+        {
+            int metricCount = values.length;
+            int retained = Math.min(count, SAMPLE_CAPACITY);
+            int first = (count > SAMPLE_CAPACITY) ? next : 0;
+            int points
+                = Math.min(retained, CallQualityReport.MAX_SERIES_POINTS);
+            float[] averages = new float[metricCount];
+            float[] maximums = new float[metricCount];
+            float[][] series = new float[metricCount][points];
+
+            for (int m = 0; m < metricCount; m++)
+            {
+                if (knownCounts[m] == 0)
+                {
+                    averages[m] = Float.NaN;
+                    maximums[m] = Float.NaN;
+                }
+                else
+                {
+                    averages[m] = (float) (sums[m] / knownCounts[m]);
+                    maximums[m] = this.maximums[m];
+                }
+
+                // Each point is the average of the known values of a bucket
+                // of consecutive samples.
+                for (int p = 0; p < points; p++)
+                {
+                    int from = (int) ((long) p * retained / points);
+                    int to = (int) ((long) (p + 1) * retained / points);
+                    double sum = 0;
+                    int known = 0;
+
+                    for (int s = from; s < to; s++)
+                    {
+                        float value
+                            = values[m][(first + s) % SAMPLE_CAPACITY];
+
+                        if (!Float.isNaN(value))
+                        {
+                            sum += value;
+                            known++;
+                        }
+                    }
+                    series[m][p]
+                        = (known == 0) ? Float.NaN : (float) (sum / known);
+                }
+            }
+
+            return
+                new CallQualityReport.StreamQuality(
+                        peerAddress,
+                        mediaType.toString(),
+                        count,
+                        startTime,
+                        times[first],
+                        endTime,
+                        averages,
+                        maximums,
+                        series);
+        }
+    }
+}
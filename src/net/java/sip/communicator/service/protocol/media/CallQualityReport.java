@@ -0,0 +1,604 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * The summary of the RTP/RTCP statistics of the streams of a call collected
+ * by a {@link CallQualityCollector}. For every stream the report contains the
+ * averages and the maximums of the sampled metrics and a series of at most
+ * {@link #MAX_SERIES_POINTS} points which shows how the metrics evolved during
+ * the call.
+ * <p>
+ * A report may be turned into a compact single-line string with
+ * {@link #encode()} e.g. to be stored in the call history and restored with
+ * {@link #decode(String)}. It may also be exported in CSV format with
+ * {@link #exportCsv(Writer)}.
+ */
+public class CallQualityReport
+{
+    /**
+     * The maximum number of points of the series of a stream.
+     */
+    public static final int MAX_SERIES_POINTS = 60;
+
+    /**
+     * The version of the format produced by {@link #encode()}.
+     */
+    private static final String ENCODING_VERSION = "1";
+
+    /**
+     * The qualities of the streams of the call.
+     */
+    private final List<StreamQuality> streams;
+
+    /**
+     * Initializes a new <tt>CallQualityReport</tt> instance.
+     *
+     * @param streams the qualities of the streams of the call
+     */
+    public CallQualityReport(List<StreamQuality> streams)
+    {
+        this.streams
+            = Collections.unmodifiableList(
+                    new ArrayList<StreamQuality>(streams));
+    }
+
+    /**
+     * Restores a <tt>CallQualityReport</tt> from the string produced by
+     * {@link #encode()}.
+     *
+     * @param s the string produced by <tt>encode()</tt>
+     * @return the <tt>CallQualityReport</tt> encoded in <tt>s</tt> or
+     * <tt>null</tt> if <tt>s</tt> is empty or is not a valid encoding
+     */
+    public static CallQualityReport decode(String s)
+    {
+        if ((s == null) || (s.length() == 0))
+            return null;
+
+        String[] encodedStreams = s.split(";", -1);
+
+        if (!ENCODING_VERSION.equals(encodedStreams[0]))
+            return null;
+
+        List<StreamQuality> streams = new ArrayList<StreamQuality>();
+
+        try
+        {
+            for (int i = 1; i < encodedStreams.length; i++)
+                streams.add(StreamQuality.decode(encodedStreams[i]));
+        }
+        catch (RuntimeException rex)
+        {
+            return null;
+        }
+        return new CallQualityReport(streams);
+    }
+
+    /**
+     * Decodes a list of values produced by {@link #encodeValues(StringBuilder,
+     * float[])}.
+     *
+     * @param s the encoded list of values which is never empty because an
+     * empty string encodes a single unknown value
+     * @return the values encoded in <tt>s</tt>
+     */
+    private static float[] decodeValues(String s)
+    {
+        String[] encodedValues = s.split(",", -1);
+        float[] values = new float[encodedValues.length];
+
+        for (int i = 0; i < encodedValues.length; i++)
+        {
+            values[i]
+                = (encodedValues[i].length() == 0)
+                    ? Float.NaN
+                    : Float.parseFloat(encodedValues[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Encodes this report into a compact single-line string which may be
+     * restored with {@link #decode(String)}.
+     *
+     * @return the encoding of this report
+     */
+    public String encode()
+    {
+        StringBuilder s = new StringBuilder(ENCODING_VERSION);
+
+        for (StreamQuality stream : streams)
+        {
+            s.append(';');
+            stream.encode(s);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Appends a value to a <tt>StringBuilder</tt> with a precision of two
+     * decimals. Unknown values are encoded as the empty string.
+     *
+     * @param s the <tt>StringBuilder</tt> to append to
+     * @param value the value to append
+     */
+    private static void encodeValue(StringBuilder s, float value)
+    {
+        if (Float.isNaN(value))
+            return;
+
+        long hundredths = Math.round(value * 100.0);
+
+        if (hundredths % 100 == 0)
+            s.append(hundredths / 100);
+        else
+            s.append(hundredths / 100.0);
+    }
+
+    /**
+     * Appends a list of values separated by commas to a
+     * <tt>StringBuilder</tt>.
+     *
+     * @param s the <tt>StringBuilder</tt> to append to
+     * @param values the values to append
+     */
+    private static void encodeValues(StringBuilder s, float[] values)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+                s.append(',');
+            encodeValue(s, values[i]);
+        }
+    }
+
+    /**
+     * Writes the series of all streams of this report in CSV format. The
+     * first line holds the names of the columns and every following line
+     * holds a point of the series of a stream.
+     *
+     * @param writer the <tt>Writer</tt> to write to
+     * @throws IOException if writing to <tt>writer</tt> fails
+     */
+    public void exportCsv(Writer writer)
+        throws IOException
+    {
+        StringBuilder s = new StringBuilder("peer,mediaType,time");
+
+        for (Metric metric : Metric.values())
+            s.append(',').append(metric.getName());
+        s.append("\r\n");
+
+        for (StreamQuality stream : streams)
+        {
+            String peerAddress = stream.getPeerAddress();
+
+            if (peerAddress == null)
+                peerAddress = "";
+            peerAddress = '"' + peerAddress.replace("\"", "\"\"") + '"';
+
+            for (int p = 0; p < stream.getSeriesLength(); p++)
+            {
+                s.append(peerAddress)
+                    .append(',')
+                    .append(stream.getMediaType())
+                    .append(',')
+                    .append(stream.getSeriesTime(p));
+                for (Metric metric : Metric.values())
+                {
+                    s.append(',');
+                    encodeValue(s, stream.series[metric.ordinal()][p]);
+                }
+                s.append("\r\n");
+            }
+
+            writer.write(s.toString());
+            s.setLength(0);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Gets the qualities of the streams of the call.
+     *
+     * @return an unmodifiable list of the qualities of the streams of the call
+     */
+    public List<StreamQuality> getStreams()
+    {
+        return streams;
+    }
+
+    /**
+     * Gets the quality of the stream of a specific peer and media type.
+     *
+     * @param peerAddress the address of the peer of the stream
+     * @param mediaType the media type of the stream e.g. <tt>audio</tt>
+     * @return the quality of the stream of <tt>peerAddress</tt> with
+     * <tt>mediaType</tt> or <tt>null</tt> if this report does not have such
+     * a stream
+     */
+    public StreamQuality getStream(String peerAddress, String mediaType)
+    {
+        for (StreamQuality stream : streams)
+        {
+            if (stream.getMediaType().equals(mediaType)
+                    && ((peerAddress == null)
+                            ? (stream.getPeerAddress() == null)
+                            : peerAddress.equals(stream.getPeerAddress())))
+                return stream;
+        }
+        return null;
+    }
+
+    /**
+     * The metrics sampled for every stream.
+     */
+    public enum Metric
+    {
+        /**
+         * The percent of the received packets which were lost.
+         */
+        DOWNLOAD_LOSS("downloadLoss"),
+
+        /**
+         * The percent of the sent packets which were lost as reported by the
+         * remote peer.
+         */
+        UPLOAD_LOSS("uploadLoss"),
+
+        /**
+         * The jitter of the received packets in milliseconds.
+         */
+        DOWNLOAD_JITTER("downloadJitter"),
+
+        /**
+         * The jitter of the sent packets in milliseconds as reported by the
+         * remote peer.
+         */
+        UPLOAD_JITTER("uploadJitter"),
+
+        /**
+         * The round trip time in milliseconds.
+         */
+        RTT("rtt"),
+
+        /**
+         * The bitrate of the received stream in kilobits per second.
+         */
+        DOWNLOAD_RATE("downloadRate"),
+
+        /**
+         * The bitrate of the sent stream in kilobits per second.
+         */
+        UPLOAD_RATE("uploadRate");
+
+        /**
+         * The name of this metric used in exports.
+         */
+        private final String name;
+
+        /**
+         * Initializes a new <tt>Metric</tt>.
+         *
+         * @param name the name of the metric used in exports
+         */
+        private Metric(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of this metric used in exports.
+         *
+         * @return the name of this metric used in exports
+         */
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * The summary of the statistics of a single stream.
+     */
+    public static class StreamQuality
+    {
+        /**
+         * The averages of the metrics in the order of
+         * {@link Metric#values()}.
+         */
+        private final float[] averages;
+
+        /**
+         * The time in milliseconds of the last sample.
+         */
+        private final long endTime;
+
+        /**
+         * The maximums of the metrics in the order of {@link Metric#values()}.
+         */
+        private final float[] maximums;
+
+        /**
+         * The media type of the stream.
+         */
+        private final String mediaType;
+
+        /**
+         * The address of the peer of the stream.
+         */
+        private final String peerAddress;
+
+        /**
+         * The number of samples taken.
+         */
+        private final int sampleCount;
+
+        /**
+         * The series of the metrics in the order of {@link Metric#values()}.
+         */
+        private final float[][] series;
+
+        /**
+         * The time in milliseconds of the first sample in the series.
+         */
+        private final long seriesStartTime;
+
+        /**
+         * The time in milliseconds of the first sample.
+         */
+        private final long startTime;
+
+        /**
+         * Initializes a new <tt>StreamQuality</tt> instance.
+         *
+         * @param peerAddress the address of the peer of the stream
+         * @param mediaType the media type of the stream
+         * @param sampleCount the number of samples taken
+         * @param startTime the time in milliseconds of the first sample
+         * @param seriesStartTime the time in milliseconds of the first sample
+         * in the series which may be later than <tt>startTime</tt> for long
+         * calls
+         * @param endTime the time in milliseconds of the last sample
+         * @param averages the averages of the metrics in the order of
+         * {@link Metric#values()}
+         * @param maximums the maximums of the metrics in the order of
+         * {@link Metric#values()}
+         * @param series the series of the metrics in the order of
+         * {@link Metric#values()}
+         */
+        public StreamQuality(
+                String peerAddress,
+                String mediaType,
+                int sampleCount,
+                long startTime,
+                long seriesStartTime,
+                long endTime,
+                float[] averages,
+                float[] maximums,
+                float[][] series)
+        {
+            int metricCount = Metric.values().length;
+
+            if ((averages.length != metricCount)
+                    || (maximums.length != metricCount)
+                    || (series.length != metricCount))
+                throw new IllegalArgumentException("metrics");
+
+            this.peerAddress = peerAddress;
+            this.mediaType = mediaType;
+            this.sampleCount = sampleCount;
+            this.startTime = startTime;
+            this.seriesStartTime = seriesStartTime;
+            this.endTime = endTime;
+            this.averages = averages;
+            this.maximums = maximums;
+            this.series = series;
+        }
+
+        /**
+         * Decodes a <tt>StreamQuality</tt> encoded by
+         * {@link #encode(StringBuilder)}.
+         *
+         * @param s the encoded <tt>StreamQuality</tt>
+         * @return the <tt>StreamQuality</tt> encoded in <tt>s</tt>
+         */
+        static StreamQuality decode(String s)
+        {
+            String[] fields = s.split("\\|", -1);
+
+            if (fields.length != 9)
+                throw new IllegalArgumentException(s);
+
+            String[] encodedSeries = fields[8].split(":", -1);
+            float[][] series = new float[encodedSeries.length][];
+
+            for (int m = 0; m < encodedSeries.length; m++)
+                series[m] = decodeValues(encodedSeries[m]);
+
+            String peerAddress;
+
+            try
+            {
+                peerAddress = URLDecoder.decode(fields[0], "UTF-8");
+            }
+            catch (UnsupportedEncodingException uee)
+            {
+                // UTF-8 is always supported.
+                throw new IllegalStateException(uee);
+            }
+
+            return
+                new StreamQuality(
+                        peerAddress,
+                        fields[1],
+                        Integer.parseInt(fields[2]),
+                        Long.parseLong(fields[3]),
+                        Long.parseLong(fields[4]),
+                        Long.parseLong(fields[5]),
+                        decodeValues(fields[6]),
+                        decodeValues(fields[7]),
+                        series);
+        }
+
+        /**
+         * Appends the encoding of this instance to a <tt>StringBuilder</tt>.
+         *
+         * @param s the <tt>StringBuilder</tt> to append to
+         */
+        void encode(StringBuilder s)
+        {
+            try
+            {
+                s.append(
+                        URLEncoder.encode(
+                                (peerAddress == null) ? "" : peerAddress,
+                                "UTF-8"));
+            }
+            catch (UnsupportedEncodingException uee)
+            {
+                // UTF-8 is always supported.
+                throw new IllegalStateException(uee);
+            }
+            s.append('|').append(mediaType)
+                .append('|').append(sampleCount)
+                .append('|').append(startTime)
+                .append('|').append(seriesStartTime)
+                .append('|').append(endTime)
+                .append('|');
+            encodeValues(s, averages);
+            s.append('|');
+            encodeValues(s, maximums);
+            s.append('|');
+            for (int m = 0; m < series.length; m++)
+            {
+                if (m > 0)
+                    s.append(':');
+                encodeValues(s, series[m]);
+            }
+        }
+
+        /**
+         * Gets the average of a specific metric over the whole call.
+         *
+         * @param metric the metric to get the average of
+         * @return the average of <tt>metric</tt> or <tt>NaN</tt> if it is
+         * unknown
+         */
+        public float getAverage(Metric metric)
+        {
+            return averages[metric.ordinal()];
+        }
+
+        /**
+         * Gets the time in milliseconds of the last sample.
+         *
+         * @return the time in milliseconds of the last sample
+         */
+        public long getEndTime()
+        {
+            return endTime;
+        }
+
+        /**
+         * Gets the maximum of a specific metric over the whole call.
+         *
+         * @param metric the metric to get the maximum of
+         * @return the maximum of <tt>metric</tt> or <tt>NaN</tt> if it is
+         * unknown
+         */
+        public float getMaximum(Metric metric)
+        {
+            return maximums[metric.ordinal()];
+        }
+
+        /**
+         * Gets the media type of the stream.
+         *
+         * @return the media type of the stream e.g. <tt>audio</tt>
+         */
+        public String getMediaType()
+        {
+            return mediaType;
+        }
+
+        /**
+         * Gets the address of the peer of the stream.
+         *
+         * @return the address of the peer of the stream
+         */
+        public String getPeerAddress()
+        {
+            return peerAddress;
+        }
+
+        /**
+         * Gets the number of samples taken.
+         *
+         * @return the number of samples taken
+         */
+        public int getSampleCount()
+        {
+            return sampleCount;
+        }
+
+        /**
+         * Gets the series of a specific metric. Every point of the series is
+         * the average of consecutive samples; unknown points are
+         * <tt>NaN</tt>.
+         *
+         * @param metric the metric to get the series of
+         * @return the series of <tt>metric</tt>
+         */
+        public float[] getSeries(Metric metric)
+        {
+            return series[metric.ordinal()].clone();
+        }
+
+        /**
+         * Gets the number of points of the series of this stream.
+         *
+         * @return the number of points of the series of this stream
+         */
+        public int getSeriesLength()
+        {
+            return series[0].length;
+        }
+
+        /**
+         * Gets the approximate time of a specific point of the series.
+         *
+         * @param point the index of the point
+         * @return the time in milliseconds of <tt>point</tt>
+         */
+        public long getSeriesTime(int point)
+        {
+            int length = getSeriesLength();
+
+            return
+                (length < 2)
+                    ? seriesStartTime
+                    : seriesStartTime
+                        + (endTime - seriesStartTime) * point / (length - 1);
+        }
+
+        /**
+         * Gets the time in milliseconds of the first sample.
+         *
+         * @return the time in milliseconds of the first sample
+         */
+        public long getStartTime()
+        {
+            return startTime;
+        }
+    }
+}
@@ -30,6 +30,14 @@ public class SipAccountID
      */
     public static final String XIVO_ENABLE = "XIVO_ENABLE";
 
+    /**
+     * The name of the property under which the user may specify the URI of
+     * the contact list on a resource list server (RFC 4662). When set, the
+     * presence of the whole contact list is obtained through a single
+     * subscription to that URI.
+     */
+    public static final String RLS_URI = "RLS_URI";
+
     /**
      * The name of the property under which the user may specify whether to use
      * original sip credentials for the contact list.
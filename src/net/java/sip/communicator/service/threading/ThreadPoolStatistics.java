@@ -0,0 +1,245 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.threading;
+
+/**
+ * A snapshot of the state and of the activity of a pool of the
+ * <tt>ThreadingService</tt>.
+ */
+public class ThreadPoolStatistics
+{
+    /**
+     * The name of the pool.
+     */
+    private final String name;
+
+    /**
+     * The maximum number of threads of the pool.
+     */
+    private final int maxThreads;
+
+    /**
+     * The current number of threads of the pool.
+     */
+    private final int poolSize;
+
+    /**
+     * The number of threads of the pool which are executing tasks.
+     */
+    private final int activeCount;
+
+    /**
+     * The number of tasks waiting in the queue of the pool.
+     */
+    private final int queueSize;
+
+    /**
+     * The largest number of tasks which have waited in the queue of the pool.
+     */
+    private final int maxQueueSize;
+
+    /**
+     * The number of tasks executed by the pool.
+     */
+    private final long completedTaskCount;
+
+    /**
+     * The number of tasks which the pool could not queue.
+     */
+    private final long rejectedTaskCount;
+
+    /**
+     * The average time in milliseconds spent by the tasks in the queue.
+     */
+    private final long averageQueueTime;
+
+    /**
+     * The longest time in milliseconds spent by a task in the queue.
+     */
+    private final long maxQueueTime;
+
+    /**
+     * The average time in milliseconds spent executing the tasks.
+     */
+    private final long averageExecutionTime;
+
+    /**
+     * Initializes a new <tt>ThreadPoolStatistics</tt>.
+     *
+     * @param name the name of the pool
+     * @param maxThreads the maximum number of threads of the pool
+     * @param poolSize the current number of threads of the pool
+     * @param activeCount the number of threads executing tasks
+     * @param queueSize the number of tasks waiting in the queue
+     * @param maxQueueSize the largest number of tasks which have waited in
+     * the queue
+     * @param completedTaskCount the number of tasks executed
+     * @param rejectedTaskCount the number of tasks which could not be queued
+     * @param averageQueueTime the average time in milliseconds spent by the
+     * tasks in the queue
+     * @param maxQueueTime the longest time in milliseconds spent by a task in
+     * the queue
+     * @param averageExecutionTime the average time in milliseconds spent
+     * executing the tasks
+     */
+    public ThreadPoolStatistics(
+            String name,
+            int maxThreads,
+            int poolSize,
+            int activeCount,
+            int queueSize,
+            int maxQueueSize,
+            long completedTaskCount,
+            long rejectedTaskCount,
+            long averageQueueTime,
+            long maxQueueTime,
+            long averageExecutionTime)
+    {
+        this.name = name;
+        this.maxThreads = maxThreads;
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.queueSize = queueSize;
+        this.maxQueueSize = maxQueueSize;
+        this.completedTaskCount = completedTaskCount;
+        this.rejectedTaskCount = rejectedTaskCount;
+        this.averageQueueTime = averageQueueTime;
+        this.maxQueueTime = maxQueueTime;
+        this.averageExecutionTime = averageExecutionTime;
+    }
+
+    /**
+     * Returns the name of the pool.
+     *
+     * @return the name of the pool
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the maximum number of threads of the pool.
+     *
+     * @return the maximum number of threads of the pool
+     */
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+    /**
+     * Returns the current number of threads of the pool.
+     *
+     * @return the current number of threads of the pool
+     */
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    /**
+     * Returns the number of threads of the pool which are executing tasks.
+     *
+     * @return the number of threads of the pool which are executing tasks
+     */
+    public int getActiveCount()
+    {
+        return activeCount;
+    }
+
+    /**
+     * Returns the number of tasks waiting in the queue of the pool.
+     *
+     * @return the number of tasks waiting in the queue of the pool
+     */
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    /**
+     * Returns the largest number of tasks which have waited in the queue of
+     * the pool.
+     *
+     * @return the largest number of tasks which have waited in the queue
+     */
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+    /**
+     * Returns the number of tasks executed by the pool.
+     *
+     * @return the number of tasks executed by the pool
+     */
+    public long getCompletedTaskCount()
+    {
+        return completedTaskCount;
+    }
+
+    /**
+     * Returns the number of tasks which the pool could not queue when they
+     * were submitted and which have been executed in overflow threads or have
+     * made the threads which submitted them wait for the queue.
+     *
+     * @return the number of tasks which the pool could not queue
+     */
+    public long getRejectedTaskCount()
+    {
+        return rejectedTaskCount;
+    }
+
+    /**
+     * Returns the average time spent by the tasks in the queue of the pool.
+     *
+     * @return the average time in milliseconds spent by the tasks in the queue
+     */
+    public long getAverageQueueTime()
+    {
+        return averageQueueTime;
+    }
+
+    /**
+     * Returns the longest time spent by a task in the queue of the pool.
+     *
+     * @return the longest time in milliseconds spent by a task in the queue
+     */
+    public long getMaxQueueTime()
+    {
+        return maxQueueTime;
+    }
+
+    /**
+     * Returns the average time spent executing the tasks of the pool.
+     *
+     * @return the average time in milliseconds spent executing the tasks
+     */
+    public long getAverageExecutionTime()
+    {
+        return averageExecutionTime;
+    }
+
+    /**
+     * Returns a <tt>String</tt> representation of these statistics.
+     *
+     * @return a <tt>String</tt> representation of these statistics
+     */
+    @Override
+    public String toString()
+    {
+        return name + ": threads " + poolSize + "/" + maxThreads
+            + ", active " + activeCount
+            + ", queued " + queueSize + " (max " + maxQueueSize + ")"
+            + ", completed " + completedTaskCount
+            + ", rejected " + rejectedTaskCount
+            + ", queue time avg " + averageQueueTime + " ms"
+            + " max " + maxQueueTime + " ms"
+            + ", execution time avg " + averageExecutionTime + " ms";
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.threading;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Provides named thread pools to be used instead of creating a new
+ * <tt>Thread</tt> for each background operation. Each pool serves a single
+ * purpose and runs a bounded number of threads, so bursts of operations (e.g.
+ * many accounts reconnecting at once or many incoming calls) are queued rather
+ * than creating an unbounded number of threads.
+ * <p>
+ * The number of threads and the capacity of the queue of a bounded pool are
+ * configured with the <tt>MAX_THREADS</tt> and <tt>QUEUE_CAPACITY</tt>
+ * properties under <tt>net.java.sip.communicator.impl.threading.</tt> followed
+ * by the name of the pool, e.g.
+ * <tt>net.java.sip.communicator.impl.threading.call.MAX_THREADS</tt>.
+ * </p>
+ */
+public interface ThreadingService
+{
+    /**
+     * The name of the pool which processes the signaling of calls, e.g.
+     * incoming session initiations and automatic answers.
+     */
+    public static final String CALL_POOL = "call";
+
+    /**
+     * The name of the pool which waits for the user to answer authorization
+     * requests. Its tasks may block for long so they are kept apart from the
+     * other ones and the pool is not bounded.
+     */
+    public static final String AUTHORIZATION_POOL = "authorization";
+
+    /**
+     * The name of the pool which executes the tasks which may block
+     * indefinitely, e.g. waiting for a message of the remote party of a call.
+     * The pool is not bounded so such tasks cannot starve each other.
+     */
+    public static final String BLOCKING_POOL = "blocking";
+
+    /**
+     * The name of the pool which loads contact lists and retrieves the
+     * details of contacts.
+     */
+    public static final String CONTACT_LIST_POOL = "contactList";
+
+    /**
+     * The name of the pool which performs the queries of contact sources.
+     */
+    public static final String CONTACT_QUERY_POOL = "contactQuery";
+
+    /**
+     * The name of the pool which registers accounts on behalf of the user.
+     */
+    public static final String REGISTRATION_POOL = "registration";
+
+    /**
+     * Executes a task in a specific pool. The task is queued if all the
+     * threads of the pool are busy. If the queue is full, the task is executed
+     * in one of a limited number of overflow threads or, once these are busy
+     * too, the calling thread waits until the queue has room for the task.
+     *
+     * @param poolName the name of the pool to execute <tt>task</tt> in
+     * @param task the task to execute
+     */
+    public void execute(String poolName, Runnable task);
+
+    /**
+     * Returns the <tt>ExecutorService</tt> of a specific pool, creating the
+     * pool if it does not exist yet. The returned <tt>ExecutorService</tt> is
+     * shared and must not be shut down.
+     *
+     * @param poolName the name of the pool
+     * @return the <tt>ExecutorService</tt> of the pool named
+     * <tt>poolName</tt>
+     */
+    public ExecutorService getExecutor(String poolName);
+
+    /**
+     * Returns the current statistics of all the pools.
+     *
+     * @return the current statistics of all the pools
+     */
+    public List<ThreadPoolStatistics> getStatistics();
+}
@@ -0,0 +1,518 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.util;
+
+import java.io.*;
+import java.util.logging.*;
+
+/**
+ * A <tt>Handler</tt> which formats and writes log records to the rotated log
+ * files of {@link FileHandler} in a background thread so that logging does
+ * not hold back the threads which log. The records are passed to the
+ * background thread through a bounded ring buffer. When the buffer is full,
+ * the logging thread either waits for room or the record is dropped
+ * depending on the configured overflow policy; records at
+ * <tt>Level.WARNING</tt> and above are never dropped.
+ * <p>
+ * The handler is configured through the following <tt>LogManager</tt>
+ * properties prefixed with the name of this class:
+ * <ul>
+ * <li><tt>level</tt> - the level of the handler, <tt>Level.ALL</tt> by
+ * default;</li>
+ * <li><tt>formatter</tt> - the name of the <tt>Formatter</tt> class,
+ * {@link ScLogFormatter} by default;</li>
+ * <li><tt>capacity</tt> - the maximum number of records waiting to be
+ * written, {@link #DEFAULT_CAPACITY} by default;</li>
+ * <li><tt>overflowPolicy</tt> - either <tt>block</tt> or <tt>drop</tt>,
+ * <tt>block</tt> by default.</li>
+ * </ul>
+ * The files, their size limit and count are configured with the properties of
+ * <tt>FileHandler</tt>.
+ */
+public class AsyncFileHandler
+    extends Handler
+{
+    /**
+     * The default maximum number of records waiting to be written.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The number of characters of formatted records after which they are
+     * written to {@link #target} in one go rather than one record at a time
+     * since <tt>FileHandler</tt> flushes the log file after each write.
+     */
+    private static final int MAX_WRITE_LENGTH = 64 * 1024;
+
+    /**
+     * The maximum number of records waiting to be written.
+     */
+    private final int capacity;
+
+    /**
+     * The indicator which determines whether this handler has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * The number of records waiting to be written.
+     */
+    private int count = 0;
+
+    /**
+     * The number of records dropped since the last report of dropped records
+     * has been written.
+     */
+    private int dropped = 0;
+
+    /**
+     * The indicator which determines whether the records below
+     * <tt>Level.WARNING</tt> are dropped when {@link #records} is full.
+     */
+    private final boolean dropOnOverflow;
+
+    /**
+     * The index in {@link #records} of the first record waiting to be
+     * written.
+     */
+    private int head = 0;
+
+    /**
+     * The line numbers that the calls which logged {@link #records} were made
+     * from, or <tt>-1</tt> if not known.
+     */
+    private final int[] lineNumbers;
+
+    /**
+     * The indicators which determine whether the source class and method of
+     * {@link #records} have been found by
+     * {@link ScLogFormatter#inferCaller(LogRecord)}.
+     */
+    private final boolean[] located;
+
+    /**
+     * The ring buffer of the records waiting to be written.
+     */
+    private final LogRecord[] records;
+
+    /**
+     * The <tt>FileHandler</tt> which writes the formatted records to the
+     * rotated log files.
+     */
+    private final FileHandler target;
+
+    /**
+     * The thread which formats and writes the records.
+     */
+    private final Thread writerThread;
+
+    /**
+     * The number of records which have been taken out of {@link #records}
+     * but are still being written.
+     */
+    private int writing = 0;
+
+    /**
+     * Initializes a new <tt>AsyncFileHandler</tt> configured by the
+     * <tt>LogManager</tt> properties.
+     *
+     * @throws IOException if the log files cannot be opened
+     */
+    public AsyncFileHandler()
+        throws IOException
+    {
+        String prefix = AsyncFileHandler.class.getName();
+        LogManager logManager = LogManager.getLogManager();
+
+        capacity = getIntProperty(prefix + ".capacity", DEFAULT_CAPACITY);
+        dropOnOverflow
+            = "drop".equalsIgnoreCase(
+                    logManager.getProperty(prefix + ".overflowPolicy"));
+
+        records = new LogRecord[capacity];
+        lineNumbers = new int[capacity];
+        located = new boolean[capacity];
+
+        setLevel(getLevelProperty(prefix + ".level", Level.ALL));
+        setFormatter(getFormatterProperty(prefix + ".formatter"));
+
+        target = new FileHandler();
+        target.setLevel(Level.ALL);
+        target.setFormatter(
+                new Formatter()
+                {
+                    /**
+                     * Returns the message of the record, which is the record
+                     * formatted by this handler already.
+                     */
+                    @Override
+                    public String format(LogRecord record)
+                    {
+                        return record.getMessage();
+                    }
+                });
+
+        writerThread
+            = new Thread(AsyncFileHandler.class.getName())
+            {
+                @Override
+                public void run()
+                {
+                    runInWriterThread();
+                }
+            };
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Writes the records waiting to be written, stops the background thread
+     * and closes the log files.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+
+        try
+        {
+            writerThread.join();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+    /**
+     * Waits for the records published so far to be written and flushes the
+     * log files.
+     */
+    @Override
+    public void flush()
+    {
+        synchronized (this)
+        {
+            boolean interrupted = false;
+
+            while (((count != 0) || (writing != 0)) && !closed)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        target.flush();
+    }
+
+    /**
+     * Formats a specific record with the <tt>Formatter</tt> of this handler.
+     *
+     * @param record the record to format
+     * @param located <tt>true</tt> if the caller of <tt>record</tt> has been
+     * found in the logging thread; otherwise, <tt>false</tt>
+     * @param lineNumber the line number that the call was made from or
+     * <tt>-1</tt>
+     * @return the formatted record
+     */
+    private String format(LogRecord record, boolean located, int lineNumber)
+    {
+        Formatter formatter = getFormatter();
+
+        if (formatter instanceof ScLogFormatter)
+        {
+            return
+                ((ScLogFormatter) formatter).format(
+                        record,
+                        located,
+                        lineNumber);
+        }
+        else
+            return formatter.format(record);
+    }
+
+    /**
+     * Creates the <tt>Formatter</tt> specified by a specific
+     * <tt>LogManager</tt> property.
+     *
+     * @param name the name of the property
+     * @return the specified <tt>Formatter</tt> or a new
+     * <tt>ScLogFormatter</tt> if the property is not set or invalid
+     */
+    private static Formatter getFormatterProperty(String name)
+    {
+        String className = LogManager.getLogManager().getProperty(name);
+
+        if (className != null)
+        {
+            try
+            {
+                return
+                    (Formatter)
+                        ClassLoader.getSystemClassLoader()
+                            .loadClass(className.trim())
+                                .newInstance();
+            }
+            catch (Exception ex)
+            {
+                // Fall back to the default.
+            }
+        }
+        return new ScLogFormatter();
+    }
+
+    /**
+     * Gets the value of a specific positive integer <tt>LogManager</tt>
+     * property.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value to return if the property is not set or
+     * invalid
+     * @return the value of the property
+     */
+    private static int getIntProperty(String name, int defaultValue)
+    {
+        String value = LogManager.getLogManager().getProperty(name);
+
+        if (value != null)
+        {
+            try
+            {
+                int intValue = Integer.parseInt(value.trim());
+
+                if (intValue > 0)
+                    return intValue;
+            }
+            catch (NumberFormatException nfe)
+            {
+                // Fall back to the default.
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets the value of a specific <tt>Level</tt> <tt>LogManager</tt>
+     * property.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value to return if the property is not set or
+     * invalid
+     * @return the value of the property
+     */
+    private static Level getLevelProperty(String name, Level defaultValue)
+    {
+        String value = LogManager.getLogManager().getProperty(name);
+
+        if (value != null)
+        {
+            try
+            {
+                return Level.parse(value.trim());
+            }
+            catch (IllegalArgumentException iae)
+            {
+                // Fall back to the default.
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Queues a specific record to be formatted and written by the background
+     * thread. If the caller location is to be logged, it is found here
+     * because the stack of the background thread does not contain it.
+     *
+     * @param record the record to be published
+     */
+    @Override
+    public void publish(LogRecord record)
+    {
+        if (!isLoggable(record))
+            return;
+
+        boolean located = ScLogFormatter.isCallerLocationEnabled();
+        int lineNumber = located ? ScLogFormatter.inferCaller(record) : -1;
+
+        synchronized (this)
+        {
+            boolean interrupted = false;
+
+            while ((count == capacity) && !closed)
+            {
+                if (dropOnOverflow
+                        && (record.getLevel().intValue()
+                                < Level.WARNING.intValue()))
+                {
+                    dropped++;
+                    return;
+                }
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+
+            if (closed)
+            {
+                /*
+                 * Records published after the handler has been closed, e.g.
+                 * during shutdown, are written in the logging thread.
+                 */
+                target.publish(
+                        new LogRecord(
+                                record.getLevel(),
+                                format(record, located, lineNumber)));
+                return;
+            }
+
+            int tail = (head + count) % capacity;
+
+            records[tail] = record;
+            lineNumbers[tail] = lineNumber;
+            this.located[tail] = located;
+            count++;
+            if (count == 1)
+                notifyAll();
+        }
+    }
+
+    /**
+     * Runs in {@link #writerThread} and formats and writes the published
+     * records until this handler is closed. The records which are waiting
+     * are taken out of the ring buffer all at once so that the logging
+     * threads are held back for as short as possible.
+     */
+    private void runInWriterThread()
+    {
+        LogRecord[] batch = new LogRecord[capacity];
+        StringBuilder text = new StringBuilder(MAX_WRITE_LENGTH);
+        int[] batchLineNumbers = new int[capacity];
+        boolean[] batchLocated = new boolean[capacity];
+
+        while (true)
+        {
+            int batchSize;
+            int dropped;
+
+            synchronized (this)
+            {
+                writing = 0;
+                if (count == 0)
+                    notifyAll();
+                while ((count == 0) && !closed)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                    }
+                }
+                if ((count == 0) && closed)
+                    break;
+
+                batchSize = count;
+                for (int i = 0; i < batchSize; i++)
+                {
+                    int index = (head + i) % capacity;
+
+                    batch[i] = records[index];
+                    batchLineNumbers[i] = lineNumbers[index];
+                    batchLocated[i] = located[index];
+                    records[index] = null;
+                }
+                head = (head + batchSize) % capacity;
+                count = 0;
+                writing = batchSize;
+                dropped = this.dropped;
+                this.dropped = 0;
+
+                // There is room in the ring buffer again.
+                notifyAll();
+            }
+
+            if (dropped != 0)
+            {
+                text.append("Dropped ").append(dropped)
+                    .append(" log records because the log could not be"
+                        + " written fast enough.")
+                    .append(System.getProperty("line.separator"));
+            }
+            for (int i = 0; i < batchSize; i++)
+            {
+                LogRecord record = batch[i];
+
+                batch[i] = null;
+                try
+                {
+                    text.append(
+                            format(
+                                    record,
+                                    batchLocated[i],
+                                    batchLineNumbers[i]));
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+
+                    reportError(null, (t instanceof Exception)
+                                        ? (Exception) t
+                                        : new Exception(t),
+                                ErrorManager.FORMAT_FAILURE);
+                }
+                if (text.length() >= MAX_WRITE_LENGTH)
+                    write(text);
+            }
+            write(text);
+        }
+
+        synchronized (this)
+        {
+            writing = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes specific formatted records to the log files and clears them.
+     *
+     * @param text the formatted records to be written
+     */
+    private void write(StringBuilder text)
+    {
+        if (text.length() == 0)
+            return;
+
+        target.publish(new LogRecord(Level.INFO, text.toString()));
+        text.setLength(0);
+        if (text.capacity() > 2 * MAX_WRITE_LENGTH)
+            text.trimToSize();
+    }
+}
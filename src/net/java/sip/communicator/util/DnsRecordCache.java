@@ -0,0 +1,556 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+
+import org.xbill.DNS.*;
+
+/**
+ * A cache of the DNS answers obtained by <tt>NetworkUtils</tt> shared by all
+ * the protocols. Answers are kept for the smallest TTL of their records,
+ * names which do not exist (or do not have records of the queried type) are
+ * kept for {@link #PNAME_NEGATIVE_CACHE_TTL} seconds and answers which failed
+ * (e.g. timed out) are not kept at all. The answers of names which were used
+ * while in the cache are refreshed in the background shortly before they
+ * expire so that registration refreshes and reconnects do not wait for the
+ * network. The cache sits above the default resolver so it is used whether
+ * that is the <tt>ParallelResolverImpl</tt> or the DNSSEC validating
+ * resolver; the latter only disables the background refreshes because a
+ * validation failure may require the user to be asked.
+ */
+public final class DnsRecordCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>DnsRecordCache</tt> class for
+     * logging output.
+     */
+    private static final Logger logger = Logger.getLogger(DnsRecordCache.class);
+
+    /**
+     * The name of the property which specifies the number of seconds a name
+     * which does not exist (or does not have records of the queried type) is
+     * cached.
+     */
+    public static final String PNAME_NEGATIVE_CACHE_TTL
+        = "net.java.sip.communicator.util.dns.NEGATIVE_CACHE_TTL";
+
+    /**
+     * The default number of seconds negative answers are cached.
+     */
+    public static final long PDEFAULT_NEGATIVE_CACHE_TTL = 60;
+
+    /**
+     * The maximum number of answers in the cache.
+     */
+    private static final int MAX_ENTRIES = 512;
+
+    /**
+     * The TTL in milliseconds under which answers are not refreshed in the
+     * background.
+     */
+    private static final long MIN_REFRESH_TTL = 10000;
+
+    /**
+     * The cached answers mapped by record type and name in least recently
+     * used order.
+     */
+    private static final Map<String, CacheEntry> entries
+        = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, CacheEntry> eldest)
+            {
+                if (size() > MAX_ENTRIES)
+                {
+                    eldest.getValue().cancelRefresh();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+    /**
+     * Whether the answers of the names in use are refreshed in the
+     * background.
+     */
+    private static boolean refreshEnabled = true;
+
+    /**
+     * The <tt>Timer</tt> which refreshes the answers in the background.
+     * Created on demand.
+     */
+    private static Timer timer;
+
+    /**
+     * Prevents the initialization of <tt>DnsRecordCache</tt> instances.
+     */
+    private DnsRecordCache()
+    {
+    }
+
+    /**
+     * Removes all the answers from the cache. Invoked when the DNS
+     * configuration changes (e.g. the network or the resolver changed) so
+     * that no answer obtained under the previous configuration is used.
+     */
+    public static void clear()
+    {
+        synchronized (entries)
+        {
+            for (CacheEntry entry : entries.values())
+                entry.cancelRefresh();
+            entries.clear();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the lookup statistics of the names currently in the
+     * cache.
+     *
+     * @return the lookup statistics of the names currently in the cache
+     */
+    public static List<LookupStatistics> getStatistics()
+    {
+        synchronized (entries)
+        {
+            List<LookupStatistics> statistics
+                = new ArrayList<LookupStatistics>(entries.size());
+
+            for (CacheEntry entry : entries.values())
+                statistics.add(new LookupStatistics(entry.statistics));
+            return statistics;
+        }
+    }
+
+    /**
+     * Enables or disables the refreshing of the answers of the names in use
+     * in the background.
+     *
+     * @param enabled <tt>true</tt> to refresh the answers in the background;
+     * <tt>false</tt>, otherwise
+     */
+    public static void setRefreshEnabled(boolean enabled)
+    {
+        synchronized (entries)
+        {
+            refreshEnabled = enabled;
+            if (!enabled)
+            {
+                for (CacheEntry entry : entries.values())
+                    entry.cancelRefresh();
+            }
+        }
+    }
+
+    /**
+     * Gets the records of a specific type of a specific name from the cache
+     * or, if the cache has no valid answer for them, from the default
+     * resolver.
+     *
+     * @param domain the name to resolve
+     * @param type the type of the records to resolve
+     * @param useCache <tt>false</tt> to bypass all caches e.g. when testing
+     * the DNS connectivity
+     * @return the records of type <tt>type</tt> of <tt>domain</tt> or
+     * <tt>null</tt> if there are none
+     * @throws TextParseException if <tt>domain</tt> is not a valid domain name
+     */
+    static Record[] lookup(String domain, int type, boolean useCache)
+        throws TextParseException
+    {
+        if (!useCache)
+        {
+            Lookup lookup = NetworkUtils.createLookup(domain, type);
+
+            lookup.setCache(null);
+            return lookup.run();
+        }
+
+        String key = Type.string(type) + ":" + domain.toLowerCase();
+
+        synchronized (entries)
+        {
+            CacheEntry entry = entries.get(key);
+
+            if ((entry != null)
+                    && (entry.expires > System.currentTimeMillis()))
+            {
+                entry.used = true;
+                entry.statistics.cacheHits++;
+                return (entry.records == null) ? null : entry.records.clone();
+            }
+        }
+
+        Record[] records = resolve(domain, type, key);
+
+        return (records == null) ? null : records.clone();
+    }
+
+    /**
+     * Resolves the records of a specific type of a specific name with the
+     * default resolver (bypassing the default cache of dnsjava whose TTLs
+     * this cache is to honor) and caches the answer.
+     *
+     * @param domain the name to resolve
+     * @param type the type of the records to resolve
+     * @param key the key of the answer in {@link #entries}
+     * @return the records of type <tt>type</tt> of <tt>domain</tt> or
+     * <tt>null</tt> if there are none
+     * @throws TextParseException if <tt>domain</tt> is not a valid domain name
+     */
+    private static Record[] resolve(String domain, int type, String key)
+        throws TextParseException
+    {
+        Lookup lookup = NetworkUtils.createLookup(domain, type);
+
+        lookup.setCache(null);
+
+        long startTime = System.nanoTime();
+        Record[] records = lookup.run();
+        long lookupTime = (System.nanoTime() - startTime) / 1000000L;
+        int result = lookup.getResult();
+        long ttl;
+
+        if (records != null)
+        {
+            ttl = Long.MAX_VALUE;
+            for (Record record : records)
+                ttl = Math.min(ttl, record.getTTL());
+            ttl *= 1000;
+        }
+        else if ((result == Lookup.HOST_NOT_FOUND)
+                || (result == Lookup.TYPE_NOT_FOUND))
+        {
+            ttl = getNegativeTTL();
+        }
+        else
+            ttl = 0;
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "DNS " + Type.string(type) + " lookup for " + domain
+                        + " took " + lookupTime + " ms: "
+                        + lookup.getErrorString() + ", cached for "
+                        + ttl + " ms");
+        }
+
+        synchronized (entries)
+        {
+            CacheEntry entry = entries.get(key);
+
+            if (entry == null)
+            {
+                entry = new CacheEntry(domain, type);
+                entries.put(key, entry);
+            }
+            entry.statistics.addLookup(lookupTime);
+
+            if (ttl > 0)
+            {
+                entry.records = records;
+                entry.expires = System.currentTimeMillis() + ttl;
+                entry.used = false;
+                scheduleRefresh(key, entry, ttl);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Gets the number of milliseconds negative answers are cached.
+     *
+     * @return the number of milliseconds negative answers are cached
+     */
+    private static long getNegativeTTL()
+    {
+        long ttl = PDEFAULT_NEGATIVE_CACHE_TTL;
+
+        if (UtilActivator.getConfigurationService() != null)
+        {
+            ttl
+                = UtilActivator.getConfigurationService().getLong(
+                        PNAME_NEGATIVE_CACHE_TTL,
+                        PDEFAULT_NEGATIVE_CACHE_TTL);
+        }
+        return ttl * 1000;
+    }
+
+    /**
+     * Schedules the refresh of a cached answer shortly before it expires.
+     * Must be invoked with {@link #entries} locked.
+     *
+     * @param key the key of the answer in {@link #entries}
+     * @param entry the answer to be refreshed
+     * @param ttl the number of milliseconds after which the answer expires
+     */
+    private static void scheduleRefresh(
+            final String key,
+            final CacheEntry entry,
+            long ttl)
+    {
+        entry.cancelRefresh();
+        if (!refreshEnabled || (ttl < MIN_REFRESH_TTL))
+            return;
+
+        if (timer == null)
+            timer = new Timer(DnsRecordCache.class.getName(), true);
+
+        entry.refreshTask
+            = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    refresh(key, entry, this);
+                }
+            };
+        timer.schedule(entry.refreshTask, ttl - ttl / 10);
+    }
+
+    /**
+     * Refreshes a cached answer which is about to expire if it has been used
+     * since it was obtained. Answers which have not been used are left to
+     * expire.
+     *
+     * @param key the key of the answer in {@link #entries}
+     * @param entry the answer to be refreshed
+     * @param task the <tt>TimerTask</tt> which is refreshing <tt>entry</tt>
+     */
+    private static void refresh(String key, CacheEntry entry, TimerTask task)
+    {
+        synchronized (entries)
+        {
+            if ((entries.get(key) != entry) || (entry.refreshTask != task))
+                return;
+            entry.refreshTask = null;
+            if (!entry.used || !refreshEnabled)
+                return;
+        }
+
+        try
+        {
+            resolve(entry.statistics.name, entry.statistics.type, key);
+        }
+        catch (Throwable t)
+        {
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+
+            // The cached answer remains valid until it expires.
+            logger.info(
+                    "Failed to refresh the DNS "
+                        + Type.string(entry.statistics.type) + " records of "
+                        + entry.statistics.name + ": " + t);
+        }
+    }
+
+    /**
+     * A cached answer.
+     */
+    private static class CacheEntry
+    {
+        /**
+         * The time in milliseconds at which this answer expires.
+         */
+        long expires;
+
+        /**
+         * The records of this answer; <tt>null</tt> for a negative answer.
+         */
+        Record[] records;
+
+        /**
+         * The <tt>TimerTask</tt> scheduled to refresh this answer.
+         */
+        TimerTask refreshTask;
+
+        /**
+         * The lookup statistics of the name and type of this answer.
+         */
+        final LookupStatistics statistics;
+
+        /**
+         * Whether this answer has been used since it was obtained.
+         */
+        boolean used;
+
+        /**
+         * Initializes a new <tt>CacheEntry</tt>.
+         *
+         * @param name the name the answer is for
+         * @param type the type of the records the answer is for
+         */
+        CacheEntry(String name, int type)
+        {
+            statistics = new LookupStatistics(name, type);
+        }
+
+        /**
+         * Cancels the scheduled refresh of this answer if any.
+         */
+        void cancelRefresh()
+        {
+            if (refreshTask != null)
+            {
+                refreshTask.cancel();
+                refreshTask = null;
+            }
+        }
+    }
+
+    /**
+     * The lookup statistics of the records of a specific type of a specific
+     * name.
+     */
+    public static class LookupStatistics
+    {
+        /**
+         * The number of answers served from the cache.
+         */
+        private long cacheHits;
+
+        /**
+         * The number of lookups made with the resolver.
+         */
+        private long lookups;
+
+        /**
+         * The longest lookup time in milliseconds.
+         */
+        private long maxLookupTime;
+
+        /**
+         * The name the statistics are for.
+         */
+        private final String name;
+
+        /**
+         * The total lookup time in milliseconds.
+         */
+        private long totalLookupTime;
+
+        /**
+         * The type of the records the statistics are for.
+         */
+        private final int type;
+
+        /**
+         * Initializes new empty <tt>LookupStatistics</tt>.
+         *
+         * @param name the name the statistics are for
+         * @param type the type of the records the statistics are for
+         */
+        private LookupStatistics(String name, int type)
+        {
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * Initializes a copy of specific <tt>LookupStatistics</tt>.
+         *
+         * @param statistics the <tt>LookupStatistics</tt> to copy
+         */
+        private LookupStatistics(LookupStatistics statistics)
+        {
+            this(statistics.name, statistics.type);
+            cacheHits = statistics.cacheHits;
+            lookups = statistics.lookups;
+            maxLookupTime = statistics.maxLookupTime;
+            totalLookupTime = statistics.totalLookupTime;
+        }
+
+        /**
+         * Records a lookup made with the resolver.
+         *
+         * @param lookupTime the time in milliseconds the lookup took
+         */
+        private void addLookup(long lookupTime)
+        {
+            lookups++;
+            totalLookupTime += lookupTime;
+            if (lookupTime > maxLookupTime)
+                maxLookupTime = lookupTime;
+        }
+
+        /**
+         * Gets the average lookup time in milliseconds.
+         *
+         * @return the average lookup time in milliseconds
+         */
+        public long getAverageLookupTime()
+        {
+            return (lookups == 0) ? 0 : (totalLookupTime / lookups);
+        }
+
+        /**
+         * Gets the number of answers served from the cache.
+         *
+         * @return the number of answers served from the cache
+         */
+        public long getCacheHitCount()
+        {
+            return cacheHits;
+        }
+
+        /**
+         * Gets the number of lookups made with the resolver.
+         *
+         * @return the number of lookups made with the resolver
+         */
+        public long getLookupCount()
+        {
+            return lookups;
+        }
+
+        /**
+         * Gets the longest lookup time in milliseconds.
+         *
+         * @return the longest lookup time in milliseconds
+         */
+        public long getMaxLookupTime()
+        {
+            return maxLookupTime;
+        }
+
+        /**
+         * Gets the name the statistics are for.
+         *
+         * @return the name the statistics are for
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Gets the type of the records the statistics are for e.g.
+         * <tt>"SRV"</tt>.
+         *
+         * @return the type of the records the statistics are for
+         */
+        public String getType()
+        {
+            return Type.string(type);
+        }
+
+        @Override
+        public String toString()
+        {
+            return
+                getType() + " " + name + ": lookups=" + lookups
+                    + ", cacheHits=" + cacheHits + ", avg="
+                    + getAverageLookupTime() + "ms, max=" + maxLookupTime
+                    + "ms";
+        }
+    }
+}
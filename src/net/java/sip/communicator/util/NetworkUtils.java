@@ -569,14 +569,9 @@ public class NetworkUtils
         Record[] records = null;
         try
         {
-            Lookup lookup = createLookup(domain, Type.SRV);
-            // Disables the DNS cache: i.e. useful when testing DNS
+            // Disabling the DNS cache is i.e. useful when testing DNS
             // connectivity.
-            if(!useDNSCache)
-            {
-                lookup.setCache(new Cache());
-            }
-            records = lookup.run();
+            records = DnsRecordCache.lookup(domain, Type.SRV, useDNSCache);
         }
         catch (TextParseException tpe)
         {
@@ -724,8 +719,7 @@ public class NetworkUtils
         Record[] records = null;
         try
         {
-            Lookup lookup = createLookup(domain, Type.NAPTR);
-            records = lookup.run();
+            records = DnsRecordCache.lookup(domain, Type.NAPTR, true);
         }
         catch (TextParseException tpe)
         {
@@ -946,21 +940,20 @@ public class NetworkUtils
 
         for(int i = 0; i < 2; i++)
         {
-            Lookup lookup;
+            Record[] records = null;
             try
             {
-                lookup = createLookup(domain, v6lookup ? Type.AAAA : Type.A);
+                records
+                    = DnsRecordCache.lookup(
+                            domain,
+                            v6lookup ? Type.AAAA : Type.A,
+                            true);
             }
             catch (TextParseException tpe)
             {
                 logger.error("Failed to parse domain <" + domain + ">", tpe);
                 throw new ParseException(tpe.getMessage(), 0);
             }
-            Record[] records = null;
-            try
-            {
-                records = lookup.run();
-            }
             catch(DnssecRuntimeException e)
             {
                 throw new DnssecException(e);
@@ -1035,8 +1028,7 @@ public class NetworkUtils
             //for starters we'd like to make sure that it works well enough
             //with SRV and NAPTR queries. We may then also adopt it for As
             //and AAAAs once it proves to be reliable (posted on: 2010-11-24)
-            Lookup lookup = createLookup(domain, Type.A);
-            records = lookup.run();
+            records = DnsRecordCache.lookup(domain, Type.A, true);
         }
         catch (TextParseException tpe)
         {
@@ -1109,8 +1101,7 @@ public class NetworkUtils
             //for starters we'd like to make sure that it works well enough
             //with SRV and NAPTR queries. We may then also adopt it for As
             //and AAAAs once it proves to be reliable (posted on: 2010-11-24)
-            Lookup lookup = createLookup(domain, Type.AAAA);
-            records = lookup.run();
+            records = DnsRecordCache.lookup(domain, Type.AAAA, true);
         }
         catch (TextParseException tpe)
         {
@@ -1265,7 +1256,7 @@ public class NetworkUtils
      *
      * @throws TextParseException if <tt>domain</tt> is not a valid domain name.
      */
-    private static Lookup createLookup(String domain, int type)
+    static Lookup createLookup(String domain, int type)
         throws TextParseException
     {
         // make domain name absolute if requested
@@ -1464,11 +1455,13 @@ public class NetworkUtils
     }
 
     /**
-     * Clears the default DNS cache.
+     * Clears the default DNS cache and the cache of the answers obtained
+     * through <tt>NetworkUtils</tt>.
      */
     public static void clearDefaultDNSCache()
     {
         Cache defaultCache = Lookup.getDefaultCache(DClass.IN);
         defaultCache.clearCache();
+        DnsRecordCache.clear();
     }
 }
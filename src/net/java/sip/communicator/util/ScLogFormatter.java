@@ -7,7 +7,6 @@
 package net.java.sip.communicator.util;
 
 import java.io.*;
-import java.text.*;
 import java.util.*;
 import java.util.logging.*;
 
@@ -24,9 +23,27 @@ public class ScLogFormatter
 {
     static long startTime = System.currentTimeMillis();
 
+    /**
+     * The name of the <tt>LogManager</tt> property which specifies whether
+     * the class, the method and the line number which made a log call are
+     * to be included in the log. Finding them requires the stack trace of the
+     * call so they are only included when the property is <tt>true</tt>.
+     */
+    public static final String CALLER_LOCATION_PNAME
+        = ScLogFormatter.class.getName() + ".callerLocation";
+
+    /**
+     * The value of {@link #CALLER_LOCATION_PNAME} or <tt>null</tt> if it has
+     * not been read yet.
+     */
+    private static Boolean callerLocation;
+
     private static String lineSeparator = System.getProperty("line.separator");
-    private static DecimalFormat twoDigFmt = new DecimalFormat("00");
-    private static DecimalFormat threeDigFmt = new DecimalFormat("000");
+
+    /**
+     * The time zone in which the time of the log records is printed.
+     */
+    private static final TimeZone timeZone = TimeZone.getDefault();
 
     /**
      * Format the given LogRecord.
@@ -34,52 +51,72 @@ public class ScLogFormatter
      * @return a formatted log record
      */
     @Override
-    public synchronized String format(LogRecord record)
+    public String format(LogRecord record)
     {
-        StringBuffer sb = new StringBuffer();
+        if (isCallerLocationEnabled())
+            return format(record, true, inferCaller(record));
+        else
+            return format(record, false, -1);
+    }
 
-        //current time
-        Calendar cal = Calendar.getInstance();
-        int hour = cal.get(Calendar.HOUR_OF_DAY);
-        int minutes = cal.get(Calendar.MINUTE);
-        int seconds = cal.get(Calendar.SECOND);
-        int millis = cal.get(Calendar.MILLISECOND);
+    /**
+     * Formats the given <tt>LogRecord</tt> whose caller, if it is to be
+     * included, has already been found. Does not lock and allocates nothing
+     * but the returned <tt>String</tt> and its builder unless the record
+     * carries a <tt>Throwable</tt>.
+     *
+     * @param record the log record to be formatted
+     * @param located <tt>true</tt> if the source class and method of
+     * <tt>record</tt> have been set by {@link #inferCaller(LogRecord)} and
+     * are to be included; otherwise, <tt>false</tt>
+     * @param lineNumber the line number that the call was made from or
+     * <tt>-1</tt> if it is not known
+     * @return a formatted log record
+     */
+    String format(LogRecord record, boolean located, int lineNumber)
+    {
+        StringBuilder sb = new StringBuilder(128);
 
-        sb.append(twoDigFmt.format(hour)).append(':');
-        sb.append(twoDigFmt.format(minutes)).append(':');
-        sb.append(twoDigFmt.format(seconds)).append('.');
-        sb.append(threeDigFmt.format(millis)).append(' ');
+        //time of the record
+        long millis = record.getMillis();
+        long time = millis + timeZone.getOffset(millis);
+        int millisOfDay = (int) (((time % 86400000L) + 86400000L) % 86400000L);
+
+        appendDigits(sb, millisOfDay / 3600000, 2).append(':');
+        appendDigits(sb, (millisOfDay / 60000) % 60, 2).append(':');
+        appendDigits(sb, (millisOfDay / 1000) % 60, 2).append('.');
+        appendDigits(sb, millisOfDay % 1000, 3).append(' ');
 
         //log level
         sb.append(record.getLevel().getLocalizedName());
         sb.append(": ");
 
         // Thread ID
-        sb.append("[" + record.getThreadID() + "] ");
+        sb.append('[').append(record.getThreadID()).append("] ");
 
         //caller method
-        int lineNumber = inferCaller(record);
         String loggerName = record.getLoggerName();
 
-        if(loggerName == null)
+        if(loggerName == null && located)
             loggerName = record.getSourceClassName();
 
-        if(loggerName.startsWith("net.java.sip.communicator."))
+        if(loggerName != null
+                && loggerName.startsWith("net.java.sip.communicator."))
         {
-            sb.append(loggerName.substring("net.java.sip.communicator."
-                                           .length()));
+            sb.append(loggerName, "net.java.sip.communicator.".length(),
+                    loggerName.length());
         }
         else
             sb.append(record.getLoggerName());
 
-        if (record.getSourceMethodName() != null)
+        if (located && record.getSourceMethodName() != null)
         {
             sb.append(".");
             sb.append(record.getSourceMethodName());
 
             //include the line number if we have it.
             if(lineNumber != -1)
-                sb.append("().").append(Integer.toString(lineNumber));
+                sb.append("().").append(lineNumber);
             else
                 sb.append("()");
         }
@@ -103,6 +140,54 @@ public class ScLogFormatter
         return sb.toString();
     }
 
+    /**
+     * Appends a specific non-negative number to a specific
+     * <tt>StringBuilder</tt> padded with leading zeros to a specific number
+     * of digits.
+     *
+     * @param sb the <tt>StringBuilder</tt> to append to
+     * @param value the non-negative number to append
+     * @param digits the minimum number of digits to append
+     * @return <tt>sb</tt>
+     */
+    private static StringBuilder appendDigits(
+            StringBuilder sb,
+            int value,
+            int digits)
+    {
+        for (int max = 10; (--digits > 0); max *= 10)
+        {
+            if (value < max)
+                sb.append('0');
+        }
+        return sb.append(value);
+    }
+
+    /**
+     * Determines whether the class, the method and the line number which
+     * made a log call are to be included in the log as specified by the
+     * {@link #CALLER_LOCATION_PNAME} property.
+     *
+     * @return <tt>true</tt> if the caller of a log call is to be included in
+     * the log; otherwise, <tt>false</tt>
+     */
+    static boolean isCallerLocationEnabled()
+    {
+        Boolean callerLocation = ScLogFormatter.callerLocation;
+
+        if (callerLocation == null)
+        {
+            String value
+                = LogManager.getLogManager().getProperty(
+                        CALLER_LOCATION_PNAME);
+
+            callerLocation
+                = ScLogFormatter.callerLocation
+                    = Boolean.valueOf(value);
+        }
+        return callerLocation;
+    }
+
     /**
      * Try to extract the name of the class and method that called the current
      * log statement.
@@ -111,7 +196,7 @@ public class ScLogFormatter
      *
      * @return the line number that the call was made from in the caller.
      */
-    private int inferCaller(LogRecord record)
+    static int inferCaller(LogRecord record)
     {
         // Get the stack trace.
         StackTraceElement stack[] = (new Throwable()).getStackTrace();
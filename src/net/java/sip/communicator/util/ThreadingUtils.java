@@ -0,0 +1,59 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.threading.*;
+
+/**
+ * Executes background tasks in the pools of the <tt>ThreadingService</tt>.
+ * A task is executed in a new <tt>Thread</tt> if the service is not available,
+ * e.g. while the application is starting or shutting down.
+ */
+public class ThreadingUtils
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ThreadingUtils</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ThreadingUtils.class);
+
+    /**
+     * Executes a task in a specific pool of the <tt>ThreadingService</tt>.
+     *
+     * @param poolName the name of the pool to execute <tt>task</tt> in, one of
+     * the <tt>*_POOL</tt> constants of <tt>ThreadingService</tt>
+     * @param task the task to execute
+     */
+    public static void execute(String poolName, Runnable task)
+    {
+        ThreadingService threadingService = UtilActivator.getThreadingService();
+
+        if (threadingService != null)
+        {
+            try
+            {
+                threadingService.execute(poolName, task);
+                return;
+            }
+            catch (RejectedExecutionException ree)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("The " + poolName + " pool is stopped.", ree);
+            }
+        }
+
+        new Thread(task, poolName).start();
+    }
+
+    /** Prevents the creation of <tt>ThreadingUtils</tt> instances. */
+    private ThreadingUtils()
+    {
+    }
+}
@@ -11,6 +11,7 @@ import java.util.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.resources.*;
+import net.java.sip.communicator.service.threading.*;
 
 import org.jitsi.service.configuration.*;
 import org.jitsi.service.fileaccess.*;
@@ -54,6 +55,8 @@ public class UtilActivator
 
     private static AlertUIService alertUIService;
 
+    private static ThreadingService threadingService;
+
     /**
      * Calls <tt>Thread.setUncaughtExceptionHandler()</tt>
      *
@@ -292,4 +295,22 @@ public class UtilActivator
         }
         return alertUIService;
     }
+
+    /**
+     * Returns the <tt>ThreadingService</tt> obtained from the bundle context.
+     *
+     * @return the <tt>ThreadingService</tt> obtained from the bundle context
+     * or <tt>null</tt> if it is not available
+     */
+    public static ThreadingService getThreadingService()
+    {
+        if (threadingService == null && bundleContext != null)
+        {
+            threadingService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        ThreadingService.class);
+        }
+        return threadingService;
+    }
 }
@@ -0,0 +1,331 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
+import org.jitsi.service.packetlogging.*;
+import org.osgi.framework.*;
+
+/**
+ * Benchmarks the packets per second which <tt>PacketLoggingServiceImpl</tt>
+ * saves when several threads log packets at the same time and checks that
+ * every packet it has queued is in the pcap file. The packets are SIP packets
+ * so that the threads wait for the file to be written rather than drop them.
+ * The service runs without an OSGi framework: its configuration has the
+ * default values except for the size limit of the file, which is disabled,
+ * and the file is created in a temporary directory.
+ */
+public class TestPacketLoggingService
+    extends TestCase
+{
+    /**
+     * The number of threads which log packets at the same time.
+     */
+    private static final int PRODUCERS = 4;
+
+    /**
+     * The number of packets each thread logs.
+     */
+    private static final int PACKETS = 100000;
+
+    /**
+     * The length of the logged packets, that of a typical RTP packet.
+     */
+    private static final int PACKET_LENGTH = 172;
+
+    /**
+     * The length of the global header of a pcap file.
+     */
+    private static final int PCAP_HEADER_LENGTH = 24;
+
+    /**
+     * The length of the record header, the fake ethernet header, the IPv4
+     * header and the UDP header which precede each packet in the file.
+     */
+    private static final int PCAP_RECORD_OVERHEAD = 16 + 14 + 20 + 8;
+
+    /**
+     * The activator which starts the service.
+     */
+    private PacketLoggingActivator activator;
+
+    /**
+     * The stub of the bundle context of the service.
+     */
+    private BundleContext bundleContext;
+
+    /**
+     * The directory in which the file is saved.
+     */
+    private File directory;
+
+    /**
+     * The service under test.
+     */
+    private PacketLoggingServiceImpl service;
+
+    /**
+     * Starts the service.
+     *
+     * @throws Exception if the service cannot be started
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        directory = File.createTempFile("packetlogging", "");
+        directory.delete();
+        directory.mkdir();
+
+        final Map<String, Object> services = new HashMap<String, Object>();
+
+        services.put(
+            ConfigurationService.class.getName(),
+            createConfigurationService());
+        services.put(
+            FileAccessService.class.getName(),
+            createFileAccessService());
+        bundleContext
+            = createStub(
+                    BundleContext.class,
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                        {
+                            String name = method.getName();
+
+                            if (name.equals("getServiceReference"))
+                            {
+                                return
+                                    createServiceReference((String) args[0]);
+                            }
+                            if (name.equals("getService"))
+                                return services.get(args[0].toString());
+                            if (name.equals("registerService"))
+                                service = (PacketLoggingServiceImpl) args[1];
+                            return null;
+                        }
+                    });
+
+        activator = new PacketLoggingActivator();
+        activator.start(bundleContext);
+    }
+
+    /**
+     * Stops the service and deletes its files.
+     *
+     * @throws Exception if the service cannot be stopped
+     */
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        activator.stop(bundleContext);
+        delete(directory);
+
+        super.tearDown();
+    }
+
+    /**
+     * Logs packets from several threads, checks that every packet which has
+     * been queued is saved once the service is stopped and prints the
+     * packets per second.
+     *
+     * @throws Exception if a thread fails or the test is interrupted
+     */
+    public void testThroughput()
+        throws Exception
+    {
+        assertNotNull("service not registered", service);
+
+        List<Thread> producers = new ArrayList<Thread>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < PRODUCERS; i++)
+        {
+            final int sourcePort = 5000 + i;
+            Thread producer
+                = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        byte[] content = new byte[PACKET_LENGTH];
+
+                        for (int j = 0; j < PACKETS; j++)
+                        {
+                            service.logPacket(
+                                    PacketLoggingService.ProtocolName.SIP,
+                                    new byte[] { 10, 0, 0, 1 }, sourcePort,
+                                    new byte[] { 10, 0, 0, 2 }, 6000,
+                                    PacketLoggingService.TransportName.UDP,
+                                    true,
+                                    content, 0, content.length);
+                        }
+                    }
+                };
+
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers)
+            producer.join();
+
+        long end = System.nanoTime();
+
+        activator.stop(bundleContext);
+
+        long logged = service.getLoggedPacketCount();
+        long dropped = service.getDroppedPacketCount();
+        File file
+            = new File(
+                    directory,
+                    PacketLoggingActivator.LOGGING_DIR_NAME
+                        + File.separator
+                        + "jitsi0.pcap");
+
+        assertEquals(PRODUCERS * PACKETS, logged + dropped);
+        assertEquals(
+            PCAP_HEADER_LENGTH
+                + logged * (PCAP_RECORD_OVERHEAD + PACKET_LENGTH),
+            file.length());
+
+        System.out.println(
+                PRODUCERS + " threads: "
+                    + (PRODUCERS * PACKETS * 1000000000L / (end - start))
+                    + " packets/s, " + logged + " saved, "
+                    + dropped + " dropped");
+    }
+
+    /**
+     * Creates a stub of the configuration of the service which has the
+     * default values except for the size limit of the file, which is
+     * disabled.
+     *
+     * @return the new stub
+     */
+    private static ConfigurationService createConfigurationService()
+    {
+        return
+            createStub(
+                ConfigurationService.class,
+                new InvocationHandler()
+                {
+                    public Object invoke(
+                            Object proxy,
+                            Method method,
+                            Object[] args)
+                    {
+                        if (PacketLoggingConfiguration
+                                .PACKET_LOGGING_FILE_SIZE_PROPERTY_NAME
+                                    .equals(args[0]))
+                        {
+                            return 0L;
+                        }
+                        return args[1];
+                    }
+                });
+    }
+
+    /**
+     * Creates a stub of the <tt>FileAccessService</tt> which creates the
+     * files of the service in {@link #directory}.
+     *
+     * @return the new stub
+     */
+    private FileAccessService createFileAccessService()
+    {
+        return
+            createStub(
+                FileAccessService.class,
+                new InvocationHandler()
+                {
+                    public Object invoke(
+                            Object proxy,
+                            Method method,
+                            Object[] args)
+                    {
+                        File file = new File(directory, (String) args[0]);
+
+                        file.getParentFile().mkdirs();
+                        return file;
+                    }
+                });
+    }
+
+    /**
+     * Creates a stub of the reference to a service the string form of which
+     * is the name of the service.
+     *
+     * @param name the name of the service
+     * @return the new stub
+     */
+    private static ServiceReference createServiceReference(final String name)
+    {
+        return
+            createStub(
+                ServiceReference.class,
+                new InvocationHandler()
+                {
+                    public Object invoke(
+                            Object proxy,
+                            Method method,
+                            Object[] args)
+                    {
+                        return
+                            method.getName().equals("toString") ? name : null;
+                    }
+                });
+    }
+
+    /**
+     * Creates a stub of an interface.
+     *
+     * @param type the interface to implement
+     * @param handler the handler of the invocations of the methods of the
+     * stub
+     * @return the new implementation of <tt>type</tt>
+     */
+    private static <T> T createStub(Class<T> type, InvocationHandler handler)
+    {
+        return
+            type.cast(
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] { type },
+                        handler));
+    }
+
+    /**
+     * Deletes a file or a directory with its contents.
+     *
+     * @param file the file or directory to delete
+     */
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+
+        if (children != null)
+        {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+}
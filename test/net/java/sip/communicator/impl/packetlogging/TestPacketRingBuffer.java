@@ -0,0 +1,319 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import org.jitsi.service.packetlogging.*;
+
+/**
+ * Tests that <tt>PacketRingBuffer</tt> hands the packets of several
+ * producers over to its consumer intact and in order, drops packets
+ * according to its policy when it is full and benchmarks how many packets
+ * per second pass through it.
+ */
+public class TestPacketRingBuffer
+    extends TestCase
+{
+    /**
+     * The number of threads which log packets at the same time.
+     */
+    private static final int PRODUCERS = 4;
+
+    /**
+     * The number of packets each producer logs.
+     */
+    private static final int PACKETS = 250000;
+
+    /**
+     * The length of the logged packets, that of a typical RTP packet.
+     */
+    private static final int PACKET_LENGTH = 172;
+
+    /**
+     * The source address of the logged packets.
+     */
+    private static final byte[] SOURCE_ADDRESS = { 10, 0, 0, 1 };
+
+    /**
+     * The destination address of the logged packets.
+     */
+    private static final byte[] DESTINATION_ADDRESS = { 10, 0, 0, 2 };
+
+    /**
+     * Tests that every packet which several producers log while the queue
+     * is full most of the time is consumed once, intact and in the order
+     * in which its producer has logged it.
+     *
+     * @throws Exception if a producer fails or the test is interrupted
+     */
+    public void testProducersAndConsumer()
+        throws Exception
+    {
+        PacketRingBuffer queue = new PacketRingBuffer(64, false);
+        List<Thread> producers
+            = startProducers(
+                    queue,
+                    PacketLoggingService.ProtocolName.SIP,
+                    20000);
+        int[] consumed = new int[PRODUCERS];
+        int total = 0;
+
+        while (total < PRODUCERS * 20000)
+        {
+            // take() returns early when the consumer is woken up.
+            long deadline = System.currentTimeMillis() + 5000;
+            PacketRingBuffer.Slot slot;
+
+            do
+                slot = queue.take(100);
+            while ((slot == null)
+                    && (System.currentTimeMillis() < deadline));
+
+            assertNotNull(total + " packets consumed", slot);
+            try
+            {
+                int producer = slot.sourcePort;
+
+                assertEquals(PACKET_LENGTH, slot.packetLength);
+                assertEquals(
+                    "packet of producer " + producer,
+                    consumed[producer],
+                    readSequenceNumber(slot.packetContent));
+                assertEquals(
+                    Arrays.toString(SOURCE_ADDRESS),
+                    Arrays.toString(
+                        Arrays.copyOf(
+                            slot.sourceAddress,
+                            slot.sourceAddressLength)));
+                consumed[producer]++;
+                total++;
+            }
+            finally
+            {
+                queue.release(slot);
+            }
+        }
+        for (Thread producer : producers)
+            producer.join();
+
+        assertNull(queue.poll());
+        assertEquals(PRODUCERS * 20000, queue.getQueuedPacketCount());
+        assertEquals(0, queue.getDroppedPacketCount());
+    }
+
+    /**
+     * Tests that RTP packets, and signaling packets if so configured, are
+     * dropped and counted when the queue is full.
+     */
+    public void testDropWhenFull()
+    {
+        PacketRingBuffer queue = new PacketRingBuffer(3, true);
+        byte[] content = new byte[PACKET_LENGTH];
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(
+                offer(
+                    queue,
+                    PacketLoggingService.ProtocolName.RTP,
+                    0,
+                    content));
+        }
+        assertFalse(
+            offer(queue, PacketLoggingService.ProtocolName.RTP, 0, content));
+        assertFalse(
+            offer(queue, PacketLoggingService.ProtocolName.SIP, 0, content));
+
+        assertEquals(4, queue.getQueuedPacketCount());
+        assertEquals(2, queue.getDroppedPacketCount());
+        assertEquals(
+            1,
+            queue.getDroppedPacketCount(PacketLoggingService.ProtocolName.RTP));
+        assertEquals(
+            1,
+            queue.getDroppedPacketCount(PacketLoggingService.ProtocolName.SIP));
+
+        queue.release(queue.poll());
+        assertTrue(
+            offer(queue, PacketLoggingService.ProtocolName.RTP, 0, content));
+    }
+
+    /**
+     * Benchmarks the packets per second which several producers hand over to
+     * a consumer which takes them as fast as it can. The packets are SIP
+     * packets so that the producers wait for the consumer rather than drop
+     * them when it falls behind.
+     *
+     * @throws Exception if a producer fails or the test is interrupted
+     */
+    public void testThroughput()
+        throws Exception
+    {
+        final PacketRingBuffer queue = new PacketRingBuffer(2048, false);
+        final boolean[] stopped = new boolean[1];
+        final long[] consumed = new long[1];
+        Thread consumer
+            = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    while (true)
+                    {
+                        PacketRingBuffer.Slot slot = queue.take(100);
+
+                        if (slot != null)
+                        {
+                            consumed[0]++;
+                            queue.release(slot);
+                        }
+                        else
+                        {
+                            synchronized (stopped)
+                            {
+                                if (stopped[0])
+                                    break;
+                            }
+                        }
+                    }
+                }
+            };
+
+        consumer.start();
+
+        long start = System.nanoTime();
+
+        for (Thread producer
+                : startProducers(
+                        queue,
+                        PacketLoggingService.ProtocolName.SIP,
+                        PACKETS))
+        {
+            producer.join();
+        }
+
+        long end = System.nanoTime();
+
+        synchronized (stopped)
+        {
+            stopped[0] = true;
+        }
+        consumer.join();
+
+        long queued = queue.getQueuedPacketCount();
+        long dropped = queue.getDroppedPacketCount();
+
+        assertEquals(PRODUCERS * PACKETS, queued + dropped);
+        assertEquals(queued, consumed[0]);
+
+        System.out.println(
+                PRODUCERS + " producers: "
+                    + (PRODUCERS * PACKETS * 1000000000L / (end - start))
+                    + " packets/s handed over, " + dropped + " dropped");
+    }
+
+    /**
+     * Starts threads which each log a number of packets the content of which
+     * starts with their sequence number and the source port of which is the
+     * index of the thread.
+     *
+     * @param queue the queue to log the packets to
+     * @param protocol the protocol of the packets
+     * @param count the number of packets each thread logs
+     * @return the started threads
+     */
+    private static List<Thread> startProducers(
+            final PacketRingBuffer queue,
+            final PacketLoggingService.ProtocolName protocol,
+            final int count)
+    {
+        List<Thread> producers = new ArrayList<Thread>();
+
+        for (int i = 0; i < PRODUCERS; i++)
+        {
+            final int index = i;
+            Thread producer
+                = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        byte[] content = new byte[PACKET_LENGTH];
+
+                        for (int j = 0; j < count; j++)
+                        {
+                            writeSequenceNumber(j, content);
+                            offer(queue, protocol, index, content);
+                        }
+                    }
+                };
+
+            producers.add(producer);
+            producer.start();
+        }
+        return producers;
+    }
+
+    /**
+     * Logs a UDP packet from {@link #SOURCE_ADDRESS} to
+     * {@link #DESTINATION_ADDRESS}.
+     *
+     * @param queue the queue to log the packet to
+     * @param protocol the protocol of the packet
+     * @param sourcePort the source port of the packet
+     * @param content the content of the packet
+     * @return <tt>true</tt> if the packet has been queued; <tt>false</tt> if
+     * it has been dropped
+     */
+    private static boolean offer(
+            PacketRingBuffer queue,
+            PacketLoggingService.ProtocolName protocol,
+            int sourcePort,
+            byte[] content)
+    {
+        return
+            queue.offer(
+                    protocol,
+                    SOURCE_ADDRESS, sourcePort,
+                    DESTINATION_ADDRESS, 5000,
+                    PacketLoggingService.TransportName.UDP,
+                    true,
+                    content, 0, content.length);
+    }
+
+    /**
+     * Writes a sequence number at the start of the content of a packet.
+     *
+     * @param sequenceNumber the sequence number
+     * @param content the content of the packet
+     */
+    private static void writeSequenceNumber(int sequenceNumber, byte[] content)
+    {
+        content[0] = (byte) (sequenceNumber >> 24);
+        content[1] = (byte) (sequenceNumber >> 16);
+        content[2] = (byte) (sequenceNumber >> 8);
+        content[3] = (byte) sequenceNumber;
+    }
+
+    /**
+     * Reads the sequence number at the start of the content of a packet.
+     *
+     * @param content the content of the packet
+     * @return the sequence number
+     */
+    private static int readSequenceNumber(byte[] content)
+    {
+        return
+            ((content[0] & 0xff) << 24)
+                | ((content[1] & 0xff) << 16)
+                | ((content[2] & 0xff) << 8)
+                | (content[3] & 0xff);
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.math.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Benchmarks the copy of a file over a loopback TCP socket standing in for a
+ * bytestream the way Smack copies it (8 KiB streams) and the way the
+ * resumable file transfers copy it (positional <tt>FileChannel</tt> reads and
+ * writes of {@link ResumableOutgoingFileTransfer#CHUNK_SIZE} bytes) and checks
+ * that a transfer resumed at an offset produces the same file.
+ */
+public class TestFileTransferThroughput
+    extends TestCase
+{
+    /**
+     * The size of the file which is transferred.
+     */
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of times each copy is measured.
+     */
+    private static final int ROUNDS = 3;
+
+    /**
+     * The file which is sent.
+     */
+    private File source;
+
+    /**
+     * The file which is received.
+     */
+    private File target;
+
+    /**
+     * Creates the file to be sent.
+     *
+     * @throws Exception if the file cannot be created
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        source = File.createTempFile("transfer", ".src");
+        target = File.createTempFile("transfer", ".part");
+
+        byte[] buffer = new byte[1024 * 1024];
+        Random random = new Random(0);
+        OutputStream out = new FileOutputStream(source);
+
+        try
+        {
+            for (int written = 0; written < FILE_SIZE; written += buffer.length)
+            {
+                random.nextBytes(buffer);
+                out.write(buffer);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Deletes the transferred files.
+     *
+     * @throws Exception if anything goes wrong
+     */
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        source.delete();
+        target.delete();
+
+        super.tearDown();
+    }
+
+    /**
+     * Measures the stream copy and the positional channel copy and checks
+     * that both produce the file which has been sent.
+     *
+     * @throws Exception if the transfer fails
+     */
+    public void testThroughput()
+        throws Exception
+    {
+        String sourceDigest = digest(source);
+
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            for (boolean channels : new boolean[] { false, true })
+            {
+                long start = System.nanoTime();
+
+                transfer(channels, 0);
+
+                long elapsed = System.nanoTime() - start;
+
+                assertEquals(sourceDigest, digest(target));
+                System.out.println(
+                        (channels ? "positional channel copy: "
+                                : "8 KiB stream copy:       ")
+                            + (FILE_SIZE * 1000L / Math.max(1, elapsed))
+                            + " MB/s");
+            }
+        }
+    }
+
+    /**
+     * Checks that a transfer resumed at an offset over a partial file with
+     * stale bytes past the offset produces the file which has been sent.
+     *
+     * @throws Exception if the transfer fails
+     */
+    public void testResume()
+        throws Exception
+    {
+        long offset = FILE_SIZE * 2L / 5;
+        RandomAccessFile partial = new RandomAccessFile(target, "rw");
+
+        try
+        {
+            FileChannel in = new FileInputStream(source).getChannel();
+
+            try
+            {
+                in.transferTo(0, offset, partial.getChannel());
+            }
+            finally
+            {
+                in.close();
+            }
+            partial.seek(offset);
+            partial.write(new byte[1024]);
+        }
+        finally
+        {
+            partial.close();
+        }
+
+        transfer(true, offset);
+        assertEquals(FILE_SIZE, target.length());
+        assertEquals(digest(source), digest(target));
+    }
+
+    /**
+     * Sends {@link #source} from a specific offset over a loopback socket and
+     * receives it into {@link #target} at the same offset.
+     *
+     * @param channels <tt>true</tt> to copy through positional channel reads
+     * and writes; <tt>false</tt> to copy through 8 KiB streams
+     * @param offset the offset to send the file from
+     * @throws Exception if the transfer fails
+     */
+    private void transfer(final boolean channels, final long offset)
+        throws Exception
+    {
+        final ServerSocket server
+            = new ServerSocket(0, 1, InetAddress.getByName(null));
+        final Exception[] senderException = new Exception[1];
+        Thread sender
+            = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Socket socket
+                            = new Socket(
+                                    server.getInetAddress(),
+                                    server.getLocalPort());
+
+                        try
+                        {
+                            send(channels, offset, socket.getOutputStream());
+                        }
+                        finally
+                        {
+                            socket.close();
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        senderException[0] = e;
+                    }
+                }
+            };
+
+        sender.start();
+        try
+        {
+            Socket socket = server.accept();
+
+            try
+            {
+                receive(channels, offset, socket.getInputStream());
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        finally
+        {
+            server.close();
+            sender.join();
+        }
+        if (senderException[0] != null)
+            throw senderException[0];
+    }
+
+    /**
+     * Sends {@link #source} from a specific offset into a specific stream.
+     *
+     * @param channels <tt>true</tt> to read the file through positional
+     * channel reads; <tt>false</tt> to read it through an 8 KiB stream
+     * @param offset the offset to send the file from
+     * @param out the stream to send the file into
+     * @throws IOException if the transfer fails
+     */
+    private void send(boolean channels, long offset, OutputStream out)
+        throws IOException
+    {
+        if (channels)
+        {
+            FileChannel in = new FileInputStream(source).getChannel();
+            byte[] buffer = new byte[ResumableOutgoingFileTransfer.CHUNK_SIZE];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long position = offset;
+
+            try
+            {
+                while (position < FILE_SIZE)
+                {
+                    byteBuffer.clear();
+
+                    int read = in.read(byteBuffer, position);
+
+                    out.write(buffer, 0, read);
+                    position += read;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        else
+        {
+            InputStream in
+                = new BufferedInputStream(new FileInputStream(source));
+            byte[] buffer = new byte[8192];
+            int read;
+
+            try
+            {
+                in.skip(offset);
+                while ((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Receives {@link #target} at a specific offset from a specific stream.
+     *
+     * @param channels <tt>true</tt> to write the file through positional
+     * channel writes; <tt>false</tt> to write it through an 8 KiB stream
+     * @param offset the offset to receive the file at
+     * @param in the stream to receive the file from
+     * @throws IOException if the transfer fails
+     */
+    private void receive(boolean channels, long offset, InputStream in)
+        throws IOException
+    {
+        if (channels)
+        {
+            RandomAccessFile file = new RandomAccessFile(target, "rw");
+            FileChannel out = file.getChannel();
+            byte[] buffer = new byte[ResumableOutgoingFileTransfer.CHUNK_SIZE];
+            long position = offset;
+            int read;
+
+            try
+            {
+                out.truncate(position);
+                while ((read = in.read(buffer)) != -1)
+                {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+
+                    while (byteBuffer.hasRemaining())
+                        position += out.write(byteBuffer, position);
+                }
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        else
+        {
+            OutputStream out
+                = new BufferedOutputStream(new FileOutputStream(target));
+            byte[] buffer = new byte[8192];
+            int read;
+
+            try
+            {
+                while ((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Computes the MD5 digest of a specific file.
+     *
+     * @param file the file to digest
+     * @return the MD5 digest of <tt>file</tt>
+     * @throws Exception if the file cannot be read
+     */
+    private static String digest(File file)
+        throws Exception
+    {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        InputStream in = new FileInputStream(file);
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+
+        try
+        {
+            while ((read = in.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        }
+        finally
+        {
+            in.close();
+        }
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import junit.framework.*;
+
+import org.jitsi.util.xml.*;
+import org.w3c.dom.*;
+
+/**
+ * Tests that <tt>PresenceDocumentParser</tt> reads the same parts of PIDF
+ * and watcherinfo documents as the DOM based processing which
+ * <tt>OperationSetPresenceSipImpl</tt> did before it, and benchmarks the two.
+ * The parts of a document are compared through a description listing what
+ * the presence operation set uses, with missing texts read as empty strings
+ * the way it does.
+ */
+public class TestPresenceDocumentParser
+    extends TestCase
+{
+    /**
+     * The namespace matching any namespace in DOM.
+     */
+    private static final String ANY_NS = "*";
+
+    /**
+     * The PIDF namespace.
+     */
+    private static final String PIDF_NS = "urn:ietf:params:xml:ns:pidf";
+
+    /**
+     * The watcherinfo namespace.
+     */
+    private static final String WATCHERINFO_NS
+        = "urn:ietf:params:xml:ns:watcherinfo";
+
+    /**
+     * The resource of the watcher lists in the watcherinfo documents.
+     */
+    private static final String RESOURCE = "sip:alice@example.com";
+
+    /**
+     * PIDF documents as found in NOTIFY requests.
+     */
+    private static final String[] PIDF_DOCUMENTS
+        = {
+            // RFC 3863
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\""
+                + " xmlns:im=\"urn:ietf:params:xml:ns:pidf:im\""
+                + " xmlns:myex=\"http://id.example.com/presence/\""
+                + " entity=\"pres:someone@example.com\">"
+                + "<tuple id=\"bs35r9\">"
+                + "<status><basic>open</basic><im:im>busy</im:im>"
+                + "<myex:location>home</myex:location></status>"
+                + "<contact priority=\"0.8\">im:someone@mobilecarrier.net"
+                + "</contact>"
+                + "<note xml:lang=\"en\">Don't Disturb Please!</note>"
+                + "<note xml:lang=\"fr\">Ne d\u00e9rangez pas, s'il vous"
+                + " plait</note>"
+                + "<timestamp>2001-10-27T16:49:29Z</timestamp>"
+                + "</tuple>"
+                + "<tuple id=\"eg92n8\">"
+                + "<status><basic>open</basic></status>"
+                + "<contact priority=\"1.0\">mailto:someone@example.com"
+                + "</contact>"
+                + "</tuple>"
+                + "<note>I'll be in Tokyo next week</note>"
+                + "</presence>",
+            // RPID person as published by the SIP provider
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+                + "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\"\n"
+                + "    xmlns:dm=\"urn:ietf:params:xml:ns:pidf:data-model\"\n"
+                + "    xmlns:rpid=\"urn:ietf:params:xml:ns:pidf:rpid\"\n"
+                + "    entity=\"sip:bob@example.com\">\n"
+                + "  <dm:person id=\"p1234\">\n"
+                + "    <rpid:activities><rpid:away/></rpid:activities>\n"
+                + "    <rpid:status-icon>http://example.com/bob.png"
+                + "</rpid:status-icon>\n"
+                + "  </dm:person>\n"
+                + "  <tuple id=\"t5678\">\n"
+                + "    <status><basic>open</basic></status>\n"
+                + "    <contact>sip:bob@example.com</contact>\n"
+                + "    <note>Away</note>\n"
+                + "  </tuple>\n"
+                + "</presence>\n",
+            // no namespace, several statuses and basics, entity references
+            "<presence entity=\"pres:carol@example.com\">"
+                + "<person><activities><unknown/><on-the-phone/>"
+                + "</activities></person>"
+                + "<tuple id=\"a\">"
+                + "<status><basic>closed</basic></status>"
+                + "<status><basic>closed</basic><basic>open</basic>"
+                + "</status>"
+                + "<note>On &amp; off</note>"
+                + "</tuple>"
+                + "</presence>",
+            // tuples in the PIDF namespace and in another one
+            "<pidf:presence xmlns:pidf=\"urn:ietf:params:xml:ns:pidf\""
+                + " xmlns:x=\"urn:example:other\""
+                + " entity=\"sip:dave@example.com\">"
+                + "<x:tuple id=\"other\"><x:status><x:basic>closed"
+                + "</x:basic></x:status></x:tuple>"
+                + "<pidf:tuple id=\"pidf\">"
+                + "<pidf:status><pidf:basic>open</pidf:basic></pidf:status>"
+                + "<x:contact>sip:other@example.com</x:contact>"
+                + "<pidf:contact priority=\"2\">sip:dave@example.com"
+                + "</pidf:contact>"
+                + "<pidf:contact priority=\"x\">pres:dave@example.net"
+                + "</pidf:contact>"
+                + "<pidf:contact/>"
+                + "</pidf:tuple>"
+                + "</pidf:presence>",
+            // several persons and activities
+            "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\""
+                + " xmlns:rpid=\"urn:ietf:params:xml:ns:pidf:rpid\""
+                + " entity=\"sip:erin@example.com\">"
+                + "<person><activities><rpid:other>gone</rpid:other>"
+                + "</activities>"
+                + "<activities><rpid:busy/><rpid:away/></activities>"
+                + "<status-icon/><status-icon>http://example.com/x.png"
+                + "</status-icon></person>"
+                + "<person><activities><rpid:away/></activities></person>"
+                + "<tuple id=\"t\"><status><basic>open</basic></status>"
+                + "<note/><note>Busy</note></tuple>"
+                + "</presence>"
+        };
+
+    /**
+     * Watcherinfo documents as found in NOTIFY requests.
+     */
+    private static final String[] WATCHERINFO_DOCUMENTS
+        = {
+            // RFC 3858
+            "<?xml version=\"1.0\"?>"
+                + "<watcherinfo xmlns=\"urn:ietf:params:xml:ns:watcherinfo\""
+                + " version=\"0\" state=\"full\">"
+                + "<watcher-list resource=\"sip:alice@example.com\""
+                + " package=\"presence\">"
+                + "<watcher status=\"active\" id=\"sr8fdsj\""
+                + " duration-subscribed=\"509\""
+                + " expiration=\"20\" event=\"approved\">sip:bob@example.com"
+                + "</watcher>"
+                + "<watcher status=\"pending\" id=\"hh8juja87s997-ass7\""
+                + " display-name=\"Mr. Subscriber\""
+                + " event=\"subscribe\">sip:hhh@example.com</watcher>"
+                + "</watcher-list>"
+                + "</watcherinfo>",
+            // several lists, the one of another resource first
+            "<watcherinfo xmlns=\"urn:ietf:params:xml:ns:watcherinfo\""
+                + " version=\"12\" state=\"partial\">\n"
+                + "  <watcher-list resource=\"sip:bob@example.com\""
+                + " package=\"presence\">\n"
+                + "    <watcher status=\"pending\" id=\"1\">"
+                + "sip:mallory@example.com</watcher>\n"
+                + "  </watcher-list>\n"
+                + "  <watcher-list resource=\"sip:alice@example.com\""
+                + " package=\"presence\">\n"
+                + "    <watcher status=\"waiting\" id=\"2\">"
+                + "sip:carol@example.com</watcher>\n"
+                + "    <watcher status=\"terminated\" id=\"3\"/>\n"
+                + "  </watcher-list>\n"
+                + "</watcherinfo>",
+            // no namespace, no version and another package
+            "<watcherinfo state=\"full\">"
+                + "<watcher-list resource=\"sip:alice@example.com\""
+                + " package=\"message-summary\">"
+                + "<watcher status=\"active\" id=\"4\">sip:dave@example.com"
+                + "</watcher>"
+                + "</watcher-list>"
+                + "</watcherinfo>"
+        };
+
+    /**
+     * The number of times each document is parsed by the benchmarks.
+     */
+    private static final int ITERATIONS = 2000;
+
+    /**
+     * Tests that the PIDF documents are read the same way as with DOM.
+     *
+     * @throws Exception if a document cannot be parsed
+     */
+    public void testPidf()
+        throws Exception
+    {
+        for (String document : PIDF_DOCUMENTS)
+        {
+            assertEquals(
+                document,
+                describePidf(XMLUtils.createDocument(document)),
+                describe(PresenceDocumentParser.parsePidf(document)));
+        }
+    }
+
+    /**
+     * Tests that the watcherinfo documents are read the same way as with
+     * DOM.
+     *
+     * @throws Exception if a document cannot be parsed
+     */
+    public void testWatcherInfo()
+        throws Exception
+    {
+        for (String document : WATCHERINFO_DOCUMENTS)
+        {
+            assertEquals(
+                document,
+                describeWatcherInfo(XMLUtils.createDocument(document)),
+                describe(PresenceDocumentParser.parseWatcherInfo(document)));
+        }
+    }
+
+    /**
+     * Tests that a document without presence or watcherinfo element is
+     * recognized as such.
+     *
+     * @throws Exception if a document cannot be parsed
+     */
+    public void testMissingRootElement()
+        throws Exception
+    {
+        String document = "<?xml version=\"1.0\"?><rlmi/>";
+
+        assertNull(PresenceDocumentParser.parsePidf(document));
+        assertNull(PresenceDocumentParser.parseWatcherInfo(document));
+    }
+
+    /**
+     * Benchmarks the documents per second which are read with DOM and with
+     * <tt>PresenceDocumentParser</tt>. On both paths the time includes
+     * reading the parts which are used out of the documents.
+     *
+     * @throws Exception if a document cannot be parsed
+     */
+    public void testThroughput()
+        throws Exception
+    {
+        // warm up
+        benchmarkDom(ITERATIONS / 5);
+        benchmarkParser(ITERATIONS / 5);
+
+        long dom = benchmarkDom(ITERATIONS);
+        long parser = benchmarkParser(ITERATIONS);
+        long documents
+            = ITERATIONS
+                * (PIDF_DOCUMENTS.length + WATCHERINFO_DOCUMENTS.length);
+
+        System.out.println(
+                "DOM: " + (documents * 1000000000L / dom)
+                    + " documents/s, PresenceDocumentParser: "
+                    + (documents * 1000000000L / parser) + " documents/s");
+    }
+
+    /**
+     * Reads all the documents with DOM a number of times.
+     *
+     * @param iterations the number of times to read each document
+     * @return the time it took in nanoseconds
+     * @throws Exception if a document cannot be parsed
+     */
+    private static long benchmarkDom(int iterations)
+        throws Exception
+    {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            for (String document : PIDF_DOCUMENTS)
+                describePidf(XMLUtils.createDocument(document));
+            for (String document : WATCHERINFO_DOCUMENTS)
+                describeWatcherInfo(XMLUtils.createDocument(document));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Reads all the documents with <tt>PresenceDocumentParser</tt> a number
+     * of times.
+     *
+     * @param iterations the number of times to read each document
+     * @return the time it took in nanoseconds
+     * @throws Exception if a document cannot be parsed
+     */
+    private static long benchmarkParser(int iterations)
+        throws Exception
+    {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            for (String document : PIDF_DOCUMENTS)
+                describe(PresenceDocumentParser.parsePidf(document));
+            for (String document : WATCHERINFO_DOCUMENTS)
+                describe(PresenceDocumentParser.parseWatcherInfo(document));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Describes what the presence operation set uses of a PIDF document read
+     * by <tt>PresenceDocumentParser</tt>.
+     *
+     * @param pidf the document
+     * @return the description of <tt>pidf</tt>
+     */
+    private static String describe(PresenceDocumentParser.Pidf pidf)
+    {
+        StringBuilder description = new StringBuilder();
+
+        description
+            .append("entity=").append(text(pidf.entity))
+            .append("\nactivity=").append(pidf.activity)
+            .append("\nicon=").append(text(pidf.statusIcon));
+        for (PresenceDocumentParser.Tuple tuple : pidf.getTuples())
+        {
+            description.append("\ntuple");
+            for (PresenceDocumentParser.TupleContact contact
+                    : tuple.getContacts())
+            {
+                description
+                    .append("\n contact=").append(text(contact.id))
+                    .append(" priority=").append(contact.priority);
+            }
+
+            PresenceDocumentParser.Text basic = tuple.getBasic();
+
+            description
+                .append("\n basic=")
+                .append((basic == null) ? null : text(basic.text));
+            for (PresenceDocumentParser.Text note : tuple.getNotes())
+                description.append("\n note=").append(text(note.text));
+        }
+        return description.toString();
+    }
+
+    /**
+     * Describes what the presence operation set uses of a PIDF document the
+     * way it read it from DOM.
+     *
+     * @param doc the document
+     * @return the description of <tt>doc</tt>
+     */
+    private static String describePidf(Document doc)
+    {
+        NodeList presList = doc.getElementsByTagNameNS(PIDF_NS, "presence");
+
+        if (presList.getLength() == 0)
+            presList = doc.getElementsByTagNameNS(ANY_NS, "presence");
+
+        Element presence = (Element) presList.item(0);
+        String activity = null;
+        String icon = null;
+        NodeList personList
+            = presence.getElementsByTagNameNS(ANY_NS, "person");
+
+        if (personList.getLength() > 0)
+        {
+            Element person = (Element) personList.item(0);
+            NodeList activityList
+                = person.getElementsByTagNameNS(ANY_NS, "activities");
+
+            for (int i = 0;
+                    (activity == null) && (i < activityList.getLength());
+                    i++)
+            {
+                NodeList statusList = activityList.item(i).getChildNodes();
+
+                for (int j = 0; j < statusList.getLength(); j++)
+                {
+                    Node status = statusList.item(j);
+
+                    if ((status.getNodeType() == Node.ELEMENT_NODE)
+                            && ("away".equals(status.getLocalName())
+                                || "busy".equals(status.getLocalName())
+                                || "on-the-phone".equals(
+                                        status.getLocalName())))
+                    {
+                        activity = status.getLocalName();
+                        break;
+                    }
+                }
+            }
+
+            NodeList statusIconList
+                = person.getElementsByTagNameNS(ANY_NS, "status-icon");
+
+            if (statusIconList.getLength() > 0)
+                icon = XMLUtils.getText((Element) statusIconList.item(0));
+        }
+
+        StringBuilder description = new StringBuilder();
+
+        description
+            .append("entity=")
+            .append(text(XMLUtils.getAttribute(presence, "entity")))
+            .append("\nactivity=").append(activity)
+            .append("\nicon=").append(text(icon));
+
+        NodeList tupleList = getPidfChilds(presence, "tuple");
+
+        for (int i = 0; i < tupleList.getLength(); i++)
+        {
+            Element tuple = (Element) tupleList.item(i);
+            NodeList contactList = getPidfChilds(tuple, "contact");
+
+            description.append("\ntuple");
+            for (int j = 0; j < contactList.getLength(); j++)
+            {
+                Element contact = (Element) contactList.item(j);
+
+                description
+                    .append("\n contact=")
+                    .append(text(XMLUtils.getText(contact)))
+                    .append(" priority=")
+                    .append(contact.getAttribute("priority"));
+            }
+
+            NodeList statusList = getPidfChilds(tuple, "status");
+            String basic = null;
+
+            if (statusList.getLength() > 0)
+            {
+                NodeList basicList
+                    = getPidfChilds(
+                            (Element)
+                                statusList.item(statusList.getLength() - 1),
+                            "basic");
+
+                if (basicList.getLength() > 0)
+                {
+                    basic
+                        = text(
+                            XMLUtils.getText(
+                                    (Element)
+                                        basicList.item(
+                                                basicList.getLength() - 1)));
+                }
+            }
+            description.append("\n basic=").append(basic);
+
+            NodeList noteList = getPidfChilds(tuple, "note");
+
+            for (int j = 0; j < noteList.getLength(); j++)
+            {
+                description
+                    .append("\n note=")
+                    .append(text(XMLUtils.getText((Element) noteList.item(j))));
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Describes what the presence operation set uses of a watcherinfo
+     * document read by <tt>PresenceDocumentParser</tt>.
+     *
+     * @param watcherInfo the document
+     * @return the description of <tt>watcherInfo</tt>
+     */
+    private static String describe(
+            PresenceDocumentParser.WatcherInfo watcherInfo)
+    {
+        StringBuilder description = new StringBuilder();
+
+        description
+            .append("state=").append(watcherInfo.state)
+            .append("\nversion=").append(watcherInfo.version);
+
+        PresenceDocumentParser.WatcherList watcherList
+            = watcherInfo.getWatcherList(RESOURCE);
+
+        if (watcherList != null)
+        {
+            description.append("\npackage=").append(watcherList.packageName);
+            for (PresenceDocumentParser.Watcher watcher
+                    : watcherList.watchers)
+            {
+                description
+                    .append("\n watcher=").append(text(watcher.id))
+                    .append(" status=").append(watcher.status);
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Describes what the presence operation set uses of a watcherinfo
+     * document the way it read it from DOM.
+     *
+     * @param doc the document
+     * @return the description of <tt>doc</tt>
+     */
+    private static String describeWatcherInfo(Document doc)
+    {
+        NodeList watchList
+            = doc.getElementsByTagNameNS(WATCHERINFO_NS, "watcherinfo");
+
+        if (watchList.getLength() == 0)
+            watchList = doc.getElementsByTagNameNS(ANY_NS, "watcherinfo");
+
+        Element watcherInfo = (Element) watchList.item(0);
+        StringBuilder description = new StringBuilder();
+
+        description
+            .append("state=").append(watcherInfo.getAttribute("state"))
+            .append("\nversion=").append(watcherInfo.getAttribute("version"));
+
+        Element watcherList
+            = XMLUtils.locateElement(
+                    watcherInfo,
+                    "watcher-list",
+                    "resource",
+                    RESOURCE);
+
+        if (watcherList != null)
+        {
+            description
+                .append("\npackage=")
+                .append(watcherList.getAttribute("package"));
+
+            NodeList watchers
+                = watcherList.getElementsByTagNameNS(ANY_NS, "watcher");
+
+            for (int i = 0; i < watchers.getLength(); i++)
+            {
+                Element watcher = (Element) watchers.item(i);
+
+                description
+                    .append("\n watcher=")
+                    .append(text(XMLUtils.getText(watcher)))
+                    .append(" status=")
+                    .append(watcher.getAttribute("status"));
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Gets the descendants of an element with a specific name in the PIDF
+     * namespace or, if there are none, in any namespace.
+     *
+     * @param element the element
+     * @param childName the local name of the descendants
+     * @return the descendants of <tt>element</tt> named <tt>childName</tt>
+     */
+    private static NodeList getPidfChilds(Element element, String childName)
+    {
+        NodeList res = element.getElementsByTagNameNS(PIDF_NS, childName);
+
+        if (res.getLength() == 0)
+            res = element.getElementsByTagNameNS(ANY_NS, childName);
+        return res;
+    }
+
+    /**
+     * Gets a text the way the presence operation set reads it i.e. an empty
+     * string if there is none.
+     *
+     * @param text the text or <tt>null</tt>
+     * @return <tt>text</tt> or an empty string if it is <tt>null</tt>
+     */
+    private static String text(String text)
+    {
+        return (text == null) ? "" : text;
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.ssh;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Tests that <tt>SSHReaderDaemon</tt> delivers the output of a shell as soon
+ * as it arrives. The daemon reads an in-process shell which echoes every
+ * command it receives, answers it in several packets and prints its prompt,
+ * the way the shell of an SSH server does.
+ */
+public class TestSSHReaderDaemon
+    extends TestCase
+{
+    /**
+     * The prompt printed by the shell after the response to every command.
+     */
+    private static final String PROMPT = "$ ";
+
+    /**
+     * The time in milliseconds within which the response to a command is
+     * expected to be delivered.
+     */
+    private static final long MAX_DELIVERY_TIME = 200;
+
+    /**
+     * The time in milliseconds to wait for a message which is not expected
+     * to be delivered.
+     */
+    private static final long NO_DELIVERY_TIME = 100;
+
+    /**
+     * The number of characters of output the shell may write ahead of the
+     * daemon. Like the window of an SSH channel it lets the shell write its
+     * response without waiting for every packet to be read.
+     */
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    /**
+     * The commands sent to the shell.
+     */
+    private PrintWriter commandWriter;
+
+    /**
+     * The output of the shell read by the daemon.
+     */
+    private PipedWriter shellWriter;
+
+    /**
+     * The shell answering the commands sent.
+     */
+    private Thread shell;
+
+    /**
+     * The daemon reading the output of the shell.
+     */
+    private TestDaemon daemon;
+
+    /**
+     * Starts the shell and the daemon reading it.
+     *
+     * @throws Exception if the shell cannot be connected to the daemon
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        PipedReader commandReader = new PipedReader();
+
+        commandWriter = new PrintWriter(new PipedWriter(commandReader), true);
+
+        shellWriter = new PipedWriter();
+        daemon = new TestDaemon(new PipedReader(shellWriter, PIPE_SIZE));
+
+        shell = new Shell(new BufferedReader(commandReader), shellWriter);
+        shell.start();
+
+        daemon.isActive(true);
+        daemon.start();
+    }
+
+    /**
+     * Closes the shell and waits for the daemon to read its end.
+     *
+     * @throws Exception if the daemon does not stop
+     */
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        commandWriter.close();
+        shell.join(1000);
+        daemon.join(1000);
+
+        assertFalse("daemon still reading", daemon.isAlive());
+    }
+
+    /**
+     * Tests that the response to a command is delivered without its echo as
+     * soon as the shell has printed it.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    public void testResponseDeliveredImmediately()
+        throws Exception
+    {
+        long sent = System.currentTimeMillis();
+
+        assertEquals("hello\r\n" + PROMPT, sendCommand("echo hello"));
+
+        long elapsed = System.currentTimeMillis() - sent;
+
+        assertTrue(
+            "response delivered after " + elapsed + " ms",
+            elapsed < MAX_DELIVERY_TIME);
+        assertFalse("response not complete", daemon.isCommandSent());
+    }
+
+    /**
+     * Tests that an echo which arrives in several packets is not delivered
+     * on its own.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    public void testSplitEchoNotDelivered()
+        throws Exception
+    {
+        daemon.setCommandSent(true);
+        write("ls -");
+        write("la\r");
+
+        assertNull(daemon.messages.poll(
+            NO_DELIVERY_TIME, TimeUnit.MILLISECONDS));
+
+        write("\ntotal 0\r\n");
+
+        Delivery delivery = daemon.messages.poll(
+            MAX_DELIVERY_TIME, TimeUnit.MILLISECONDS);
+
+        assertNotNull("response not delivered", delivery);
+        assertEquals("total 0\r\n", delivery.message);
+        assertEquals(
+            ContactSSH.CONVERSATION_MESSAGE_RECEIVED,
+            delivery.messageType);
+        assertTrue("prompt not printed yet", daemon.isCommandSent());
+    }
+
+    /**
+     * Tests that several commands in a row are delivered as their
+     * respective responses.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    public void testConsecutiveCommands()
+        throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(
+                "line " + i + "\r\n" + PROMPT,
+                sendCommand("echo line " + i));
+        }
+    }
+
+    /**
+     * Tests that a response longer than a single message is delivered
+     * completely.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    public void testLongResponse()
+        throws Exception
+    {
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 2000; i++)
+            expected.append("line ").append(i).append("\r\n");
+        expected.append(PROMPT);
+
+        assertEquals(expected.toString(), sendCommand("seq 2000"));
+    }
+
+    /**
+     * Tests that output which does not follow a command is delivered as a
+     * system message.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    public void testUnsolicitedOutput()
+        throws Exception
+    {
+        write("Broadcast message from root\r\n");
+
+        Delivery delivery = daemon.messages.poll(
+            MAX_DELIVERY_TIME, TimeUnit.MILLISECONDS);
+
+        assertNotNull("output not delivered", delivery);
+        assertEquals("Broadcast message from root\r\n", delivery.message);
+        assertEquals(
+            ContactSSH.SYSTEM_MESSAGE_RECEIVED,
+            delivery.messageType);
+    }
+
+    /**
+     * Sends a command to the shell and collects the messages delivered until
+     * the shell prints its prompt.
+     *
+     * @param command the command to send
+     * @return the response to <tt>command</tt>
+     * @throws InterruptedException if the test is interrupted
+     */
+    private String sendCommand(String command)
+        throws InterruptedException
+    {
+        StringBuilder response = new StringBuilder();
+
+        daemon.setCommandSent(true);
+        commandWriter.println(command);
+
+        while (!response.toString().endsWith(PROMPT))
+        {
+            Delivery delivery = daemon.messages.poll(
+                MAX_DELIVERY_TIME, TimeUnit.MILLISECONDS);
+
+            assertNotNull("response to " + command + " incomplete", delivery);
+            assertEquals(
+                ContactSSH.CONVERSATION_MESSAGE_RECEIVED,
+                delivery.messageType);
+            response.append(delivery.message);
+        }
+        return response.toString();
+    }
+
+    /**
+     * Writes output of the shell which is not the response to a command.
+     *
+     * @param output the output to write
+     * @throws IOException if the daemon is no longer reading
+     */
+    private void write(String output)
+        throws IOException
+    {
+        synchronized (shellWriter)
+        {
+            shellWriter.write(output);
+            shellWriter.flush();
+        }
+    }
+
+    /**
+     * A message delivered by the daemon.
+     */
+    private static class Delivery
+    {
+        /**
+         * The output delivered.
+         */
+        final String message;
+
+        /**
+         * The type of the message.
+         */
+        final int messageType;
+
+        /**
+         * Creates a new delivered message.
+         *
+         * @param message the output delivered
+         * @param messageType the type of the message
+         */
+        Delivery(String message, int messageType)
+        {
+            this.message = message;
+            this.messageType = messageType;
+        }
+    }
+
+    /**
+     * The daemon reading the shell which records the messages it delivers
+     * instead of passing them to a contact.
+     */
+    private static class TestDaemon
+        extends SSHReaderDaemon
+    {
+        /**
+         * The messages delivered.
+         */
+        final BlockingQueue<Delivery> messages
+            = new LinkedBlockingQueue<Delivery>();
+
+        /**
+         * The output of the shell.
+         */
+        private final Reader shellReader;
+
+        /**
+         * Whether a command has been sent.
+         */
+        private volatile boolean commandSent = false;
+
+        /**
+         * Creates a daemon reading the output of a shell.
+         *
+         * @param shellReader the output of the shell
+         */
+        TestDaemon(Reader shellReader)
+        {
+            this.shellReader = shellReader;
+        }
+
+        @Override
+        Reader getShellReader()
+        {
+            return shellReader;
+        }
+
+        @Override
+        boolean isCommandSent()
+        {
+            return commandSent;
+        }
+
+        @Override
+        void setCommandSent(boolean commandSent)
+        {
+            this.commandSent = commandSent;
+        }
+
+        @Override
+        void deliverMessage(String message, int messageType)
+        {
+            messages.add(new Delivery(message, messageType));
+        }
+    }
+
+    /**
+     * A shell which echoes every command and writes its response in several
+     * packets followed by the prompt. <tt>echo</tt> prints its arguments and
+     * <tt>seq</tt> prints the given number of lines.
+     */
+    private static class Shell
+        extends Thread
+    {
+        /**
+         * The commands sent to the shell.
+         */
+        private final BufferedReader commandReader;
+
+        /**
+         * The output of the shell.
+         */
+        private final Writer shellWriter;
+
+        /**
+         * Creates a new shell.
+         *
+         * @param commandReader the commands sent to the shell
+         * @param shellWriter the output of the shell
+         */
+        Shell(BufferedReader commandReader, Writer shellWriter)
+        {
+            super("Shell");
+
+            this.commandReader = commandReader;
+            this.shellWriter = shellWriter;
+        }
+
+        /**
+         * Answers the commands sent until the command stream is closed.
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                String command;
+
+                while ((command = commandReader.readLine()) != null)
+                {
+                    List<String> packets = new ArrayList<String>();
+
+                    packets.add(command + "\r\n");
+                    if (command.startsWith("echo "))
+                        packets.add(command.substring(5) + "\r\n");
+                    else if (command.startsWith("seq "))
+                    {
+                        int count = Integer.parseInt(command.substring(4));
+
+                        for (int i = 0; i < count; i++)
+                            packets.add("line " + i + "\r\n");
+                    }
+                    packets.add(PROMPT);
+
+                    for (String packet : packets)
+                    {
+                        synchronized (shellWriter)
+                        {
+                            shellWriter.write(packet);
+                            shellWriter.flush();
+                        }
+                    }
+                }
+                shellWriter.close();
+            }
+            catch (IOException ex)
+            {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+}
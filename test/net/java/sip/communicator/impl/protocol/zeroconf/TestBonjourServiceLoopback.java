@@ -0,0 +1,332 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.lang.reflect.Proxy;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.jitsi.service.resources.*;
+import org.osgi.framework.*;
+
+/**
+ * Benchmarks the chat connections served by <tt>BonjourService</tt>: many
+ * peers connect over loopback, each from its own address so that it is a
+ * contact of its own (which requires the whole 127.0.0.0/8 network to be
+ * routed to loopback as on Linux), and send iChat-style messages at the same
+ * time. The service is kept offline so that it does not announce itself with
+ * mDNS and runs without an OSGi framework: the services it looks up resolve
+ * to stubs which return empty values.
+ */
+public class TestBonjourServiceLoopback
+    extends TestCase
+{
+    /**
+     * The number of peers which connect to the service.
+     */
+    private static final int PEERS = 100;
+
+    /**
+     * The number of messages each peer sends.
+     */
+    private static final int MESSAGES = 500;
+
+    /**
+     * The time in seconds within which all the messages are expected to be
+     * received.
+     */
+    private static final long TIMEOUT = 60;
+
+    /**
+     * The provider which the service belongs to.
+     */
+    private ProtocolProviderServiceZeroconfImpl pps;
+
+    /**
+     * The service under test.
+     */
+    private BonjourService bonjourService;
+
+    /**
+     * The port on which the service accepts chat connections.
+     */
+    private int port;
+
+    /**
+     * The connections of the peers.
+     */
+    private final List<Socket> peers = new ArrayList<Socket>();
+
+    /**
+     * Starts the service.
+     *
+     * @throws Exception if the service cannot be started
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        ZeroconfActivator.bundleContext
+            = createStubService(BundleContext.class);
+
+        ServerSocket freePort = new ServerSocket(0);
+
+        port = freePort.getLocalPort();
+        freePort.close();
+
+        Map<String, String> accountProperties = new HashMap<String, String>();
+
+        accountProperties.put("first", "Tester");
+        pps = new ProtocolProviderServiceZeroconfImpl();
+        pps.initialize(
+            "tester",
+            new ZeroconfAccountID("tester", accountProperties));
+        bonjourService = new BonjourService(port, pps);
+    }
+
+    /**
+     * Closes the connections of the peers and stops the service.
+     *
+     * @throws Exception if anything goes wrong
+     */
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        for (Socket peer : peers)
+            peer.close();
+        bonjourService.shutdown();
+        bonjourService.join(5000);
+        ZeroconfActivator.bundleContext = null;
+
+        super.tearDown();
+    }
+
+    /**
+     * Connects the peers, has them send their messages at the same time and
+     * checks that every message is received in the order in which its peer
+     * has sent it.
+     *
+     * @throws Exception if a peer fails
+     */
+    public void testThroughput()
+        throws Exception
+    {
+        final CountDownLatch received = new CountDownLatch(PEERS * MESSAGES);
+        final Map<Contact, Integer> receivedCounts
+            = new HashMap<Contact, Integer>();
+        final List<String> errors = new Vector<String>();
+
+        ((OperationSetBasicInstantMessaging)
+                pps.getOperationSet(OperationSetBasicInstantMessaging.class))
+            .addMessageListener(
+                new MessageListener()
+                {
+                    public void messageReceived(MessageReceivedEvent evt)
+                    {
+                        Contact contact = evt.getSourceContact();
+                        Integer count = receivedCounts.get(contact);
+
+                        if (count == null)
+                            count = 0;
+                        if (!evt.getSourceMessage().getContent().equals(
+                                "Message " + count))
+                        {
+                            errors.add(
+                                contact + " sent "
+                                    + evt.getSourceMessage().getContent()
+                                    + " after " + count + " messages");
+                        }
+                        receivedCounts.put(contact, count + 1);
+                        received.countDown();
+                    }
+
+                    public void messageDelivered(MessageDeliveredEvent evt)
+                    {
+                    }
+
+                    public void messageDeliveryFailed(
+                            MessageDeliveryFailedEvent evt)
+                    {
+                    }
+                });
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < PEERS; i++)
+            peers.add(connect(i));
+
+        long connected = System.nanoTime();
+        List<Thread> senders = new ArrayList<Thread>();
+
+        for (final Socket peer : peers)
+        {
+            Thread sender
+                = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            send(peer);
+                        }
+                        catch (IOException ex)
+                        {
+                            errors.add(ex.toString());
+                        }
+                    }
+                };
+
+            senders.add(sender);
+            sender.start();
+        }
+
+        boolean complete = received.await(TIMEOUT, TimeUnit.SECONDS);
+        long end = System.nanoTime();
+
+        for (Thread sender : senders)
+            sender.join();
+
+        assertEquals(Collections.emptyList(), errors);
+        assertTrue(
+            (PEERS * MESSAGES - received.getCount()) + " of "
+                + (PEERS * MESSAGES) + " messages received",
+            complete);
+        assertEquals(PEERS, receivedCounts.size());
+
+        System.out.println(
+                PEERS + " connections in "
+                    + ((connected - start) / 1000000) + " ms, "
+                    + (PEERS * MESSAGES * 1000000000L / (end - connected))
+                    + " messages/s");
+    }
+
+    /**
+     * Connects a peer to the service from an address of its own and makes it
+     * a contact.
+     *
+     * @param index the index of the peer
+     * @return the connection of the peer
+     * @throws IOException if the peer cannot connect
+     */
+    private Socket connect(int index)
+        throws IOException
+    {
+        InetAddress address
+            = InetAddress.getByAddress(
+                    new byte[] { 127, 0, 0, (byte) (index + 2) });
+        Socket socket = new Socket();
+
+        new ContactZeroconfImpl(
+                "peer" + index,
+                pps,
+                bonjourService,
+                "Peer " + index,
+                address,
+                0);
+
+        socket.bind(new InetSocketAddress(address, 0));
+        socket.connect(
+            new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+        return socket;
+    }
+
+    /**
+     * Creates a stub of an interface the methods of which return empty
+     * values, e.g. empty strings and streams, <tt>false</tt> or <tt>0</tt>,
+     * except for the methods which look OSGi services up and return stubs of
+     * them.
+     *
+     * @param type the interface to implement
+     * @return the new implementation of <tt>type</tt>
+     */
+    private static <T> T createStubService(Class<T> type)
+    {
+        return
+            type.cast(
+                Proxy.newProxyInstance(
+                    type.getClassLoader(),
+                    new Class<?>[] { type },
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                        {
+                            String name = method.getName();
+                            Class<?> returnType = method.getReturnType();
+
+                            if (name.equals("getServiceReference"))
+                            {
+                                return
+                                    createStubService(ServiceReference.class);
+                            }
+                            if (name.equals("getService"))
+                            {
+                                return
+                                    createStubService(
+                                        ResourceManagementService.class);
+                            }
+                            if (returnType == String.class)
+                                return "";
+                            if (returnType == InputStream.class)
+                                return new ByteArrayInputStream(new byte[0]);
+                            if (returnType == Boolean.TYPE)
+                                return Boolean.FALSE;
+                            if (returnType == Integer.TYPE)
+                                return 0;
+                            if (returnType == Long.TYPE)
+                                return 0L;
+                            return null;
+                        }
+                    }));
+    }
+
+    /**
+     * Opens the chat stream of a peer and sends its messages.
+     *
+     * @param peer the connection of the peer
+     * @throws IOException if sending fails
+     */
+    private static void send(Socket peer)
+        throws IOException
+    {
+        Writer out
+            = new OutputStreamWriter(peer.getOutputStream(), "UTF-8");
+
+        out.write(
+            "<?xml version='1.0' encoding='UTF-8'?>"
+                + "<stream:stream xmlns='jabber:client'"
+                + " xmlns:stream='http://etherx.jabber.org/streams'>");
+        for (int i = 0; i < MESSAGES; i++)
+        {
+            String body = "Message " + i;
+
+            out.write(
+                "<message to='tester' type='chat'><body>" + body + "</body>"
+                    + "<html xmlns='http://www.w3.org/1999/xhtml'><body"
+                    + " ichatballooncolor='#7BB5EE'"
+                    + " ichattextcolor='#000000'><font"
+                    + " face='Helvetica' ABSZ='12' color='#000000'>" + body
+                    + "</font></body></html><x xmlns='jabber:x:event'>"
+                    + "<composing/></x></message>");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests that <tt>ChatStreamDecoder</tt> splits a chat stream into the same
+ * fragments however the bytes of the stream are split by the connection.
+ */
+public class TestChatStreamDecoder
+    extends TestCase
+{
+    /**
+     * The fragments of the chat stream which is decoded, in the order in
+     * which they are sent.
+     */
+    private static final String[] FRAGMENTS
+        = {
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<stream:stream xmlns='jabber:client'"
+                + " xmlns:stream='http://etherx.jabber.org/streams'>",
+            "<message to='tester' from='peer' type='chat'>"
+                + "<body>Hello!</body></message>",
+            "<message to='tester' from='peer' type='chat'>"
+                + "<body>1 &lt; 2 &gt; 0</body>"
+                + "<html xmlns='http://www.w3.org/1999/xhtml'>"
+                + "<body><font color='#000000'>1 &lt; 2 &gt; 0</font>"
+                + "</body></html>"
+                + "<x xmlns='jabber:x:event'><composing/></x></message>",
+            "<message to='tester' from='peer' type='chat'>"
+                + "<body>Gr\u00fc\u00dfe \u2603 \u4f60\u597d</body></message>",
+            "<message to='tester' from='peer'><x xmlns='jabber:x:event'>"
+                + "<composing/><id>1</id></x></message>",
+            "</stream:stream>"
+        };
+
+    /**
+     * Tests that the stream is decoded into the same fragments when it is
+     * read in chunks of 1, 3, 7 and 1000 bytes.
+     *
+     * @throws IOException if reading the stream fails
+     */
+    public void testChunks()
+        throws IOException
+    {
+        for (int chunkSize : new int[] { 1, 3, 7, 1000 })
+        {
+            assertEquals(
+                "fragments read in chunks of " + chunkSize + " bytes",
+                Arrays.asList(FRAGMENTS),
+                decode(createStream(FRAGMENTS), chunkSize));
+        }
+    }
+
+    /**
+     * Tests that many messages which do not fit into the initial buffer of
+     * the decoder are all decoded.
+     *
+     * @throws IOException if reading the stream fails
+     */
+    public void testManyMessages()
+        throws IOException
+    {
+        String[] fragments = new String[500];
+
+        for (int i = 0; i < fragments.length; i++)
+        {
+            fragments[i]
+                = "<message to='tester' from='peer' type='chat'><body>"
+                    + "Message " + i + "</body></message>";
+        }
+        for (int chunkSize : new int[] { 7, 1000 })
+        {
+            assertEquals(
+                Arrays.asList(fragments),
+                decode(createStream(fragments), chunkSize));
+        }
+    }
+
+    /**
+     * Tests that a message longer than the initial buffer of the decoder is
+     * decoded whole.
+     *
+     * @throws IOException if reading the stream fails
+     */
+    public void testLongMessage()
+        throws IOException
+    {
+        StringBuilder body = new StringBuilder();
+
+        while (body.length() < 20000)
+            body.append("long message > buffer ");
+
+        String[] fragments
+            = {
+                "<message to='tester' from='peer' type='chat'><body>"
+                    + body + "</body></message>"
+            };
+
+        assertEquals(
+            Arrays.asList(fragments),
+            decode(createStream(fragments), 1000));
+    }
+
+    /**
+     * Joins fragments into a stream with white space between them.
+     *
+     * @param fragments the fragments to join
+     * @return the UTF-8 bytes of the stream
+     * @throws UnsupportedEncodingException never
+     */
+    private static byte[] createStream(String[] fragments)
+        throws UnsupportedEncodingException
+    {
+        StringBuilder stream = new StringBuilder();
+
+        for (int i = 0; i < fragments.length; i++)
+            stream.append(fragments[i]).append((i % 2 == 0) ? "" : "\r\n");
+        return stream.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Decodes a stream which is read in chunks of a specific size.
+     *
+     * @param stream the bytes of the stream
+     * @param chunkSize the maximum number of bytes read at a time
+     * @return the fragments decoded from <tt>stream</tt>
+     * @throws IOException if reading the stream fails
+     */
+    private static List<String> decode(byte[] stream, int chunkSize)
+        throws IOException
+    {
+        ChatStreamDecoder decoder = new ChatStreamDecoder();
+        ReadableByteChannel channel = new ChunkedChannel(stream, chunkSize);
+        List<String> fragments = new ArrayList<String>();
+
+        while (decoder.read(channel) >= 0)
+        {
+            String fragment;
+
+            while ((fragment = decoder.nextFragment()) != null)
+                fragments.add(fragment);
+        }
+        return fragments;
+    }
+
+    /**
+     * A channel which reads a stream in chunks of at most a specific size the
+     * way a connection delivers it in packets.
+     */
+    private static class ChunkedChannel
+        implements ReadableByteChannel
+    {
+        /**
+         * The maximum number of bytes read at a time.
+         */
+        private final int chunkSize;
+
+        /**
+         * The bytes which remain to be read.
+         */
+        private final ByteBuffer stream;
+
+        /**
+         * Creates a channel which reads a specific stream.
+         *
+         * @param stream the bytes of the stream
+         * @param chunkSize the maximum number of bytes read at a time
+         */
+        ChunkedChannel(byte[] stream, int chunkSize)
+        {
+            this.stream = ByteBuffer.wrap(stream);
+            this.chunkSize = chunkSize;
+        }
+
+        public int read(ByteBuffer dst)
+        {
+            if (!stream.hasRemaining())
+                return -1;
+
+            int length
+                = Math.min(
+                        chunkSize,
+                        Math.min(stream.remaining(), dst.remaining()));
+            ByteBuffer chunk = stream.duplicate();
+
+            chunk.limit(chunk.position() + length);
+            dst.put(chunk);
+            stream.position(stream.position() + length);
+            return length;
+        }
+
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        public void close()
+        {
+        }
+    }
+}
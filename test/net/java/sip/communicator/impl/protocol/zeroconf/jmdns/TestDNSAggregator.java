@@ -0,0 +1,230 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf.jmdns;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Tests that <tt>DNSAggregator</tt> sends the questions and answers queued
+ * within its delay in as few messages as possible. The messages are not
+ * multicast but parsed right away the way a peer on the link receives them.
+ */
+public class TestDNSAggregator
+    extends TestCase
+{
+    /**
+     * The type of the service instances which are queried.
+     */
+    private static final String SERVICE_TYPE = "_presence._tcp.local.";
+
+    /**
+     * The delay which is long enough for the aggregator not to send anything
+     * before it is flushed.
+     */
+    private static final long LONG_DELAY = 60 * 60 * 1000;
+
+    /**
+     * The timer on which the aggregators send their messages.
+     */
+    private Timer timer;
+
+    /**
+     * The messages sent by the aggregators as they are received.
+     */
+    private BlockingQueue<DNSIncoming> received;
+
+    /**
+     * Creates the timer and the link on which the messages are received.
+     */
+    @Override
+    protected void setUp()
+    {
+        timer = new Timer(true);
+        received = new LinkedBlockingQueue<DNSIncoming>();
+    }
+
+    /**
+     * Stops the timer.
+     */
+    @Override
+    protected void tearDown()
+    {
+        timer.cancel();
+    }
+
+    /**
+     * Tests that the known answers of a query which do not fit into a single
+     * message continue in messages which follow the one with the question,
+     * each but the last of them having the truncated bit set.
+     *
+     * @throws IOException if a message cannot be sent
+     */
+    public void testKnownAnswersContinueInTruncatedMessages()
+        throws IOException
+    {
+        DNSAggregator aggregator
+            = createAggregator(DNSConstants.FLAGS_QR_QUERY, LONG_DELAY);
+        DNSQuestion question
+            = new DNSQuestion(
+                    SERVICE_TYPE,
+                    DNSConstants.TYPE_PTR,
+                    DNSConstants.CLASS_IN);
+        List<DNSRecord> knownAnswers = createPointers(200);
+
+        aggregator.addQuestion(question, knownAnswers);
+
+        int count = aggregator.flush();
+
+        assertTrue("known answers fit in one message", count > 1);
+        assertEquals(count, received.size());
+
+        List<DNSRecord> receivedAnswers = new ArrayList<DNSRecord>();
+
+        for (int i = 0; i < count; i++)
+        {
+            DNSIncoming in = received.poll();
+
+            assertTrue(in.isQuery());
+            assertEquals(
+                "truncated bit of message " + i,
+                i < count - 1,
+                in.isTruncated());
+            assertEquals(
+                "questions of message " + i,
+                (i == 0) ? 1 : 0,
+                in.questions.size());
+            receivedAnswers.addAll(in.answers);
+        }
+        assertEquals(knownAnswers, receivedAnswers);
+    }
+
+    /**
+     * Tests that the answers of a response which do not fit into a single
+     * message continue in messages which do not have the truncated bit set.
+     *
+     * @throws IOException if a message cannot be sent
+     */
+    public void testResponsesAreNotTruncated()
+        throws IOException
+    {
+        DNSAggregator aggregator
+            = createAggregator(
+                    DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA,
+                    LONG_DELAY);
+        List<DNSRecord> answers = createPointers(200);
+
+        for (DNSRecord answer : answers)
+            aggregator.addAnswer(answer);
+
+        int count = aggregator.flush();
+        List<DNSRecord> receivedAnswers = new ArrayList<DNSRecord>();
+
+        assertTrue("answers fit in one message", count > 1);
+        for (DNSIncoming in : received)
+        {
+            assertTrue(in.isResponse());
+            assertFalse(in.isTruncated());
+            receivedAnswers.addAll(in.answers);
+        }
+        assertEquals(answers, receivedAnswers);
+    }
+
+    /**
+     * Tests that the questions and answers queued several times within the
+     * delay are sent once in a single message.
+     *
+     * @throws Exception if a message cannot be sent or the test is
+     * interrupted
+     */
+    public void testDuplicatesSentOnce()
+        throws Exception
+    {
+        DNSAggregator aggregator
+            = createAggregator(DNSConstants.FLAGS_QR_QUERY, 50);
+        List<DNSRecord> knownAnswers = createPointers(3);
+
+        for (int i = 0; i < 5; i++)
+        {
+            aggregator.addQuestion(
+                new DNSQuestion(
+                        SERVICE_TYPE,
+                        DNSConstants.TYPE_PTR,
+                        DNSConstants.CLASS_IN),
+                createPointers(3));
+        }
+        aggregator.addAnswer(createPointers(1).get(0));
+
+        DNSIncoming in = received.poll(5, TimeUnit.SECONDS);
+
+        assertNotNull("nothing sent after the delay", in);
+        assertEquals(1, in.questions.size());
+        assertEquals(knownAnswers, in.answers);
+        assertFalse(in.isTruncated());
+
+        assertNull(
+            "more than one message sent",
+            received.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, aggregator.flush());
+    }
+
+    /**
+     * Creates an aggregator the messages of which are received by
+     * {@link #received}.
+     *
+     * @param flags the flags of the messages
+     * @param delay the milliseconds to hold the questions and answers back
+     * @return the new aggregator
+     */
+    private DNSAggregator createAggregator(int flags, long delay)
+    {
+        return
+            new DNSAggregator(timer, flags, delay)
+            {
+                @Override
+                void send(DNSOutgoing out)
+                    throws IOException
+                {
+                    out.finish();
+
+                    byte[] data = new byte[out.off];
+
+                    System.arraycopy(out.data, 0, data, 0, data.length);
+                    received.add(
+                        new DNSIncoming(
+                                new DatagramPacket(data, data.length)));
+                }
+            };
+    }
+
+    /**
+     * Creates pointers to service instances of {@link #SERVICE_TYPE}.
+     *
+     * @param count the number of pointers to create
+     * @return the new pointers
+     */
+    private static List<DNSRecord> createPointers(int count)
+    {
+        List<DNSRecord> pointers = new ArrayList<DNSRecord>(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            pointers.add(
+                new DNSRecord.Pointer(
+                        SERVICE_TYPE,
+                        DNSConstants.TYPE_PTR,
+                        DNSConstants.CLASS_IN,
+                        DNSConstants.DNS_TTL,
+                        "peer" + i + "@host" + i + "." + SERVICE_TYPE));
+        }
+        return pointers;
+    }
+}
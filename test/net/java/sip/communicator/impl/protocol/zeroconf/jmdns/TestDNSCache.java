@@ -0,0 +1,133 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf.jmdns;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests that <tt>DNSCache</tt> removes the records which have expired and
+ * only them.
+ */
+public class TestDNSCache
+    extends TestCase
+{
+    /**
+     * The name of the records in the cache.
+     */
+    private static final String NAME = "_presence._tcp.local.";
+
+    /**
+     * The cache under test.
+     */
+    private DNSCache cache;
+
+    /**
+     * The time before which no record in the cache has been created.
+     */
+    private long start;
+
+    /**
+     * Creates an empty cache.
+     */
+    @Override
+    protected void setUp()
+    {
+        cache = new DNSCache(16);
+        start = System.currentTimeMillis();
+    }
+
+    /**
+     * Tests that the records are removed once their TTL has passed, in the
+     * order in which they expire.
+     */
+    public void testRemoveExpired()
+    {
+        DNSRecord shortLived = createPointer("short", 10);
+        DNSRecord longLived = createPointer("long", 100);
+        DNSRecord medium = createPointer("medium", 50);
+
+        cache.add(longLived);
+        cache.add(shortLived);
+        cache.add(medium);
+
+        assertEquals(
+            Collections.emptyList(),
+            cache.removeExpired(start + 5 * 1000));
+        assertEquals(
+            Arrays.asList(shortLived, medium),
+            cache.removeExpired(start + 60 * 1000));
+        assertFalse(cache.contains(shortLived));
+        assertFalse(cache.contains(medium));
+        assertTrue(cache.contains(longLived));
+        assertSame(longLived, cache.get(longLived));
+
+        assertEquals(
+            Collections.singletonList(longLived),
+            cache.removeExpired(start + 200 * 1000));
+        assertNull(cache.find(NAME));
+    }
+
+    /**
+     * Tests that a record the TTL of which has been reset after it was added
+     * is kept until its new TTL has passed.
+     */
+    public void testResetTTLKeepsRecord()
+    {
+        DNSRecord rec = createPointer("renewed", 10);
+
+        cache.add(rec);
+        rec.resetTTL(createPointer("renewed", 100));
+
+        assertEquals(
+            Collections.emptyList(),
+            cache.removeExpired(start + 60 * 1000));
+        assertTrue(cache.contains(rec));
+
+        assertEquals(
+            Collections.singletonList(rec),
+            cache.removeExpired(start + 200 * 1000));
+        assertFalse(cache.contains(rec));
+    }
+
+    /**
+     * Tests that a record removed from the cache before it expires is not
+     * reported as expired.
+     */
+    public void testRemovedRecordNotReported()
+    {
+        DNSRecord removed = createPointer("removed", 10);
+        DNSRecord kept = createPointer("kept", 10);
+
+        cache.add(removed);
+        cache.add(kept);
+        assertTrue(cache.remove(removed));
+
+        assertEquals(
+            Collections.singletonList(kept),
+            cache.removeExpired(start + 60 * 1000));
+    }
+
+    /**
+     * Creates a pointer to a service instance.
+     *
+     * @param instance the name of the service instance
+     * @param ttl the TTL of the pointer in seconds
+     * @return the new pointer
+     */
+    private static DNSRecord createPointer(String instance, int ttl)
+    {
+        return
+            new DNSRecord.Pointer(
+                    NAME,
+                    DNSConstants.TYPE_PTR,
+                    DNSConstants.CLASS_IN,
+                    ttl,
+                    instance + "." + NAME);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.zeroconf.jmdns;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests that <tt>DNSOutgoing</tt> stays valid when a question or record does
+ * not fit into it, so that it may be sent with what has been written before.
+ */
+public class TestDNSOutgoing
+    extends TestCase
+{
+    /**
+     * The type of the service instances in the messages.
+     */
+    private static final String SERVICE_TYPE = "_presence._tcp.local.";
+
+    /**
+     * Tests that a record which does not fit is discarded together with the
+     * names written for it, so that a record with the same name added
+     * afterwards does not point at the discarded bytes.
+     *
+     * @throws IOException if the message cannot be written
+     */
+    public void testRecordRollback()
+        throws IOException
+    {
+        DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE);
+        List<DNSRecord> answers = fill(out);
+        String name = "overflow." + SERVICE_TYPE;
+        int off = out.off;
+
+        try
+        {
+            out.addAnswer(
+                new DNSRecord.Text(
+                        name,
+                        DNSConstants.TYPE_TXT,
+                        DNSConstants.CLASS_IN,
+                        DNSConstants.DNS_TTL,
+                        new byte[DNSConstants.MAX_MSG_TYPICAL]),
+                0);
+            fail("record larger than a message written");
+        }
+        catch (IOException expected)
+        {
+        }
+        assertEquals(off, out.off);
+
+        DNSRecord pointer
+            = new DNSRecord.Pointer(
+                    name,
+                    DNSConstants.TYPE_PTR,
+                    DNSConstants.CLASS_IN,
+                    DNSConstants.DNS_TTL,
+                    SERVICE_TYPE);
+
+        out.addAnswer(pointer, 0);
+        answers.add(pointer);
+
+        assertEquals(answers, receive(out).answers);
+    }
+
+    /**
+     * Tests that a question which does not fit is discarded so that the
+     * message holds the questions added before it.
+     *
+     * @throws IOException if the message cannot be written
+     */
+    public void testQuestionRollback()
+        throws IOException
+    {
+        DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+        List<DNSQuestion> questions = new ArrayList<DNSQuestion>();
+
+        try
+        {
+            for (int i = 0;; i++)
+            {
+                DNSQuestion question
+                    = new DNSQuestion(
+                            "instance" + i + "." + SERVICE_TYPE,
+                            DNSConstants.TYPE_SRV,
+                            DNSConstants.CLASS_IN);
+
+                out.addQuestion(question);
+                questions.add(question);
+            }
+        }
+        catch (IOException expected)
+        {
+        }
+
+        DNSIncoming in = receive(out);
+
+        assertEquals(questions.size(), in.questions.size());
+        assertEquals(questions, in.questions);
+    }
+
+    /**
+     * Fills a message with pointers until less than a hundred bytes are left.
+     *
+     * @param out the message to fill
+     * @return the pointers written into <tt>out</tt>
+     * @throws IOException if the message cannot be written
+     */
+    private static List<DNSRecord> fill(DNSOutgoing out)
+        throws IOException
+    {
+        List<DNSRecord> answers = new ArrayList<DNSRecord>();
+
+        for (int i = 0; out.off < DNSConstants.MAX_MSG_TYPICAL - 100; i++)
+        {
+            DNSRecord answer
+                = new DNSRecord.Pointer(
+                        SERVICE_TYPE,
+                        DNSConstants.TYPE_PTR,
+                        DNSConstants.CLASS_IN,
+                        DNSConstants.DNS_TTL,
+                        "instance" + i + "." + SERVICE_TYPE);
+
+            out.addAnswer(answer, 0);
+            answers.add(answer);
+        }
+        return answers;
+    }
+
+    /**
+     * Finishes a message and parses it the way a peer receives it.
+     *
+     * @param out the message to receive
+     * @return the message as it is received
+     * @throws IOException if the message cannot be parsed
+     */
+    private static DNSIncoming receive(DNSOutgoing out)
+        throws IOException
+    {
+        out.finish();
+
+        byte[] data = new byte[out.off];
+
+        System.arraycopy(out.data, 0, data, 0, data.length);
+        return new DNSIncoming(new DatagramPacket(data, data.length));
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.slick.slickless.protocol;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * Tests that <tt>AbstractOperationSetBasicInstantMessaging</tt> dispatches
+ * message events through the transform layers to the registered message
+ * listeners and benchmarks how many messages per second it dispatches. The
+ * contact and protocol provider of the messages are stubs.
+ */
+public class TestAbstractOperationSetBasicInstantMessaging
+    extends TestCase
+{
+    /**
+     * The number of listeners registered by the benchmark.
+     */
+    private static final int LISTENERS = 5;
+
+    /**
+     * The number of messages dispatched by the benchmark in each
+     * configuration.
+     */
+    private static final int MESSAGES = 2000000;
+
+    /**
+     * The operation set under test.
+     */
+    private InstantMessagingImpl opSet;
+
+    /**
+     * The transform operation set of the protocol provider of
+     * {@link #contact} or <tt>null</tt> if it does not support transforms.
+     */
+    private OperationSetInstantMessageTransformImpl opSetTransform;
+
+    /**
+     * The contact the messages are received from and sent to.
+     */
+    private Contact contact;
+
+    /**
+     * Creates the operation set and the stubs of the contact and of its
+     * protocol provider.
+     */
+    @Override
+    protected void setUp()
+    {
+        final ProtocolProviderService protocolProvider
+            = createStub(
+                    ProtocolProviderService.class,
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                        {
+                            return
+                                method.getName().equals("getOperationSet")
+                                    ? opSetTransform
+                                    : null;
+                        }
+                    });
+
+        contact
+            = createStub(
+                    Contact.class,
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                        {
+                            return
+                                method.getName().equals("getProtocolProvider")
+                                    ? protocolProvider
+                                    : null;
+                        }
+                    });
+        opSet = new InstantMessagingImpl();
+    }
+
+    /**
+     * Tests that every kind of message event reaches the listeners which are
+     * registered when it is fired and only them.
+     */
+    public void testListeners()
+    {
+        CountingListener first = new CountingListener();
+        CountingListener second = new CountingListener();
+        Message message = opSet.createMessage("Hello");
+
+        opSet.addMessageListener(first);
+        opSet.addMessageListener(second);
+        opSet.addMessageListener(first);
+
+        opSet.receive(message, contact);
+        opSet.sendInstantMessage(contact, message);
+        opSet.fail(message, contact);
+
+        for (CountingListener listener
+                : new CountingListener[] { first, second })
+        {
+            assertEquals(1, listener.received);
+            assertEquals(1, listener.delivered);
+            assertEquals(1, listener.failed);
+        }
+
+        opSet.removeMessageListener(first);
+        opSet.receive(message, contact);
+        assertEquals(1, first.received);
+        assertEquals(2, second.received);
+
+        opSet.removeMessageListener(second);
+        opSet.receive(message, contact);
+        assertEquals(2, second.received);
+    }
+
+    /**
+     * Tests that the transform layers transform the events in the order in
+     * which they have been added, that a layer may stop an event from being
+     * delivered and that the layers which have been removed no longer apply.
+     */
+    public void testTransformLayers()
+    {
+        final List<String> contents = new ArrayList<String>();
+
+        opSetTransform = new OperationSetInstantMessageTransformImpl();
+        opSet.addMessageListener(
+            new CountingListener()
+            {
+                @Override
+                public void messageReceived(MessageReceivedEvent evt)
+                {
+                    contents.add(evt.getSourceMessage().getContent());
+                }
+            });
+
+        TransformLayer first = new AppendingLayer(" first");
+        TransformLayer second = new AppendingLayer(" second");
+        TransformLayer drop = new AppendingLayer(null);
+
+        opSetTransform.addTransformLayer(first);
+        opSetTransform.addTransformLayer(second);
+        opSet.receive(opSet.createMessage("Hello"), contact);
+        assertEquals(Arrays.asList("Hello first second"), contents);
+
+        opSetTransform.addTransformLayer(drop);
+        opSet.receive(opSet.createMessage("Dropped"), contact);
+        assertEquals(1, contents.size());
+
+        opSetTransform.removeTransformLayer(drop);
+        opSetTransform.removeTransformLayer(first);
+        opSet.receive(opSet.createMessage("Hello"), contact);
+        assertEquals(
+            Arrays.asList("Hello first second", "Hello second"),
+            contents);
+
+        opSetTransform.removeTransformLayer(second);
+        opSet.receive(opSet.createMessage("Hello"), contact);
+        assertEquals("Hello", contents.get(2));
+    }
+
+    /**
+     * Benchmarks the received messages per second which are dispatched to
+     * several listeners when the protocol provider does not support
+     * transforms, when it does but no layer is registered and when a layer
+     * which does not change the events is registered.
+     */
+    public void testThroughput()
+    {
+        CountingListener[] listeners = new CountingListener[LISTENERS];
+
+        for (int i = 0; i < listeners.length; i++)
+        {
+            listeners[i] = new CountingListener();
+            opSet.addMessageListener(listeners[i]);
+        }
+
+        Message message = opSet.createMessage("Hello");
+        StringBuilder results = new StringBuilder();
+
+        results.append(LISTENERS).append(" listeners:");
+
+        opSetTransform = null;
+        results
+            .append(" no transforms ")
+            .append(benchmark(message))
+            .append(" messages/s,");
+
+        opSetTransform = new OperationSetInstantMessageTransformImpl();
+        results
+            .append(" no layers ")
+            .append(benchmark(message))
+            .append(" messages/s,");
+
+        opSetTransform.addTransformLayer(new AppendingLayer(""));
+        results
+            .append(" 1 layer ")
+            .append(benchmark(message))
+            .append(" messages/s");
+
+        for (CountingListener listener : listeners)
+            assertEquals(3 * 2 * MESSAGES, listener.received);
+
+        System.out.println(results);
+    }
+
+    /**
+     * Dispatches {@link #MESSAGES} received messages after as many to warm
+     * up.
+     *
+     * @param message the message to dispatch
+     * @return the messages per second which have been dispatched
+     */
+    private long benchmark(Message message)
+    {
+        for (int i = 0; i < MESSAGES; i++)
+            opSet.receive(message, contact);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < MESSAGES; i++)
+            opSet.receive(message, contact);
+        return MESSAGES * 1000000000L / (System.nanoTime() - start);
+    }
+
+    /**
+     * Creates a stub of an interface.
+     *
+     * @param type the interface to implement
+     * @param handler the handler of the invocations of the methods of the
+     * stub
+     * @return the new implementation of <tt>type</tt>
+     */
+    private static <T> T createStub(Class<T> type, InvocationHandler handler)
+    {
+        return
+            type.cast(
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] { type },
+                        handler));
+    }
+
+    /**
+     * The operation set under test which fires the events of the messages it
+     * is told to have received, sent or failed to send.
+     */
+    private static class InstantMessagingImpl
+        extends AbstractOperationSetBasicInstantMessaging
+    {
+        @Override
+        public Message createMessage(
+                String content,
+                String contentType,
+                String encoding,
+                String subject)
+        {
+            return
+                new AbstractMessage(content, contentType, encoding, subject)
+                {
+                };
+        }
+
+        /**
+         * Fires the event of a message which has failed to be sent.
+         *
+         * @param message the message
+         * @param to the contact the message has been sent to
+         */
+        void fail(Message message, Contact to)
+        {
+            fireMessageDeliveryFailed(
+                message,
+                to,
+                MessageDeliveryFailedEvent.NETWORK_FAILURE);
+        }
+
+        public boolean isContentTypeSupported(String contentType)
+        {
+            return true;
+        }
+
+        public boolean isOfflineMessagingSupported()
+        {
+            return false;
+        }
+
+        /**
+         * Fires the event of a received message.
+         *
+         * @param message the message
+         * @param from the contact the message has been received from
+         */
+        void receive(Message message, Contact from)
+        {
+            fireMessageReceived(message, from);
+        }
+
+        public void sendInstantMessage(Contact to, Message message)
+        {
+            fireMessageDelivered(message, to);
+        }
+    }
+
+    /**
+     * A <tt>MessageListener</tt> which counts the events it is notified
+     * about.
+     */
+    private static class CountingListener
+        implements MessageListener
+    {
+        /**
+         * The number of messages which have been delivered.
+         */
+        int delivered;
+
+        /**
+         * The number of messages which have failed to be delivered.
+         */
+        int failed;
+
+        /**
+         * The number of messages which have been received.
+         */
+        int received;
+
+        public void messageDelivered(MessageDeliveredEvent evt)
+        {
+            delivered++;
+        }
+
+        public void messageDeliveryFailed(MessageDeliveryFailedEvent evt)
+        {
+            failed++;
+        }
+
+        public void messageReceived(MessageReceivedEvent evt)
+        {
+            received++;
+        }
+    }
+
+    /**
+     * A <tt>TransformLayer</tt> which appends a suffix to the content of the
+     * received messages or drops them.
+     */
+    private class AppendingLayer
+        implements TransformLayer
+    {
+        /**
+         * The suffix to append or <tt>null</tt> to drop the messages.
+         */
+        private final String suffix;
+
+        /**
+         * Initializes a new <tt>AppendingLayer</tt>.
+         *
+         * @param suffix the suffix to append to the content of the received
+         * messages, an empty string to pass them unchanged or <tt>null</tt>
+         * to drop them
+         */
+        AppendingLayer(String suffix)
+        {
+            this.suffix = suffix;
+        }
+
+        public MessageDeliveredEvent messageDelivered(
+                MessageDeliveredEvent evt)
+        {
+            return evt;
+        }
+
+        public MessageDeliveryFailedEvent messageDeliveryFailed(
+                MessageDeliveryFailedEvent evt)
+        {
+            return evt;
+        }
+
+        public MessageDeliveredEvent messageDeliveryPending(
+                MessageDeliveredEvent evt)
+        {
+            return evt;
+        }
+
+        public MessageReceivedEvent messageReceived(MessageReceivedEvent evt)
+        {
+            if (suffix == null)
+                return null;
+            if (suffix.length() == 0)
+                return evt;
+            return
+                new MessageReceivedEvent(
+                        opSet.createMessage(
+                                evt.getSourceMessage().getContent() + suffix),
+                        evt.getSourceContact(),
+                        evt.getTimestamp());
+        }
+    }
+}
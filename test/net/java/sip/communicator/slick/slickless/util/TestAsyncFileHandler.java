@@ -0,0 +1,340 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.slick.slickless.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.regex.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Tests that <tt>AsyncFileHandler</tt> writes every record published from
+ * several threads by the time it is closed, drops records only as its
+ * overflow policy permits and benchmarks how many records per second it
+ * takes from threads which log at the same time.
+ */
+public class TestAsyncFileHandler
+    extends TestCase
+{
+    /**
+     * The number of threads which log at the same time.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * The pattern of the report of dropped records.
+     */
+    private static final Pattern DROPPED
+        = Pattern.compile("Dropped (\\d+) log records .*");
+
+    /**
+     * The directory in which the log files are written.
+     */
+    private File directory;
+
+    /**
+     * The pattern of the log files of the sip-communicator
+     * <tt>FileHandler</tt> before the test.
+     */
+    private String pattern;
+
+    /**
+     * Creates the directory of the log files.
+     *
+     * @throws Exception if the directory cannot be created
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        directory = File.createTempFile("asyncfilehandler", "");
+        directory.delete();
+        directory.mkdir();
+        pattern = net.java.sip.communicator.util.FileHandler.pattern;
+    }
+
+    /**
+     * Restores the logging configuration and deletes the log files.
+     *
+     * @throws Exception if the logging configuration cannot be read
+     */
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        LogManager.getLogManager().readConfiguration();
+        net.java.sip.communicator.util.FileHandler.pattern = pattern;
+
+        File[] files = directory.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+
+        super.tearDown();
+    }
+
+    /**
+     * Tests that the records which several threads publish while the ring
+     * buffer is full most of the time are all written, in the order in which
+     * each thread has published them, once the handler is closed.
+     *
+     * @throws Exception if the handler fails or the test is interrupted
+     */
+    public void testAllRecordsWritten()
+        throws Exception
+    {
+        File file = new File(directory, "all.log");
+        Handler handler
+            = createHandler(file, 64, "block", LineFormatter.class);
+
+        publish(handler, 10000, false);
+        handler.close();
+
+        int[] written = new int[THREADS];
+
+        for (String line : readLines(file))
+        {
+            String[] fields = line.split(" ");
+            int thread = Integer.parseInt(fields[0]);
+
+            assertEquals(
+                "record of thread " + thread,
+                written[thread],
+                Integer.parseInt(fields[1]));
+            written[thread]++;
+        }
+        for (int thread = 0; thread < THREADS; thread++)
+            assertEquals("records of thread " + thread, 10000, written[thread]);
+    }
+
+    /**
+     * Tests that only records below <tt>Level.WARNING</tt> are dropped when
+     * the ring buffer overflows with the <tt>drop</tt> policy and that each
+     * of them is either written or reported as dropped.
+     *
+     * @throws Exception if the handler fails or the test is interrupted
+     */
+    public void testDropOnOverflow()
+        throws Exception
+    {
+        File file = new File(directory, "drop.log");
+        Handler handler
+            = createHandler(file, 4, "drop", LineFormatter.class);
+
+        publish(handler, 10000, true);
+        handler.close();
+
+        int info = 0;
+        int warnings = 0;
+        int dropped = 0;
+
+        for (String line : readLines(file))
+        {
+            Matcher matcher = DROPPED.matcher(line);
+
+            if (matcher.matches())
+                dropped += Integer.parseInt(matcher.group(1));
+            else if (line.endsWith(Level.WARNING.getName()))
+                warnings++;
+            else
+                info++;
+        }
+        assertEquals(THREADS * 5000, warnings);
+        assertEquals(THREADS * 5000, info + dropped);
+    }
+
+    /**
+     * Benchmarks the records per second which several threads publish with
+     * <tt>AsyncFileHandler</tt>, including the time it takes to write the
+     * records which are still waiting when the threads are done, and with a
+     * plain <tt>FileHandler</tt>. Both format the records with
+     * <tt>ScLogFormatter</tt>.
+     *
+     * @throws Exception if a handler fails or the test is interrupted
+     */
+    public void testThroughput()
+        throws Exception
+    {
+        int records = 20000;
+        Handler async
+            = createHandler(
+                    new File(directory, "async.log"),
+                    AsyncFileHandler.DEFAULT_CAPACITY,
+                    "block",
+                    ScLogFormatter.class);
+        long start = System.nanoTime();
+
+        publish(async, records, false);
+        async.close();
+
+        long asyncTime = System.nanoTime() - start;
+        Handler sync
+            = new FileHandler(
+                    new File(directory, "sync.log").getPath().replace(
+                            File.separatorChar,
+                            '/'),
+                    0,
+                    1,
+                    false);
+
+        sync.setFormatter(new ScLogFormatter());
+        start = System.nanoTime();
+        publish(sync, records, false);
+        sync.close();
+
+        long syncTime = System.nanoTime() - start;
+
+        System.out.println(
+                THREADS + " threads: AsyncFileHandler "
+                    + (THREADS * records * 1000000000L / asyncTime)
+                    + " records/s, FileHandler "
+                    + (THREADS * records * 1000000000L / syncTime)
+                    + " records/s");
+    }
+
+    /**
+     * Configures and creates an <tt>AsyncFileHandler</tt> which writes its
+     * records to a specific file.
+     *
+     * @param file the log file
+     * @param capacity the capacity of the ring buffer
+     * @param overflowPolicy <tt>block</tt> or <tt>drop</tt>
+     * @param formatter the class of the formatter of the records
+     * @return the new handler
+     * @throws IOException if the handler cannot be created
+     */
+    private static Handler createHandler(
+            File file,
+            int capacity,
+            String overflowPolicy,
+            Class<? extends Formatter> formatter)
+        throws IOException
+    {
+        String prefix = AsyncFileHandler.class.getName();
+        Properties properties = new Properties();
+
+        properties.setProperty(
+            prefix + ".capacity",
+            Integer.toString(capacity));
+        properties.setProperty(prefix + ".overflowPolicy", overflowPolicy);
+        properties.setProperty(prefix + ".formatter", formatter.getName());
+
+        ByteArrayOutputStream configuration = new ByteArrayOutputStream();
+
+        properties.store(configuration, null);
+        LogManager.getLogManager().readConfiguration(
+            new ByteArrayInputStream(configuration.toByteArray()));
+        // The target FileHandler reads its pattern only once.
+        net.java.sip.communicator.util.FileHandler.pattern
+            = file.getPath().replace(File.separatorChar, '/');
+        return new AsyncFileHandler();
+    }
+
+    /**
+     * Publishes records from {@link #THREADS} threads at the same time and
+     * waits for them to be done. The message of each record is the index of
+     * its thread followed by its index among the records of the thread.
+     *
+     * @param handler the handler to publish the records with
+     * @param records the number of records each thread publishes
+     * @param warnings <tt>true</tt> to publish every other record at
+     * <tt>Level.WARNING</tt> and the others at <tt>Level.INFO</tt>;
+     * <tt>false</tt> to publish them all at <tt>Level.INFO</tt>
+     * @throws InterruptedException if the test is interrupted
+     */
+    private static void publish(
+            final Handler handler,
+            final int records,
+            final boolean warnings)
+        throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < THREADS; i++)
+        {
+            final int index = i;
+            Thread thread
+                = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for (int j = 0; j < records; j++)
+                        {
+                            Level level
+                                = (warnings && (j % 2 == 1))
+                                    ? Level.WARNING
+                                    : Level.INFO;
+
+                            handler.publish(
+                                    new LogRecord(level, index + " " + j));
+                        }
+                    }
+                };
+
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * Reads the lines of a log file.
+     *
+     * @param file the log file
+     * @return the lines of <tt>file</tt>
+     * @throws IOException if <tt>file</tt> cannot be read
+     */
+    private static List<String> readLines(File file)
+        throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+
+    /**
+     * A <tt>Formatter</tt> which writes the message and the level of each
+     * record on a line of its own.
+     */
+    public static class LineFormatter
+        extends Formatter
+    {
+        @Override
+        public String format(LogRecord record)
+        {
+            return
+                record.getMessage() + " " + record.getLevel().getName()
+                    + System.getProperty("line.separator");
+        }
+    }
+}